@@ -0,0 +1,122 @@
+package me.saket.dank.data;
+
+import static junit.framework.Assert.assertEquals;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import net.dean.jraw.models.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.functions.Function;
+import me.saket.dank.di.StorageModule;
+import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.CachedMessageSummary;
+import me.saket.dank.ui.user.messages.InboxFolder;
+
+/**
+ * Compares loading an inbox folder by decoding each message's JSON against reading
+ * {@link CachedMessageSummary} columns. Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InboxFolderLoadBenchmark {
+
+  private static final String TAG = "InboxFolderLoadBenchmark";
+  private static final int RUNS = 5;
+  private static final String MESSAGE_JSON_TEMPLATE = "{\"distinguished\":null,\"id\":\"%1$s\",\"score\":0,\"author\":\"Intersebbtor\","
+      + "\"body\":\"Hey there,\\nas i said in the comment, I'd be happy to help you out. so as soon as i get the chance to I'll give you "
+      + "some feedback :)\",\"context\":\"\",\"created_utc\":%2$d,\"dest\":\"Saketme\",\"name\":\"t4_%1$s\",\"was_comment\":false,"
+      + "\"new\":true,\"subject\":\"usability\",\"likes\":null,\"replies\":{\"kind\":\"Listing\",\"data\":{\"after\":null,\"children\":[]}}}";
+
+  private MoshiAdapter moshiAdapter;
+  private SQLiteDatabase database;
+
+  @Before
+  public void setUp() {
+    moshiAdapter = new MoshiAdapter(new StorageModule().provideMoshi());
+    database = SQLiteDatabase.create(null);
+    database.execSQL(CachedMessage.QUERY_CREATE_TABLE);
+    database.execSQL(CachedMessage.QUERY_CREATE_INDEX_FOLDER_AND_TIME);
+    database.execSQL(CachedMessage.QUERY_CREATE_INDEX_FOLDER_AND_UNREAD);
+    database.execSQL(CachedMessage.QUERY_CREATE_INDEX_PARENT_THREAD);
+  }
+
+  @After
+  public void tearDown() {
+    database.close();
+  }
+
+  @Test
+  public void load1kMessages() throws Exception {
+    benchmark(1_000);
+  }
+
+  @Test
+  public void load10kMessages() throws Exception {
+    benchmark(10_000);
+  }
+
+  private void benchmark(int messageCount) throws Exception {
+    insertMessages(messageCount);
+
+    Function<Cursor, Message> jsonMapper = CachedMessage.messageFromCursor(moshiAdapter);
+    long jsonMillis = Long.MAX_VALUE;
+    long summaryMillis = Long.MAX_VALUE;
+
+    // Best of multiple runs, so that the first run's cold caches don't skew the results.
+    for (int i = 0; i < RUNS; i++) {
+      long startTime = SystemClock.elapsedRealtime();
+      List<Message> messages = readAll(CachedMessage.QUERY_GET_ALL_IN_FOLDER, jsonMapper);
+      jsonMillis = Math.min(jsonMillis, SystemClock.elapsedRealtime() - startTime);
+      assertEquals(messageCount, messages.size());
+
+      startTime = SystemClock.elapsedRealtime();
+      List<CachedMessageSummary> summaries = readAll(CachedMessage.QUERY_GET_SUMMARIES_IN_FOLDER, CachedMessageSummary.MAPPER);
+      summaryMillis = Math.min(summaryMillis, SystemClock.elapsedRealtime() - startTime);
+      assertEquals(messageCount, summaries.size());
+    }
+
+    Log.i(TAG, String.format("messages: %d, json: %dms, summaries: %dms", messageCount, jsonMillis, summaryMillis));
+  }
+
+  private void insertMessages(int count) throws IOException {
+    long createdTimeSeconds = System.currentTimeMillis() / 1000;
+
+    database.beginTransaction();
+    try {
+      for (int i = 0; i < count; i++) {
+        long created = createdTimeSeconds - i;
+        String json = String.format(MESSAGE_JSON_TEMPLATE, Integer.toString(i, 36), created);
+        Message message = moshiAdapter.create(Message.class).fromJson(json);
+
+        //noinspection ConstantConditions
+        CachedMessage cachedMessage = CachedMessage.create(message.getFullName(), message, created * 1000, InboxFolder.PRIVATE_MESSAGES);
+        database.insert(CachedMessage.TABLE_NAME, null, cachedMessage.toContentValues(moshiAdapter));
+      }
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+  }
+
+  private <T> List<T> readAll(String query, Function<Cursor, T> mapper) throws Exception {
+    try (Cursor cursor = database.rawQuery(query, new String[] { InboxFolder.PRIVATE_MESSAGES.name() })) {
+      List<T> items = new ArrayList<>(cursor.getCount());
+      while (cursor.moveToNext()) {
+        items.add(mapper.apply(cursor));
+      }
+      return items;
+    }
+  }
+}
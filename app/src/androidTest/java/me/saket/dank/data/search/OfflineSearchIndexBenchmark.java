@@ -0,0 +1,163 @@
+package me.saket.dank.data.search;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+import com.squareup.sqlbrite2.SqlBrite;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.data.search.SearchableContent.Type;
+
+/**
+ * Indexes a synthetic corpus of 50k comments and searches it, against scanning the comments
+ * with LIKE. Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class OfflineSearchIndexBenchmark {
+
+  private static final String TAG = "OfflineSearchBenchmark";
+  private static final int COMMENT_COUNT = 50_000;
+  /** Roughly the size of a large submission's comment listing. */
+  private static final int COMMENTS_PER_SUBMISSION = 500;
+  private static final int SEARCH_LIMIT = 100;
+  private static final String[] WORDS = {
+      "android", "kotlin", "reddit", "gesture", "theme", "dark", "night", "battery", "scroll", "image",
+      "gif", "video", "comment", "reply", "thread", "vote", "subreddit", "animation", "keyboard", "markdown",
+      "notification", "inbox", "message", "cache", "offline", "network", "search", "layout", "swipe", "font",
+  };
+  /** Never used in the corpus, except in {@link #RARE_WORD_FREQUENCY} comments. */
+  private static final String RARE_WORD = "serendipitous";
+  private static final int RARE_WORD_FREQUENCY = 1_000;
+
+  private SQLiteOpenHelper openHelper;
+  private BriteDatabase briteDatabase;
+  private OfflineSearchIndex searchIndex;
+  private List<List<SearchableContent>> commentListings;
+
+  @Before
+  public void setUp() {
+    openHelper = new SQLiteOpenHelper(InstrumentationRegistry.getTargetContext(), null, null, 1) {
+      @Override
+      public void onCreate(SQLiteDatabase db) {
+        db.execSQL(SearchableContent.QUERY_CREATE_TABLE);
+        db.execSQL(SearchableContent.QUERY_CREATE_INDEX_TYPE_AND_INDEX_TIME);
+        db.execSQL(SearchableContent.QUERY_CREATE_FTS_TABLE);
+      }
+
+      @Override
+      public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+      }
+    };
+    briteDatabase = new SqlBrite.Builder().build().wrapDatabaseHelper(openHelper, Schedulers.trampoline());
+    searchIndex = new OfflineSearchIndex(briteDatabase);
+
+    Random random = new Random(50_000);
+    long now = System.currentTimeMillis();
+    commentListings = new ArrayList<>();
+    for (int i = 0; i < COMMENT_COUNT; i += COMMENTS_PER_SUBMISSION) {
+      String submissionFullname = "t3_" + Integer.toString(i, 36);
+      List<SearchableContent> listing = new ArrayList<>(COMMENTS_PER_SUBMISSION);
+      for (int j = i; j < i + COMMENTS_PER_SUBMISSION; j++) {
+        listing.add(comment(random, "t1_" + Integer.toString(j, 36), submissionFullname, now - j * 1000L, j % RARE_WORD_FREQUENCY == 0));
+      }
+      commentListings.add(listing);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    briteDatabase.close();
+  }
+
+  @Test
+  public void indexAndSearch50kComments() {
+    long startTime = SystemClock.elapsedRealtime();
+    for (List<SearchableContent> listing : commentListings) {
+      searchIndex.index(listing);
+    }
+    long indexMillis = SystemClock.elapsedRealtime() - startTime;
+
+    // Comments get saved again every time a submission is re-opened.
+    startTime = SystemClock.elapsedRealtime();
+    for (List<SearchableContent> listing : commentListings) {
+      searchIndex.index(listing);
+    }
+    long reindexUnchangedMillis = SystemClock.elapsedRealtime() - startTime;
+
+    startTime = SystemClock.elapsedRealtime();
+    List<SearchableContent> rareResults = searchIndex.search(RARE_WORD, Type.COMMENT, SEARCH_LIMIT).blockingGet();
+    long rareSearchMillis = SystemClock.elapsedRealtime() - startTime;
+    assertEquals(COMMENT_COUNT / RARE_WORD_FREQUENCY, rareResults.size());
+
+    startTime = SystemClock.elapsedRealtime();
+    List<SearchableContent> commonResults = searchIndex.search("dark them", null, SEARCH_LIMIT).blockingGet();
+    long commonSearchMillis = SystemClock.elapsedRealtime() - startTime;
+    assertFalse(commonResults.isEmpty());
+
+    startTime = SystemClock.elapsedRealtime();
+    int likeCount = 0;
+    try (Cursor cursor = briteDatabase.query(
+        "SELECT * FROM " + SearchableContent.TABLE_NAME + " WHERE " + SearchableContent.COLUMN_BODY + " LIKE ?"
+            + " ORDER BY " + SearchableContent.COLUMN_RANK + " DESC LIMIT ?",
+        "%" + RARE_WORD + "%", String.valueOf(SEARCH_LIMIT)))
+    {
+      while (cursor.moveToNext()) {
+        ++likeCount;
+      }
+    }
+    long likeScanMillis = SystemClock.elapsedRealtime() - startTime;
+    assertEquals(rareResults.size(), likeCount);
+
+    Log.i(TAG, String.format(
+        "comments: %d, index: %dms, re-index unchanged: %dms, rare-word search: %dms, common-words search: %dms (%d results), LIKE scan: %dms",
+        COMMENT_COUNT,
+        indexMillis,
+        reindexUnchangedMillis,
+        rareSearchMillis,
+        commonSearchMillis,
+        commonResults.size(),
+        likeScanMillis));
+  }
+
+  private static SearchableContent comment(Random random, String fullname, String submissionFullname, long createdTimeMillis, boolean useRareWord) {
+    int wordCount = 10 + random.nextInt(40);
+    StringBuilder body = new StringBuilder(wordCount * 8);
+    for (int i = 0; i < wordCount; i++) {
+      if (i > 0) {
+        body.append(' ');
+      }
+      body.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    if (useRareWord) {
+      body.append(' ').append(RARE_WORD);
+    }
+    return new AutoValue_SearchableContent(
+        fullname,
+        Type.COMMENT,
+        null,
+        body.toString(),
+        "Intersebbtor",
+        "androiddev",
+        submissionFullname,
+        createdTimeMillis,
+        random.nextInt(2_000) - 50);
+  }
+}
@@ -0,0 +1,148 @@
+package me.saket.dank.notifs;
+
+import static junit.framework.Assert.assertEquals;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.squareup.moshi.JsonAdapter;
+
+import net.dean.jraw.models.Message;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import me.saket.dank.data.MoshiAdapter;
+import me.saket.dank.di.StorageModule;
+
+/**
+ * Reconciles notifications for 2k unread messages against 20k seen IDs, comparing
+ * {@link UnreadNotificationReconciler} with the list-based diffing it replaced. Also compares
+ * marking a message as seen in {@link SeenUnreadMessagesIdStore} against rewriting a
+ * SharedPreferences string-set. Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UnreadNotificationReconcilerBenchmark {
+
+  private static final String TAG = "UnreadNotifReconcilerBenchmark";
+  private static final int UNREAD_COUNT = 2_000;
+  private static final int READ_ELSEWHERE_COUNT = 100;
+  private static final int SEEN_ID_COUNT = 20_000;
+  private static final int RUNS = 5;
+  private static final String MESSAGE_JSON_TEMPLATE = "{\"distinguished\":null,\"id\":\"%1$s\",\"score\":0,\"author\":\"Intersebbtor\","
+      + "\"body\":\"Message %1$s\",\"context\":\"\",\"created_utc\":%2$d,\"dest\":\"Saketme\",\"name\":\"t4_%1$s\",\"was_comment\":false,"
+      + "\"new\":true,\"subject\":\"usability\",\"likes\":null,\"replies\":{\"kind\":\"Listing\",\"data\":{\"after\":null,\"children\":[]}}}";
+
+  private List<Message> previousUnreads;
+  private List<Message> currentUnreads;
+  private Set<String> seenMessageIds;
+  private File logFile;
+  private SharedPreferences sharedPreferences;
+
+  @Before
+  public void setUp() throws Exception {
+    JsonAdapter<Message> messageAdapter = new MoshiAdapter(new StorageModule().provideMoshi()).create(Message.class);
+    previousUnreads = new ArrayList<>(UNREAD_COUNT);
+    for (int i = 0; i < UNREAD_COUNT; i++) {
+      String json = String.format(MESSAGE_JSON_TEMPLATE, Integer.toString(i, 36), 1528532315L + i);
+      previousUnreads.add(messageAdapter.fromJson(json));
+    }
+    currentUnreads = new ArrayList<>(previousUnreads.subList(READ_ELSEWHERE_COUNT, UNREAD_COUNT));
+
+    // Every other unread message has been seen, along with many older ones.
+    seenMessageIds = new HashSet<>(SEEN_ID_COUNT * 2);
+    for (int i = 0; i < UNREAD_COUNT; i += 2) {
+      seenMessageIds.add(previousUnreads.get(i).getId());
+    }
+    for (int i = UNREAD_COUNT; seenMessageIds.size() < SEEN_ID_COUNT; i++) {
+      seenMessageIds.add(Integer.toString(i, 36));
+    }
+
+    Context context = InstrumentationRegistry.getTargetContext();
+    logFile = new File(context.getCacheDir(), TAG + ".log");
+    sharedPreferences = context.getSharedPreferences(TAG, Context.MODE_PRIVATE);
+  }
+
+  @After
+  public void tearDown() {
+    //noinspection ResultOfMethodCallIgnored
+    logFile.delete();
+    sharedPreferences.edit().clear().commit();
+  }
+
+  @Test
+  public void reconcile2kUnreadsWith20kSeenIds() {
+    long listDiffNanos = Long.MAX_VALUE;
+    long setDiffNanos = Long.MAX_VALUE;
+
+    for (int i = 0; i < RUNS; i++) {
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      List<Message> staleMessages = new ArrayList<>(previousUnreads);
+      staleMessages.removeAll(currentUnreads);
+      List<Message> unseenMessages = new ArrayList<>();
+      for (Message unread : currentUnreads) {
+        if (!seenMessageIds.contains(unread.getId())) {
+          unseenMessages.add(unread);
+        }
+      }
+      listDiffNanos = Math.min(listDiffNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+      assertEquals(READ_ELSEWHERE_COUNT, staleMessages.size());
+
+      startTime = SystemClock.elapsedRealtimeNanos();
+      List<Message> reconciledStaleMessages = UnreadNotificationReconciler.staleMessages(previousUnreads, currentUnreads);
+      List<Message> reconciledUnseenMessages = UnreadNotificationReconciler.unseenMessages(currentUnreads, seenMessageIds);
+      setDiffNanos = Math.min(setDiffNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+      assertEquals(staleMessages, reconciledStaleMessages);
+      assertEquals(unseenMessages, reconciledUnseenMessages);
+    }
+
+    Log.i(TAG, String.format(
+        "unreads: %d, seen ids: %d, list diff: %.2fms, set diff: %.2fms",
+        UNREAD_COUNT,
+        SEEN_ID_COUNT,
+        listDiffNanos / 1_000_000f,
+        setDiffNanos / 1_000_000f));
+  }
+
+  @Test
+  public void markOneMessageAsSeenWith20kSeenIds() {
+    SeenUnreadMessagesIdStore store = new SeenUnreadMessagesIdStore(logFile, null);
+    store.add(seenMessageIds).blockingAwait();
+
+    long stringSetNanos = Long.MAX_VALUE;
+    long appendNanos = Long.MAX_VALUE;
+
+    for (int i = 0; i < RUNS; i++) {
+      String newSeenId = "new" + i;
+
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      Set<String> updatedSeenIds = new HashSet<>(seenMessageIds);
+      updatedSeenIds.add(newSeenId);
+      sharedPreferences.edit().putStringSet(TAG, updatedSeenIds).commit();
+      stringSetNanos = Math.min(stringSetNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+
+      startTime = SystemClock.elapsedRealtimeNanos();
+      store.add(Collections.singletonList(newSeenId)).blockingAwait();
+      appendNanos = Math.min(appendNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+    }
+
+    Log.i(TAG, String.format(
+        "seen ids: %d, string-set rewrite: %.2fms, log append: %.2fms",
+        SEEN_ID_COUNT,
+        stringSetNanos / 1_000_000f,
+        appendNanos / 1_000_000f));
+  }
+}
@@ -0,0 +1,143 @@
+package me.saket.dank.ui.subreddit;
+
+import static junit.framework.Assert.assertTrue;
+
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import me.saket.dank.R;
+
+/**
+ * Measures frame times while flinging through the submission list. Needs a network
+ * connection for loading submissions. Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SubredditScrollBenchmark {
+
+  private static final String TAG = "SubredditScrollBenchmark";
+  private static final long SUBMISSIONS_LOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+  private static final long FLING_SETTLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+  private static final long JANK_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(17);
+  private static final int FLING_COUNT = 10;
+
+  @Rule public ActivityTestRule<SubredditActivity> activityRule = new ActivityTestRule<>(SubredditActivity.class);
+
+  @Test
+  public void flingThroughSubmissions() {
+    RecyclerView recyclerView = activityRule.getActivity().findViewById(R.id.subreddit_submission_list);
+    waitUntil(() -> recyclerView.getAdapter() != null && recyclerView.getAdapter().getItemCount() > 1, SUBMISSIONS_LOAD_TIMEOUT_MILLIS);
+
+    FrameRecorder recorder = new FrameRecorder(recyclerView);
+    InstrumentationRegistry.getInstrumentation().runOnMainSync(recorder::start);
+
+    int flingVelocity = recyclerView.getMaxFlingVelocity() / 2;
+    for (int i = 0; i < FLING_COUNT; i++) {
+      // Mostly downwards, where pagination keeps adding rows.
+      int velocity = i % 3 == 2 ? -flingVelocity : flingVelocity;
+      InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> recyclerView.fling(0, velocity));
+      waitUntil(() -> recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE, FLING_SETTLE_TIMEOUT_MILLIS);
+    }
+
+    InstrumentationRegistry.getInstrumentation().runOnMainSync(recorder::stop);
+    List<Long> frameDurations = recorder.frameDurationsNanos();
+    assertTrue("No frames were recorded", !frameDurations.isEmpty());
+    logSummary(frameDurations);
+  }
+
+  private static void logSummary(List<Long> frameDurations) {
+    List<Long> sorted = new ArrayList<>(frameDurations);
+    Collections.sort(sorted);
+
+    int jankyFrames = 0;
+    for (long duration : sorted) {
+      if (duration > JANK_THRESHOLD_NANOS) {
+        jankyFrames++;
+      }
+    }
+
+    Log.i(TAG, String.format(
+        "frames: %d, janky: %d (%.1f%%), p50: %.1fms, p90: %.1fms, p99: %.1fms, max: %.1fms",
+        sorted.size(),
+        jankyFrames,
+        jankyFrames * 100f / sorted.size(),
+        percentileMillis(sorted, 50),
+        percentileMillis(sorted, 90),
+        percentileMillis(sorted, 99),
+        percentileMillis(sorted, 100)));
+  }
+
+  private static float percentileMillis(List<Long> sortedDurations, int percentile) {
+    int index = Math.min(sortedDurations.size() - 1, (int) Math.ceil(percentile / 100f * sortedDurations.size()) - 1);
+    return sortedDurations.get(Math.max(0, index)) / 1_000_000f;
+  }
+
+  private static void waitUntil(Condition condition, long timeoutMillis) {
+    long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+    while (!condition.isMet()) {
+      if (SystemClock.uptimeMillis() > deadline) {
+        throw new AssertionError("Timed out after " + timeoutMillis + "ms");
+      }
+      SystemClock.sleep(50);
+    }
+  }
+
+  private interface Condition {
+    boolean isMet();
+  }
+
+  /**
+   * Records the time between consecutive frames while the list is scrolling. Must be used on the main thread.
+   */
+  private static class FrameRecorder implements Choreographer.FrameCallback {
+    private final List<Long> frameDurationsNanos = Collections.synchronizedList(new ArrayList<>());
+    private final RecyclerView recyclerView;
+    private long lastFrameTimeNanos;
+    private boolean recording;
+
+    FrameRecorder(RecyclerView recyclerView) {
+      this.recyclerView = recyclerView;
+    }
+
+    void start() {
+      recording = true;
+      lastFrameTimeNanos = 0;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+      recording = false;
+      Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+      if (!recording) {
+        return;
+      }
+      boolean isScrolling = recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE;
+      if (isScrolling && lastFrameTimeNanos != 0) {
+        frameDurationsNanos.add(frameTimeNanos - lastFrameTimeNanos);
+      }
+      lastFrameTimeNanos = frameTimeNanos;
+      Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    List<Long> frameDurationsNanos() {
+      return new ArrayList<>(frameDurationsNanos);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package me.saket.dank.ui.user.messages;
+
+import static junit.framework.Assert.assertEquals;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.util.DiffUtil;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import me.saket.dank.di.Dank;
+import me.saket.dank.utils.ListDiff;
+import me.saket.dank.utils.Pair;
+
+/**
+ * Measures the cost of updating a 500-message Unread folder after one message gets marked
+ * as read: rebuilding every UI model and diffing them, against reusing memoized models.
+ * Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class InboxFolderRebuildBenchmark {
+
+  private static final String TAG = "InboxFolderRebuildBenchmark";
+  private static final int MESSAGE_COUNT = 500;
+  private static final int RUNS = 10;
+
+  private Context context;
+  private InboxFolderUiConstructor uiConstructor;
+  private List<CachedMessageSummary> unreadMessages;
+  private List<CachedMessageSummary> unreadMessagesAfterSetRead;
+
+  @Before
+  public void setUp() {
+    context = InstrumentationRegistry.getTargetContext();
+    uiConstructor = Dank.dependencyInjector().inboxFolderUiConstructor();
+
+    long now = System.currentTimeMillis();
+    unreadMessages = new ArrayList<>(MESSAGE_COUNT);
+    for (int i = 0; i < MESSAGE_COUNT; i++) {
+      unreadMessages.add(commentReply("t1_" + i, now - i * 60_000L));
+    }
+    unreadMessagesAfterSetRead = new ArrayList<>(unreadMessages);
+    unreadMessagesAfterSetRead.remove(MESSAGE_COUNT / 2);
+  }
+
+  @Test
+  public void updateAfterSetRead() throws Exception {
+    long fullRebuildNanos = Long.MAX_VALUE;
+    long incrementalNanos = Long.MAX_VALUE;
+
+    for (int i = 0; i < RUNS; i++) {
+      List<InboxFolderScreenUiModel> modelsBefore = newBuilder().apply(unreadMessages).first();
+
+      long startTime = SystemClock.elapsedRealtimeNanos();
+      List<InboxFolderScreenUiModel> rebuiltModels = newBuilder().apply(unreadMessagesAfterSetRead).first();
+      DiffUtil.calculateDiff(new InboxFolderScreenUiModel.ItemDiffer(modelsBefore, rebuiltModels), false);
+      fullRebuildNanos = Math.min(fullRebuildNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+
+      InboxFolderUiConstructor.IncrementalBuilder warmBuilder = newBuilder();
+      warmBuilder.apply(unreadMessages);
+
+      startTime = SystemClock.elapsedRealtimeNanos();
+      Pair<List<InboxFolderScreenUiModel>, ListDiff> update = warmBuilder.apply(unreadMessagesAfterSetRead);
+      incrementalNanos = Math.min(incrementalNanos, SystemClock.elapsedRealtimeNanos() - startTime);
+      assertEquals(MESSAGE_COUNT - 1, update.first().size());
+    }
+
+    Log.i(TAG, String.format(
+        "messages: %d, full rebuild + diff: %.2fms, incremental: %.2fms",
+        MESSAGE_COUNT,
+        fullRebuildNanos / 1_000_000f,
+        incrementalNanos / 1_000_000f));
+  }
+
+  private InboxFolderUiConstructor.IncrementalBuilder newBuilder() {
+    return uiConstructor.new IncrementalBuilder(context, false, true);
+  }
+
+  private static CachedMessageSummary commentReply(String fullname, long createdTimeMillis) {
+    String body = "Thanks for the **detailed** write-up! I tried [the fix](https://example.com/" + fullname + ") and it works.";
+    return new AutoValue_CachedMessageSummary(
+        fullname,
+        InboxFolder.UNREAD,
+        InboxMessageType.COMMENT_REPLY,
+        "Intersebbtor",
+        "Saketme",
+        "comment reply",
+        body,
+        "Dank: an app for browsing Reddit",
+        "androiddev",
+        createdTimeMillis,
+        createdTimeMillis,
+        true,
+        "t3_" + fullname,
+        0,
+        "Intersebbtor",
+        body);
+  }
+}
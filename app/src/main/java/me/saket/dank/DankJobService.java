@@ -47,6 +47,12 @@ public abstract class DankJobService extends JobService {
 
   protected static final int ID_RECYCLE_OLD_SUBMISSIONS = 10;
 
+  protected static final int ID_RESUME_MEDIA_DOWNLOADS = 11;
+
+  protected static final int ID_BOOKMARKS_RECURRING_JOB = 12;
+  protected static final int ID_BOOKMARKS_PENDING_ACTIONS_JOB = 13;
+  protected static final int ID_BOOKMARKS_ONE_TIME_JOB = 14;
+
   private CompositeDisposable onDestroyDisposables;
   private Relay<Object> onDestroyStream = PublishRelay.create();
 
@@ -1,6 +1,7 @@
 package me.saket.dank.cache;
 
 import android.app.Application;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.support.annotation.CheckResult;
 import android.support.annotation.Px;
@@ -12,7 +13,6 @@ import com.f2prateek.rx.preferences2.Preference;
 
 import net.dean.jraw.models.Submission;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -23,12 +23,15 @@ import javax.inject.Singleton;
 
 import dagger.Lazy;
 import io.reactivex.Completable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.functions.Predicate;
 import me.saket.dank.data.CachePreFillThing;
+import me.saket.dank.data.FaviconRepository;
 import me.saket.dank.data.LinkMetadataRepository;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.reddit.Reddit;
 import me.saket.dank.ui.media.MediaHostRepository;
 import me.saket.dank.ui.preferences.NetworkStrategy;
@@ -42,12 +45,14 @@ import me.saket.dank.urlparser.ImgurAlbumLink;
 import me.saket.dank.urlparser.ImgurLink;
 import me.saket.dank.urlparser.Link;
 import me.saket.dank.urlparser.MediaLink;
+import me.saket.dank.urlparser.UnresolvedMediaLink;
 import me.saket.dank.urlparser.UrlParser;
 import me.saket.dank.utils.DankSubmissionRequest;
 import me.saket.dank.utils.NetworkStateListener;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RxUtils;
+import me.saket.dank.utils.Urls;
 
 /**
  * Pre-fetches submission content and comments.
@@ -62,6 +67,8 @@ public class CachePreFiller {
   private final NetworkStateListener networkStateListener;
   private final MediaHostRepository mediaHostRepository;
   private final LinkMetadataRepository linkMetadataRepository;
+  private final FaviconRepository faviconRepository;
+  private final PaletteRepository paletteRepository;
 
   private final Lazy<Scheduler> preFillingScheduler;
   private final Lazy<Map<CachePreFillThing, Preference<NetworkStrategy>>> preFillingNetworkStrategies;
@@ -78,6 +85,8 @@ public class CachePreFiller {
       NetworkStateListener networkStateListener,
       MediaHostRepository mediaHostRepository,
       LinkMetadataRepository linkMetadataRepository,
+      FaviconRepository faviconRepository,
+      PaletteRepository paletteRepository,
       Lazy<UrlParser> urlParser,
       Lazy<SubmissionImageLoader> submissionImageLoader,
       @Named("cache_pre_filling") Lazy<Scheduler> preFillingScheduler,
@@ -88,6 +97,8 @@ public class CachePreFiller {
     this.networkStateListener = networkStateListener;
     this.mediaHostRepository = mediaHostRepository;
     this.linkMetadataRepository = linkMetadataRepository;
+    this.faviconRepository = faviconRepository;
+    this.paletteRepository = paletteRepository;
     this.urlParser = urlParser;
     this.submissionImageLoader = submissionImageLoader;
     this.preFillingNetworkStrategies = preFillingNetworkStrategies;
@@ -129,7 +140,19 @@ public class CachePreFiller {
 
           log("Pre-filling images for %s submissions", submissions.size());
 
-          return submissionAndContentLinkStream
+          // Resolve all of the page's media in one burst instead of one link at a time as
+          // the images below get loaded. The image loads join these in-flight resolutions.
+          Observable<Object> resolutionsBurst = submissionAndContentLinkStream
+              .map(submissionAndLink -> submissionAndLink.second())
+              .ofType(UnresolvedMediaLink.class)
+              .cast(MediaLink.class)
+              .toList()
+              .filter(unresolvedLinks -> !unresolvedLinks.isEmpty())
+              .flatMapCompletable(unresolvedLinks -> mediaHostRepository.prefetchResolutions(unresolvedLinks))
+              .subscribeOn(preFillingScheduler.get())
+              .toObservable();
+
+          Observable<Object> imageLoads = submissionAndContentLinkStream
               .filter(submissionContentAreStaticImages())
               .concatMap(submissionAndLink -> {
                 Submission submission = submissionAndLink.first();
@@ -141,6 +164,7 @@ public class CachePreFiller {
                     .onErrorComplete()
                     .toObservable();
               });
+          return resolutionsBurst.mergeWith(imageLoads);
         });
 
     // Link metadata.
@@ -257,31 +281,40 @@ public class CachePreFiller {
       return Completable.complete();
     }
 
+    String domain = Urls.parseDomainName(contentLink.unparsedUrl());
+
     return linkMetadataRepository.unfurl(contentLink)
-        .map(linkMetadata -> {
-          List<String> imagesToDownload = new ArrayList<>(2);
-          if (linkMetadata.hasFavicon()) {
-            imagesToDownload.add(linkMetadata.faviconUrl());
-          }
+        .flatMapCompletable(linkMetadata -> {
+          // Favicons are shared by all links of a domain, so they're cached separately.
+          //noinspection ConstantConditions
+          Maybe<Pair<String, Drawable>> faviconLoad = linkMetadata.hasFavicon()
+              ? faviconRepository.favicon(domain, linkMetadata.faviconUrl())
+                  .map(favicon -> Pair.<String, Drawable>create(linkMetadata.faviconUrl(), new BitmapDrawable(appContext.getResources(), favicon)))
+                  .toMaybe()
+              : Maybe.empty();
+
+          Maybe<Pair<String, Drawable>> thumbnailLoad = Maybe.empty();
           //noinspection ConstantConditions
           if (linkMetadata.hasImage() && !UrlParser.isGifUrl(linkMetadata.imageUrl())) {
             ImageWithMultipleVariants redditSuppliedImages = ImageWithMultipleVariants.Companion.of(submission.getPreview());
             //noinspection ConstantConditions
             String thumbnailImageUrl = redditSuppliedImages.findNearestFor(submissionAlbumLinkThumbnailWidth, linkMetadata.imageUrl());
-            imagesToDownload.add(thumbnailImageUrl);
-          }
-          return imagesToDownload;
-        })
-        .flatMapCompletable(imageUrls -> Completable.fromAction(() -> {
-          for (String imageUrl : imageUrls) {
+
             // Glide internally also maintains a queue, but we want to load them sequentially
             // ourselves so that this Rx chain can be canceled later when the subreddit changes.
-            Glide.with(appContext)
-                .load(imageUrl)
+            thumbnailLoad = Maybe.fromCallable(() -> Pair.create(thumbnailImageUrl, Glide.with(appContext)
+                .load(thumbnailImageUrl)
                 .submit()
-                .get();
+                .get()));
           }
-        }))
+
+          // Like SubmissionContentLinkUiConstructor, the tint is generated from
+          // the thumbnail if it's present and from the favicon otherwise.
+          return faviconLoad
+              .concatWith(thumbnailLoad)
+              .lastElement()
+              .flatMapCompletable(urlAndImage -> paletteRepository.contentLinkPalette(urlAndImage.first(), urlAndImage.second()).toCompletable());
+        })
         .doOnComplete(() -> log("Link done: %s", submission.getTitle()))
         .doOnComplete(() -> markThingAsPreFilled(submission, CachePreFillThing.LINK_METADATA));
   }
@@ -0,0 +1,49 @@
+package me.saket.dank.data;
+
+import android.support.annotation.Nullable;
+import android.support.v7.graphics.Palette;
+
+import com.google.auto.value.AutoValue;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+/**
+ * Swatches extracted from an image's {@link Palette}, cached by {@link PaletteRepository}
+ * so that Palette doesn't have to be generated again for the same image.
+ */
+@AutoValue
+public abstract class CachedPalette {
+
+  @Nullable
+  public abstract Integer dominantColor();
+
+  @Nullable
+  public abstract Integer vibrantColor();
+
+  @Nullable
+  public abstract Integer lightVibrantColor();
+
+  @Nullable
+  public abstract Integer mutedColor();
+
+  @Nullable
+  public abstract Integer darkMutedColor();
+
+  public static CachedPalette create(Palette palette) {
+    return new AutoValue_CachedPalette(
+        rgbOf(palette.getDominantSwatch()),
+        rgbOf(palette.getVibrantSwatch()),
+        rgbOf(palette.getLightVibrantSwatch()),
+        rgbOf(palette.getMutedSwatch()),
+        rgbOf(palette.getDarkMutedSwatch()));
+  }
+
+  @Nullable
+  private static Integer rgbOf(@Nullable Palette.Swatch swatch) {
+    return swatch != null ? swatch.getRgb() : null;
+  }
+
+  public static JsonAdapter<CachedPalette> jsonAdapter(Moshi moshi) {
+    return new AutoValue_CachedPalette.MoshiJsonAdapter(moshi);
+  }
+}
@@ -4,8 +4,11 @@ import android.content.Context
 import android.database.sqlite.SQLiteDatabase
 import android.database.sqlite.SQLiteOpenHelper
 
+import me.saket.dank.data.search.SearchableContent
+import me.saket.dank.notifs.QueuedMediaDownload
 import me.saket.dank.reply.PendingSyncReply
 import me.saket.dank.ui.appshortcuts.AppShortcut
+import me.saket.dank.ui.submission.Bookmark
 import me.saket.dank.ui.subscriptions.SubredditSubscription
 import me.saket.dank.ui.user.messages.CachedMessage
 import timber.log.Timber
@@ -14,23 +17,63 @@ class DankSqliteOpenHelper(context: Context) : SQLiteOpenHelper(context, DB_NAME
 
   override fun onCreate(db: SQLiteDatabase) {
     db.execSQL(SubredditSubscription.QUERY_CREATE_TABLE)
-    db.execSQL(CachedMessage.QUERY_CREATE_TABLE)
+    createCachedMessageTable(db)
     db.execSQL(PendingSyncReply.QUERY_CREATE_TABLE)
     db.execSQL(AppShortcut.QUERY_CREATE_TABLE)
+    db.execSQL(QueuedMediaDownload.QUERY_CREATE_TABLE)
+    createSearchTables(db)
+    db.execSQL(Bookmark.QUERY_CREATE_TABLE)
   }
 
   override fun onUpgrade(db: SQLiteDatabase, oldVersion: Int, newVersion: Int) {
     Timber.d("onUpgrade() -> from %s to %s", oldVersion, newVersion)
 
-    if (oldVersion == 1 && newVersion == 2) {
+    if (oldVersion < 2) {
       Timber.d("Resetting cached-message rows")
       // JRAW was bumped to v1.0.
       db.execSQL("DELETE FROM ${CachedMessage.TABLE_NAME}")
     }
+
+    if (oldVersion < 3) {
+      Timber.d("Creating download queue table")
+      db.execSQL(QueuedMediaDownload.QUERY_CREATE_TABLE)
+    }
+
+    if (oldVersion < 4) {
+      Timber.d("Recreating cached-message table with indexed columns")
+      // Cached messages get re-fetched on the next refresh.
+      db.execSQL("DROP TABLE IF EXISTS ${CachedMessage.TABLE_NAME}")
+      createCachedMessageTable(db)
+    }
+
+    if (oldVersion < 5) {
+      Timber.d("Creating offline search tables")
+      // Content already in the cache gets indexed the next time it's saved.
+      createSearchTables(db)
+    }
+
+    if (oldVersion < 6) {
+      Timber.d("Creating bookmarks table")
+      // Saved items get fetched again by the next bookmarks sync.
+      db.execSQL(Bookmark.QUERY_CREATE_TABLE)
+    }
+  }
+
+  private fun createCachedMessageTable(db: SQLiteDatabase) {
+    db.execSQL(CachedMessage.QUERY_CREATE_TABLE)
+    db.execSQL(CachedMessage.QUERY_CREATE_INDEX_FOLDER_AND_TIME)
+    db.execSQL(CachedMessage.QUERY_CREATE_INDEX_FOLDER_AND_UNREAD)
+    db.execSQL(CachedMessage.QUERY_CREATE_INDEX_PARENT_THREAD)
+  }
+
+  private fun createSearchTables(db: SQLiteDatabase) {
+    db.execSQL(SearchableContent.QUERY_CREATE_TABLE)
+    db.execSQL(SearchableContent.QUERY_CREATE_INDEX_TYPE_AND_INDEX_TIME)
+    db.execSQL(SearchableContent.QUERY_CREATE_FTS_TABLE)
   }
 
   companion object {
-    private const val DB_VERSION = 2
+    private const val DB_VERSION = 6
     private const val DB_NAME = "Dank"
   }
 }
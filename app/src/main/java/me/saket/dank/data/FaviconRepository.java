@@ -0,0 +1,193 @@
+package me.saket.dank.data;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.CheckResult;
+import android.support.v4.util.LruCache;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
+import com.nytimes.android.external.fs3.filesystem.FileSystem;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.cache.DiskLruCachePathResolver;
+import me.saket.dank.utils.glide.GlideCircularTransformation;
+import okio.Buffer;
+import okio.BufferedSource;
+import timber.log.Timber;
+
+/**
+ * Favicons keyed by domain name, so that a subreddit full of nytimes.com links downloads
+ * and decodes nytimes.com's favicon only once. Decoded bitmaps are held in memory and their
+ * PNG bytes on disk. Disk entries older than {@link #TIME_TO_LIVE_MILLIS} are revalidated
+ * from remote, but are still used if the revalidation fails.
+ */
+@Singleton
+public class FaviconRepository {
+
+  private static final long TIME_TO_LIVE_MILLIS = TimeUnit.DAYS.toMillis(7);
+  private static final int MEMORY_CACHE_SIZE_BYTES = 1024 * 1024;
+
+  private final Application appContext;
+  private final FileSystem cacheFileSystem;
+  private final DiskLruCachePathResolver<String> pathResolver;
+  private final LruCache<String, Bitmap> memoryCache;
+  private final Map<String, Single<Bitmap>> inFlightLoads = new HashMap<>(8);
+
+  @Inject
+  public FaviconRepository(Application appContext, FileSystem cacheFileSystem) {
+    this.appContext = appContext;
+    this.cacheFileSystem = cacheFileSystem;
+
+    this.pathResolver = new DiskLruCachePathResolver<String>() {
+      @Override
+      protected String resolveIn64Letters(String domain) {
+        return "favicon_" + domain;
+      }
+    };
+    this.memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_SIZE_BYTES) {
+      @Override
+      protected int sizeOf(String domain, Bitmap favicon) {
+        return favicon.getByteCount();
+      }
+    };
+  }
+
+  /**
+   * The returned Bitmap is shared across all links of the same domain.
+   * Callers must not recycle it or return it to Glide's BitmapPool.
+   *
+   * @param domain     See {@link me.saket.dank.utils.Urls#parseDomainName(String)}.
+   * @param faviconUrl Used only if this domain's favicon isn't cached or has expired.
+   */
+  @CheckResult
+  public Single<Bitmap> favicon(String domain, String faviconUrl) {
+    Bitmap inMemory = memoryCache.get(domain);
+    if (inMemory != null) {
+      return Single.just(inMemory);
+    }
+
+    // Links of the same domain are usually loaded together by the cache pre-filler
+    // and the submission list, so concurrent loads of the same favicon are shared.
+    return Single.defer(() -> {
+      synchronized (inFlightLoads) {
+        Single<Bitmap> inFlightLoad = inFlightLoads.get(domain);
+        if (inFlightLoad == null) {
+          inFlightLoad = loadFromDiskOrRemote(domain, faviconUrl)
+              .doOnSuccess(favicon -> memoryCache.put(domain, favicon))
+              .doFinally(() -> {
+                synchronized (inFlightLoads) {
+                  inFlightLoads.remove(domain);
+                }
+              })
+              .cache();
+          inFlightLoads.put(domain, inFlightLoad);
+        }
+        return inFlightLoad;
+      }
+    });
+  }
+
+  private Single<Bitmap> loadFromDiskOrRemote(String domain, String faviconUrl) {
+    return readFromDisk(domain)
+        .flatMapSingle(cachedFavicon -> {
+          if (cachedFavicon.isExpired()) {
+            return fetchFromRemote(domain, faviconUrl)
+                .onErrorReturn(error -> {
+                  Timber.w("Couldn't revalidate favicon of %s. Using stale copy.", domain);
+                  return cachedFavicon.bitmap();
+                });
+          }
+          return Single.just(cachedFavicon.bitmap());
+        })
+        .switchIfEmpty(Single.defer(() -> fetchFromRemote(domain, faviconUrl)))
+        .subscribeOn(Schedulers.io());
+  }
+
+  private Maybe<CachedFavicon> readFromDisk(String domain) {
+    return Maybe.create(emitter -> {
+      String path = pathResolver.resolve(domain);
+      if (!cacheFileSystem.exists(path)) {
+        emitter.onComplete();
+        return;
+      }
+
+      try (BufferedSource source = cacheFileSystem.read(path)) {
+        long savedAtMillis = source.readLong();
+        byte[] pngBytes = source.readByteArray();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(pngBytes, 0, pngBytes.length);
+        if (bitmap == null) {
+          cacheFileSystem.delete(path);
+          emitter.onComplete();
+        } else {
+          emitter.onSuccess(new CachedFavicon(bitmap, savedAtMillis));
+        }
+
+      } catch (FileNotFoundException e) {
+        // Evicted by DiskLruCache between exists() and read().
+        emitter.onComplete();
+      }
+    });
+  }
+
+  private Single<Bitmap> fetchFromRemote(String domain, String faviconUrl) {
+    return Single.fromCallable(() -> {
+      FutureTarget<Bitmap> target = Glide.with(appContext)
+          .asBitmap()
+          .load(faviconUrl)
+          .apply(RequestOptions.bitmapTransform(GlideCircularTransformation.INSTANCE))
+          .submit();
+
+      try {
+        // Copied so that Glide can freely recycle its own Bitmap when the target is cleared.
+        Bitmap glideBitmap = target.get();
+        return glideBitmap.copy(glideBitmap.getConfig(), false);
+      } finally {
+        Glide.with(appContext).clear(target);
+      }
+    })
+        .doOnSuccess(favicon -> saveToDisk(domain, favicon));
+  }
+
+  private void saveToDisk(String domain, Bitmap favicon) {
+    Buffer buffer = new Buffer();
+    buffer.writeLong(System.currentTimeMillis());
+    favicon.compress(Bitmap.CompressFormat.PNG, 100, buffer.outputStream());
+
+    try {
+      cacheFileSystem.write(pathResolver.resolve(domain), buffer);
+    } catch (IOException e) {
+      Timber.e(e, "Couldn't save favicon of %s", domain);
+    }
+  }
+
+  private static class CachedFavicon {
+    private final Bitmap bitmap;
+    private final long savedAtMillis;
+
+    CachedFavicon(Bitmap bitmap, long savedAtMillis) {
+      this.bitmap = bitmap;
+      this.savedAtMillis = savedAtMillis;
+    }
+
+    Bitmap bitmap() {
+      return bitmap;
+    }
+
+    boolean isExpired() {
+      return System.currentTimeMillis() - savedAtMillis > TIME_TO_LIVE_MILLIS;
+    }
+  }
+}
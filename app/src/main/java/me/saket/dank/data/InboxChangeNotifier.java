@@ -0,0 +1,104 @@
+package me.saket.dank.data;
+
+import android.support.annotation.CheckResult;
+
+import com.google.auto.value.AutoValue;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.jakewharton.rxrelay2.Relay;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.InboxFolder;
+
+/**
+ * Change notifications for {@link CachedMessage} rows, keyed by folder and fullname. SQLBrite
+ * notifies at the table level, which re-runs every inbox query on any write. Queries registered
+ * here only re-run when a write touches their folder, or their message.
+ * <p>
+ * Writers are expected to notify after their transaction has committed.
+ */
+@Singleton
+public class InboxChangeNotifier {
+
+  private static final Object TRIGGER = new Object();
+
+  private final Relay<Change> changes = PublishRelay.<Change>create().toSerialized();
+  private final Scheduler queryScheduler;
+
+  @Inject
+  public InboxChangeNotifier() {
+    this(Schedulers.io());
+  }
+
+  InboxChangeNotifier(Scheduler queryScheduler) {
+    this.queryScheduler = queryScheduler;
+  }
+
+  /**
+   * Runs <var>query</var> now and again whenever any message in <var>folder</var> changes.
+   */
+  @CheckResult
+  <T> Observable<T> observeFolder(InboxFolder folder, Callable<T> query) {
+    return observe(change -> change.folder() == folder, query);
+  }
+
+  /**
+   * Runs <var>query</var> now and again whenever the row of <var>fullname</var> in <var>folder</var> changes.
+   */
+  @CheckResult
+  <T> Observable<T> observeMessage(InboxFolder folder, String fullname, Callable<T> query) {
+    return observe(change -> change.affects(folder, fullname), query);
+  }
+
+  private <T> Observable<T> observe(Predicate<Change> changeFilter, Callable<T> query) {
+    return changes
+        .filter(changeFilter)
+        .map(change -> TRIGGER)
+        .startWith(TRIGGER)
+        .observeOn(queryScheduler)
+        .map(o -> query.call());
+  }
+
+  /**
+   * For writes that can touch any message in <var>folder</var>, like replacing all of its messages.
+   */
+  void notifyFolderChanged(InboxFolder folder) {
+    changes.accept(Change.create(folder, Collections.emptySet()));
+  }
+
+  void notifyMessagesChanged(InboxFolder folder, Collection<String> fullnames) {
+    if (!fullnames.isEmpty()) {
+      changes.accept(Change.create(folder, new HashSet<>(fullnames)));
+    }
+  }
+
+  @AutoValue
+  abstract static class Change {
+
+    abstract InboxFolder folder();
+
+    /**
+     * Empty if every message in the folder may have changed.
+     */
+    abstract Set<String> fullnames();
+
+    boolean affects(InboxFolder folder, String fullname) {
+      return folder() == folder && (fullnames().isEmpty() || fullnames().contains(fullname));
+    }
+
+    static Change create(InboxFolder folder, Set<String> fullnames) {
+      return new AutoValue_InboxChangeNotifier_Change(folder, fullnames);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package me.saket.dank.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.WorkerThread;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import net.dean.jraw.models.Message;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.Lazy;
+import io.reactivex.functions.Function;
+import me.saket.dank.data.search.OfflineSearchIndex;
+import me.saket.dank.data.search.SearchableContent;
+import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.InboxFolder;
+import me.saket.dank.utils.JrawUtils2;
+
+/**
+ * Writes {@link CachedMessage} rows, keeps {@link OfflineSearchIndex} in sync with them and
+ * notifies {@link InboxChangeNotifier} once they're committed.
+ */
+@Singleton
+public class InboxMessageStore {
+
+  private final BriteDatabase briteDatabase;
+  private final Lazy<MoshiAdapter> moshiAdapter;
+  private final InboxChangeNotifier changeNotifier;
+  private final OfflineSearchIndex searchIndex;
+
+  @Inject
+  public InboxMessageStore(
+      BriteDatabase briteDatabase,
+      Lazy<MoshiAdapter> moshiAdapter,
+      InboxChangeNotifier changeNotifier,
+      OfflineSearchIndex searchIndex)
+  {
+    this.briteDatabase = briteDatabase;
+    this.moshiAdapter = moshiAdapter;
+    this.changeNotifier = changeNotifier;
+    this.searchIndex = searchIndex;
+  }
+
+  /**
+   * @return {@link CachedMessage#revision(Message)} of stored messages, keyed by their fullnames.
+   */
+  @WorkerThread
+  Map<String, Long> revisions(InboxFolder folder) throws Exception {
+    Function<Cursor, String> fullnameMapper = CachedMessage.fullnameFromCursor();
+    Function<Cursor, Long> revisionMapper = CachedMessage.revisionFromCursor();
+
+    try (Cursor cursor = briteDatabase.query(CachedMessage.QUERY_GET_REVISIONS_IN_FOLDER, folder.name())) {
+      Map<String, Long> revisions = new HashMap<>(cursor.getCount() * 2);
+      while (cursor.moveToNext()) {
+        revisions.put(fullnameMapper.apply(cursor), revisionMapper.apply(cursor));
+      }
+      return revisions;
+    }
+  }
+
+  /**
+   * Inserts or replaces <var>messages</var> and removes <var>removedFullnames</var> in a single transaction.
+   */
+  @WorkerThread
+  void write(InboxFolder folder, List<Message> messages, Collection<String> removedFullnames) {
+    if (messages.isEmpty() && removedFullnames.isEmpty()) {
+      return;
+    }
+
+    List<ContentValues> messagesValuesToStore = new ArrayList<>(messages.size());
+    List<String> changedFullnames = new ArrayList<>(messages.size() + removedFullnames.size());
+    for (Message message : messages) {
+      CachedMessage cachedMessage = CachedMessage.create(message.getFullName(), message, latestMessageTimestamp(message), folder);
+      messagesValuesToStore.add(cachedMessage.toContentValues(moshiAdapter.get()));
+      changedFullnames.add(message.getFullName());
+    }
+    changedFullnames.addAll(removedFullnames);
+
+    try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
+      for (String removedFullname : removedFullnames) {
+        briteDatabase.delete(CachedMessage.TABLE_NAME, CachedMessage.WHERE_FOLDER_AND_FULLNAME, folder.name(), removedFullname);
+      }
+      for (ContentValues cachedMessageValues : messagesValuesToStore) {
+        briteDatabase.insert(CachedMessage.TABLE_NAME, cachedMessageValues, SQLiteDatabase.CONFLICT_REPLACE);
+      }
+      // Removed messages stay searchable. They're usually still present in other folders.
+      searchIndex.indexMessages(messages);
+      transaction.markSuccessful();
+    }
+    changeNotifier.notifyMessagesChanged(folder, changedFullnames);
+  }
+
+  @WorkerThread
+  void removeAll() {
+    try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
+      briteDatabase.delete(CachedMessage.TABLE_NAME, null);
+      searchIndex.removeAll(SearchableContent.Type.MESSAGE);
+      transaction.markSuccessful();
+    }
+    for (InboxFolder folder : InboxFolder.getALL()) {
+      changeNotifier.notifyFolderChanged(folder);
+    }
+  }
+
+  private static long latestMessageTimestamp(Message message) {
+    if (message.isComment()) {
+      return message.getCreated().getTime();
+    } else {
+      List<Message> messageReplies = JrawUtils2.messageReplies(message);
+      Message latestMessage = messageReplies.isEmpty() ? message : messageReplies.get(messageReplies.size() - 1);
+      return latestMessage.getCreated().getTime();
+    }
+  }
+}
@@ -2,9 +2,8 @@ package me.saket.dank.data;
 
 import static java.util.Collections.unmodifiableList;
 
-import android.content.ContentValues;
 import android.content.Context;
-import android.database.sqlite.SQLiteDatabase;
+import android.database.Cursor;
 import android.support.annotation.CheckResult;
 
 import com.google.auto.value.AutoValue;
@@ -16,6 +15,7 @@ import net.dean.jraw.models.Message;
 import net.dean.jraw.pagination.Paginator;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import javax.inject.Inject;
@@ -25,15 +25,14 @@ import dagger.Lazy;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
-import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
 import me.saket.dank.notifs.MessageNotifActionsJobService;
 import me.saket.dank.reddit.Reddit;
 import me.saket.dank.reply.ReplyRepository;
 import me.saket.dank.ui.submission.ParentThread;
 import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.CachedMessageSummary;
 import me.saket.dank.ui.user.messages.InboxFolder;
-import me.saket.dank.utils.Arrays2;
-import me.saket.dank.utils.JrawUtils2;
 import me.saket.dank.utils.Optional;
 
 @Singleton
@@ -48,13 +47,27 @@ public class InboxRepository {
   private final BriteDatabase briteDatabase;
   private final Lazy<MoshiAdapter> moshiAdapter;
   private final ReplyRepository replyRepository;
+  private final InboxChangeNotifier changeNotifier;
+  private final InboxMessageStore messageStore;
+  private final InboxSyncEngine syncEngine;
 
   @Inject
-  public InboxRepository(Lazy<Reddit> reddit, BriteDatabase briteDatabase, Lazy<MoshiAdapter> moshiAdapter, ReplyRepository replyRepository) {
+  public InboxRepository(
+      Lazy<Reddit> reddit,
+      BriteDatabase briteDatabase,
+      Lazy<MoshiAdapter> moshiAdapter,
+      ReplyRepository replyRepository,
+      InboxChangeNotifier changeNotifier,
+      InboxMessageStore messageStore,
+      InboxSyncEngine syncEngine)
+  {
     this.reddit = reddit;
     this.briteDatabase = briteDatabase;
     this.moshiAdapter = moshiAdapter;
     this.replyRepository = replyRepository;
+    this.changeNotifier = changeNotifier;
+    this.messageStore = messageStore;
+    this.syncEngine = syncEngine;
   }
 
   /**
@@ -62,10 +75,29 @@ public class InboxRepository {
    */
   @CheckResult
   public Observable<List<Message>> messages(InboxFolder folder) {
-    return briteDatabase
-        .createQuery(CachedMessage.TABLE_NAME, CachedMessage.QUERY_GET_ALL_IN_FOLDER, folder.name())
-        .mapToList(CachedMessage.messageFromCursor(moshiAdapter.get()))
-        .as(Arrays2.immutable());
+    return changeNotifier.observeFolder(folder, () -> queryList(
+        CachedMessage.QUERY_GET_ALL_IN_FOLDER,
+        CachedMessage.messageFromCursor(moshiAdapter.get()),
+        folder.name()));
+  }
+
+  /**
+   * Stream of all messages in <var>folder</var>, without decoding their {@link Message}s.
+   */
+  @CheckResult
+  public Observable<List<CachedMessageSummary>> messageSummaries(InboxFolder folder) {
+    return changeNotifier.observeFolder(folder, () -> queryList(
+        CachedMessage.QUERY_GET_SUMMARIES_IN_FOLDER,
+        CachedMessageSummary.MAPPER,
+        folder.name()));
+  }
+
+  @CheckResult
+  public Observable<Integer> messageCount(InboxFolder folder) {
+    return changeNotifier
+        .observeFolder(folder, () -> queryFirst(CachedMessage.QUERY_COUNT_IN_FOLDER, cursor -> cursor.getInt(0), folder.name()))
+        .map(count -> count.orElse(0))
+        .distinctUntilChanged();
   }
 
   /**
@@ -78,9 +110,45 @@ public class InboxRepository {
    */
   @CheckResult
   public Observable<Optional<Message>> messages(String fullname, InboxFolder folder) {
-    return briteDatabase
-        .createQuery(CachedMessage.TABLE_NAME, CachedMessage.QUERY_GET_SINGLE, fullname, folder.name())
-        .mapToOneOrDefault(CachedMessage.optionalMessageFromCursor(moshiAdapter.get()), Optional.empty());
+    return changeNotifier.observeMessage(folder, fullname, () -> queryFirst(
+        CachedMessage.QUERY_GET_SINGLE,
+        CachedMessage.messageFromCursor(moshiAdapter.get()),
+        fullname, folder.name()));
+  }
+
+  /**
+   * Decodes the messages in <var>folder</var> that have <var>fullnames</var>. Messages that
+   * aren't stored are skipped.
+   */
+  @CheckResult
+  public Single<List<Message>> messages(InboxFolder folder, Collection<String> fullnames) {
+    return Single.fromCallable(() -> {
+      Function<Cursor, Message> messageMapper = CachedMessage.messageFromCursor(moshiAdapter.get());
+      List<Message> messages = new ArrayList<>(fullnames.size());
+      for (String fullname : fullnames) {
+        Optional<Message> message = queryFirst(CachedMessage.QUERY_GET_SINGLE, messageMapper, fullname, folder.name());
+        message.ifPresent(messages::add);
+      }
+      return unmodifiableList(messages);
+    });
+  }
+
+  private <T> List<T> queryList(String query, Function<Cursor, T> mapper, String... args) throws Exception {
+    try (Cursor cursor = briteDatabase.query(query, args)) {
+      List<T> items = new ArrayList<>(cursor.getCount());
+      while (cursor.moveToNext()) {
+        items.add(mapper.apply(cursor));
+      }
+      return unmodifiableList(items);
+    }
+  }
+
+  private <T> Optional<T> queryFirst(String query, Function<Cursor, T> mapper, String... args) throws Exception {
+    try (Cursor cursor = briteDatabase.query(query, args)) {
+      return cursor.moveToFirst()
+          ? Optional.of(mapper.apply(cursor))
+          : Optional.empty();
+    }
   }
 
   /**
@@ -90,7 +158,7 @@ public class InboxRepository {
   public Single<List<Message>> fetchAndSaveMoreMessages(InboxFolder folder) {
     return getPaginationAnchor(folder)
         .flatMap(anchor -> fetchMessagesFromAnchor(folder, anchor))
-        .doOnSuccess(saveMessages(folder, false))
+        .doOnSuccess(fetchedMessages -> messageStore.write(folder, fetchedMessages, Collections.emptyList()))
         .map(fetchedMessages -> unmodifiableList(fetchedMessages));
   }
 
@@ -106,24 +174,35 @@ public class InboxRepository {
 
   /**
    * Fetch most recent messages. Unlike {@link #fetchAndSaveMoreMessages(InboxFolder)},
-   * this does not use the oldest message as the anchor.
+   * this does not use the oldest message as the anchor. Only messages that were added,
+   * changed or removed since the last refresh get written.
    */
   @CheckResult
-  public Single<List<Message>> refreshMessages(InboxFolder folder, boolean removeExistingMessages) {
-    return fetchMessagesFromAnchor(folder, PaginationAnchor.createEmpty())
-        .doOnSuccess(saveMessages(folder, removeExistingMessages))
-        .flatMap(messages -> {
-          if (folder == InboxFolder.PRIVATE_MESSAGES) {
-            return Observable.fromIterable(messages)
-                .map(message -> ParentThread.of(message))
-                .concatMapEager(parentThread -> replyRepository.removeSyncPendingPostedReplies(parentThread).toObservable())
-                .ignoreElements()
-                .toSingleDefault(messages);
-          } else {
-            return Single.just(messages);
-          }
-        })
-        .map(fetchedMessages -> unmodifiableList(fetchedMessages));
+  public Single<List<Message>> refreshMessages(InboxFolder folder) {
+    return syncEngine.sync(folder)
+        .flatMap(syncResult -> removeSyncPendingPostedReplies(syncResult).toSingleDefault(syncResult.fetchedMessages()));
+  }
+
+  /**
+   * Refresh all folders in parallel.
+   */
+  @CheckResult
+  public Single<List<InboxSyncEngine.SyncResult>> refreshAllFolders() {
+    return syncEngine.syncAll()
+        .flatMap(syncResults -> Observable.fromIterable(syncResults)
+            .flatMapCompletable(syncResult -> removeSyncPendingPostedReplies(syncResult))
+            .toSingleDefault(syncResults));
+  }
+
+  @CheckResult
+  private Completable removeSyncPendingPostedReplies(InboxSyncEngine.SyncResult syncResult) {
+    if (syncResult.folder() != InboxFolder.PRIVATE_MESSAGES) {
+      return Completable.complete();
+    }
+    return Observable.fromIterable(syncResult.fetchedMessages())
+        .map(message -> ParentThread.of(message))
+        .concatMapEager(parentThread -> replyRepository.removeSyncPendingPostedReplies(parentThread).toObservable())
+        .ignoreElements();
   }
 
   @CheckResult
@@ -140,27 +219,8 @@ public class InboxRepository {
             Listing<Message> nextSetOfMessages = iterator.next();
 
             for (Message nextMessage : nextSetOfMessages) {
-              switch (folder) {
-                case UNREAD:
-                case PRIVATE_MESSAGES:
-                case USERNAME_MENTIONS:
-                  minimum10Messages.add(nextMessage);
-                  break;
-
-                case COMMENT_REPLIES:
-                  if ("comment reply".equals(nextMessage.getSubject())) {
-                    minimum10Messages.add(nextMessage);
-                  }
-                  break;
-
-                case POST_REPLIES:
-                  if ("post reply".equals(nextMessage.getSubject())) {
-                    minimum10Messages.add(nextMessage);
-                  }
-                  break;
-
-                default:
-                  throw new UnsupportedOperationException();
+              if (InboxSyncEngine.isInFolder(folder, nextMessage)) {
+                minimum10Messages.add(nextMessage);
               }
             }
           }
@@ -174,75 +234,25 @@ public class InboxRepository {
    */
   @CheckResult
   private Single<PaginationAnchor> getPaginationAnchor(InboxFolder folder) {
-    return briteDatabase.createQuery(CachedMessage.TABLE_NAME, CachedMessage.QUERY_GET_LAST_IN_FOLDER, folder.name())
-        .mapToList(CachedMessage.fromCursor(moshiAdapter.get()))
-        .map(items -> items.isEmpty()
-            ? Collections.singletonList(Optional.<CachedMessage>empty())
-            : Collections.singletonList(Optional.of(items.get(0))))
-        .flatMapIterable(items -> items)
-        .firstOrError()
-        .map(optionalLastStoredMessage -> {
-          if (optionalLastStoredMessage.isEmpty()) {
-            return PaginationAnchor.createEmpty();
-          } else {
-            Message lastMessage = optionalLastStoredMessage.get().message();
-
-            // Private messages can have nested replies. Go through them and find the last one.
-            if (!lastMessage.isComment()) {
-              List<Message> lastMessageReplies = JrawUtils2.messageReplies(lastMessage);
-              //noinspection ConstantConditions
-              if (!lastMessageReplies.isEmpty()) {
-                // Replies are present.
-                Message lastMessageLastReply = lastMessageReplies.get(lastMessageReplies.size() - 1);
-                return PaginationAnchor.create(lastMessageLastReply.getFullName());
-              }
-            }
-
-            return PaginationAnchor.create(lastMessage.getFullName());
-          }
-        });
-  }
-
-  /**
-   * @param removeExistingMessages Whether to remove existing messages under <var>folder</var>.
-   */
-  private Consumer<List<Message>> saveMessages(InboxFolder folder, boolean removeExistingMessages) {
-    return fetchedMessages -> {
-      List<ContentValues> messagesValuesToStore = new ArrayList<>(fetchedMessages.size());
-      for (Message fetchedMessage : fetchedMessages) {
-        long latestMessageTimestamp;
-        if (fetchedMessage.isComment()) {
-          latestMessageTimestamp = fetchedMessage.getCreated().getTime();
-        } else {
-          List<Message> messageReplies = JrawUtils2.messageReplies(fetchedMessage);
-          Message latestMessage = messageReplies.isEmpty() ? fetchedMessage : messageReplies.get(messageReplies.size() - 1);
-          latestMessageTimestamp = latestMessage.getCreated().getTime();
-        }
-        CachedMessage cachedMessage = CachedMessage.create(fetchedMessage.getFullName(), fetchedMessage, latestMessageTimestamp, folder);
-        messagesValuesToStore.add(cachedMessage.toContentValues(moshiAdapter.get()));
-      }
-
-      try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
-        if (removeExistingMessages) {
-          briteDatabase.delete(CachedMessage.TABLE_NAME, CachedMessage.WHERE_FOLDER, folder.name());
-        }
-        for (ContentValues cachedMessageValues : messagesValuesToStore) {
-          briteDatabase.insert(CachedMessage.TABLE_NAME, cachedMessageValues, SQLiteDatabase.CONFLICT_REPLACE);
-        }
-        transaction.markSuccessful();
-      }
-    };
+    // For private messages, the last reply in their thread is stored as the latest message.
+    return Single.fromCallable(() -> queryFirst(CachedMessage.QUERY_GET_LAST_FULLNAME_IN_FOLDER, cursor -> cursor.getString(0), folder.name()))
+        .map(lastFullname -> lastFullname.isPresent()
+            ? PaginationAnchor.create(lastFullname.get())
+            : PaginationAnchor.createEmpty());
   }
 
   @CheckResult
   private Completable removeMessages(InboxFolder folder, Identifiable... messages) {
     return Completable.fromAction(() -> {
+      List<String> removedFullnames = new ArrayList<>(messages.length);
       try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
         for (Identifiable message : messages) {
           briteDatabase.delete(CachedMessage.TABLE_NAME, CachedMessage.WHERE_FOLDER_AND_FULLNAME, folder.name(), message.getFullName());
+          removedFullnames.add(message.getFullName());
         }
         transaction.markSuccessful();
       }
+      changeNotifier.notifyMessagesChanged(folder, removedFullnames);
     });
   }
 
@@ -253,9 +263,18 @@ public class InboxRepository {
         briteDatabase.delete(CachedMessage.TABLE_NAME, CachedMessage.WHERE_FOLDER, folder.name());
         transaction.markSuccessful();
       }
+      changeNotifier.notifyFolderChanged(folder);
     });
   }
 
+  /**
+   * Removes cached messages of all folders.
+   */
+  @CheckResult
+  public Completable removeAllCachedMessages() {
+    return Completable.fromAction(() -> messageStore.removeAll());
+  }
+
 // ======== READ STATUS ======== //
 
   /**
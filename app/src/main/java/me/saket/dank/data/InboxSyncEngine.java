@@ -0,0 +1,213 @@
+package me.saket.dank.data;
+
+import android.support.annotation.CheckResult;
+import android.support.annotation.WorkerThread;
+
+import com.google.auto.value.AutoValue;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.Lazy;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.reddit.Reddit;
+import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.InboxFolder;
+
+/**
+ * Refreshes inbox folders by fetching their latest messages only until an already stored and
+ * unchanged message is reached, and writing just the rows that were added, changed or removed.
+ * Folders are synced in parallel on a bounded pool and a folder that is already syncing is
+ * never synced twice at the same time.
+ */
+@Singleton
+public class InboxSyncEngine {
+
+  static final int MAX_PARALLEL_FOLDER_SYNCS = 3;
+
+  /** For folders that have nothing stored yet. Same as what a pagination fetches. */
+  private static final int MIN_MESSAGES_FOR_FIRST_SYNC = 10;
+  private static final int MAX_PAGES_PER_SYNC = 5;
+
+  private final Lazy<Reddit> reddit;
+  private final InboxMessageStore store;
+  private final Scheduler syncScheduler;
+  private final Map<InboxFolder, Single<SyncResult>> inFlightSyncs = new EnumMap<>(InboxFolder.class);
+
+  @Inject
+  public InboxSyncEngine(Lazy<Reddit> reddit, InboxMessageStore store) {
+    this(reddit, store, createSyncScheduler());
+  }
+
+  InboxSyncEngine(Lazy<Reddit> reddit, InboxMessageStore store, Scheduler syncScheduler) {
+    this.reddit = reddit;
+    this.store = store;
+    this.syncScheduler = syncScheduler;
+  }
+
+  @CheckResult
+  public Single<List<SyncResult>> syncAll() {
+    return Observable.fromArray(InboxFolder.getALL())
+        .flatMapSingle(folder -> sync(folder))
+        .toList()
+        .map(Collections::unmodifiableList);
+  }
+
+  @CheckResult
+  public Single<SyncResult> sync(InboxFolder folder) {
+    return Single.defer(() -> {
+      synchronized (inFlightSyncs) {
+        Single<SyncResult> inFlightSync = inFlightSyncs.get(folder);
+        if (inFlightSync != null) {
+          return inFlightSync;
+        }
+
+        Single<SyncResult> sharedSync = Single.fromCallable(() -> syncBlocking(folder))
+            .subscribeOn(syncScheduler)
+            .doOnEvent((result, error) -> {
+              synchronized (inFlightSyncs) {
+                inFlightSyncs.remove(folder);
+              }
+            })
+            .cache();
+        inFlightSyncs.put(folder, sharedSync);
+        return sharedSync;
+      }
+    });
+  }
+
+  @WorkerThread
+  private SyncResult syncBlocking(InboxFolder folder) throws Exception {
+    Map<String, Long> storedRevisions = store.revisions(folder);
+    Iterator<Listing<Message>> pages = reddit.get().loggedInUser()
+        .messages(folder, InboxRepository.MESSAGES_FETCHED_PER_PAGE, PaginationAnchor.createEmpty())
+        .blockingGet();
+
+    List<Message> fetchedMessages = new ArrayList<>();
+    Set<String> fetchedFullnames = new HashSet<>();
+    List<Message> changedMessages = new ArrayList<>();
+    boolean reachedStoredMessage = false;
+    int requestCount = 0;
+
+    while (pages.hasNext() && requestCount < MAX_PAGES_PER_SYNC) {
+      if (reachedStoredMessage || (storedRevisions.isEmpty() && fetchedMessages.size() >= MIN_MESSAGES_FOR_FIRST_SYNC)) {
+        break;
+      }
+
+      // Makes an API call.
+      Listing<Message> page = pages.next();
+      ++requestCount;
+
+      for (Message message : page) {
+        if (!isInFolder(folder, message)) {
+          continue;
+        }
+        fetchedMessages.add(message);
+        fetchedFullnames.add(message.getFullName());
+
+        Long storedRevision = storedRevisions.get(message.getFullName());
+        if (storedRevision == null || storedRevision != CachedMessage.revision(message)) {
+          changedMessages.add(message);
+
+        } else if (folder != InboxFolder.UNREAD) {
+          // Messages are sorted by time, so everything older is already stored.
+          // The rest of this page has been fetched anyway, so it's still checked.
+          reachedStoredMessage = true;
+        }
+      }
+    }
+
+    // Stored messages that weren't fetched are removed if they're stale: unread messages that were
+    // read elsewhere, or messages that would otherwise be left behind a gap of messages that weren't
+    // fetched because there were too many of them.
+    boolean isListingExhausted = !pages.hasNext();
+    boolean leavesGap = !reachedStoredMessage && !storedRevisions.isEmpty() && !isListingExhausted;
+    boolean removeUnfetched = leavesGap || (isListingExhausted && folder == InboxFolder.UNREAD);
+
+    List<String> removedFullnames = new ArrayList<>();
+    if (removeUnfetched) {
+      for (String storedFullname : storedRevisions.keySet()) {
+        if (!fetchedFullnames.contains(storedFullname)) {
+          removedFullnames.add(storedFullname);
+        }
+      }
+    }
+
+    store.write(folder, changedMessages, removedFullnames);
+    return SyncResult.create(folder, Collections.unmodifiableList(fetchedMessages), requestCount, changedMessages.size(), removedFullnames.size());
+  }
+
+  /**
+   * Comment and post replies are both received under Reddit's "inbox" folder and are told apart locally.
+   */
+  static boolean isInFolder(InboxFolder folder, Message message) {
+    switch (folder) {
+      case UNREAD:
+      case PRIVATE_MESSAGES:
+      case USERNAME_MENTIONS:
+        return true;
+
+      case COMMENT_REPLIES:
+        return "comment reply".equals(message.getSubject());
+
+      case POST_REPLIES:
+        return "post reply".equals(message.getSubject());
+
+      default:
+        throw new UnsupportedOperationException();
+    }
+  }
+
+  private static Scheduler createSyncScheduler() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        MAX_PARALLEL_FOLDER_SYNCS,
+        MAX_PARALLEL_FOLDER_SYNCS,
+        30, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        runnable -> {
+          Thread thread = new Thread(runnable, "InboxSync");
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return Schedulers.from(executor);
+  }
+
+  @AutoValue
+  public abstract static class SyncResult {
+
+    public abstract InboxFolder folder();
+
+    /**
+     * Latest messages in the folder, including ones that were already stored.
+     */
+    public abstract List<Message> fetchedMessages();
+
+    public abstract int requestCount();
+
+    public abstract int rowsWritten();
+
+    public abstract int rowsRemoved();
+
+    static SyncResult create(InboxFolder folder, List<Message> fetchedMessages, int requestCount, int rowsWritten, int rowsRemoved) {
+      return new AutoValue_InboxSyncEngine_SyncResult(folder, fetchedMessages, requestCount, rowsWritten, rowsRemoved);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package me.saket.dank.data;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.CheckResult;
+import android.support.v7.graphics.Palette;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.nytimes.android.external.cache3.Cache;
+import com.nytimes.android.external.cache3.CacheBuilder;
+import com.nytimes.android.external.fs3.filesystem.FileSystem;
+import com.squareup.moshi.Moshi;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import dagger.Lazy;
+import io.reactivex.Single;
+import me.saket.dank.cache.DiskLruCachePathResolver;
+import me.saket.dank.cache.MoshiStoreJsonParser;
+import me.saket.dank.cache.StoreFilePersister;
+import timber.log.Timber;
+
+/**
+ * Caches Palette swatches by image URL and the region of the image they were extracted from.
+ * Generating a Palette requires copying the image into a software Bitmap and quantizing its
+ * colors, which is wasteful when the same image was tinted a minute ago.
+ */
+@Singleton
+public class PaletteRepository {
+
+  private enum Region {
+    /** Used by submission content links. */
+    WHOLE_IMAGE,
+
+    /** Used for tinting the status bar. */
+    STATUS_BAR_STRIP,
+  }
+
+  private final Cache<String, CachedPalette> memoryCache;
+  private final StoreFilePersister<String, CachedPalette> diskCache;
+  private final Lazy<BitmapPool> bitmapPool;
+
+  @Inject
+  public PaletteRepository(FileSystem cacheFileSystem, Moshi moshi, Lazy<BitmapPool> bitmapPool) {
+    this.bitmapPool = bitmapPool;
+    DiskLruCachePathResolver<String> pathResolver = new DiskLruCachePathResolver<String>() {
+      @Override
+      protected String resolveIn64Letters(String key) {
+        return "palette_" + key.hashCode() + "_" + key;
+      }
+    };
+    diskCache = new StoreFilePersister<>(cacheFileSystem, pathResolver, new MoshiStoreJsonParser<>(moshi, CachedPalette.class));
+    memoryCache = CacheBuilder.newBuilder()
+        .maximumSize(100)
+        .build();
+  }
+
+  /**
+   * Palette of a submission content link's thumbnail or favicon, used for tinting the link.
+   */
+  @CheckResult
+  public Single<CachedPalette> contentLinkPalette(String imageUrl, Drawable image) {
+    Single<Palette> paletteGenerator = bitmapFromDrawable(image)
+        .flatMap(bitmap -> Single.fromCallable(() -> Palette.from(bitmap)
+            .maximumColorCount(Integer.MAX_VALUE)    // Don't understand why, but this changes the darkness of the colors.
+            .generate()
+        ));
+    return palette(Region.WHOLE_IMAGE.name() + "_" + imageUrl, paletteGenerator);
+  }
+
+  /**
+   * Palette of the strip of <var>bitmap</var> that gets drawn behind the status bar. The strip's
+   * size depends on the status bar's height and the display's width, so they're part of the cache key.
+   */
+  @CheckResult
+  public Single<CachedPalette> statusBarPalette(String imageUrl, Bitmap bitmap, int statusBarHeight, int displayWidth) {
+    Single<Palette> paletteGenerator = Single.fromCallable(() -> {
+      int imageHeightToUse = (int) (statusBarHeight * ((float) bitmap.getWidth() / displayWidth));
+
+      return Palette.from(bitmap)
+          .maximumColorCount(3)
+          .clearFilters() /* by default palette ignore certain hues (e.g. pure black/white) but we don't want this. */
+          .setRegion(0, 0, bitmap.getWidth(), imageHeightToUse)
+          .generate();
+    });
+    String key = Region.STATUS_BAR_STRIP.name() + "_" + statusBarHeight + "x" + displayWidth + "_" + imageUrl;
+    return palette(key, paletteGenerator);
+  }
+
+  /**
+   * @param paletteGenerator Subscribed only if a cached palette wasn't found.
+   */
+  private Single<CachedPalette> palette(String key, Single<Palette> paletteGenerator) {
+    return Single.defer(() -> {
+      CachedPalette inMemory = memoryCache.getIfPresent(key);
+      if (inMemory != null) {
+        return Single.just(inMemory);
+      }
+
+      return diskCache.read(key)
+          .onErrorComplete()
+          .switchIfEmpty(paletteGenerator
+              .map(CachedPalette::create)
+              .flatMap(generated -> diskCache.write(key, generated)
+                  .doOnError(e -> Timber.e(e, "Couldn't save palette for %s", key))
+                  .onErrorReturnItem(false)
+                  .map(o -> generated)))
+          .doOnSuccess(palette -> memoryCache.put(key, palette));
+    });
+  }
+
+  private Single<Bitmap> bitmapFromDrawable(Drawable drawable) {
+    return Single.create(emitter -> {
+      if (drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+        throw new AssertionError();
+      }
+
+      Bitmap bitmap = bitmapPool.get().get(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.RGB_565);
+      Canvas canvas = new Canvas(bitmap);
+      drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
+      drawable.draw(canvas);
+
+      emitter.onSuccess(bitmap);
+      emitter.setCancellable(() -> bitmapPool.get().put(bitmap));
+    });
+  }
+}
@@ -0,0 +1,220 @@
+package me.saket.dank.data.search;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.annotation.CheckResult;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Message;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.tree.CommentNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Single;
+import me.saket.dank.data.search.SearchableContent.Type;
+import me.saket.dank.utils.JrawUtils2;
+
+/**
+ * Full-text search over cached submissions, comments and inbox messages, so that they can be
+ * found without a network call. Content is indexed incrementally as it gets cached and only
+ * re-tokenized when its text or score changes. Results are ranked by recency and score.
+ */
+@Singleton
+public class OfflineSearchIndex {
+
+  private final BriteDatabase briteDatabase;
+
+  @Inject
+  public OfflineSearchIndex(BriteDatabase briteDatabase) {
+    this.briteDatabase = briteDatabase;
+  }
+
+  @WorkerThread
+  public void indexSubmissions(List<Submission> submissions) {
+    List<SearchableContent> contents = new ArrayList<>(submissions.size());
+    for (Submission submission : submissions) {
+      contents.add(SearchableContent.create(submission));
+    }
+    index(contents);
+  }
+
+  /**
+   * Indexes <var>rootNode</var>'s submission and all comments that have been loaded under it.
+   */
+  @WorkerThread
+  public void indexSubmissionWithComments(CommentNode rootNode) {
+    indexCommentTrees(Collections.singletonList(rootNode));
+  }
+
+  /**
+   * Indexes <var>rootNodes</var> and all comments that have been loaded under them.
+   */
+  @WorkerThread
+  public void indexCommentTrees(Collection<? extends CommentNode> rootNodes) {
+    List<SearchableContent> contents = new ArrayList<>();
+    ArrayDeque<CommentNode> pendingNodes = new ArrayDeque<>(rootNodes);
+
+    // Without recursion, because threads can get thousands of levels deep.
+    while (!pendingNodes.isEmpty()) {
+      CommentNode node = pendingNodes.pop();
+      Object subject = node.getSubject();
+      if (subject instanceof Submission) {
+        contents.add(SearchableContent.create((Submission) subject));
+      } else if (subject instanceof Comment) {
+        contents.add(SearchableContent.create((Comment) subject));
+      }
+
+      //noinspection unchecked
+      List<CommentNode> replies = node.getReplies();
+      for (CommentNode reply : replies) {
+        pendingNodes.push(reply);
+      }
+    }
+    index(contents);
+  }
+
+  /**
+   * Indexes <var>messages</var> and the replies in their threads.
+   */
+  @WorkerThread
+  public void indexMessages(List<Message> messages) {
+    List<SearchableContent> contents = new ArrayList<>(messages.size());
+    for (Message message : messages) {
+      contents.add(SearchableContent.create(message, null));
+
+      if (!message.isComment()) {
+        for (Message reply : JrawUtils2.messageReplies(message)) {
+          contents.add(SearchableContent.create(reply, message.getFullName()));
+        }
+      }
+    }
+    index(contents);
+  }
+
+  /**
+   * Inserts new content and updates content that has changed, in a single transaction.
+   */
+  @WorkerThread
+  void index(Collection<SearchableContent> contents) {
+    if (contents.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+
+    try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
+      for (SearchableContent content : contents) {
+        long existingId = -1;
+        long existingRevision = 0;
+        try (Cursor cursor = briteDatabase.query(SearchableContent.QUERY_GET_ID_AND_REVISION, content.fullname())) {
+          if (cursor.moveToFirst()) {
+            existingId = cursor.getLong(0);
+            existingRevision = cursor.getLong(1);
+          }
+        }
+
+        if (existingId == -1) {
+          long id = briteDatabase.insert(SearchableContent.TABLE_NAME, content.toContentValues(now));
+          briteDatabase.insert(SearchableContent.FTS_TABLE_NAME, content.toFtsContentValues(id));
+
+        } else if (existingRevision != content.revision()) {
+          String[] idArg = { String.valueOf(existingId) };
+          briteDatabase.update(SearchableContent.TABLE_NAME, content.toContentValues(now), SearchableContent.WHERE_ID, idArg);
+          briteDatabase.update(SearchableContent.FTS_TABLE_NAME, content.toFtsContentValues(existingId), SearchableContent.WHERE_DOCID, idArg);
+
+        } else {
+          // Unchanged. Only renewed so that it isn't recycled while it's still cached.
+          ContentValues indexTimeValues = new ContentValues(1);
+          indexTimeValues.put(SearchableContent.COLUMN_INDEX_TIME, now);
+          briteDatabase.update(SearchableContent.TABLE_NAME, indexTimeValues, SearchableContent.WHERE_ID, String.valueOf(existingId));
+        }
+      }
+      transaction.markSuccessful();
+    }
+  }
+
+  /**
+   * @param type Null for searching all types of content.
+   * @return Best matches first. Empty if <var>query</var> has nothing to search for.
+   */
+  @CheckResult
+  public Single<List<SearchableContent>> search(String query, @Nullable Type type, int limit) {
+    return Single.fromCallable(() -> {
+      String matchQuery = toMatchQuery(query);
+      if (matchQuery.isEmpty()) {
+        return Collections.emptyList();
+      }
+
+      Cursor cursor = type == null
+          ? briteDatabase.query(SearchableContent.QUERY_SEARCH, matchQuery, String.valueOf(limit))
+          : briteDatabase.query(SearchableContent.QUERY_SEARCH_OF_TYPE, matchQuery, type.name(), String.valueOf(limit));
+
+      try {
+        List<SearchableContent> results = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+          results.add(SearchableContent.MAPPER.apply(cursor));
+        }
+        return Collections.unmodifiableList(results);
+      } finally {
+        cursor.close();
+      }
+    });
+  }
+
+  /**
+   * Removes content of <var>type</var> that hasn't been indexed again since <var>indexedBeforeMillis</var>.
+   *
+   * @return Number of removed items.
+   */
+  @WorkerThread
+  public int removeIndexedBefore(Type type, long indexedBeforeMillis) {
+    String[] args = { type.name(), String.valueOf(indexedBeforeMillis) };
+
+    try (BriteDatabase.Transaction transaction = briteDatabase.newTransaction()) {
+      briteDatabase.executeAndTrigger(SearchableContent.FTS_TABLE_NAME, SearchableContent.QUERY_DELETE_FTS_OF_TYPE_INDEXED_BEFORE, (Object[]) args);
+      int removedCount = briteDatabase.delete(SearchableContent.TABLE_NAME, SearchableContent.WHERE_TYPE_AND_INDEXED_BEFORE, args);
+      transaction.markSuccessful();
+      return removedCount;
+    }
+  }
+
+  @WorkerThread
+  public int removeAll(Type type) {
+    return removeIndexedBefore(type, Long.MAX_VALUE);
+  }
+
+  /**
+   * Converts what the user typed into an FTS query that matches content containing all of its
+   * words, with the last word treated as a prefix because it may still be getting typed.
+   * Everything other than letters and digits is dropped so that the user can't type FTS syntax.
+   * <p>
+   * The prefix operator has to go inside the last quoted word, like <code>"wor*"</code>. FTS4
+   * doesn't treat a '*' placed after the closing quote as one.
+   */
+  static String toMatchQuery(String query) {
+    StringBuilder matchQuery = new StringBuilder(query.length() + 8);
+    for (String word : query.split("[^\\p{L}\\p{N}]+")) {
+      if (word.isEmpty()) {
+        continue;
+      }
+      if (matchQuery.length() > 0) {
+        matchQuery.append(' ');
+      }
+      matchQuery.append('"').append(word).append('"');
+    }
+    if (matchQuery.length() > 0) {
+      matchQuery.insert(matchQuery.length() - 1, '*');
+    }
+    return matchQuery.toString();
+  }
+}
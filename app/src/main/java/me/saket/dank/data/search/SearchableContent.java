@@ -0,0 +1,235 @@
+package me.saket.dank.data.search;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Message;
+import net.dean.jraw.models.Submission;
+
+import io.reactivex.functions.Function;
+import me.saket.dank.utils.Cursors;
+
+/**
+ * A cached submission, comment or inbox message that can be found through {@link OfflineSearchIndex}.
+ * <p>
+ * Rows are stored in {@link #TABLE_NAME} and their text is tokenized into the FTS table
+ * {@link #FTS_TABLE_NAME}, whose docids are the IDs of {@link #TABLE_NAME}.
+ */
+@AutoValue
+public abstract class SearchableContent {
+
+  static final String TABLE_NAME = "SearchableContent";
+  static final String FTS_TABLE_NAME = "SearchableContentFts";
+
+  static final String COLUMN_ID = "_id";
+  static final String COLUMN_FULLNAME = "fullname";
+  static final String COLUMN_TYPE = "type";
+  static final String COLUMN_TITLE = "title";
+  static final String COLUMN_BODY = "body";
+  static final String COLUMN_AUTHOR = "author";
+  static final String COLUMN_SUBREDDIT = "subreddit";
+  static final String COLUMN_PARENT_FULLNAME = "parent_fullname";
+  static final String COLUMN_CREATED_TIME = "created_time";
+  static final String COLUMN_SCORE = "score";
+  static final String COLUMN_RANK = "rank";
+  static final String COLUMN_REVISION = "revision";
+  static final String COLUMN_INDEX_TIME = "index_time";
+
+  /**
+   * Same as Reddit's "hot" ranking: 10x the score is worth as much as being ~12.5 hours newer.
+   */
+  private static final double SECONDS_PER_RANK_POINT = 45_000d;
+
+  public enum Type {
+    SUBMISSION,
+    COMMENT,
+    MESSAGE,
+  }
+
+  public static final String QUERY_CREATE_TABLE =
+      "CREATE TABLE " + TABLE_NAME + " ("
+          + COLUMN_ID + " INTEGER PRIMARY KEY, "
+          + COLUMN_FULLNAME + " TEXT NOT NULL UNIQUE, "
+          + COLUMN_TYPE + " TEXT NOT NULL, "
+          + COLUMN_TITLE + " TEXT, "
+          + COLUMN_BODY + " TEXT NOT NULL, "
+          + COLUMN_AUTHOR + " TEXT, "
+          + COLUMN_SUBREDDIT + " TEXT, "
+          + COLUMN_PARENT_FULLNAME + " TEXT, "
+          + COLUMN_CREATED_TIME + " INTEGER NOT NULL, "
+          + COLUMN_SCORE + " INTEGER NOT NULL, "
+          + COLUMN_RANK + " REAL NOT NULL, "
+          + COLUMN_REVISION + " INTEGER NOT NULL, "
+          + COLUMN_INDEX_TIME + " INTEGER NOT NULL)";
+
+  public static final String QUERY_CREATE_INDEX_TYPE_AND_INDEX_TIME =
+      "CREATE INDEX " + TABLE_NAME + "_type_index_time ON " + TABLE_NAME
+          + " (" + COLUMN_TYPE + ", " + COLUMN_INDEX_TIME + ")";
+
+  /**
+   * The porter tokenizer lets "replying" match "reply".
+   */
+  public static final String QUERY_CREATE_FTS_TABLE =
+      "CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4("
+          + COLUMN_TITLE + ", "
+          + COLUMN_BODY + ", "
+          + "tokenize=porter)";
+
+  static final String QUERY_GET_ID_AND_REVISION =
+      "SELECT " + COLUMN_ID + ", " + COLUMN_REVISION + " FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_FULLNAME + " = ?";
+
+  static final String QUERY_SEARCH =
+      "SELECT * FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_ID + " IN (SELECT docid FROM " + FTS_TABLE_NAME + " WHERE " + FTS_TABLE_NAME + " MATCH ?)"
+          + " ORDER BY " + COLUMN_RANK + " DESC"
+          + " LIMIT ?";
+
+  static final String QUERY_SEARCH_OF_TYPE =
+      "SELECT * FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_ID + " IN (SELECT docid FROM " + FTS_TABLE_NAME + " WHERE " + FTS_TABLE_NAME + " MATCH ?)"
+          + " AND " + COLUMN_TYPE + " = ?"
+          + " ORDER BY " + COLUMN_RANK + " DESC"
+          + " LIMIT ?";
+
+  static final String QUERY_DELETE_FTS_OF_TYPE_INDEXED_BEFORE =
+      "DELETE FROM " + FTS_TABLE_NAME
+          + " WHERE docid IN (SELECT " + COLUMN_ID + " FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_TYPE + " = ? AND " + COLUMN_INDEX_TIME + " < ?)";
+
+  static final String WHERE_TYPE_AND_INDEXED_BEFORE = COLUMN_TYPE + " = ? AND " + COLUMN_INDEX_TIME + " < ?";
+
+  static final String WHERE_ID = COLUMN_ID + " = ?";
+
+  static final String WHERE_DOCID = "docid = ?";
+
+  public abstract String fullname();
+
+  public abstract Type type();
+
+  /**
+   * Only submissions and private messages have titles.
+   */
+  @Nullable
+  public abstract String title();
+
+  public abstract String body();
+
+  @Nullable
+  public abstract String author();
+
+  @Nullable
+  public abstract String subreddit();
+
+  /**
+   * Submission of a comment, or the thread of a private message reply.
+   */
+  @Nullable
+  public abstract String parentFullname();
+
+  public abstract long createdTimeMillis();
+
+  public abstract int score();
+
+  public static SearchableContent create(Submission submission) {
+    String selfText = submission.getSelfText();
+    return new AutoValue_SearchableContent(
+        submission.getFullName(),
+        Type.SUBMISSION,
+        submission.getTitle(),
+        selfText != null ? selfText : "",
+        submission.getAuthor(),
+        submission.getSubreddit(),
+        null,
+        submission.getCreated().getTime(),
+        submission.getScore());
+  }
+
+  public static SearchableContent create(Comment comment) {
+    return new AutoValue_SearchableContent(
+        comment.getFullName(),
+        Type.COMMENT,
+        null,
+        comment.getBody(),
+        comment.getAuthor(),
+        comment.getSubreddit(),
+        comment.getSubmissionFullName(),
+        comment.getCreated().getTime(),
+        comment.getScore());
+  }
+
+  /**
+   * @param threadFullname Fullname of the first message in the thread if <var>message</var> is a reply to it.
+   */
+  public static SearchableContent create(Message message, @Nullable String threadFullname) {
+    return new AutoValue_SearchableContent(
+        message.getFullName(),
+        Type.MESSAGE,
+        message.isComment() ? null : message.getSubject(),
+        message.getBody(),
+        message.getAuthor(),
+        message.getSubreddit(),
+        threadFullname,
+        message.getCreated().getTime(),
+        0);
+  }
+
+  /**
+   * Changes whenever the text or the score changes, so that unchanged content isn't re-tokenized.
+   */
+  long revision() {
+    long revision = title() != null ? title().hashCode() : 0;
+    revision = revision * 31 + body().hashCode();
+    revision = revision * 31 + score();
+    return revision;
+  }
+
+  /**
+   * Higher for newer and higher scoring content.
+   */
+  double rank() {
+    double order = Math.log10(Math.max(Math.abs(score()), 1));
+    double sign = Math.signum(score());
+    return sign * order + (createdTimeMillis() / 1000d) / SECONDS_PER_RANK_POINT;
+  }
+
+  ContentValues toContentValues(long indexTimeMillis) {
+    ContentValues values = new ContentValues(12);
+    values.put(COLUMN_FULLNAME, fullname());
+    values.put(COLUMN_TYPE, type().name());
+    values.put(COLUMN_TITLE, title());
+    values.put(COLUMN_BODY, body());
+    values.put(COLUMN_AUTHOR, author());
+    values.put(COLUMN_SUBREDDIT, subreddit());
+    values.put(COLUMN_PARENT_FULLNAME, parentFullname());
+    values.put(COLUMN_CREATED_TIME, createdTimeMillis());
+    values.put(COLUMN_SCORE, score());
+    values.put(COLUMN_RANK, rank());
+    values.put(COLUMN_REVISION, revision());
+    values.put(COLUMN_INDEX_TIME, indexTimeMillis);
+    return values;
+  }
+
+  ContentValues toFtsContentValues(long docid) {
+    ContentValues values = new ContentValues(3);
+    values.put("docid", docid);
+    values.put(COLUMN_TITLE, title());
+    values.put(COLUMN_BODY, body());
+    return values;
+  }
+
+  static final Function<Cursor, SearchableContent> MAPPER = cursor -> new AutoValue_SearchableContent(
+      Cursors.string(cursor, COLUMN_FULLNAME),
+      Type.valueOf(Cursors.string(cursor, COLUMN_TYPE)),
+      Cursors.string(cursor, COLUMN_TITLE),
+      Cursors.string(cursor, COLUMN_BODY),
+      Cursors.string(cursor, COLUMN_AUTHOR),
+      Cursors.string(cursor, COLUMN_SUBREDDIT),
+      Cursors.string(cursor, COLUMN_PARENT_FULLNAME),
+      Cursors.longg(cursor, COLUMN_CREATED_TIME),
+      Cursors.intt(cursor, COLUMN_SCORE));
+}
@@ -2,6 +2,7 @@ package me.saket.dank.di;
 
 import com.squareup.moshi.Moshi;
 
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import dagger.Component;
@@ -33,6 +34,7 @@ import me.saket.dank.ui.preferences.HiddenPreferencesActivity;
 import me.saket.dank.ui.preferences.MessageCheckFrequencyPreferencePopup;
 import me.saket.dank.ui.preferences.PreferenceGroupsScreen;
 import me.saket.dank.ui.preferences.TypefaceInflationInterceptor;
+import me.saket.dank.ui.submission.BookmarksSyncJob;
 import me.saket.dank.ui.submission.CommentOptionsPopup;
 import me.saket.dank.ui.submission.LinkOptionsPopup;
 import me.saket.dank.ui.submission.SubmissionPageLayout;
@@ -46,12 +48,14 @@ import me.saket.dank.ui.user.UserAuthListener;
 import me.saket.dank.ui.user.UserProfilePopup;
 import me.saket.dank.ui.user.messages.InboxActivity;
 import me.saket.dank.ui.user.messages.InboxFolderFragment;
+import me.saket.dank.ui.user.messages.InboxFolderUiConstructor;
 import me.saket.dank.ui.user.messages.PrivateMessageThreadActivity;
 import me.saket.dank.utils.NestedOptionsPopupMenu;
 import me.saket.dank.utils.markdown.MarkdownModule;
 import me.saket.dank.vote.VoteJobService;
 import me.saket.dank.vote.VotingManager;
 import me.saket.dank.walkthrough.WalkthroughModule;
+import okhttp3.OkHttpClient;
 
 @Component(modules = {
     RootModule.class,
@@ -84,6 +88,11 @@ public interface RootComponent {
 
   CrashReporter crashReporter();
 
+  InboxFolderUiConstructor inboxFolderUiConstructor();
+
+  @Named("shared")
+  OkHttpClient sharedOkHttpClient();
+
   void inject(MediaAlbumViewerActivity target);
 
   void inject(MediaVideoFragment target);
@@ -106,6 +115,8 @@ public interface RootComponent {
 
   void inject(SubredditSubscriptionsSyncJob target);
 
+  void inject(BookmarksSyncJob target);
+
   void inject(SubredditPickerSheetView target);
 
   void inject(DatabaseCacheRecyclerJobService target);
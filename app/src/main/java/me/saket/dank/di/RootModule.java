@@ -11,22 +11,27 @@ import android.net.ConnectivityManager;
 import android.os.Build;
 import android.preference.PreferenceManager;
 
+import com.f2prateek.rx.preferences2.Preference;
 import com.f2prateek.rx.preferences2.RxSharedPreferences;
 import com.facebook.stetho.okhttp3.StethoInterceptor;
 import com.squareup.moshi.Moshi;
 import com.squareup.sqlbrite2.BriteDatabase;
 import com.squareup.sqlbrite2.SqlBrite;
 
+import java.io.File;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
+import io.reactivex.Scheduler;
 import io.reactivex.schedulers.Schedulers;
 import me.saket.dank.BuildConfig;
 import me.saket.dank.R;
 import me.saket.dank.data.DankSqliteOpenHelper;
+import me.saket.dank.data.FileSize;
 import me.saket.dank.data.OnLoginRequireListener;
 import me.saket.dank.reply.ReplyRepository;
 import me.saket.dank.ui.UrlRouter;
@@ -36,7 +41,14 @@ import me.saket.dank.urlparser.Link;
 import me.saket.dank.urlparser.RedditUserLink;
 import me.saket.dank.urlparser.UrlParser;
 import me.saket.dank.utils.DankLinkMovementMethod;
+import me.saket.dank.utils.FileSizeUnit;
 import me.saket.dank.utils.OkHttpWholesomeAuthIntercepter;
+import me.saket.dank.utils.okhttp.OkHttpCacheControlOverrideInterceptor;
+import me.saket.dank.utils.okhttp.OkHttpNetworkStats;
+import me.saket.dank.utils.okhttp.OkHttpRequestMetrics;
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
@@ -85,18 +97,66 @@ public class RootModule {
 
   @Provides
   @Singleton
-  OkHttpClient provideOkHttpClient() {
+  Cache provideHttpCache() {
+    FileSize maxCacheSize = FileSize.create(10, FileSizeUnit.MB);
+    return new Cache(new File(appContext.getCacheDir(), "okhttp_cache"), (long) maxCacheSize.bytes());
+  }
+
+  @Provides
+  @Singleton
+  OkHttpNetworkStats provideOkHttpNetworkStats(Cache httpCache) {
+    return new OkHttpNetworkStats(httpCache);
+  }
+
+  @Provides
+  @Singleton
+  OkHttpRequestMetrics provideOkHttpRequestMetrics() {
+    return new OkHttpRequestMetrics();
+  }
+
+  /**
+   * Root client whose connection pool and dispatcher are shared by Retrofit, JRAW and Glide.
+   * Create clients using {@link OkHttpClient#newBuilder()} instead of building new ones so that
+   * connections to the same hosts get reused and their requests get recorded by {@link OkHttpRequestMetrics}.
+   */
+  @Provides
+  @Singleton
+  @Named("shared")
+  OkHttpClient provideSharedOkHttpClient(OkHttpNetworkStats networkStats, OkHttpRequestMetrics requestMetrics) {
     OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        .connectionPool(new ConnectionPool())
+        .dispatcher(new Dispatcher())
         .connectTimeout(NETWORK_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-        .readTimeout(NETWORK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        .readTimeout(NETWORK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        .addInterceptor(requestMetrics.interceptor())
+        .addNetworkInterceptor(requestMetrics.networkInterceptor())
+        .addNetworkInterceptor(networkStats);
+
+    if (BuildConfig.DEBUG) {
+      builder.addNetworkInterceptor(new StethoInterceptor());
+    }
+    return builder.build();
+  }
+
+  @Provides
+  @Singleton
+  OkHttpClient provideOkHttpClient(@Named("shared") OkHttpClient sharedClient, Cache httpCache) {
+    OkHttpClient.Builder builder = sharedClient.newBuilder()
+        .cache(httpCache);
 
     if (BuildConfig.DEBUG) {
       HttpLoggingInterceptor logging = new HttpLoggingInterceptor(message -> Timber.tag("OkHttp").d(message));
       logging.setLevel(HttpLoggingInterceptor.Level.BASIC);
       builder.addInterceptor(logging);
-      builder.addNetworkInterceptor(new StethoInterceptor());
     }
     builder.addNetworkInterceptor(new OkHttpWholesomeAuthIntercepter());
+    builder.addNetworkInterceptor(new OkHttpCacheControlOverrideInterceptor()
+        .maxAge("imgur-apiv3.p.mashape.com", "/3/album/", 1, TimeUnit.DAYS)
+        .maxAge("imgur-apiv3.p.mashape.com", "/3/image/", 1, TimeUnit.DAYS)
+        .maxAge("api.gfycat.com", "/v1/gfycats/", 1, TimeUnit.DAYS)
+        .maxAge("api.streamable.com", "/videos/", 1, TimeUnit.HOURS)
+        .maxAge("api.giphy.com", "/v1/gifs/search", 30, TimeUnit.MINUTES)
+        .maxAge("api.giphy.com", "/v1/gifs/trending", 30, TimeUnit.MINUTES));
 
     return builder.build();
   }
@@ -132,6 +192,26 @@ public class RootModule {
     return briteDatabase;
   }
 
+  /**
+   * Single thread on which bookmarks are written and sent to Reddit in the order they were made.
+   */
+  @Provides
+  @Singleton
+  @Named("bookmarks")
+  Scheduler provideBookmarksScheduler() {
+    return Schedulers.from(Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Bookmarks");
+      thread.setDaemon(true);
+      return thread;
+    }));
+  }
+
+  @Provides
+  @Named("bookmarks_refreshed_once")
+  Preference<Boolean> provideBookmarksRefreshedOncePref(@Named("user_session") RxSharedPreferences rxPrefs) {
+    return rxPrefs.getBoolean("bookmarks_refreshed_once", false);
+  }
+
   @Provides
   @Named("drafts_max_retain_days")
   int provideCommentDraftsMaxRetainDays() {
@@ -2,7 +2,6 @@ package me.saket.dank.notifs;
 
 import static io.reactivex.android.schedulers.AndroidSchedulers.mainThread;
 import static io.reactivex.schedulers.Schedulers.io;
-import static java.util.Collections.unmodifiableList;
 
 import android.app.job.JobInfo;
 import android.app.job.JobParameters;
@@ -15,7 +14,6 @@ import com.f2prateek.rx.preferences2.Preference;
 
 import net.dean.jraw.models.Message;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
@@ -143,21 +141,8 @@ public class CheckUnreadMessagesJobService extends DankJobService {
       //Timber.i("Refreshing msgs");
       refreshCompletable = inboxRepository.messages(InboxFolder.UNREAD)
           .firstOrError()
-          .flatMapCompletable(existingUnreads -> inboxRepository.refreshMessages(InboxFolder.UNREAD, false)
-              .map(receivedUnreads -> {
-                List<Message> staleMessages = new ArrayList<>(existingUnreads.size());
-                staleMessages.addAll(existingUnreads);
-                staleMessages.removeAll(receivedUnreads);
-
-//              Timber.i("----------------------------------------");
-//              Timber.w("Stale notifs: %s", staleMessages.size());
-//              for (Message m : staleMessages) {
-//                Timber.i("%s", m.getBody().substring(0, Math.min(m.getBody().length(), 50)));
-//              }
-//              Timber.i("----------------------------------------");
-
-                return unmodifiableList(staleMessages);
-              })
+          .flatMapCompletable(existingUnreads -> inboxRepository.refreshMessages(InboxFolder.UNREAD)
+              .map(receivedUnreads -> UnreadNotificationReconciler.staleMessages(existingUnreads, receivedUnreads))
               .flatMapCompletable(staleMessages ->
                   // When generating bundled notifications, Android does not remove existing bundle when a new bundle is posted.
                   // It instead amends any new notifications with the existing ones. This means that we'll have to manually
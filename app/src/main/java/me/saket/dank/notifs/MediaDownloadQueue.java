@@ -0,0 +1,226 @@
+package me.saket.dank.notifs;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.CheckResult;
+import android.support.annotation.Nullable;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+
+import dagger.Lazy;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import me.saket.dank.BuildConfig;
+import me.saket.dank.notifs.QueuedMediaDownload.State;
+import me.saket.dank.urlparser.MediaLink;
+import me.saket.dank.utils.Optional;
+import timber.log.Timber;
+
+/**
+ * Persisted queue of media downloads, so that queued downloads survive the
+ * death of {@link MediaDownloadService}. Failed downloads are retried with
+ * exponential backoff before they're given up on.
+ */
+public class MediaDownloadQueue {
+
+  static final int MAX_ATTEMPTS = 3;
+  private static final long FIRST_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
+  private final Lazy<BriteDatabase> database;
+
+  @Inject
+  public MediaDownloadQueue(Lazy<BriteDatabase> database) {
+    this.database = database;
+  }
+
+  /**
+   * Links that are already queued are moved up if <var>priority</var> is higher and retried right away.
+   */
+  @CheckResult
+  Completable enqueue(Collection<MediaLink> mediaLinks, @Nullable String batchId, int priority) {
+    return Completable.fromAction(() -> {
+      long now = System.currentTimeMillis();
+
+      try (BriteDatabase.Transaction transaction = database.get().newTransaction()) {
+        for (MediaLink mediaLink : mediaLinks) {
+          QueuedMediaDownload download = QueuedMediaDownload.create(mediaLink, batchId, priority, now);
+          long rowId = database.get().insert(QueuedMediaDownload.TABLE_NAME, download.toValues(), SQLiteDatabase.CONFLICT_IGNORE);
+
+          if (rowId == -1) {
+            ContentValues retryNow = new ContentValues(1);
+            retryNow.put(QueuedMediaDownload.COLUMN_NEXT_ATTEMPT_TIME, 0);
+            database.get().update(QueuedMediaDownload.TABLE_NAME, retryNow, QueuedMediaDownload.WHERE_LINK_URL, download.linkUrl());
+
+            ContentValues higherPriority = new ContentValues(1);
+            higherPriority.put(QueuedMediaDownload.COLUMN_PRIORITY, priority);
+            database.get().update(
+                QueuedMediaDownload.TABLE_NAME,
+                higherPriority,
+                QueuedMediaDownload.WHERE_LINK_URL + " AND " + QueuedMediaDownload.COLUMN_PRIORITY + " < ?",
+                download.linkUrl(),
+                String.valueOf(priority));
+          }
+        }
+        transaction.markSuccessful();
+      }
+    });
+  }
+
+  /**
+   * All downloads, including running ones, in the order they should run.
+   */
+  @CheckResult
+  Observable<List<QueuedMediaDownload>> downloads() {
+    return database.get()
+        .createQuery(QueuedMediaDownload.TABLE_NAME, QueuedMediaDownload.QUERY_GET_ALL_IN_ORDER)
+        .map(query -> {
+          List<QueuedMediaDownload> downloads = new ArrayList<>();
+          try (Cursor cursor = query.run()) {
+            while (cursor != null && cursor.moveToNext()) {
+              try {
+                downloads.add(QueuedMediaDownload.MAPPER.apply(cursor));
+              } catch (RuntimeException e) {
+                Timber.e(e, "Skipping unreadable download");
+              }
+            }
+          }
+          return downloads;
+        });
+  }
+
+  @CheckResult
+  Completable markDownloading(QueuedMediaDownload download) {
+    return updateState(download, State.DOWNLOADING);
+  }
+
+  /**
+   * @return True if the download will be retried later, false if it was removed.
+   */
+  @CheckResult
+  Single<Boolean> rescheduleOrRemoveAfterFailure(QueuedMediaDownload download) {
+    return Single.fromCallable(() -> {
+      int attemptCount = download.attemptCount() + 1;
+      if (attemptCount >= MAX_ATTEMPTS) {
+        database.get().delete(QueuedMediaDownload.TABLE_NAME, QueuedMediaDownload.WHERE_LINK_URL, download.linkUrl());
+        return false;
+      }
+
+      ContentValues values = new ContentValues(3);
+      values.put(QueuedMediaDownload.COLUMN_STATE, State.QUEUED.name());
+      values.put(QueuedMediaDownload.COLUMN_ATTEMPT_COUNT, attemptCount);
+      values.put(QueuedMediaDownload.COLUMN_NEXT_ATTEMPT_TIME, System.currentTimeMillis() + retryDelayMillis(attemptCount));
+      database.get().update(QueuedMediaDownload.TABLE_NAME, values, QueuedMediaDownload.WHERE_LINK_URL, download.linkUrl());
+      return true;
+    });
+  }
+
+  @CheckResult
+  Completable remove(MediaLink mediaLink) {
+    return Completable.fromAction(() ->
+        database.get().delete(QueuedMediaDownload.TABLE_NAME, QueuedMediaDownload.WHERE_LINK_URL, mediaLink.unparsedUrl()));
+  }
+
+  /**
+   * Downloads that were running when the service died get queued again. Downloads queued by
+   * another version of the app are dropped because their links can't be read safely.
+   */
+  @CheckResult
+  Completable recoverAfterRestart() {
+    return Completable.fromAction(() -> {
+      try (BriteDatabase.Transaction transaction = database.get().newTransaction()) {
+        ContentValues values = new ContentValues(1);
+        values.put(QueuedMediaDownload.COLUMN_STATE, State.QUEUED.name());
+        database.get().update(QueuedMediaDownload.TABLE_NAME, values, QueuedMediaDownload.WHERE_STATE, State.DOWNLOADING.name());
+
+        database.get().delete(
+            QueuedMediaDownload.TABLE_NAME,
+            QueuedMediaDownload.WHERE_APP_VERSION_IS_NOT,
+            String.valueOf(BuildConfig.VERSION_CODE));
+        transaction.markSuccessful();
+      }
+    });
+  }
+
+  private Completable updateState(QueuedMediaDownload download, State state) {
+    return Completable.fromAction(() -> {
+      ContentValues values = new ContentValues(1);
+      values.put(QueuedMediaDownload.COLUMN_STATE, state.name());
+      database.get().update(QueuedMediaDownload.TABLE_NAME, values, QueuedMediaDownload.WHERE_LINK_URL, download.linkUrl());
+    });
+  }
+
+  static long retryDelayMillis(int attemptCount) {
+    return FIRST_RETRY_DELAY_MILLIS << (attemptCount - 1);
+  }
+
+  /**
+   * Picks queued downloads to start in their queue order, skipping ones that are waiting
+   * for a retry or a network that their media type is allowed to use.
+   */
+  static List<QueuedMediaDownload> selectDownloadsToStart(
+      List<QueuedMediaDownload> queue,
+      Set<String> runningLinkUrls,
+      int maxConcurrentDownloads,
+      NetworkAvailability networkAvailability,
+      long nowMillis)
+  {
+    int freeSlots = maxConcurrentDownloads - runningLinkUrls.size();
+    if (freeSlots <= 0) {
+      return Collections.emptyList();
+    }
+
+    List<QueuedMediaDownload> downloadsToStart = new ArrayList<>(freeSlots);
+    for (QueuedMediaDownload download : queue) {
+      if (downloadsToStart.size() == freeSlots) {
+        break;
+      }
+      boolean isWaiting = runningLinkUrls.contains(download.linkUrl())
+          || download.state() == State.DOWNLOADING
+          || download.nextAttemptTimeMillis() > nowMillis
+          || !networkAvailability.allows(download.mediaLink());
+
+      if (!isWaiting) {
+        downloadsToStart.add(download);
+      }
+    }
+    return downloadsToStart;
+  }
+
+  /**
+   * Earliest time at which a download that failed earlier can be retried.
+   */
+  static Optional<Long> nextRetryTimeMillis(List<QueuedMediaDownload> queue, long nowMillis) {
+    Long nextRetryTime = null;
+    for (QueuedMediaDownload download : queue) {
+      long attemptTime = download.nextAttemptTimeMillis();
+      if (attemptTime > nowMillis && (nextRetryTime == null || attemptTime < nextRetryTime)) {
+        nextRetryTime = attemptTime;
+      }
+    }
+    return Optional.ofNullable(nextRetryTime);
+  }
+
+  static class NetworkAvailability {
+    private final boolean canDownloadImages;
+    private final boolean canDownloadVideos;
+
+    NetworkAvailability(boolean canDownloadImages, boolean canDownloadVideos) {
+      this.canDownloadImages = canDownloadImages;
+      this.canDownloadVideos = canDownloadVideos;
+    }
+
+    boolean allows(MediaLink mediaLink) {
+      return mediaLink.isVideo() ? canDownloadVideos : canDownloadImages;
+    }
+  }
+}
@@ -1,7 +1,6 @@
 package me.saket.dank.notifs;
 
 import static me.saket.dank.ui.media.MediaDownloadJob.ProgressState.DOWNLOADED;
-import static me.saket.dank.ui.media.MediaDownloadJob.ProgressState.FAILED;
 
 import android.Manifest;
 import android.app.Notification;
@@ -17,6 +16,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.IBinder;
 import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.NotificationManagerCompat;
 import android.support.v4.content.ContextCompat;
@@ -28,56 +28,65 @@ import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.target.Target;
 import com.bumptech.glide.request.transition.Transition;
 import com.danikula.videocache.HttpProxyCacheServer;
+import com.f2prateek.rx.preferences2.Preference;
+import com.jakewharton.rxrelay2.BehaviorRelay;
 import com.jakewharton.rxrelay2.PublishRelay;
 import com.jakewharton.rxrelay2.Relay;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
 import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
 import me.saket.dank.R;
 import me.saket.dank.di.Dank;
+import me.saket.dank.notifs.MediaDownloadQueue.NetworkAvailability;
 import me.saket.dank.ui.media.MediaDownloadJob;
 import me.saket.dank.ui.media.MediaHostRepository;
 import me.saket.dank.ui.media.MediaLinkWithStartingPosition;
+import me.saket.dank.ui.preferences.NetworkStrategy;
 import me.saket.dank.urlparser.MediaLink;
 import me.saket.dank.urlparser.RedditHostedVideoLink;
 import me.saket.dank.utils.Files2;
 import me.saket.dank.utils.Intents;
+import me.saket.dank.utils.NetworkStateListener;
+import me.saket.dank.utils.Optional;
+import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RxUtils;
 import me.saket.dank.utils.Strings;
 import me.saket.dank.utils.Urls;
 import me.saket.dank.utils.VideoFormat;
 import me.saket.dank.utils.glide.GlideProgressTarget;
-import me.saket.dank.utils.okhttp.OkHttpResponseBodyWithProgress;
-import okhttp3.Call;
+import me.saket.dank.utils.lifecycle.LifecycleStreams;
 import okhttp3.OkHttpClient;
-import okhttp3.Request;
-import okhttp3.Response;
-import okio.BufferedSink;
-import okio.BufferedSource;
-import okio.Okio;
 import timber.log.Timber;
 
 /**
- * Downloads images and videos to disk.
+ * Downloads images and videos to disk. Downloads are queued in {@link MediaDownloadQueue} and
+ * this service runs them till the queue is empty or only has downloads waiting for a network.
  * FIXME: Move all logic to a separate testable class.
  * FIXME: Use a single source of truth for notifications.
  */
 public class MediaDownloadService extends Service {
 
   private static final String KEY_MEDIA_LINK_TO_DOWNLOAD = "mediaLinkToDownload";
+  private static final String KEY_MEDIA_LINKS_TO_DOWNLOAD = "mediaLinksToDownload";
+  private static final String KEY_ALBUM_ID = "albumId";
   private static final String KEY_MEDIA_LINK_TO_CANCEL_DOWNLOAD = "mediaLinkToCancelDownload";
   private static final String KEY_MEDIA_LINK_TO_CANCEL_NOTIF = "mediaLinkToDismissNotif";
   private static final String KEY_ACTION = "action";
@@ -87,6 +96,7 @@ public class MediaDownloadService extends Service {
   private static final String REQUESTCODE_DELETE_IMAGE_PREFIX_ = "302";
   private static final String REQUESTCODE_OPEN_IMAGE_PREFIX_ = "303";
   private static final String REQUESTCODE_CANCEL_DOWNLOAD_PREFIX_ = "304";
+  private static final String REQUESTCODE_CANCEL_ALBUM_DOWNLOAD_PREFIX_ = "305";
 
   /**
    * Starting from Nougat, Android has a rate limiter in place which puts a certain
@@ -94,33 +104,82 @@ public class MediaDownloadService extends Service {
    */
   private static final int MINIMUM_GAP_BETWEEN_NOTIFICATION_UPDATEs = 201;
 
+  /** Queued downloads beyond this wait for an ongoing one to finish. */
+  private static final int MAX_CONCURRENT_DOWNLOADS = 2;
+  private static final int MAX_SEGMENTS_PER_VIDEO = 4;
+  private static final long MIN_BYTES_PER_VIDEO_SEGMENT = 4 * 1024 * 1024;
+
   @Inject HttpProxyCacheServer videoCacheServer;
   @Inject OkHttpClient okHttpClient;
   @Inject MediaHostRepository mediaHostRepository;
+  @Inject MediaDownloadQueue downloadQueue;
+  @Inject NetworkStateListener networkStateListener;
+
+  @Inject @Named("hd_media_in_gallery")
+  Preference<NetworkStrategy> videoNetworkStrategyPref;
 
   private CompositeDisposable disposables = new CompositeDisposable();
-  private final Set<MediaLink> ongoingDownloadLinks = new HashSet<>();
-  private final Map<MediaLink, MediaDownloadJob> downloadJobsWithVisibleNotif = new HashMap<>();
-  private final Relay<MediaLink> downloadRequestStream = PublishRelay.create();
+  private ResumableDownloader videoDownloader;
+  private final Map<String, Disposable> runningDownloads = new HashMap<>();
+  private final Map<String, QueuedMediaDownload> queuedDownloads = new HashMap<>();
+  private final Map<String, Boolean> queuedNotifsWaitingForNetwork = new HashMap<>();
+  private final Map<String, AlbumDownloadProgress> albumProgresses = new HashMap<>();
   private final Relay<MediaLink> downloadCancellationStream = PublishRelay.create();
+  private final Relay<String> albumProgressChangeStream = PublishRelay.create();
+  private final Relay<Object> queueRecheckStream = BehaviorRelay.createDefault(LifecycleStreams.NOTHING);
+  private Disposable retryTimerDisposable = Disposables.disposed();
+  private int pendingQueueWriteCount;
 
   enum Action {
     ENQUEUE_DOWNLOAD,
+    ENQUEUE_ALBUM_DOWNLOAD,
+    RESUME_QUEUED_DOWNLOADS,
     CANCEL_DOWNLOAD,
+    CANCEL_ALBUM_DOWNLOAD,
     CANCEL_NOTIFICATION,  // Canceled programmatically.
   }
 
   public static void enqueueDownload(Context context, MediaLink mediaLink) {
-    if (mediaLink instanceof MediaLinkWithStartingPosition) {
-      mediaLink = ((MediaLinkWithStartingPosition) mediaLink).delegate();
+    Intent intent = new Intent(context, MediaDownloadService.class);
+    intent.putExtra(KEY_MEDIA_LINK_TO_DOWNLOAD, unwrap(mediaLink));
+    intent.putExtra(KEY_ACTION, Action.ENQUEUE_DOWNLOAD);
+    context.startService(intent);
+  }
+
+  /**
+   * Album items are downloaded after any single downloads, and share one progress notification.
+   *
+   * @param albumId Used for identifying downloads of the same album.
+   */
+  public static void enqueueAlbumDownload(Context context, String albumId, List<MediaLink> mediaLinks) {
+    ArrayList<MediaLink> unwrappedLinks = new ArrayList<>(mediaLinks.size());
+    for (MediaLink mediaLink : mediaLinks) {
+      unwrappedLinks.add(unwrap(mediaLink));
     }
 
     Intent intent = new Intent(context, MediaDownloadService.class);
-    intent.putExtra(KEY_MEDIA_LINK_TO_DOWNLOAD, mediaLink);
-    intent.putExtra(KEY_ACTION, Action.ENQUEUE_DOWNLOAD);
+    intent.putParcelableArrayListExtra(KEY_MEDIA_LINKS_TO_DOWNLOAD, unwrappedLinks);
+    intent.putExtra(KEY_ALBUM_ID, albumId);
+    intent.putExtra(KEY_ACTION, Action.ENQUEUE_ALBUM_DOWNLOAD);
     context.startService(intent);
   }
 
+  /**
+   * Continues downloads that were queued earlier, like when the service was killed.
+   */
+  static void resumeQueuedDownloads(Context context) {
+    Intent intent = new Intent(context, MediaDownloadService.class);
+    intent.putExtra(KEY_ACTION, Action.RESUME_QUEUED_DOWNLOADS);
+    context.startService(intent);
+  }
+
+  private static MediaLink unwrap(MediaLink mediaLink) {
+    if (mediaLink instanceof MediaLinkWithStartingPosition) {
+      return ((MediaLinkWithStartingPosition) mediaLink).delegate();
+    }
+    return mediaLink;
+  }
+
   private static Intent cancelDownloadIntent(Context context, MediaLink mediaLink) {
     Intent intent = new Intent(context, MediaDownloadService.class);
     intent.putExtra(KEY_MEDIA_LINK_TO_CANCEL_DOWNLOAD, mediaLink);
@@ -128,6 +187,13 @@ public class MediaDownloadService extends Service {
     return intent;
   }
 
+  private static Intent cancelAlbumDownloadIntent(Context context, String albumId) {
+    Intent intent = new Intent(context, MediaDownloadService.class);
+    intent.putExtra(KEY_ALBUM_ID, albumId);
+    intent.putExtra(KEY_ACTION, Action.CANCEL_ALBUM_DOWNLOAD);
+    return intent;
+  }
+
   /**
    * Called when a notification is canceled internally by the app.
    */
@@ -149,111 +215,120 @@ public class MediaDownloadService extends Service {
     Dank.dependencyInjector().inject(this);
     super.onCreate();
 
-    // Stop service when all downloads finish.
-    Relay<Collection<MediaDownloadJob>> activeDownloadsProgressChangeStream = PublishRelay.create();
-    disposables.add(
-        activeDownloadsProgressChangeStream
-            .map(activeDownloadJobs -> {
-              boolean allDownloadsTerminated = true;
-              for (MediaDownloadJob downloadJob : activeDownloadJobs) {
-                if (downloadJob.progressState() != DOWNLOADED && downloadJob.progressState() != FAILED) {
-                  allDownloadsTerminated = false;
-                }
-              }
-              return allDownloadsTerminated;
-            })
-            .filter(allDownloadsComplete -> allDownloadsComplete)
-            .subscribe(o -> stopSelf())
-    );
+    videoDownloader = new ResumableDownloader(okHttpClient, MAX_SEGMENTS_PER_VIDEO, MIN_BYTES_PER_VIDEO_SEGMENT);
 
     disposables.add(
         downloadCancellationStream.subscribe(mediaLinkToCancel -> {
-          ongoingDownloadLinks.remove(mediaLinkToCancel);
+          Disposable runningDownload = runningDownloads.remove(mediaLinkToCancel.unparsedUrl());
+          if (runningDownload != null) {
+            runningDownload.dispose();
+          }
+          QueuedMediaDownload cancelledDownload = queuedDownloads.get(mediaLinkToCancel.unparsedUrl());
+          if (cancelledDownload != null && cancelledDownload.batchId() != null) {
+            AlbumDownloadProgress albumProgress = albumProgresses.get(cancelledDownload.batchId());
+            if (albumProgress != null) {
+              albumProgress.onCancel(cancelledDownload.linkUrl());
+              albumProgressChangeStream.accept(cancelledDownload.batchId());
+            }
+          }
+          queuedNotifsWaitingForNetwork.remove(mediaLinkToCancel.unparsedUrl());
           NotificationManagerCompat.from(this).cancel(createNotificationIdFor(mediaLinkToCancel));
         })
     );
 
+    // Partial videos are kept for resuming failed downloads, but not cancelled ones.
     disposables.add(
-        downloadRequestStream
-            .sample(MINIMUM_GAP_BETWEEN_NOTIFICATION_UPDATEs, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
-            .doOnNext(link -> Timber.i("Recvd request for %s", link))
-            .doOnNext(linkToQueue -> {
-              Timber.i("Showing queued notif");
-              MediaDownloadJob downloadJobToQueue = MediaDownloadJob.queued(linkToQueue, System.currentTimeMillis());
-              downloadJobsWithVisibleNotif.put(downloadJobToQueue.mediaLink(), downloadJobToQueue);
-              updateIndividualProgressNotification(downloadJobToQueue, createNotificationIdFor(linkToQueue));
+        downloadCancellationStream
+            .flatMapCompletable(cancelledLink -> {
+              Completable discardPartialDownload = cancelledLink.isVideo()
+                  ? videoDownloader.discardPartialDownload(videoDestinationFor(cancelledLink))
+                  : Completable.complete();
+              return downloadQueue.remove(cancelledLink)
+                  .andThen(discardPartialDownload)
+                  .subscribeOn(Schedulers.io());
             })
-            .concatMap(linkToDownload -> {
-              Timber.i("Downloading %s", linkToDownload);
-              Observable<MediaDownloadJob> downloadStream;
-              if (linkToDownload.isVideo()) {
-                downloadStream = downloadVideoAndStreamProgress(linkToDownload).compose(RxUtils.applySchedulers());
-              } else {
-                downloadStream = downloadImageAndStreamProgress(linkToDownload);
-              }
+            .subscribe(() -> {}, RxUtils.logError("Couldn't cancel download"))
+    );
 
-              return downloadStream
-                  .unsubscribeOn(Schedulers.io())
-                  .map(moveFileToUserSpaceOnDownload())
-                  .doOnTerminate(() -> ongoingDownloadLinks.remove(linkToDownload))
-                  .doOnError(e -> Timber.e(e, "Couldn't download media"))
-                  .onErrorReturnItem(MediaDownloadJob.failed(linkToDownload, System.currentTimeMillis()))
-                  .takeUntil(downloadCancellationStream.filter(linkToCancel -> linkToCancel.equals(linkToDownload)))
-                  .sample(MINIMUM_GAP_BETWEEN_NOTIFICATION_UPDATEs, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread(), true);
-            })
-            .subscribe(downloadJob -> {
-              int notificationId = createNotificationIdFor(downloadJob.mediaLink());
-
-              switch (downloadJob.progressState()) {
-                case CONNECTING:
-                  updateIndividualProgressNotification(downloadJob, notificationId);
-                  break;
-
-                case IN_FLIGHT:
-                  updateIndividualProgressNotification(downloadJob, notificationId);
-                  break;
-
-                case FAILED:
-                  displayErrorNotification(downloadJob, notificationId);
-                  ongoingDownloadLinks.remove(downloadJob.mediaLink());
-                  break;
-
-                case DOWNLOADED:
-                  displaySuccessNotification(downloadJob, notificationId);
-                  ongoingDownloadLinks.remove(downloadJob.mediaLink());
-                  break;
-
-                default:
-                  throw new UnsupportedOperationException("Unknown state: " + downloadJob.progressState());
+    // Album notifications are updated by every item in the album, so coalesce their updates.
+    disposables.add(
+        albumProgressChangeStream
+            .buffer(MINIMUM_GAP_BETWEEN_NOTIFICATION_UPDATEs, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
+            .filter(changedAlbumIds -> !changedAlbumIds.isEmpty())
+            .subscribe(changedAlbumIds -> {
+              for (String albumId : new HashSet<>(changedAlbumIds)) {
+                AlbumDownloadProgress albumProgress = albumProgresses.get(albumId);
+                if (albumProgress != null) {
+                  updateAlbumProgressNotification(albumId, albumProgress);
+                }
               }
-
-              downloadJobsWithVisibleNotif.put(downloadJob.mediaLink(), downloadJob);
-              activeDownloadsProgressChangeStream.accept(downloadJobsWithVisibleNotif.values());
             })
     );
+
+    // Videos use the same network preference as HD media in the gallery because they're large.
+    Observable<Boolean> canDownloadVideos = videoNetworkStrategyPref.asObservable()
+        .map(this::downloadNetworkStrategyFor)
+        .switchMap(strategy -> networkStateListener.streamNetworkInternetCapability(strategy, Optional.empty()));
+    Observable<Boolean> canDownloadImages = networkStateListener
+        .streamNetworkInternetCapability(NetworkStrategy.WIFI_OR_MOBILE_DATA, Optional.empty());
+
+    disposables.add(
+        downloadQueue.recoverAfterRestart()
+            .andThen(Observable.combineLatest(
+                downloadQueue.downloads(),
+                canDownloadImages,
+                canDownloadVideos,
+                queueRecheckStream,
+                (downloads, canImages, canVideos, o) -> Pair.create(downloads, new NetworkAvailability(canImages, canVideos))))
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(
+                queueAndNetwork -> startQueuedDownloads(queueAndNetwork.first(), queueAndNetwork.second()),
+                RxUtils.logError("Download queue failed"))
+    );
+  }
+
+  /**
+   * An explicitly requested download shouldn't wait forever, so NEVER is treated as Wi-Fi only.
+   */
+  private NetworkStrategy downloadNetworkStrategyFor(NetworkStrategy videoStrategy) {
+    return videoStrategy == NetworkStrategy.NEVER ? NetworkStrategy.WIFI_ONLY : videoStrategy;
   }
 
   @Override
   public void onDestroy() {
     Timber.i("Stopping service");
     disposables.clear();
+    retryTimerDisposable.dispose();
+    for (Disposable runningDownload : runningDownloads.values()) {
+      runningDownload.dispose();
+    }
     super.onDestroy();
   }
 
   @Override
-  public int onStartCommand(Intent intent, int flags, int startId) {
-    Action serviceAction = (Action) intent.getSerializableExtra(KEY_ACTION);
+  public int onStartCommand(@Nullable Intent intent, int flags, int startId) {
+    // Restarted by the system after getting killed.
+    Action serviceAction = intent == null
+        ? Action.RESUME_QUEUED_DOWNLOADS
+        : (Action) intent.getSerializableExtra(KEY_ACTION);
+
     switch (serviceAction) {
       case ENQUEUE_DOWNLOAD:
         MediaLink mediaLinkToDownload = intent.getParcelableExtra(KEY_MEDIA_LINK_TO_DOWNLOAD);
-        boolean isDownloadAlreadyOngoing = ongoingDownloadLinks.contains(mediaLinkToDownload);
-        if (!isDownloadAlreadyOngoing) {
-          Timber.i("Enqueuing %s", mediaLinkToDownload);
-          ongoingDownloadLinks.add(mediaLinkToDownload);
-          downloadRequestStream.accept(mediaLinkToDownload);
-        } else {
-          Timber.w("Ignoring ongoing download");
-        }
+        Timber.i("Enqueuing %s", mediaLinkToDownload);
+        enqueue(Collections.singletonList(mediaLinkToDownload), null, QueuedMediaDownload.PRIORITY_HIGH);
+        break;
+
+      case ENQUEUE_ALBUM_DOWNLOAD:
+        List<MediaLink> albumLinksToDownload = intent.getParcelableArrayListExtra(KEY_MEDIA_LINKS_TO_DOWNLOAD);
+        String albumId = intent.getStringExtra(KEY_ALBUM_ID);
+        Timber.i("Enqueuing %s items of %s", albumLinksToDownload.size(), albumId);
+        enqueue(albumLinksToDownload, albumId, QueuedMediaDownload.PRIORITY_NORMAL);
+        break;
+
+      case RESUME_QUEUED_DOWNLOADS:
+        // Downloads get picked up from the queue on creation.
         break;
 
       case CANCEL_DOWNLOAD:
@@ -261,6 +336,17 @@ public class MediaDownloadService extends Service {
         downloadCancellationStream.accept(mediaLinkToCancel);
         break;
 
+      case CANCEL_ALBUM_DOWNLOAD:
+        String albumIdToCancel = intent.getStringExtra(KEY_ALBUM_ID);
+        for (QueuedMediaDownload queuedDownload : new ArrayList<>(queuedDownloads.values())) {
+          if (albumIdToCancel.equals(queuedDownload.batchId())) {
+            downloadCancellationStream.accept(queuedDownload.mediaLink());
+          }
+        }
+        albumProgresses.remove(albumIdToCancel);
+        NotificationManagerCompat.from(this).cancel(createNotificationIdForAlbum(albumIdToCancel));
+        break;
+
       case CANCEL_NOTIFICATION:
         MediaLink mediaLinkToCancelNotif = intent.getParcelableExtra(KEY_MEDIA_LINK_TO_CANCEL_NOTIF);
         downloadCancellationStream.accept(mediaLinkToCancelNotif);
@@ -269,15 +355,215 @@ public class MediaDownloadService extends Service {
       default:
         throw new UnsupportedOperationException("Unknown action: " + serviceAction);
     }
-    return START_NOT_STICKY;
+    return START_STICKY;
+  }
+
+  private void enqueue(List<MediaLink> mediaLinks, @Nullable String albumId, int priority) {
+    pendingQueueWriteCount++;
+    disposables.add(
+        downloadQueue.enqueue(mediaLinks, albumId, priority)
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .doOnTerminate(() -> onQueueWriteFinished())
+            .subscribe(() -> {}, RxUtils.logError("Couldn't enqueue download"))
+    );
+  }
+
+  /**
+   * The queue's own update can arrive before this, while the write still counted as pending.
+   * Checking again lets the service stop if it has become idle.
+   */
+  private void onQueueWriteFinished() {
+    pendingQueueWriteCount--;
+    queueRecheckStream.accept(LifecycleStreams.NOTHING);
+  }
+
+  /**
+   * Called every time the queue or the network changes.
+   */
+  private void startQueuedDownloads(List<QueuedMediaDownload> queue, NetworkAvailability networkAvailability) {
+    long now = System.currentTimeMillis();
+
+    queuedDownloads.clear();
+    for (QueuedMediaDownload download : queue) {
+      queuedDownloads.put(download.linkUrl(), download);
+
+      String albumId = download.batchId();
+      if (albumId != null) {
+        AlbumDownloadProgress albumProgress = albumProgresses.get(albumId);
+        if (albumProgress == null) {
+          albumProgress = new AlbumDownloadProgress();
+          albumProgresses.put(albumId, albumProgress);
+        }
+        if (albumProgress.onQueued(download.linkUrl())) {
+          albumProgressChangeStream.accept(albumId);
+        }
+      }
+    }
+
+    List<QueuedMediaDownload> downloadsToStart = MediaDownloadQueue.selectDownloadsToStart(
+        queue,
+        runningDownloads.keySet(),
+        MAX_CONCURRENT_DOWNLOADS,
+        networkAvailability,
+        now);
+
+    for (QueuedMediaDownload downloadToStart : downloadsToStart) {
+      startDownload(downloadToStart);
+    }
+
+    for (QueuedMediaDownload download : queue) {
+      boolean isWaiting = download.state() == QueuedMediaDownload.State.QUEUED;
+      if (isWaiting && download.batchId() == null) {
+        boolean isWaitingForNetwork = !networkAvailability.allows(download.mediaLink());
+        Boolean wasWaitingForNetwork = queuedNotifsWaitingForNetwork.put(download.linkUrl(), isWaitingForNetwork);
+        if (wasWaitingForNetwork == null || wasWaitingForNetwork != isWaitingForNetwork) {
+          updateQueuedNotification(download, isWaitingForNetwork);
+        }
+      }
+    }
+
+    retryTimerDisposable.dispose();
+    Optional<Long> nextRetryTime = MediaDownloadQueue.nextRetryTimeMillis(queue, now);
+    if (nextRetryTime.isPresent()) {
+      retryTimerDisposable = Observable.timer(nextRetryTime.get() - now, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread())
+          .subscribe(o -> queueRecheckStream.accept(LifecycleStreams.NOTHING));
+    }
+
+    boolean isIdle = runningDownloads.isEmpty() && pendingQueueWriteCount == 0 && !nextRetryTime.isPresent();
+    if (isIdle) {
+      if (!queue.isEmpty()) {
+        // Everything left is waiting for a network. Let the system restart
+        // downloads once it's available, instead of staying alive till then.
+        boolean imagesAreWaiting = false;
+        for (QueuedMediaDownload download : queue) {
+          imagesAreWaiting |= !download.mediaLink().isVideo();
+        }
+        NetworkStrategy requiredNetwork = imagesAreWaiting
+            ? NetworkStrategy.WIFI_OR_MOBILE_DATA
+            : downloadNetworkStrategyFor(videoNetworkStrategyPref.get());
+        ResumeMediaDownloadsJobService.schedule(this, requiredNetwork);
+      }
+      stopSelf();
+    }
+  }
+
+  private void startDownload(QueuedMediaDownload queuedDownload) {
+    MediaLink linkToDownload = queuedDownload.mediaLink();
+    Timber.i("Downloading %s", linkToDownload);
+    queuedNotifsWaitingForNetwork.remove(queuedDownload.linkUrl());
+
+    Observable<MediaDownloadJob> downloadStream;
+    if (linkToDownload.isVideo()) {
+      downloadStream = downloadVideoAndStreamProgress(linkToDownload).subscribeOn(Schedulers.io());
+    } else {
+      // Glide requests can only be started on the main thread.
+      downloadStream = downloadImageAndStreamProgress(linkToDownload).subscribeOn(AndroidSchedulers.mainThread());
+    }
+
+    Disposable downloadDisposable = downloadQueue.markDownloading(queuedDownload)
+        .subscribeOn(Schedulers.io())
+        .andThen(downloadStream)
+        .unsubscribeOn(Schedulers.io())
+        .observeOn(Schedulers.io())
+        .map(moveFileToUserSpaceOnDownload())
+        .doOnError(e -> Timber.e(e, "Couldn't download media"))
+        .onErrorReturn(error -> MediaDownloadJob.failed(linkToDownload, System.currentTimeMillis()))
+        .sample(MINIMUM_GAP_BETWEEN_NOTIFICATION_UPDATEs, TimeUnit.MILLISECONDS, AndroidSchedulers.mainThread(), true)
+        .subscribe(downloadJob -> onDownloadUpdate(queuedDownload, downloadJob));
+
+    runningDownloads.put(queuedDownload.linkUrl(), downloadDisposable);
+  }
+
+  private void onDownloadUpdate(QueuedMediaDownload queuedDownload, MediaDownloadJob downloadJob) {
+    int notificationId = createNotificationIdFor(downloadJob.mediaLink());
+    String albumId = queuedDownload.batchId();
+    AlbumDownloadProgress albumProgress = albumId == null ? null : albumProgresses.get(albumId);
+
+    switch (downloadJob.progressState()) {
+      case CONNECTING:
+      case IN_FLIGHT:
+        if (albumProgress != null) {
+          albumProgress.onProgress(queuedDownload.linkUrl(), downloadJob.downloadProgress());
+          albumProgressChangeStream.accept(albumId);
+        } else {
+          updateIndividualProgressNotification(downloadJob, notificationId);
+        }
+        break;
+
+      case FAILED:
+        runningDownloads.remove(queuedDownload.linkUrl());
+        pendingQueueWriteCount++;
+        disposables.add(
+            downloadQueue.rescheduleOrRemoveAfterFailure(queuedDownload)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnEvent((willRetry, error) -> onQueueWriteFinished())
+                .subscribe(
+                    willRetry -> {
+                      if (willRetry) {
+                        if (albumProgress == null) {
+                          updateRetryingNotification(queuedDownload);
+                        }
+                      } else {
+                        if (albumProgress != null) {
+                          albumProgress.onFail(queuedDownload.linkUrl());
+                          albumProgressChangeStream.accept(albumId);
+                        }
+                        displayErrorNotification(downloadJob, notificationId);
+                      }
+                    },
+                    RxUtils.logError("Couldn't reschedule failed download"))
+        );
+        break;
+
+      case DOWNLOADED:
+        runningDownloads.remove(queuedDownload.linkUrl());
+        pendingQueueWriteCount++;
+        disposables.add(
+            downloadQueue.remove(downloadJob.mediaLink())
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .doOnTerminate(() -> onQueueWriteFinished())
+                .subscribe(() -> {}, RxUtils.logError("Couldn't remove completed download"))
+        );
+        if (albumProgress != null) {
+          albumProgress.onComplete(queuedDownload.linkUrl());
+          albumProgressChangeStream.accept(albumId);
+        } else {
+          displaySuccessNotification(downloadJob, notificationId);
+        }
+        break;
+
+      default:
+        throw new UnsupportedOperationException("Unknown state: " + downloadJob.progressState());
+    }
+  }
+
+  private void updateQueuedNotification(QueuedMediaDownload queuedDownload, boolean isWaitingForNetwork) {
+    MediaDownloadJob queuedJob = MediaDownloadJob.queued(queuedDownload.mediaLink(), queuedDownload.enqueueTimeMillis());
+    @StringRes int titleRes = isWaitingForNetwork
+        ? R.string.mediadownloadnotification_waiting_for_wifi_title
+        : R.string.mediadownloadnotification_queued_title;
+    updateIndividualProgressNotification(queuedJob, createNotificationIdFor(queuedDownload.mediaLink()), titleRes);
+  }
+
+  private void updateRetryingNotification(QueuedMediaDownload queuedDownload) {
+    MediaDownloadJob queuedJob = MediaDownloadJob.queued(queuedDownload.mediaLink(), queuedDownload.enqueueTimeMillis());
+    queuedNotifsWaitingForNetwork.put(queuedDownload.linkUrl(), false);
+    updateIndividualProgressNotification(
+        queuedJob,
+        createNotificationIdFor(queuedDownload.mediaLink()),
+        R.string.mediadownloadnotification_retrying_title);
   }
 
   private void updateIndividualProgressNotification(MediaDownloadJob mediaDownloadJob, int notificationId) {
+    updateIndividualProgressNotification(mediaDownloadJob, notificationId, R.string.mediadownloadnotification_progress_title);
+  }
+
+  private void updateIndividualProgressNotification(MediaDownloadJob mediaDownloadJob, int notificationId, @StringRes int titleRes) {
     boolean isQueued = mediaDownloadJob.progressState() == MediaDownloadJob.ProgressState.QUEUED;
-    String notificationTitle = ellipsizeNotifTitleIfExceedsMaxLength(getString(
-        isQueued ? R.string.mediadownloadnotification_queued_title : R.string.mediadownloadnotification_progress_title,
-        mediaDownloadJob.mediaLink().unparsedUrl()
-    ));
+    String notificationTitle = ellipsizeNotifTitleIfExceedsMaxLength(getString(titleRes, mediaDownloadJob.mediaLink().unparsedUrl()));
     boolean indeterminateProgress = mediaDownloadJob.progressState() == MediaDownloadJob.ProgressState.CONNECTING;
 
     NotificationCompat.Action cancelAction = new NotificationCompat.Action(0,
@@ -311,6 +597,49 @@ public class MediaDownloadService extends Service {
     NotificationManagerCompat.from(this).notify(notificationId, notification);
   }
 
+  private void updateAlbumProgressNotification(String albumId, AlbumDownloadProgress albumProgress) {
+    int notificationId = createNotificationIdForAlbum(albumId);
+    int totalCount = albumProgress.totalCount();
+    NotificationCompat.Builder notificationBuilder = new NotificationCompat.Builder(this, getString(R.string.notification_channel_media_downloads_id))
+        .setLocalOnly(true)   // Hide from wearables.
+        .setGroup(NotificationConstants.MEDIA_DOWNLOAD_GROUP)
+        .setColor(ContextCompat.getColor(this, R.color.notification_icon_color))
+        .setOnlyAlertOnce(true);
+
+    if (albumProgress.isFinished()) {
+      albumProgresses.remove(albumId);
+      if (totalCount == 0) {
+        // Everything was cancelled.
+        NotificationManagerCompat.from(this).cancel(notificationId);
+        return;
+      }
+      notificationBuilder = notificationBuilder
+          .setContentTitle(getString(R.string.mediadownloadnotification_album_saved_title))
+          .setContentText(getString(R.string.mediadownloadnotification_album_saved_body, albumProgress.completedCount(), totalCount))
+          .setSmallIcon(R.drawable.ic_done_24dp)
+          .setOngoing(false)
+          .setAutoCancel(true);
+
+    } else {
+      NotificationCompat.Action cancelAction = new NotificationCompat.Action(0,
+          getString(R.string.mediadownloadnotification_cancel),
+          PendingIntent.getService(this,
+              createPendingIntentRequestId(REQUESTCODE_CANCEL_ALBUM_DOWNLOAD_PREFIX_, notificationId),
+              cancelAlbumDownloadIntent(this, albumId),
+              PendingIntent.FLAG_UPDATE_CURRENT
+          )
+      );
+      notificationBuilder = notificationBuilder
+          .setContentTitle(getString(R.string.mediadownloadnotification_album_progress_title))
+          .setContentText(getString(R.string.mediadownloadnotification_album_progress_body, albumProgress.finishedCount() + 1, totalCount))
+          .setSmallIcon(android.R.drawable.stat_sys_download)
+          .setOngoing(true)
+          .setProgress(100 /* max */, albumProgress.progress(), false)
+          .addAction(cancelAction);
+    }
+    NotificationManagerCompat.from(this).notify(notificationId, notificationBuilder.build());
+  }
+
   /**
    * We're ellipsizing the title so that the notification's content text (which is the progress
    * percentage at the time of writing this) is always visible.
@@ -499,10 +828,11 @@ public class MediaDownloadService extends Service {
   }
 
   /**
-   * Download a video and streams progress updates.
+   * Download a video and streams progress updates. Videos are written straight to the
+   * user-accessible directory and resume from where they stopped if the download fails.
    */
   private Observable<MediaDownloadJob> downloadVideoAndStreamProgress(MediaLink linkToDownload) {
-    return Observable.create(emitter -> {
+    return Observable.defer(() -> {
       long downloadStartTimeMillis = System.currentTimeMillis();
 
       String highQualityUrl = linkToDownload.highQualityUrl();
@@ -511,83 +841,64 @@ public class MediaDownloadService extends Service {
       if (videoFormat.canBeCached() && videoCacheServer.isCached(highQualityUrl)) {
         String cachedVideoFileUrl = videoCacheServer.getProxyUrl(highQualityUrl);
         File cachedVideoFile = new File(Uri.parse(cachedVideoFileUrl).getPath());
-        emitter.onNext(MediaDownloadJob.downloaded(linkToDownload, cachedVideoFile, System.currentTimeMillis()));
+        return Observable.just(MediaDownloadJob.downloaded(linkToDownload, cachedVideoFile, System.currentTimeMillis()));
+      }
 
+      String videoUrlToDownload;
+      if (linkToDownload instanceof RedditHostedVideoLink) {
+        videoUrlToDownload = ((RedditHostedVideoLink) linkToDownload).directUrlWithoutAudio();
+      } else if (videoFormat.canBeCached()) {
+        // Proxy through VideoCacheServer so that the downloaded video also gets saved to cache.
+        videoUrlToDownload = videoCacheServer.getProxyUrl(highQualityUrl, false);
       } else {
-        String videoUrlToDownload;
-        if (linkToDownload instanceof RedditHostedVideoLink) {
-          videoUrlToDownload = ((RedditHostedVideoLink) linkToDownload).directUrlWithoutAudio();
-        } else if (videoFormat.canBeCached()) {
-          // Proxy through VideoCacheServer so that the downloaded video also gets saved to cache.
-          videoUrlToDownload = videoCacheServer.getProxyUrl(highQualityUrl, false);
-        } else {
-          throw new UnsupportedOperationException("Couldn't figure out the video url for " + linkToDownload);
-        }
+        throw new UnsupportedOperationException("Couldn't figure out the video url for " + linkToDownload);
+      }
 
-        if (videoUrlToDownload == null) {
-          emitter.onNext(MediaDownloadJob.failed(linkToDownload, System.currentTimeMillis()));
-        } else {
-          emitter.onNext(MediaDownloadJob.connecting(linkToDownload, downloadStartTimeMillis));
-
-          // Emit progress updates while reading the video's input stream.
-          Request downloadRequest = new Request.Builder()
-              .url(videoUrlToDownload)
-              .get()
-              .build();
-          Call networkCall = okHttpClient.newCall(downloadRequest);
-          Response response = networkCall.execute();
-          Response responseWithProgressListener = response.newBuilder()
-              .body(OkHttpResponseBodyWithProgress.wrap(
-                  downloadRequest,
-                  response,
-                  (url, bytesRead, expectedContentLength) -> {
-                    if (bytesRead < expectedContentLength) {
-                      int progress = (int) (100 * (float) bytesRead / expectedContentLength);
-                      emitter.onNext(MediaDownloadJob.progress(linkToDownload, progress, downloadStartTimeMillis));
-                    }
-                  }
-              ))
-              .build();
-
-          if (!responseWithProgressListener.isSuccessful()) {
-            throw new IOException("Unexpected code: " + responseWithProgressListener);
-          }
+      if (videoUrlToDownload == null) {
+        return Observable.just(MediaDownloadJob.failed(linkToDownload, System.currentTimeMillis()));
+      }
 
-          // Write to a temporary file, that will later get replaced by moveFileToUserSpaceOnDownload().
-          File videoTempFile = new File(getCacheDir(), Urls.parseFileNameWithExtension(highQualityUrl));
-          //noinspection ConstantConditions
-          try (BufferedSource bufferedSource = responseWithProgressListener.body().source()) {
-            BufferedSink bufferedSink = Okio.buffer(Okio.sink(videoTempFile));
-            bufferedSink.writeAll(bufferedSource);
-            bufferedSink.close();
-          }
+      ensureStoragePermissionIsGranted();
+      File destination = videoDestinationFor(linkToDownload);
 
-          long downloadCompleteTimeMillis = System.currentTimeMillis();
-          emitter.onNext(MediaDownloadJob.downloaded(linkToDownload, videoTempFile, downloadCompleteTimeMillis));
-          emitter.onComplete();
+      return videoDownloader.download(videoUrlToDownload, destination)
+          .filter(progress -> progress.totalBytes() > 0 && progress.bytesDownloaded() < progress.totalBytes())
+          .map(progress -> (int) (100 * progress.bytesDownloaded() / progress.totalBytes()))
+          .distinctUntilChanged()
+          .map(progress -> MediaDownloadJob.progress(linkToDownload, progress, downloadStartTimeMillis))
+          .startWith(MediaDownloadJob.connecting(linkToDownload, downloadStartTimeMillis))
+          .concatWith(Observable.fromCallable(() -> MediaDownloadJob.downloaded(linkToDownload, destination, System.currentTimeMillis())));
+    });
+  }
 
-          emitter.setCancellable(() -> {
-            // Note: BufferedSink#writeAll() will also receive a thread interruption so file copy will stop.
-            networkCall.cancel();
-          });
-        }
+  private File videoDestinationFor(MediaLink videoLink) {
+    return Files2.INSTANCE.fileInPicturesDirectory(getResources(), Urls.parseFileNameWithExtension(videoLink.highQualityUrl()));
+  }
+
+  private void ensureStoragePermissionIsGranted() {
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      if (checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
+        throw new AssertionError("Storage permission not granted");
       }
-    });
+    }
   }
 
   private Function<MediaDownloadJob, MediaDownloadJob> moveFileToUserSpaceOnDownload() {
     return downloadJobUpdate -> {
-      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-        if (checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
-          throw new AssertionError("Storage permission not granted");
-        }
-      }
+      ensureStoragePermissionIsGranted();
 
       if (downloadJobUpdate.progressState() == DOWNLOADED) {
         MediaLink downloadedMediaLink = downloadJobUpdate.mediaLink();
         String mediaFileName = Urls.parseFileNameWithExtension(downloadedMediaLink.highQualityUrl());
+        File userAccessibleFile = Files2.INSTANCE.fileInPicturesDirectory(getResources(), mediaFileName);
+
+        //noinspection ConstantConditions
+        if (downloadJobUpdate.downloadedFile().equals(userAccessibleFile)) {
+          // Downloaded in place.
+          return downloadJobUpdate;
+        }
         //noinspection LambdaParameterTypeCanBeSpecified,ConstantConditions
-        File userAccessibleFile = Files2.INSTANCE.copyFileToPicturesDirectory(getResources(), downloadJobUpdate.downloadedFile(), mediaFileName);
+        userAccessibleFile = Files2.INSTANCE.copyFileToPicturesDirectory(getResources(), downloadJobUpdate.downloadedFile(), mediaFileName);
         return MediaDownloadJob.downloaded(downloadedMediaLink, userAccessibleFile, downloadJobUpdate.timestamp());
 
       } else {
@@ -600,9 +911,77 @@ public class MediaDownloadService extends Service {
     return (NotificationConstants.ID_MEDIA_DOWNLOAD_PROGRESS_PREFIX_ + mediaLink.unparsedUrl()).hashCode();
   }
 
+  private static int createNotificationIdForAlbum(String albumId) {
+    return (NotificationConstants.ID_MEDIA_DOWNLOAD_PROGRESS_PREFIX_ + albumId).hashCode();
+  }
+
   public static int createPendingIntentRequestId(String idPrefix, int idSuffix) {
     boolean isNegative = idSuffix < 0;
     long requestId = Long.parseLong(idPrefix + Math.abs(idSuffix));
     return (int) requestId * (isNegative ? -1 : 1);
   }
+
+  /**
+   * Aggregated progress of an album's downloads. Only tracks downloads seen
+   * since the service started, so totals restart if the service gets killed.
+   */
+  private static class AlbumDownloadProgress {
+    private final Set<String> linkUrls = new HashSet<>();
+    private final Set<String> completedLinkUrls = new HashSet<>();
+    private final Set<String> failedLinkUrls = new HashSet<>();
+    private final Map<String, Integer> progressOfRunningDownloads = new HashMap<>();
+
+    /**
+     * @return True if this download wasn't seen before.
+     */
+    boolean onQueued(String linkUrl) {
+      return linkUrls.add(linkUrl);
+    }
+
+    void onProgress(String linkUrl, int progress) {
+      progressOfRunningDownloads.put(linkUrl, progress);
+    }
+
+    void onComplete(String linkUrl) {
+      progressOfRunningDownloads.remove(linkUrl);
+      completedLinkUrls.add(linkUrl);
+    }
+
+    void onFail(String linkUrl) {
+      progressOfRunningDownloads.remove(linkUrl);
+      failedLinkUrls.add(linkUrl);
+    }
+
+    void onCancel(String linkUrl) {
+      progressOfRunningDownloads.remove(linkUrl);
+      linkUrls.remove(linkUrl);
+    }
+
+    int totalCount() {
+      return linkUrls.size();
+    }
+
+    int completedCount() {
+      return completedLinkUrls.size();
+    }
+
+    int finishedCount() {
+      return completedLinkUrls.size() + failedLinkUrls.size();
+    }
+
+    boolean isFinished() {
+      return finishedCount() >= linkUrls.size();
+    }
+
+    int progress() {
+      if (linkUrls.isEmpty()) {
+        return 0;
+      }
+      int progressSum = finishedCount() * 100;
+      for (int progress : progressOfRunningDownloads.values()) {
+        progressSum += progress;
+      }
+      return progressSum / linkUrls.size();
+    }
+  }
 }
@@ -147,8 +147,7 @@ public class MessageNotifActionsJobService extends DankJobService {
         parseMessage(params.getExtras().getString(KEY_MESSAGE_JSON))
             .flatMapCompletable(replyToMessage -> reddit.get()
                 .loggedInUser().reply(replyToMessage, replyText)
-                .toCompletable()
-                .andThen(messagesNotifManager.removeMessageNotifSeenStatus(replyToMessage)))
+                .toCompletable())
             .compose(applySchedulersCompletable())
             .subscribe(
                 () -> jobFinished(params, false),
@@ -161,8 +160,7 @@ public class MessageNotifActionsJobService extends DankJobService {
     //noinspection ConstantConditions
     unsubscribeOnDestroy(
         parseMessageArray(params.getExtras().getString(KEY_MESSAGE_ARRAY_JSON))
-            .flatMapCompletable(messages -> inboxRepository.setRead(messages, true)
-                .andThen(messagesNotifManager.removeMessageNotifSeenStatus(messages)))
+            .flatMapCompletable(messages -> inboxRepository.setRead(messages, true))
             .compose(applySchedulersCompletable())
             .subscribe(
                 () -> jobFinished(params, false),
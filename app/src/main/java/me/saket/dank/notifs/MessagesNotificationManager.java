@@ -1,12 +1,9 @@
 package me.saket.dank.notifs;
 
-import static java.util.Collections.unmodifiableSet;
-
 import android.app.Notification;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Build;
 import android.support.annotation.CheckResult;
 import android.support.v4.app.NotificationCompat;
@@ -22,7 +19,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -71,30 +67,12 @@ public class MessagesNotificationManager {
   @CheckResult
   public Single<List<Message>> filterUnseenMessages(List<Message> unfilteredMessages) {
     return seenMessageIdsStore.get()
-        .map(seenMessageIds -> {
-          List<Message> unseenMessages = new ArrayList<>(unfilteredMessages.size());
-
-          for (Message unfilteredMessage : unfilteredMessages) {
-            if (!seenMessageIds.contains(unfilteredMessage.getId())) {
-              unseenMessages.add(unfilteredMessage);
-            } else {
-              Timber.w("Already seen: %s", Strings.substringWithBounds(unfilteredMessage.getBody(), 50));
-            }
-          }
-
-          return Collections.unmodifiableList(unseenMessages);
-        });
+        .map(seenMessageIds -> UnreadNotificationReconciler.unseenMessages(unfilteredMessages, seenMessageIds));
   }
 
   @CheckResult
   public Completable markMessageNotifAsSeen(List<String> messageIds) {
-    return seenMessageIdsStore.get()
-        .flatMapCompletable(existingSeenMessageIds -> {
-          Set<String> updatedSeenMessages = new HashSet<>(existingSeenMessageIds.size() + messageIds.size());
-          updatedSeenMessages.addAll(existingSeenMessageIds);
-          updatedSeenMessages.addAll(messageIds);
-          return seenMessageIdsStore.save(updatedSeenMessages);
-        });
+    return seenMessageIdsStore.add(messageIds);
   }
 
   @CheckResult
@@ -111,61 +89,12 @@ public class MessagesNotificationManager {
     return markMessageNotifAsSeen(messageIds);
   }
 
-  /**
-   * Recycle <var>message</var>'s ID when it's no longer unread.
-   */
-  @CheckResult
-  public Completable removeMessageNotifSeenStatus(Message... messages) {
-    return seenMessageIdsStore.get()
-        .map(oldSeenMessageIds -> {
-          Set<String> updatedSeenMessageIds = new HashSet<>(oldSeenMessageIds.size());
-          updatedSeenMessageIds.addAll(oldSeenMessageIds);
-          //Timber.d("---------------------");
-          for (Message message : messages) {
-            //Timber.i("Removing seen for: %s", Strings.substringWithBounds(message.getBody(), 50));
-            updatedSeenMessageIds.remove(message.getId());
-          }
-          return Collections.unmodifiableSet(updatedSeenMessageIds);
-        })
-        .toCompletable();
-  }
-
   /**
    * Empty the seen message Ids when there are no more unread messages present.
    */
   @CheckResult
   public Completable removeAllMessageNotifSeenStatuses() {
-    return seenMessageIdsStore.save(Collections.emptySet());
-  }
-
-  public static class SeenUnreadMessagesIdStore {
-    private final SharedPreferences sharedPreferences;
-
-    private static final String KEY_SEEN_UNREAD_MESSAGES = "seenUnreadMessages";
-
-    @Inject
-    public SeenUnreadMessagesIdStore(SharedPreferences sharedPreferences) {
-      this.sharedPreferences = sharedPreferences;
-    }
-
-    /**
-     * @param seenMessageIds IDs of unread messages whose notifications the user has already seen.
-     */
-    @CheckResult
-    public Completable save(Set<String> seenMessageIds) {
-      return Completable.fromAction(() -> sharedPreferences.edit().putStringSet(KEY_SEEN_UNREAD_MESSAGES, seenMessageIds).apply());
-    }
-
-    /**
-     * @return Message IDs that the user has already seen.
-     */
-    @CheckResult
-    public Single<Set<String>> get() {
-      return Single.fromCallable(() -> {
-        Set<String> seenMessageIdSet = sharedPreferences.getStringSet(KEY_SEEN_UNREAD_MESSAGES, Collections.emptySet());
-        return unmodifiableSet(seenMessageIdSet);
-      });
-    }
+    return seenMessageIdsStore.clear();
   }
 
   public Completable displayNotification(Context context, List<Message> unreadMessages) {
@@ -0,0 +1,146 @@
+package me.saket.dank.notifs;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+import io.reactivex.functions.Function;
+import me.saket.dank.BuildConfig;
+import me.saket.dank.urlparser.MediaLink;
+import me.saket.dank.utils.Cursors;
+
+/**
+ * A download waiting in {@link MediaDownloadQueue}, or running.
+ */
+@AutoValue
+public abstract class QueuedMediaDownload {
+
+  static final String TABLE_NAME = "QueuedMediaDownload";
+  static final String COLUMN_LINK_URL = "link_url";
+  static final String COLUMN_LINK_PARCEL = "link_parcel";
+  static final String COLUMN_APP_VERSION = "app_version";
+  static final String COLUMN_BATCH_ID = "batch_id";
+  static final String COLUMN_PRIORITY = "priority";
+  static final String COLUMN_STATE = "state";
+  static final String COLUMN_ATTEMPT_COUNT = "attempt_count";
+  static final String COLUMN_NEXT_ATTEMPT_TIME = "next_attempt_time";
+  static final String COLUMN_ENQUEUE_TIME = "enqueue_time";
+
+  static final int PRIORITY_NORMAL = 0;
+  /** Downloads requested one at a time by the user, which shouldn't wait behind whole albums. */
+  static final int PRIORITY_HIGH = 1;
+
+  enum State {
+    QUEUED,
+    DOWNLOADING,
+  }
+
+  public static final String QUERY_CREATE_TABLE =
+      "CREATE TABLE " + TABLE_NAME + " ("
+          + COLUMN_LINK_URL + " TEXT NOT NULL PRIMARY KEY, "
+          + COLUMN_LINK_PARCEL + " BLOB NOT NULL, "
+          + COLUMN_APP_VERSION + " INTEGER NOT NULL, "
+          + COLUMN_BATCH_ID + " TEXT, "
+          + COLUMN_PRIORITY + " INTEGER NOT NULL, "
+          + COLUMN_STATE + " TEXT NOT NULL, "
+          + COLUMN_ATTEMPT_COUNT + " INTEGER NOT NULL, "
+          + COLUMN_NEXT_ATTEMPT_TIME + " INTEGER NOT NULL, "
+          + COLUMN_ENQUEUE_TIME + " INTEGER NOT NULL)";
+
+  static final String QUERY_GET_ALL_IN_ORDER =
+      "SELECT * FROM " + TABLE_NAME
+          + " ORDER BY " + COLUMN_PRIORITY + " DESC, " + COLUMN_ENQUEUE_TIME + " ASC";
+
+  static final String WHERE_LINK_URL = COLUMN_LINK_URL + " = ?";
+
+  static final String WHERE_STATE = COLUMN_STATE + " = ?";
+
+  static final String WHERE_APP_VERSION_IS_NOT = COLUMN_APP_VERSION + " != ?";
+
+  /**
+   * Primary key.
+   */
+  abstract String linkUrl();
+
+  abstract MediaLink mediaLink();
+
+  /**
+   * Non-null for downloads that were enqueued together, like an album.
+   */
+  @Nullable
+  abstract String batchId();
+
+  abstract int priority();
+
+  abstract State state();
+
+  abstract int attemptCount();
+
+  abstract long nextAttemptTimeMillis();
+
+  abstract long enqueueTimeMillis();
+
+  static QueuedMediaDownload create(MediaLink mediaLink, @Nullable String batchId, int priority, long enqueueTimeMillis) {
+    return new AutoValue_QueuedMediaDownload(mediaLink.unparsedUrl(), mediaLink, batchId, priority, State.QUEUED, 0, 0, enqueueTimeMillis);
+  }
+
+  /**
+   * Throws if the link's parcel can't be read, which can happen if its class changed since it was saved.
+   */
+  static final Function<Cursor, QueuedMediaDownload> MAPPER = cursor -> new AutoValue_QueuedMediaDownload(
+      Cursors.string(cursor, COLUMN_LINK_URL),
+      unparcelLink(Cursors.blob(cursor, COLUMN_LINK_PARCEL)),
+      Cursors.string(cursor, COLUMN_BATCH_ID),
+      Cursors.intt(cursor, COLUMN_PRIORITY),
+      State.valueOf(Cursors.string(cursor, COLUMN_STATE)),
+      Cursors.intt(cursor, COLUMN_ATTEMPT_COUNT),
+      Cursors.longg(cursor, COLUMN_NEXT_ATTEMPT_TIME),
+      Cursors.longg(cursor, COLUMN_ENQUEUE_TIME));
+
+  /**
+   * Links are saved as parcels because their many implementations don't share a JSON format.
+   * Parcels aren't stable across app versions, so rows are tagged with the version that wrote them.
+   */
+  ContentValues toValues() {
+    ContentValues values = new ContentValues(9);
+    values.put(COLUMN_LINK_URL, linkUrl());
+    values.put(COLUMN_LINK_PARCEL, parcelLink(mediaLink()));
+    values.put(COLUMN_APP_VERSION, BuildConfig.VERSION_CODE);
+    values.put(COLUMN_BATCH_ID, batchId());
+    values.put(COLUMN_PRIORITY, priority());
+    values.put(COLUMN_STATE, state().name());
+    values.put(COLUMN_ATTEMPT_COUNT, attemptCount());
+    values.put(COLUMN_NEXT_ATTEMPT_TIME, nextAttemptTimeMillis());
+    values.put(COLUMN_ENQUEUE_TIME, enqueueTimeMillis());
+    return values;
+  }
+
+  private static byte[] parcelLink(MediaLink mediaLink) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.writeParcelable(mediaLink, 0);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static MediaLink unparcelLink(byte[] bytes) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      parcel.unmarshall(bytes, 0, bytes.length);
+      parcel.setDataPosition(0);
+      Parcelable link = parcel.readParcelable(MediaLink.class.getClassLoader());
+      if (!(link instanceof MediaLink)) {
+        throw new IllegalStateException("Not a media link: " + link);
+      }
+      return (MediaLink) link;
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
@@ -0,0 +1,440 @@
+package me.saket.dank.notifs;
+
+import static io.reactivex.schedulers.Schedulers.io;
+
+import android.support.annotation.CheckResult;
+import android.support.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import me.saket.dank.utils.Optional;
+import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Downloads a file straight into its destination's directory, so that it only has to be
+ * renamed once complete. Progress is checkpointed next to the partial file, so a dropped
+ * connection or a cancelled download resumes with HTTP Range requests from where it stopped.
+ * Large files are split into segments that are downloaded in parallel if the server supports
+ * ranges.
+ */
+class ResumableDownloader {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long CHECKPOINT_INTERVAL_BYTES = 1024 * 1024;
+  private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+  private final OkHttpClient okHttpClient;
+  private final int maxSegments;
+  private final long minBytesPerSegment;
+
+  @AutoValue
+  abstract static class Progress {
+    abstract long bytesDownloaded();
+
+    /**
+     * -1 if the server didn't send a content length.
+     */
+    abstract long totalBytes();
+
+    static Progress create(long bytesDownloaded, long totalBytes) {
+      return new AutoValue_ResumableDownloader_Progress(bytesDownloaded, totalBytes);
+    }
+  }
+
+  /**
+   * @param maxSegments        Maximum number of parallel connections for a single file.
+   * @param minBytesPerSegment Files smaller than twice this size are downloaded over one connection.
+   */
+  ResumableDownloader(OkHttpClient okHttpClient, int maxSegments, long minBytesPerSegment) {
+    this.okHttpClient = okHttpClient;
+    this.maxSegments = maxSegments;
+    this.minBytesPerSegment = minBytesPerSegment;
+  }
+
+  /**
+   * Streams progress and completes once <var>destination</var> contains the whole file.
+   * Disposing leaves the partial file behind for the next download of the same destination.
+   */
+  @CheckResult
+  Observable<Progress> download(String url, File destination) {
+    return Observable.defer(() -> {
+      File partFile = partFileFor(destination);
+      File checkpointFile = checkpointFileFor(destination);
+
+      Optional<DownloadState> savedState = partFile.exists()
+          ? DownloadState.read(checkpointFile)
+          : Optional.empty();
+
+      Observable<Progress> downloadStream;
+      if (savedState.isPresent()) {
+        downloadStream = downloadSegments(url, savedState.get(), partFile, checkpointFile, null)
+            .onErrorResumeNext(error -> {
+              if (error instanceof ResumeRejectedException) {
+                Timber.w("Restarting download: %s", error.getMessage());
+                return downloadFromStart(url, partFile, checkpointFile);
+              }
+              return Observable.error(error);
+            });
+      } else {
+        downloadStream = downloadFromStart(url, partFile, checkpointFile);
+      }
+
+      return downloadStream.concatWith(Completable
+          .fromAction(() -> {
+            if (!checkpointFile.delete() || !partFile.renameTo(destination)) {
+              throw new IOException("Couldn't move " + partFile + " to " + destination);
+            }
+          })
+          .toObservable());
+    });
+  }
+
+  /**
+   * Deletes the progress of an unfinished download, so that it isn't resumed later.
+   */
+  @CheckResult
+  Completable discardPartialDownload(File destination) {
+    return Completable.fromAction(() -> {
+      //noinspection ResultOfMethodCallIgnored
+      partFileFor(destination).delete();
+      //noinspection ResultOfMethodCallIgnored
+      checkpointFileFor(destination).delete();
+    });
+  }
+
+  private static File partFileFor(File destination) {
+    return new File(destination.getParentFile(), "." + destination.getName() + ".part");
+  }
+
+  private static File checkpointFileFor(File destination) {
+    return new File(destination.getParentFile(), "." + destination.getName() + ".part.checkpoint");
+  }
+
+  private Observable<Progress> downloadFromStart(String url, File partFile, File checkpointFile) {
+    return Observable.defer(() -> {
+      //noinspection ResultOfMethodCallIgnored
+      partFile.delete();
+      //noinspection ResultOfMethodCallIgnored
+      checkpointFile.delete();
+
+      return execute(newRequest(url).build())
+          .flatMapObservable(response -> {
+            //noinspection ConstantConditions
+            long totalBytes = response.body().contentLength();
+            boolean acceptsRanges = "bytes".equalsIgnoreCase(response.header("Accept-Ranges"));
+
+            DownloadState state = new DownloadState(validatorOf(response), totalBytes, planSegments(totalBytes, acceptsRanges));
+            // The part file is only trusted when it has a checkpoint.
+            state.write(checkpointFile);
+            //noinspection ResultOfMethodCallIgnored
+            partFile.createNewFile();
+            return downloadSegments(url, state, partFile, checkpointFile, response);
+          });
+    });
+  }
+
+  private List<Segment> planSegments(long totalBytes, boolean acceptsRanges) {
+    List<Segment> segments = new ArrayList<>(maxSegments);
+    int segmentCount = acceptsRanges && totalBytes > 0
+        ? (int) Math.max(1, Math.min(maxSegments, totalBytes / minBytesPerSegment))
+        : 1;
+
+    if (segmentCount == 1) {
+      segments.add(new Segment(0, totalBytes, 0));
+      return segments;
+    }
+
+    long segmentSize = totalBytes / segmentCount;
+    for (int i = 0; i < segmentCount; i++) {
+      long start = i * segmentSize;
+      long end = i == segmentCount - 1 ? totalBytes : start + segmentSize;
+      segments.add(new Segment(start, end, 0));
+    }
+    return segments;
+  }
+
+  /**
+   * @param firstResponse Response of the request without a range, used for the first segment.
+   */
+  private Observable<Progress> downloadSegments(
+      String url,
+      DownloadState state,
+      File partFile,
+      File checkpointFile,
+      @Nullable Response firstResponse)
+  {
+    List<Observable<Long>> segmentStreams = new ArrayList<>(state.segments.size());
+    for (Segment segment : state.segments) {
+      if (state.isComplete(segment)) {
+        continue;
+      }
+
+      Single<Response> responseSingle;
+      if (firstResponse != null && segment.start == 0) {
+        responseSingle = Single.just(firstResponse);
+      } else {
+        responseSingle = execute(rangeRequest(url, state, segment))
+            .doOnSuccess(response -> verifyRangeResponse(response, state, segment));
+      }
+      segmentStreams.add(responseSingle
+          .flatMapObservable(response -> writeSegment(response, state, segment, partFile, checkpointFile))
+          .subscribeOn(io()));
+    }
+
+    return Observable.merge(segmentStreams)
+        .scan(state.bytesDownloaded(), (downloaded, bytesRead) -> downloaded + bytesRead)
+        .map(downloaded -> Progress.create(downloaded, state.totalBytes))
+        .doOnError(error -> state.close(checkpointFile))
+        .doOnDispose(() -> state.close(checkpointFile));
+  }
+
+  private Request rangeRequest(String url, DownloadState state, Segment segment) {
+    long resumeFrom = segment.start + segment.written;
+    String range = segment.end == -1
+        ? "bytes=" + resumeFrom + "-"
+        : "bytes=" + resumeFrom + "-" + (segment.end - 1);
+
+    Request.Builder builder = newRequest(url).header("Range", range);
+    if (state.validator != null) {
+      // Server sends the whole file instead if it changed since the download started.
+      builder.header("If-Range", state.validator);
+    }
+    return builder.build();
+  }
+
+  private static void verifyRangeResponse(Response response, DownloadState state, Segment segment) throws IOException {
+    long expectedStart = segment.start + segment.written;
+    Matcher matcher = CONTENT_RANGE_PATTERN.matcher(String.valueOf(response.header("Content-Range")));
+
+    if (response.code() != 206 || !matcher.matches() || Long.parseLong(matcher.group(1)) != expectedStart) {
+      response.close();
+      throw new ResumeRejectedException("Expected range from " + expectedStart + ", got: " + response);
+    }
+    String total = matcher.group(3);
+    if (state.totalBytes != -1 && !total.equals("*") && Long.parseLong(total) != state.totalBytes) {
+      response.close();
+      throw new ResumeRejectedException("File size changed from " + state.totalBytes + " to " + total);
+    }
+  }
+
+  /**
+   * Emits the number of bytes written on every read.
+   */
+  private static Observable<Long> writeSegment(
+      Response response,
+      DownloadState state,
+      Segment segment,
+      File partFile,
+      File checkpointFile)
+  {
+    return Observable.create(emitter -> {
+      //noinspection ConstantConditions
+      try (ResponseBody body = response.body(); RandomAccessFile file = new RandomAccessFile(partFile, "rw")) {
+        BufferedSource source = body.source();
+        file.seek(segment.start + segment.written);
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long remaining = segment.end == -1 ? Long.MAX_VALUE : segment.end - segment.start - segment.written;
+        long bytesSinceCheckpoint = 0;
+
+        while (remaining > 0 && !emitter.isDisposed()) {
+          int read = source.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+          if (read == -1) {
+            break;
+          }
+          file.write(buffer, 0, read);
+          state.onWritten(segment, read);
+          remaining -= read;
+          emitter.onNext((long) read);
+
+          bytesSinceCheckpoint += read;
+          if (bytesSinceCheckpoint >= CHECKPOINT_INTERVAL_BYTES) {
+            state.write(checkpointFile);
+            bytesSinceCheckpoint = 0;
+          }
+        }
+
+        if (emitter.isDisposed()) {
+          return;
+        }
+        if (segment.end == -1) {
+          state.onLengthDiscovered(segment);
+        } else if (remaining > 0) {
+          throw new EOFException("Connection closed " + remaining + " bytes before the segment ended");
+        }
+        emitter.onComplete();
+      }
+    });
+  }
+
+  private Single<Response> execute(Request request) {
+    return Single.create(emitter -> {
+      Call call = okHttpClient.newCall(request);
+      emitter.setCancellable(call::cancel);
+
+      Response response = call.execute();
+      if (!response.isSuccessful()) {
+        response.close();
+        throw new IOException("Unexpected code: " + response);
+      }
+      emitter.onSuccess(response);
+    });
+  }
+
+  private static Request.Builder newRequest(String url) {
+    return new Request.Builder()
+        .url(url)
+        // Videos are large, so keep them out of the HTTP cache.
+        .cacheControl(new CacheControl.Builder().noStore().build())
+        // Byte offsets must match the file and not a compressed stream.
+        .header("Accept-Encoding", "identity")
+        .get();
+  }
+
+  @Nullable
+  private static String validatorOf(Response response) {
+    String eTag = response.header("ETag");
+    if (eTag != null && !eTag.startsWith("W/")) {
+      return eTag;
+    }
+    return response.header("Last-Modified");
+  }
+
+  static class ResumeRejectedException extends IOException {
+    ResumeRejectedException(String message) {
+      super(message);
+    }
+  }
+
+  /**
+   * Range [start, end) of the file. End is -1 if the file's length isn't known.
+   */
+  private static class Segment {
+    final long start;
+    long end;
+    long written;
+
+    Segment(long start, long end, long written) {
+      this.start = start;
+      this.end = end;
+      this.written = written;
+    }
+  }
+
+  /**
+   * Segments are written by multiple threads, so all access goes through this class.
+   */
+  private static class DownloadState {
+    @Nullable final String validator;
+    final List<Segment> segments;
+    long totalBytes;
+    private boolean closed;
+
+    DownloadState(@Nullable String validator, long totalBytes, List<Segment> segments) {
+      this.validator = validator;
+      this.totalBytes = totalBytes;
+      this.segments = segments;
+    }
+
+    synchronized void onWritten(Segment segment, long byteCount) {
+      segment.written += byteCount;
+    }
+
+    synchronized void onLengthDiscovered(Segment segment) {
+      segment.end = segment.start + segment.written;
+      totalBytes = segment.end;
+    }
+
+    synchronized boolean isComplete(Segment segment) {
+      return segment.end != -1 && segment.start + segment.written >= segment.end;
+    }
+
+    synchronized long bytesDownloaded() {
+      long downloaded = 0;
+      for (Segment segment : segments) {
+        downloaded += segment.written;
+      }
+      return downloaded;
+    }
+
+    /**
+     * Format: validator, total bytes and then one "start end written" line per segment.
+     */
+    synchronized void write(File checkpointFile) throws IOException {
+      if (closed) {
+        // Segments that were stopped can still be running, but a restarted download may own the file now.
+        return;
+      }
+      File tempFile = new File(checkpointFile.getPath() + ".tmp");
+      try (BufferedSink sink = Okio.buffer(Okio.sink(tempFile))) {
+        sink.writeUtf8(validator == null ? "" : validator).writeUtf8("\n");
+        sink.writeUtf8(String.valueOf(totalBytes)).writeUtf8("\n");
+        for (Segment segment : segments) {
+          sink.writeUtf8(segment.start + " " + segment.end + " " + segment.written).writeUtf8("\n");
+        }
+      }
+      if (!tempFile.renameTo(checkpointFile)) {
+        throw new IOException("Couldn't write checkpoint: " + checkpointFile);
+      }
+    }
+
+    /**
+     * Writes a final checkpoint and ignores any further ones.
+     */
+    synchronized void close(File checkpointFile) {
+      try {
+        write(checkpointFile);
+      } catch (IOException e) {
+        Timber.w(e, "Couldn't checkpoint download");
+      }
+      closed = true;
+    }
+
+    static Optional<DownloadState> read(File checkpointFile) {
+      if (!checkpointFile.exists()) {
+        return Optional.empty();
+      }
+
+      try (BufferedSource source = Okio.buffer(Okio.source(checkpointFile))) {
+        String validator = source.readUtf8LineStrict();
+        long totalBytes = Long.parseLong(source.readUtf8LineStrict());
+
+        List<Segment> segments = new ArrayList<>();
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+          String[] parts = line.split(" ");
+          segments.add(new Segment(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+        }
+        if (segments.isEmpty()) {
+          return Optional.empty();
+        }
+        return Optional.of(new DownloadState(validator.isEmpty() ? null : validator, totalBytes, segments));
+
+      } catch (IOException | RuntimeException e) {
+        Timber.w(e, "Ignoring unreadable checkpoint");
+        return Optional.empty();
+      }
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package me.saket.dank.notifs;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+
+import me.saket.dank.DankJobService;
+import me.saket.dank.ui.preferences.NetworkStrategy;
+
+/**
+ * Restarts {@link MediaDownloadService} once the network needed by its queued downloads
+ * becomes available, so that the service doesn't have to stay alive waiting for it.
+ */
+public class ResumeMediaDownloadsJobService extends DankJobService {
+
+  static void schedule(Context context, NetworkStrategy networkStrategy) {
+    JobInfo.Builder builder = new JobInfo.Builder(ID_RESUME_MEDIA_DOWNLOADS, new ComponentName(context, ResumeMediaDownloadsJobService.class))
+        .setPersisted(true);
+    builder = networkStrategy.setNetworkRequirement(builder);
+
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    //noinspection ConstantConditions
+    jobScheduler.schedule(builder.build());
+  }
+
+  @Override
+  public JobStartCallback onStartJob2(JobParameters params) {
+    MediaDownloadService.resumeQueuedDownloads(this);
+    return JobStartCallback.finished();
+  }
+
+  @Override
+  public JobStopCallback onStopJob2() {
+    return JobStopCallback.drop();
+  }
+}
@@ -0,0 +1,223 @@
+package me.saket.dank.notifs;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+import android.support.annotation.CheckResult;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import timber.log.Timber;
+
+/**
+ * IDs of unread messages whose notifications the user has already seen (by dismissing them).
+ * <p>
+ * Stored as an append-only log of "timestamp id" lines, so marking messages as seen only writes
+ * the new IDs. IDs older than {@link #MAX_AGE_MILLIS} are dropped and the log is compacted once
+ * it's mostly made of dropped or repeated lines.
+ */
+@Singleton
+public class SeenUnreadMessagesIdStore {
+
+  @VisibleForTesting static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(30);
+  @VisibleForTesting static final int MIN_LINES_FOR_COMPACTION = 100;
+
+  private static final String LOG_FILE_NAME = "seen_unread_message_ids.log";
+  private static final String KEY_LEGACY_SEEN_UNREAD_MESSAGES = "seenUnreadMessages";
+
+  private final File logFile;
+  private final @Nullable SharedPreferences legacySharedPreferences;
+
+  /** Seen time of each ID, in the order they were marked. Null until the log is read. */
+  private Map<String, Long> seenTimes;
+  private int logLineCount;
+
+  @Inject
+  public SeenUnreadMessagesIdStore(Application appContext, SharedPreferences sharedPreferences) {
+    this(new File(appContext.getFilesDir(), LOG_FILE_NAME), sharedPreferences);
+  }
+
+  @VisibleForTesting
+  SeenUnreadMessagesIdStore(File logFile, @Nullable SharedPreferences legacySharedPreferences) {
+    this.logFile = logFile;
+    this.legacySharedPreferences = legacySharedPreferences;
+  }
+
+  /**
+   * @param seenMessageIds IDs of unread messages whose notifications the user has just seen.
+   */
+  @CheckResult
+  public Completable add(Collection<String> seenMessageIds) {
+    return Completable.fromAction(() -> {
+      synchronized (this) {
+        Map<String, Long> seenTimes = readIfNeeded();
+        long now = currentTimeMillis();
+
+        try (Writer writer = new BufferedWriter(new FileWriter(logFile, true))) {
+          for (String seenMessageId : seenMessageIds) {
+            // Re-adding an ID moves it to the end, so that the map stays ordered by seen time.
+            seenTimes.remove(seenMessageId);
+            seenTimes.put(seenMessageId, now);
+            writeLine(writer, seenMessageId, now);
+          }
+        }
+        logLineCount += seenMessageIds.size();
+        compactIfNeeded();
+      }
+    });
+  }
+
+  /**
+   * @return Message IDs that the user has already seen.
+   */
+  @CheckResult
+  public Single<Set<String>> get() {
+    return Single.fromCallable(() -> {
+      synchronized (this) {
+        return Collections.unmodifiableSet(new HashSet<>(readIfNeeded().keySet()));
+      }
+    });
+  }
+
+  @CheckResult
+  public Completable clear() {
+    return Completable.fromAction(() -> {
+      synchronized (this) {
+        seenTimes = new LinkedHashMap<>();
+        rewriteLog();
+      }
+    });
+  }
+
+  @VisibleForTesting
+  long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @VisibleForTesting
+  synchronized int logLineCount() {
+    return logLineCount;
+  }
+
+  private Map<String, Long> readIfNeeded() throws IOException {
+    if (seenTimes != null) {
+      return seenTimes;
+    }
+
+    seenTimes = new LinkedHashMap<>();
+    logLineCount = 0;
+
+    if (logFile.exists()) {
+      try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          int separatorIndex = line.indexOf(' ');
+          if (separatorIndex == -1) {
+            // Last line got cut off by a crash.
+            Timber.w("Ignoring malformed seen-id line: %s", line);
+            continue;
+          }
+          ++logLineCount;
+
+          String messageId = line.substring(separatorIndex + 1);
+          seenTimes.remove(messageId);
+          seenTimes.put(messageId, Long.parseLong(line.substring(0, separatorIndex)));
+        }
+      } catch (NumberFormatException e) {
+        Timber.e(e, "Seen-id log is corrupt. Starting over.");
+        seenTimes.clear();
+        // Otherwise new IDs get appended after the corrupt line and are lost on the next read.
+        rewriteLog();
+      }
+    }
+
+    boolean migratedLegacyIds = migrateLegacyIds();
+    boolean prunedIds = pruneOldIds();
+    if (migratedLegacyIds || prunedIds) {
+      rewriteLog();
+    } else {
+      compactIfNeeded();
+    }
+    return seenTimes;
+  }
+
+  /**
+   * IDs used to be stored as a {@link SharedPreferences} string-set.
+   */
+  private boolean migrateLegacyIds() {
+    if (legacySharedPreferences == null || !legacySharedPreferences.contains(KEY_LEGACY_SEEN_UNREAD_MESSAGES)) {
+      return false;
+    }
+
+    long now = currentTimeMillis();
+    for (String legacyId : legacySharedPreferences.getStringSet(KEY_LEGACY_SEEN_UNREAD_MESSAGES, Collections.emptySet())) {
+      if (!seenTimes.containsKey(legacyId)) {
+        seenTimes.put(legacyId, now);
+      }
+    }
+    legacySharedPreferences.edit().remove(KEY_LEGACY_SEEN_UNREAD_MESSAGES).apply();
+    return true;
+  }
+
+  private boolean pruneOldIds() {
+    long oldestAllowedTime = currentTimeMillis() - MAX_AGE_MILLIS;
+    boolean pruned = false;
+
+    // Oldest IDs come first.
+    Iterator<Long> iterator = seenTimes.values().iterator();
+    while (iterator.hasNext() && iterator.next() < oldestAllowedTime) {
+      iterator.remove();
+      pruned = true;
+    }
+    return pruned;
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (logLineCount >= MIN_LINES_FOR_COMPACTION && logLineCount > seenTimes.size() * 2) {
+      pruneOldIds();
+      rewriteLog();
+    }
+  }
+
+  /**
+   * Writes the live IDs to a temporary file and swaps it in, so that a crash midway can't lose them.
+   */
+  private void rewriteLog() throws IOException {
+    File compactedFile = new File(logFile.getPath() + ".tmp");
+    try (Writer writer = new BufferedWriter(new FileWriter(compactedFile))) {
+      for (Map.Entry<String, Long> entry : seenTimes.entrySet()) {
+        writeLine(writer, entry.getKey(), entry.getValue());
+      }
+    }
+    if (!compactedFile.renameTo(logFile)) {
+      throw new IOException("Couldn't replace " + logFile);
+    }
+    logLineCount = seenTimes.size();
+  }
+
+  private static void writeLine(Writer writer, String messageId, long seenTime) throws IOException {
+    writer.write(Long.toString(seenTime));
+    writer.write(' ');
+    writer.write(messageId);
+    writer.write('\n');
+  }
+}
@@ -0,0 +1,51 @@
+package me.saket.dank.notifs;
+
+import net.dean.jraw.models.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Works out which unread-message notifications to show and which to dismiss. Messages are
+ * matched through hash sets of their fullnames/IDs, so this takes linear time.
+ */
+public class UnreadNotificationReconciler {
+
+  private UnreadNotificationReconciler() {
+  }
+
+  /**
+   * @return Messages in <var>previousUnreads</var> that are no longer unread, whose notifications are now stale.
+   */
+  public static List<Message> staleMessages(List<Message> previousUnreads, List<Message> currentUnreads) {
+    Set<String> currentUnreadFullnames = new HashSet<>(currentUnreads.size() * 2);
+    for (Message currentUnread : currentUnreads) {
+      currentUnreadFullnames.add(currentUnread.getFullName());
+    }
+
+    List<Message> staleMessages = new ArrayList<>();
+    for (Message previousUnread : previousUnreads) {
+      if (!currentUnreadFullnames.contains(previousUnread.getFullName())) {
+        staleMessages.add(previousUnread);
+      }
+    }
+    return Collections.unmodifiableList(staleMessages);
+  }
+
+  /**
+   * @param seenMessageIds IDs from {@link SeenUnreadMessagesIdStore}.
+   * @return Messages in <var>unreads</var> whose notifications haven't been seen yet, in the same order.
+   */
+  public static List<Message> unseenMessages(List<Message> unreads, Set<String> seenMessageIds) {
+    List<Message> unseenMessages = new ArrayList<>(unreads.size());
+    for (Message unread : unreads) {
+      if (!seenMessageIds.contains(unread.getId())) {
+        unseenMessages.add(unread);
+      }
+    }
+    return Collections.unmodifiableList(unseenMessages);
+  }
+}
@@ -102,6 +102,13 @@ interface Reddit {
 
     fun vote(thing: Identifiable, voteDirection: VoteDirection): Completable
 
+    fun save(thing: Identifiable): Completable
+
+    fun unsave(thing: Identifiable): Completable
+
+    /** Full-names of all submissions and comments that Reddit lists as saved by the user, most recently saved first. */
+    fun savedFullNames(): Single<List<String>>
+
     fun messages(folder: InboxFolder, limit: Int, paginationAnchor: PaginationAnchor): Single<Iterator<Listing<Message>>>
 
     fun setMessagesRead(read: Boolean, vararg messages: Identifiable): Completable
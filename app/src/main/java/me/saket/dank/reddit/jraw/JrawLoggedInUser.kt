@@ -20,6 +20,8 @@ import net.dean.jraw.models.Message
 import net.dean.jraw.models.Submission
 import net.dean.jraw.models.VoteDirection
 import net.dean.jraw.oauth.AccountHelper
+import net.dean.jraw.pagination.Paginator
+import net.dean.jraw.references.PublicContributionReference
 
 class JrawLoggedInUser(private val clients: Observable<RedditClient>, private val accountHelper: AccountHelper) : Reddit.LoggedInUser {
 
@@ -72,6 +74,40 @@ class JrawLoggedInUser(private val clients: Observable<RedditClient>, private va
         }
   }
 
+  override fun save(thing: Identifiable): Completable {
+    return clients
+        .firstOrError()
+        .flatMapCompletable { Completable.fromAction { saveable(it, thing).save() } }
+  }
+
+  override fun unsave(thing: Identifiable): Completable {
+    return clients
+        .firstOrError()
+        .flatMapCompletable { Completable.fromAction { saveable(it, thing).unsave() } }
+  }
+
+  private fun saveable(client: RedditClient, thing: Identifiable): PublicContributionReference {
+    return when (parse(thing.fullName)) {
+      COMMENT -> client.comment(thing.id)
+      SUBMISSION -> client.submission(thing.id)
+      else -> throw AssertionError("Unknown contribution for save: $thing")
+    }
+  }
+
+  override fun savedFullNames(): Single<List<String>> {
+    return clients
+        .firstOrError()
+        .map {
+          // Iterating the paginator fetches pages until Reddit runs out of them.
+          it.me()
+              .history("saved")
+              .limit(Paginator.RECOMMENDED_MAX_LIMIT)
+              .build()
+              .flatten()
+              .map { contribution -> contribution.fullName }
+        }
+  }
+
   override fun messages(folder: InboxFolder, limit: Int, paginationAnchor: PaginationAnchor): Single<Iterator<Listing<Message>>> {
     return clients
         .firstOrError()
@@ -78,9 +78,10 @@ class JrawRedditModule {
       appInfoProvider: AppInfoProvider,
       tokenStore: SharedPreferencesTokenStore,
       tokenRefresher: JrawTokenRefresher,
-      @Named("deviceUuid") deviceUUID: UUID
+      @Named("deviceUuid") deviceUUID: UUID,
+      @Named("shared") sharedHttpClient: OkHttpClient
   ): AccountHelper {
-    val httpClient = OkHttpClient.Builder()
+    val httpClient = sharedHttpClient.newBuilder()
         .addNetworkInterceptor(tokenRefresher)
         .apply {
           if (BuildConfig.DEBUG) {
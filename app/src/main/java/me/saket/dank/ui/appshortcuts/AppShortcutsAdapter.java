@@ -3,7 +3,6 @@ package me.saket.dank.ui.appshortcuts;
 import android.annotation.SuppressLint;
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -25,6 +24,7 @@ import dagger.Lazy;
 import io.reactivex.Observable;
 import io.reactivex.functions.Consumer;
 import me.saket.dank.R;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RecyclerViewArrayAdapter;
 import me.saket.dank.utils.ItemTouchHelperDragAndDropCallback;
@@ -33,7 +33,7 @@ import me.saket.dank.widgets.swipe.SwipeableLayout;
 import me.saket.dank.widgets.swipe.ViewHolderWithSwipeActions;
 
 public class AppShortcutsAdapter extends RecyclerViewArrayAdapter<AppShortcutScreenUiModel, RecyclerView.ViewHolder>
-    implements Consumer<Pair<List<AppShortcutScreenUiModel>, DiffUtil.DiffResult>>
+    implements Consumer<Pair<List<AppShortcutScreenUiModel>, ListDiff>>
 {
 
   private static final Object NOTHING = LifecycleStreams.NOTHING;
@@ -109,7 +109,7 @@ public class AppShortcutsAdapter extends RecyclerViewArrayAdapter<AppShortcutScr
   }
 
   @Override
-  public void accept(Pair<List<AppShortcutScreenUiModel>, DiffUtil.DiffResult> pair) {
+  public void accept(Pair<List<AppShortcutScreenUiModel>, ListDiff> pair) {
     updateData(pair.first());
     pair.second().dispatchUpdatesTo(this);
   }
@@ -2,9 +2,9 @@ package me.saket.dank.ui.appshortcuts;
 
 import java.util.List;
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks;
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks;
 
-public class AppShortcutsUiModelDiffer extends SimpleDiffUtilsCallbacks<AppShortcutScreenUiModel> {
+public class AppShortcutsUiModelDiffer extends StableIdDiffUtilsCallbacks<AppShortcutScreenUiModel> {
 
   public static AppShortcutsUiModelDiffer create(List<AppShortcutScreenUiModel> oldModels, List<AppShortcutScreenUiModel> newModels) {
     return new AppShortcutsUiModelDiffer(oldModels, newModels);
@@ -15,8 +15,8 @@ public class AppShortcutsUiModelDiffer extends SimpleDiffUtilsCallbacks<AppShort
   }
 
   @Override
-  public boolean areItemsTheSame(AppShortcutScreenUiModel oldModel, AppShortcutScreenUiModel newModel) {
-    return oldModel.adapterId() == newModel.adapterId();
+  public long getItemId(AppShortcutScreenUiModel item) {
+    return item.adapterId();
   }
 
   @Override
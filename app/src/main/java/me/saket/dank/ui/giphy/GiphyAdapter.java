@@ -11,6 +11,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
 import com.bumptech.glide.request.RequestOptions;
 import com.jakewharton.rxrelay2.PublishRelay;
@@ -75,14 +77,33 @@ public class GiphyAdapter extends RecyclerViewArrayAdapter<GiphyGif, GiphyAdapte
   }
 
   /**
-   * Consume the given value.
-   *
-   * @param giphyGifs the value
-   * @throws Exception on error
+   * Only notifies insertions when <var>giphyGifs</var> is the current list with another page
+   * appended to it, so that rows that are already visible aren't bound again.
    */
   @Override
   public void accept(List<GiphyGif> giphyGifs) throws Exception {
-    updateDataAndNotifyDatasetChanged(giphyGifs);
+    List<GiphyGif> currentGifs = getData();
+    boolean isNextPage = currentGifs != null
+        && !currentGifs.isEmpty()
+        && giphyGifs.size() > currentGifs.size()
+        && giphyGifs.subList(0, currentGifs.size()).equals(currentGifs);
+
+    if (isNextPage) {
+      int insertedCount = giphyGifs.size() - currentGifs.size();
+      updateData(giphyGifs);
+      notifyItemRangeInserted(currentGifs.size(), insertedCount);
+    } else {
+      updateDataAndNotifyDatasetChanged(giphyGifs);
+    }
+  }
+
+  /**
+   * Shared with the preloader so that preloaded previews get reused when their rows are bound.
+   */
+  public static RequestBuilder<Drawable> previewRequest(RequestManager glide, GiphyGif giphyGif) {
+    return glide
+        .load(giphyGif.previewUrl())
+        .apply(RequestOptions.centerCropTransform());
   }
 
   public static class GiphyGifViewHolder extends RecyclerView.ViewHolder {
@@ -102,8 +123,7 @@ public class GiphyAdapter extends RecyclerViewArrayAdapter<GiphyGif, GiphyAdapte
       positionView.setText(String.valueOf(getAdapterPosition()));
       imageView.setContentDescription(giphyGif.title());
 
-      Glide.with(imageView)
-          .load(giphyGif.previewUrl())
+      previewRequest(Glide.with(imageView), giphyGif)
           .apply(RequestOptions.placeholderOf(randomPlaceholder))
           .transition(DrawableTransitionOptions.withCrossFade())
           .into(imageView);
@@ -12,19 +12,24 @@ import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 import android.widget.EditText;
+import android.widget.Toast;
 
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
 import com.jakewharton.rxbinding2.support.v7.widget.RxRecyclerView;
 import com.jakewharton.rxbinding2.widget.RxTextView;
 
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.inject.Inject;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import io.reactivex.Observable;
-import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 import me.saket.dank.BuildConfig;
 import me.saket.dank.R;
@@ -33,8 +38,11 @@ import me.saket.dank.data.ResolvedError;
 import me.saket.dank.di.Dank;
 import me.saket.dank.ui.DankPullCollapsibleActivity;
 import me.saket.dank.ui.media.MediaHostRepository;
+import me.saket.dank.utils.InfiniteScroller;
 import me.saket.dank.utils.Keyboards;
+import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Views;
+import me.saket.dank.utils.glide.ScrollAwareImagePreloader;
 import me.saket.dank.widgets.AnimatedProgressBar;
 import me.saket.dank.widgets.EmptyStateView;
 import me.saket.dank.widgets.ErrorStateView;
@@ -48,6 +56,10 @@ public class GiphyPickerActivity extends DankPullCollapsibleActivity {
 
   private static final String KEY_PICKED_GIPHY = "pickedGiphy";
   private static final String KEY_EXTRA_PAYLOAD = "extraPayload";
+  /** Same as the aspect ratio of list_item_giphy_search_result's ImageView. */
+  private static final float PREVIEW_ASPECT_RATIO = 0.65f;
+  private static final int MIN_PREVIEW_PRELOAD_COUNT = 6;
+  private static final int MAX_PREVIEW_PRELOAD_COUNT = GiphyRepository.GIFS_TO_LOAD_PER_NETWORK_CALL;
 
   @BindView(R.id.giphypicker_root) IndependentExpandablePageLayout activityContentPage;
   @BindView(R.id.giphypicker_recyclerview) RecyclerView gifRecyclerView;
@@ -119,36 +131,85 @@ public class GiphyPickerActivity extends DankPullCollapsibleActivity {
     gifRecyclerView.setLayoutManager(gridLayoutManager);
     gifRecyclerView.setAdapter(giphyAdapter);
 
+    // Load previews of rows that are about to scroll into view, including the ones of a page that just got appended.
+    int previewWidth = getResources().getDisplayMetrics().widthPixels / columnCount
+        - 2 * getResources().getDimensionPixelSize(R.dimen.spacing4);
+    int previewHeight = (int) (previewWidth * PREVIEW_ASPECT_RATIO);
+    RequestManager glide = Glide.with(this);
+    ScrollAwareImagePreloader previewPreloader = new ScrollAwareImagePreloader(
+        glide,
+        position -> position < giphyAdapter.getItemCount()
+            ? Optional.of(GiphyAdapter.previewRequest(glide, giphyAdapter.getItem(position)))
+            : Optional.empty(),
+        previewWidth,
+        previewHeight,
+        MIN_PREVIEW_PRELOAD_COUNT,
+        MAX_PREVIEW_PRELOAD_COUNT);
+    gifRecyclerView.addOnScrollListener(previewPreloader);
+
+    // Scroll events are delivered on the main thread, but pages must be loaded on a background thread.
+    Observable<Object> nextPageRequests = InfiniteScroller.streamPagingRequests(gifRecyclerView)
+        .subscribeOn(mainThread())
+        .unsubscribeOn(mainThread())
+        .observeOn(Schedulers.io());
+
     Observable<Object> retries = errorStateView.retryClicks().share();
 
     RxTextView.textChanges(searchField)
-        .map(sequence -> sequence.toString().toLowerCase(Locale.ENGLISH))
+        .map(sequence -> sequence.toString())
         .debounce(200, TimeUnit.MILLISECONDS, mainThread())
+        .map(searchQuery -> GiphyRepository.normalizeQuery(searchQuery))
+        // Typing a space or changing case doesn't change the results.
+        .distinctUntilChanged()
         .flatMap(searchQuery -> retries.map(o -> searchQuery).startWith(searchQuery))
-        .switchMapSingle(searchQuery -> mediaHostRepository.searchGifs(searchQuery)
-            .retry(3)
-            .subscribeOn(Schedulers.io())
-            .observeOn(mainThread())
-            .doOnSubscribe(o -> {
-              searchProgressBarView.show();
-              errorStateView.setVisibility(View.GONE);
-            })
-            .doFinally(() -> searchProgressBarView.hide())
-            .onErrorResumeNext(error -> {
-              gifRecyclerView.setVisibility(View.INVISIBLE);
-              errorStateView.setVisibility(View.VISIBLE);
-
-              ResolvedError resolvedError = errorResolver.resolve(error);
-              if (resolvedError.isUnknown()) {
-                Timber.e(error, "Error while searching GIFs");
-              }
-              errorStateView.applyFrom(resolvedError);
-              return Single.never();
-            })
-        )
+        .switchMap(searchQuery -> {
+          // Set once the first page is shown. A later page that fails to load keeps the earlier ones visible.
+          AtomicBoolean isFirstPageShown = new AtomicBoolean(false);
+
+          return mediaHostRepository.searchGifs(searchQuery, nextPageRequests)
+              .subscribeOn(Schedulers.io())
+              .observeOn(mainThread())
+              .doOnSubscribe(o -> {
+                searchProgressBarView.show();
+                errorStateView.setVisibility(View.GONE);
+              })
+              .doOnNext(o -> searchProgressBarView.hide())
+              .doOnNext(page -> {
+                if (page.offset() == 0) {
+                  previewPreloader.cancelAll();
+                  gifRecyclerView.scrollToPosition(0);
+                  emptyStateView.setVisibility(page.gifs().isEmpty() ? View.VISIBLE : View.GONE);
+                }
+              })
+              .scan(Collections.<GiphyGif>emptyList(), (loadedGifs, page) -> {
+                if (page.offset() == 0) {
+                  return page.gifs();
+                }
+                List<GiphyGif> loadedAndNewGifs = new ArrayList<>(loadedGifs.size() + page.gifs().size());
+                loadedAndNewGifs.addAll(loadedGifs);
+                loadedAndNewGifs.addAll(page.gifs());
+                return Collections.unmodifiableList(loadedAndNewGifs);
+              })
+              .skip(1)
+              .doFinally(() -> searchProgressBarView.hide())
+              .doOnNext(o -> isFirstPageShown.set(true))
+              .onErrorResumeNext(error -> {
+                ResolvedError resolvedError = errorResolver.resolve(error);
+                if (resolvedError.isUnknown()) {
+                  Timber.e(error, "Error while searching GIFs");
+                }
+
+                if (isFirstPageShown.get()) {
+                  Toast.makeText(this, resolvedError.errorMessageRes(), Toast.LENGTH_LONG).show();
+                } else {
+                  gifRecyclerView.setVisibility(View.INVISIBLE);
+                  errorStateView.setVisibility(View.VISIBLE);
+                  errorStateView.applyFrom(resolvedError);
+                }
+                return Observable.never();
+              });
+        })
         .takeUntil(lifecycle().onDestroy())
-        .doOnNext(o -> gifRecyclerView.scrollToPosition(0))
-        .doOnNext(gifs -> emptyStateView.setVisibility(gifs.isEmpty() ? View.VISIBLE : View.GONE))
         .doOnNext(o -> gifRecyclerView.setVisibility(View.VISIBLE))
         .subscribe(giphyAdapter);
 
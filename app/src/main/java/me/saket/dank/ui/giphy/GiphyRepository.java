@@ -8,41 +8,39 @@ import com.nytimes.android.external.store3.base.impl.StoreBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import me.saket.dank.di.DankApi;
 
+/**
+ * Searches GIFs on Giphy one page at a time. Pages are cached by their query and offset, so going
+ * back to an earlier query or scrolling through its results again doesn't make any network calls.
+ */
 @Singleton
 public class GiphyRepository {
 
-  private static final int GIFS_TO_LOAD_PER_NETWORK_CALL = 30;
+  static final int GIFS_TO_LOAD_PER_NETWORK_CALL = 30;
+  static final int RETRIES_PER_PAGE = 3;
 
-  private final DankApi dankApi;
-  private final Store<List<GiphyGif>, String> cache;
-
-//  private List<GiphyGif> trendingGifs = new ArrayList<>();
-//  private Map<String, List<GiphyGif>> searchGifs = new HashMap<>();
-
-//  private BehaviorRelay<List<GiphyGif>> trendingStream = BehaviorRelay.create();
-//  private BehaviorRelay<Map<String, List<GiphyGif>>> searchStream = BehaviorRelay.create();
+  private final Store<GiphySearchPage, GiphySearchPage.Key> cache;
 
   @Inject
   public GiphyRepository(DankApi dankApi) {
-    this.dankApi = dankApi;
-
-    cache = StoreBuilder.<String, GiphySearchResponse, List<GiphyGif>>parsedWithKey()
+    cache = StoreBuilder.<GiphySearchPage.Key, GiphySearchResponse, GiphySearchPage>parsedWithKey()
         .memoryPolicy(MemoryPolicy.builder()
-            .setMemorySize(30)
+            .setMemorySize(100)
             .setExpireAfterWrite(3)
             .setExpireAfterTimeUnit(TimeUnit.HOURS)
             .build())
-        .parser(response -> parseGiphyGifs(response))
-        .fetcher(query -> query.isEmpty()
-            ? dankApi.giphyTrending(DankApi.GIPHY_API_KEY, GIFS_TO_LOAD_PER_NETWORK_CALL, 0)
-            : dankApi.giphySearch(DankApi.GIPHY_API_KEY, query, GIFS_TO_LOAD_PER_NETWORK_CALL, 0))
+        .parser(response -> parseGiphyPage(response))
+        .fetcher(key -> key.query().isEmpty()
+            ? dankApi.giphyTrending(DankApi.GIPHY_API_KEY, GIFS_TO_LOAD_PER_NETWORK_CALL, key.offset())
+            : dankApi.giphySearch(DankApi.GIPHY_API_KEY, key.query(), GIFS_TO_LOAD_PER_NETWORK_CALL, key.offset()))
         .open();
   }
 
@@ -50,81 +48,47 @@ public class GiphyRepository {
     cache.clear();
   }
 
-//  @CheckResult
-//  public Observable<List<GiphyGif>> streamTrendingGifs() {
-//    return trendingStream;
-//  }
-
-//  @CheckResult
-//  private Observable<NetworkCallStatus> loadAndSaveMoreTrendingGifs() {
-//    Relay<NetworkCallStatus> networkCallStatusStream = BehaviorRelay.create();
-//    networkCallStatusStream.accept(NetworkCallStatus.createInFlight());
-//
-//    CompletionHandler<ListMediaResponse> listener = (ListMediaResponse listMediaResponse, Throwable throwable) -> {
-//      if (throwable != null) {
-//        networkCallStatusStream.accept(NetworkCallStatus.createFailed(throwable));
-//        return;
-//      }
-//
-//      List<GiphyGif> fetchedGifs = parseGiphyGifs(listMediaResponse);
-//      trendingGifs.addAll(Collections.unmodifiableList(fetchedGifs));
-//      trendingStream.accept(trendingGifs);
-//      networkCallStatusStream.accept(NetworkCallStatus.createIdle());
-//      //Timber.i("Fetched %s items", fetchedGifs.size());
-//
-//      // TODO: Kill stream once we reach the end.
-////      Pagination paginationInfo = listMediaResponse.getPagination();
-////      Timber.i("Pagination -> offset: %s, total count: %s", paginationInfo.getOffset(), paginationInfo.getTotalCount());
-//    };
-//
-//    giphy.trending(MediaType.gif, GIFS_TO_LOAD_PER_NETWORK_CALL, trendingGifs.size(), null, listener);
-//
-//    dankApi.giphySearch()
-//
-//    return networkCallStatusStream;
-//  }
-
-//  @CheckResult
-//  public Observable<List<GiphyGif>> streamSearchResults(String searchQuery) {
-//    if (!searchGifs.containsKey(searchQuery)) {
-//      searchGifs.put(searchQuery, Collections.emptyList());
-//    }
-//
-//    return searchStream
-//        .map(map -> map.get(searchQuery))
-//        .startWith(searchGifs.get(searchQuery));
-//  }
+  /**
+   * @param searchQuery Trending GIFs are loaded if this is empty.
+   */
+  @CheckResult
+  public Single<GiphySearchPage> page(String searchQuery, int offset) {
+    return cache.get(GiphySearchPage.Key.create(normalizeQuery(searchQuery), offset));
+  }
 
+  /**
+   * Loads the first page of results right away and each following page when
+   * <var>nextPageRequests</var> emits, until there are no more pages. Emissions of
+   * <var>nextPageRequests</var> while a page is being loaded are ignored. A page that fails
+   * to load is retried on its own, without loading the earlier pages again.
+   */
   @CheckResult
-  public Single<List<GiphyGif>> search(String searchQuery) {
-    return cache.get(searchQuery);
+  public Observable<GiphySearchPage> pages(String searchQuery, Observable<?> nextPageRequests) {
+    return pagesFrom(normalizeQuery(searchQuery), 0, nextPageRequests);
   }
 
-//  @CheckResult
-//  public Observable<NetworkCallStatus> searchAndSaveMoreGifs(String searchQuery) {
-//    // Separate stream for notifying status updates so that the caller can stay synchronous.
-//    int offset = searchGifs.get(searchQuery).size();
-//    Timber.i("Searching: %s (offset: %s)", searchQuery, offset);
-//
-//    return dankApi.giphySearch(DankApi.GIPHY_API_KEY, searchQuery, GIFS_TO_LOAD_PER_NETWORK_CALL, offset)
-//        .flatMap(response -> Single.fromCallable(() -> {
-//          List<GiphyGif> fetchedGifs = parseGiphyGifs(response);
-//          Timber.i("Fetched %s gifs for %s", fetchedGifs.size(), searchQuery);
-//
-//          List<GiphyGif> existingAndNewGifs = new ArrayList<>();
-//          existingAndNewGifs.addAll(searchGifs.get(searchQuery));
-//          existingAndNewGifs.addAll(Collections.unmodifiableList(fetchedGifs));
-//          searchGifs.put(searchQuery, existingAndNewGifs);
-//          searchStream.accept(searchGifs);
-//
-//          return NetworkCallStatus.createIdle();
-//        }))
-//        .onErrorReturn(throwable -> NetworkCallStatus.createFailed(throwable))
-//        .toObservable()
-//        .startWith(NetworkCallStatus.createInFlight());
-//  }
-
-  private List<GiphyGif> parseGiphyGifs(GiphySearchResponse response) {
+  private Observable<GiphySearchPage> pagesFrom(String searchQuery, int offset, Observable<?> nextPageRequests) {
+    return page(searchQuery, offset)
+        .retry(RETRIES_PER_PAGE)
+        .toObservable()
+        .concatMap(page -> {
+          if (!page.hasNextPage()) {
+            return Observable.just(page);
+          }
+          return Observable.just(page).concatWith(nextPageRequests
+              .take(1)
+              .concatMap(o -> pagesFrom(searchQuery, page.nextOffset(), nextPageRequests)));
+        });
+  }
+
+  /**
+   * Queries that only differ in case or whitespace share their results.
+   */
+  static String normalizeQuery(String searchQuery) {
+    return searchQuery.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+  }
+
+  private static GiphySearchPage parseGiphyPage(GiphySearchResponse response) {
     List<GiphySearchResponse.GiphyItem> giphyItems = response.items();
     List<GiphyGif> fetchedGifs = new ArrayList<>(giphyItems.size());
 
@@ -133,6 +97,8 @@ public class GiphyRepository {
       String thumbnailsPreviewUrl = giphyItem.gifVariants().fixedHeight200px().url();
       fetchedGifs.add(GiphyGif.create(giphyItem.id(), giphyItem.title(), under2mbUrl, thumbnailsPreviewUrl));
     }
-    return fetchedGifs;
+
+    GiphySearchResponse.PaginationInfo paginationInfo = response.paginationInfo();
+    return GiphySearchPage.create(paginationInfo.offset(), fetchedGifs, paginationInfo.totalCount());
   }
 }
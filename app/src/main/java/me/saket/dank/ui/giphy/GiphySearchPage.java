@@ -0,0 +1,49 @@
+package me.saket.dank.ui.giphy;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.List;
+
+/**
+ * One page of GIFs from {@link GiphyRepository}.
+ */
+@AutoValue
+public abstract class GiphySearchPage {
+
+  /**
+   * Giphy rejects offsets larger than this.
+   */
+  static final int MAX_OFFSET = 4999;
+
+  public abstract int offset();
+
+  public abstract List<GiphyGif> gifs();
+
+  /**
+   * Total number of GIFs available for the query, across all pages.
+   */
+  public abstract int totalCount();
+
+  public int nextOffset() {
+    return offset() + gifs().size();
+  }
+
+  public boolean hasNextPage() {
+    return !gifs().isEmpty() && nextOffset() < totalCount() && nextOffset() <= MAX_OFFSET;
+  }
+
+  public static GiphySearchPage create(int offset, List<GiphyGif> gifs, int totalCount) {
+    return new AutoValue_GiphySearchPage(offset, gifs, totalCount);
+  }
+
+  @AutoValue
+  abstract static class Key {
+    abstract String query();
+
+    abstract int offset();
+
+    static Key create(String query, int offset) {
+      return new AutoValue_GiphySearchPage_Key(query, offset);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package me.saket.dank.ui.media;
+
+import android.support.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.RequestOptions;
+
+import net.dean.jraw.models.SubmissionPreview;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import me.saket.dank.utils.Optional;
+import me.saket.dank.utils.glide.GlideUtils.SimpleRequestListener;
+import timber.log.Timber;
+
+/**
+ * Downloads screen-resolution images of pages next to the visible page so that they show
+ * up instantly when swiped to. Closer pages are prefetched first and prefetches of pages
+ * that move out of range are cancelled. Prefetching stops once an album has used up
+ * its byte budget, so that swiping through huge albums doesn't thrash the image cache.
+ */
+class AlbumNeighborPrefetcher {
+
+  /** In the order of priority. */
+  private static final int[] NEIGHBOR_OFFSETS = { +1, -1, +2, -2 };
+  private static final long ALBUM_BUDGET_BYTES = 40 * 1024 * 1024;
+
+  private final RequestManager glide;
+  private final int deviceDisplayWidth;
+  private final Map<String, FutureTarget<File>> inFlightPrefetches = new HashMap<>();
+  private final Set<String> prefetchedUrls = new HashSet<>();
+  private long prefetchedBytes;
+
+  AlbumNeighborPrefetcher(RequestManager glide, int deviceDisplayWidth) {
+    this.glide = glide;
+    this.deviceDisplayWidth = deviceDisplayWidth;
+  }
+
+  /**
+   * Must be called on the main thread.
+   */
+  void prefetchAround(int visiblePosition, List<MediaAlbumItem> albumItems, Optional<SubmissionPreview> redditImages) {
+    Set<String> urlsInRange = new HashSet<>(NEIGHBOR_OFFSETS.length);
+    int priorityIndex = 0;
+
+    for (int offset : NEIGHBOR_OFFSETS) {
+      int position = visiblePosition + offset;
+      if (position < 0 || position >= albumItems.size()) {
+        continue;
+      }
+      String url = urlToPrefetch(albumItems.get(position), redditImages);
+      if (url == null) {
+        continue;
+      }
+      urlsInRange.add(url);
+
+      if (!prefetchedUrls.contains(url) && !inFlightPrefetches.containsKey(url) && prefetchedBytes < ALBUM_BUDGET_BYTES) {
+        // Adjacent pages are more likely to be viewed than the ones after them.
+        Priority priority = priorityIndex < 2 ? Priority.HIGH : Priority.NORMAL;
+        prefetch(url, priority);
+      }
+      priorityIndex++;
+    }
+
+    // Cancel prefetches that are no longer next to the visible page.
+    Iterator<Map.Entry<String, FutureTarget<File>>> iterator = inFlightPrefetches.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, FutureTarget<File>> entry = iterator.next();
+      if (!urlsInRange.contains(entry.getKey())) {
+        glide.clear(entry.getValue());
+        iterator.remove();
+      }
+    }
+  }
+
+  @Nullable
+  private String urlToPrefetch(MediaAlbumItem albumItem, Optional<SubmissionPreview> redditImages) {
+    if (albumItem.mediaLink().isVideo()) {
+      return null;
+    }
+    return albumItem.highDefinitionEnabled()
+        ? albumItem.mediaLink().highQualityUrl()
+        : MediaImageFragment.screenResolutionImageUrl(albumItem.mediaLink(), redditImages, deviceDisplayWidth);
+  }
+
+  private void prefetch(String url, Priority priority) {
+    FutureTarget<File> target = glide
+        .downloadOnly()
+        .load(url)
+        .apply(RequestOptions.priorityOf(priority))
+        .listener(new SimpleRequestListener<File>() {
+          @Override
+          public void onResourceReady(File file) {
+            prefetchedBytes += file.length();
+            prefetchedUrls.add(url);
+            inFlightPrefetches.remove(url);
+          }
+
+          @Override
+          public void onLoadFailed(@Nullable Exception e) {
+            Timber.w(e, "Couldn't prefetch %s", url);
+            inFlightPrefetches.remove(url);
+          }
+        })
+        .submit();
+
+    if (!prefetchedUrls.contains(url)) {
+      inFlightPrefetches.put(url, target);
+    }
+  }
+
+  void cancelAll() {
+    for (FutureTarget<File> target : inFlightPrefetches.values()) {
+      glide.clear(target);
+    }
+    inFlightPrefetches.clear();
+  }
+}
@@ -56,6 +56,14 @@ public class ImgurRepository {
   private final SharedPreferences sharedPreferences;
   private final DankApi dankApi;
 
+  // Rate limits are read from disk once and held in memory, because every resolution checks them.
+  private boolean rateLimitsLoaded;
+  private int requestLimit = -1;
+  private int remainingRequests = -1;
+  private int uploadLimit = -1;
+  private int remainingUploads = -1;
+  private long rateLimitsLastCheckedMillis = -1;
+
   @Inject
   public ImgurRepository(Application appContext, DankApi dankApi) {
     sharedPreferences = appContext.getSharedPreferences(appContext.getPackageName() + "_imgur_ratelimits", Context.MODE_PRIVATE);
@@ -159,85 +167,85 @@ public class ImgurRepository {
 
   private Consumer<Response> saveImgurApiRateLimits() {
     return response -> {
-      Headers responseHeaders = response.headers();
-      saveApiRequestLimit(parseInt(responseHeaders.get("X-RateLimit-Requests-Limit")));
-      saveRemainingApiRequests(parseInt(responseHeaders.get("X-RateLimit-Requests-Remaining")));
-      saveApiUploadLimit(parseInt(responseHeaders.get("X-RateLimit-Uploads-Limit")));
-      saveRemainingApiUploads(parseInt(responseHeaders.get("X-RateLimit-Uploads-Remaining")));
+      // Albums and images are cached for a day. Rate limits of a cached response are as old as the response.
+      if (response.raw().networkResponse() == null) {
+        return;
+      }
 
-      saveRateLimitsLastCheckedAt(responseHeaders.getDate("Date").getTime());
+      Headers responseHeaders = response.headers();
+      saveRateLimits(
+          parseInt(responseHeaders.get("X-RateLimit-Requests-Limit")),
+          parseInt(responseHeaders.get("X-RateLimit-Requests-Remaining")),
+          parseInt(responseHeaders.get("X-RateLimit-Uploads-Limit")),
+          parseInt(responseHeaders.get("X-RateLimit-Uploads-Remaining")),
+          responseHeaders.getDate("Date").getTime());
     };
   }
 
-  private void saveRateLimitsLastCheckedAt(long lastCheckedMillis) {
-    sharedPreferences.edit().putLong(KEY_RATE_LIMIT_LAST_CHECK, lastCheckedMillis).apply();
+  private synchronized void loadRateLimitsIfNeeded() {
+    if (rateLimitsLoaded) {
+      return;
+    }
+    requestLimit = sharedPreferences.getInt(KEY_REQUEST_LIMIT, -1);
+    remainingRequests = sharedPreferences.getInt(KEY_REMAINING_REQUESTS, -1);
+    uploadLimit = sharedPreferences.getInt(KEY_UPLOAD_LIMIT, -1);
+    remainingUploads = sharedPreferences.getInt(KEY_REMAINING_UPLOADS, -1);
+    rateLimitsLastCheckedMillis = sharedPreferences.getLong(KEY_RATE_LIMIT_LAST_CHECK, -1);
+    rateLimitsLoaded = true;
   }
 
-  private long rateLimitsLastCheckedAtMillis(long valueIfEmpty) {
-    return sharedPreferences.getLong(KEY_RATE_LIMIT_LAST_CHECK, valueIfEmpty);
+  private synchronized void saveRateLimits(int requestLimit, int remainingRequests, int uploadLimit, int remainingUploads, long lastCheckedMillis) {
+    this.requestLimit = requestLimit;
+    this.remainingRequests = remainingRequests;
+    this.uploadLimit = uploadLimit;
+    this.remainingUploads = remainingUploads;
+    this.rateLimitsLastCheckedMillis = lastCheckedMillis;
+    rateLimitsLoaded = true;
+
+    sharedPreferences.edit()
+        .putInt(KEY_REQUEST_LIMIT, requestLimit)
+        .putInt(KEY_REMAINING_REQUESTS, remainingRequests)
+        .putInt(KEY_UPLOAD_LIMIT, uploadLimit)
+        .putInt(KEY_REMAINING_UPLOADS, remainingUploads)
+        .putLong(KEY_RATE_LIMIT_LAST_CHECK, lastCheckedMillis)
+        .apply();
   }
 
-  private void resetRateLimitsIfMonthChanged() {
-    long lastCheckedMillis = rateLimitsLastCheckedAtMillis(-1);
-    if (lastCheckedMillis == -1) {
+  private synchronized void resetRateLimitsIfMonthChanged() {
+    loadRateLimitsIfNeeded();
+    if (rateLimitsLastCheckedMillis == -1) {
       return;
     }
 
-    DateTime lastCheckedDateTime = DateTime.forInstant(lastCheckedMillis, TimeZone.getTimeZone("UTC"));
+    DateTime lastCheckedDateTime = DateTime.forInstant(rateLimitsLastCheckedMillis, TimeZone.getTimeZone("UTC"));
     DateTime nowDateTime = DateTime.now(TimeZone.getTimeZone("UTC"));
 
-    Timber.i("Now month: %s, Last checked month: %s", nowDateTime.getMonth(), lastCheckedDateTime.getMonth());
-
     if (nowDateTime.getMonth() > lastCheckedDateTime.getMonth()) {
       Timber.i("Months have changed. Resetting Imgur rate limit");
 
       // Months have changed! Reset the limits.
+      requestLimit = -1;
+      remainingRequests = -1;
+      uploadLimit = -1;
+      remainingUploads = -1;
+      rateLimitsLastCheckedMillis = -1;
       sharedPreferences.edit().clear().apply();
     }
   }
 
-  private void saveRemainingApiRequests(int requestsRemaining) {
-    sharedPreferences.edit().putInt(KEY_REMAINING_REQUESTS, requestsRemaining).apply();
-  }
-
-  private void saveApiRequestLimit(int requestLimit) {
-    sharedPreferences.edit().putInt(KEY_REQUEST_LIMIT, requestLimit).apply();
-  }
-
-  private boolean isApiRequestLimitReached() {
-    if (sharedPreferences.contains(KEY_REMAINING_REQUESTS) && sharedPreferences.contains(KEY_REQUEST_LIMIT)) {
-      int remainingRequests = sharedPreferences.getInt(KEY_REMAINING_REQUESTS, 0);
-      int requestLimit = sharedPreferences.getInt(KEY_REQUEST_LIMIT, 0);
-
-      Timber.i("remainingRequests: %s", remainingRequests);
-      Timber.i("requestLimit: %s", requestLimit);
-
-      if (remainingRequests < requestLimit * LIMIT_THRESHOLD_FACTOR) {
-        Timber.w("Imgur api request limit reached :(");
-        return true;
-      }
+  private synchronized boolean isApiRequestLimitReached() {
+    if (remainingRequests != -1 && requestLimit != -1 && remainingRequests < requestLimit * LIMIT_THRESHOLD_FACTOR) {
+      Timber.w("Imgur api request limit reached :(");
+      return true;
     }
     return false;
   }
 
-  private void saveRemainingApiUploads(int uploadsRemaining) {
-    sharedPreferences.edit().putInt(KEY_REMAINING_UPLOADS, uploadsRemaining).apply();
-  }
-
-  private void saveApiUploadLimit(int uploadLimit) {
-    sharedPreferences.edit().putInt(KEY_UPLOAD_LIMIT, uploadLimit).apply();
-  }
-
-  private boolean isApiUploadLimitReached() {
-    if (sharedPreferences.contains(KEY_REMAINING_UPLOADS) && sharedPreferences.contains(KEY_UPLOAD_LIMIT)) {
-      int remainingUploads = sharedPreferences.getInt(KEY_REMAINING_UPLOADS, 0);
-      int uploadLimit = sharedPreferences.getInt(KEY_UPLOAD_LIMIT, 0);
-
-      if (remainingUploads < uploadLimit * LIMIT_THRESHOLD_FACTOR) {
-        Timber.i("remainingUploads: %s", remainingUploads);
-        Timber.i("uploadLimit: %s", uploadLimit);
-        return true;
-      }
+  private synchronized boolean isApiUploadLimitReached() {
+    if (remainingUploads != -1 && uploadLimit != -1 && remainingUploads < uploadLimit * LIMIT_THRESHOLD_FACTOR) {
+      Timber.i("remainingUploads: %s", remainingUploads);
+      Timber.i("uploadLimit: %s", uploadLimit);
+      return true;
     }
     return false;
   }
@@ -56,6 +56,7 @@ import javax.inject.Named;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
+import butterknife.OnLongClick;
 import dagger.Lazy;
 import io.reactivex.Completable;
 import io.reactivex.Observable;
@@ -122,6 +123,7 @@ public class MediaAlbumViewerActivity extends DankActivity implements MediaFragm
   private SystemUiHelper systemUiHelper;
   private Drawable activityBackgroundDrawable;
   private MediaAlbumPagerAdapter mediaAlbumAdapter;
+  private AlbumNeighborPrefetcher neighborPrefetcher;
   private PopupMenu sharePopupMenu;
   private RxPermissions rxPermissions;
   private Relay<Boolean> systemUiVisibilityStream = BehaviorRelay.create();
@@ -207,6 +209,7 @@ public class MediaAlbumViewerActivity extends DankActivity implements MediaFragm
     shareButton.setOnTouchListener(sharePopupMenu.getDragToOpenListener());
 
     mediaAlbumAdapter = new MediaAlbumPagerAdapter(getSupportFragmentManager());
+    neighborPrefetcher = new AlbumNeighborPrefetcher(Glide.with(this), getDeviceDisplayWidth());
     mediaAlbumPager.setAdapter(mediaAlbumAdapter);
     hdEnabledMediaLinksStream.accept(hdEnabledMediaLinks);  // Initial value.
 
@@ -270,6 +273,9 @@ public class MediaAlbumViewerActivity extends DankActivity implements MediaFragm
 
   @Override
   protected void onDestroy() {
+    if (neighborPrefetcher != null) {
+      neighborPrefetcher.cancelAll();
+    }
     try {
       super.onDestroy();
     } catch (Exception e) {
@@ -367,6 +373,15 @@ public class MediaAlbumViewerActivity extends DankActivity implements MediaFragm
         .doOnNext(activeMediaItem -> updateMediaDisplayPosition())
         .takeUntil(lifecycle().onDestroy())
         .subscribe(viewpagerPageChangeStream);
+
+    // Prefetch neighbouring pages.
+    viewpagerPageChangeStream
+        .flatMapSingle(o -> getRedditSuppliedImages())
+        .observeOn(mainThread())
+        .takeUntil(lifecycle().onDestroy())
+        .subscribe(
+            redditImages -> neighborPrefetcher.prefetchAround(mediaAlbumPager.getCurrentItem(), mediaAlbumAdapter.getDataSet(), redditImages),
+            RxUtils.logError("Couldn't prefetch neighbouring album pages"));
   }
 
   private void updateMediaDisplayPosition() {
@@ -689,6 +704,29 @@ public class MediaAlbumViewerActivity extends DankActivity implements MediaFragm
         });
   }
 
+  /**
+   * Saves the entire album.
+   */
+  @OnLongClick(R.id.mediaalbumviewer_download)
+  boolean onLongClickDownloadMedia() {
+    if (resolvedMediaLink == null || mediaAlbumAdapter == null || mediaAlbumAdapter.getCount() <= 1) {
+      return false;
+    }
+
+    List<MediaLink> albumLinks = new ArrayList<>(mediaAlbumAdapter.getCount());
+    for (MediaAlbumItem albumItem : mediaAlbumAdapter.getDataSet()) {
+      albumLinks.add(albumItem.mediaLink());
+    }
+
+    rxPermissions.request(Manifest.permission.WRITE_EXTERNAL_STORAGE)
+        .filter(permissionGranted -> permissionGranted)
+        .subscribe(o -> {
+          MediaDownloadService.enqueueAlbumDownload(this, resolvedMediaLink.unparsedUrl(), albumLinks);
+          Toast.makeText(this, getString(R.string.mediaalbumviewer_saving_album, albumLinks.size()), Toast.LENGTH_SHORT).show();
+        });
+    return true;
+  }
+
   @OnClick(R.id.mediaalbumviewer_open_in_browser)
   void onClickOpenMediaInBrowser() {
     // Open the entire album in the browser.
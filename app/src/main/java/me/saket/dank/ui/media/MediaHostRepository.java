@@ -20,6 +20,7 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import dagger.Lazy;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
@@ -30,8 +31,9 @@ import me.saket.dank.data.CachedResolvedLinkInfo;
 import me.saket.dank.data.FileUploadProgressEvent;
 import me.saket.dank.data.exceptions.ImgurApiRequestRateLimitReachedException;
 import me.saket.dank.data.exceptions.ImgurApiUploadRateLimitReachedException;
-import me.saket.dank.ui.giphy.GiphyGif;
 import me.saket.dank.ui.giphy.GiphyRepository;
+import me.saket.dank.ui.giphy.GiphySearchPage;
+import me.saket.dank.ui.media.MediaResolutionScheduler.Host;
 import me.saket.dank.ui.media.gfycat.GfycatRepository;
 import me.saket.dank.urlparser.GfycatLink;
 import me.saket.dank.urlparser.GfycatUnresolvedLink;
@@ -60,6 +62,7 @@ public class MediaHostRepository {
   private final Lazy<UrlParser> urlParser;
   private final Lazy<GfycatRepository> gfycatRepository;
   private final Lazy<IncorrectMediaUrlParsingData> incorrectMediaUrlParsingData;
+  private final MediaResolutionScheduler resolutionScheduler;
 
   @Inject
   public MediaHostRepository(
@@ -70,7 +73,8 @@ public class MediaHostRepository {
       GiphyRepository giphyRepository,
       Lazy<UrlParser> urlParser,
       Lazy<GfycatRepository> gfycatRepository,
-      Lazy<IncorrectMediaUrlParsingData> incorrectMediaUrlParsingData)
+      Lazy<IncorrectMediaUrlParsingData> incorrectMediaUrlParsingData,
+      MediaResolutionScheduler resolutionScheduler)
   {
     this.streamableRepository = streamableRepository;
     this.imgurRepository = imgurRepository;
@@ -78,6 +82,7 @@ public class MediaHostRepository {
     this.urlParser = urlParser;
     this.gfycatRepository = gfycatRepository;
     this.incorrectMediaUrlParsingData = incorrectMediaUrlParsingData;
+    this.resolutionScheduler = resolutionScheduler;
 
     StoreFilePersister.JsonParser<MediaLink> jsonParser = new MediaLinkStoreJsonParser(moshi);
     DiskLruCachePathResolver<MediaLink> pathResolver = new DiskLruCachePathResolver<MediaLink>() {
@@ -168,8 +173,36 @@ public class MediaHostRepository {
         });
   }
 
+  /**
+   * Resolves links ahead of their use, so that a page of links gets resolved in one burst
+   * that {@link MediaResolutionScheduler} paces per host. Failures are ignored.
+   */
+  @CheckResult
+  public Completable prefetchResolutions(List<MediaLink> unresolvedLinks) {
+    return Observable.fromIterable(unresolvedLinks)
+        .flatMapCompletable(unresolvedLink -> resolveActualLinkIfNeeded(unresolvedLink)
+            .take(1)
+            .ignoreElements()
+            .onErrorComplete());
+  }
+
   // NOTE: If you see any "MaybeSource is empty" error, it means that the data couldn't be saved or read from cache store.
   private Single<MediaLink> resolveFromRemote(MediaLink unresolvedLink) {
+    if (unresolvedLink instanceof StreamableUnresolvedLink) {
+      return resolutionScheduler.schedule(Host.STREAMABLE, unresolvedLink, resolveFromHost(unresolvedLink));
+
+    } else if (unresolvedLink instanceof ImgurAlbumUnresolvedLink) {
+      return resolutionScheduler.schedule(Host.IMGUR, unresolvedLink, resolveFromHost(unresolvedLink));
+
+    } else if (unresolvedLink instanceof GfycatUnresolvedLink || unresolvedLink instanceof GfycatLink) {
+      return resolutionScheduler.schedule(Host.GFYCAT, unresolvedLink, resolveFromHost(unresolvedLink));
+
+    } else {
+      return resolveFromHost(unresolvedLink);
+    }
+  }
+
+  private Single<MediaLink> resolveFromHost(MediaLink unresolvedLink) {
     if (unresolvedLink instanceof StreamableUnresolvedLink) {
       return streamableRepository
           .video(((StreamableUnresolvedLink) unresolvedLink).videoId())
@@ -222,9 +255,12 @@ public class MediaHostRepository {
     return imgurRepository.uploadImage(image, mimeType);
   }
 
+  /**
+   * See {@link GiphyRepository#pages(String, Observable)}.
+   */
   @CheckResult
-  public Single<List<GiphyGif>> searchGifs(String searchQuery) {
-    return giphyRepository.search(searchQuery);
+  public Observable<GiphySearchPage> searchGifs(String searchQuery, Observable<?> nextPageRequests) {
+    return giphyRepository.pages(searchQuery, nextPageRequests);
   }
 
   public void clearCachedGifs() {
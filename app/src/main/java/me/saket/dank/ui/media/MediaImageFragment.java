@@ -14,11 +14,17 @@ import android.view.ViewGroup;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.Priority;
+import com.bumptech.glide.RequestBuilder;
 import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
 import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.DrawableImageViewTarget;
+import com.bumptech.glide.request.target.SimpleTarget;
 import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.transition.Transition;
 
+import net.dean.jraw.models.SubmissionPreview;
+
+import java.io.File;
 import javax.inject.Inject;
 
 import butterknife.BindView;
@@ -29,8 +35,10 @@ import me.saket.dank.data.ErrorResolver;
 import me.saket.dank.data.ResolvedError;
 import me.saket.dank.di.Dank;
 import me.saket.dank.ui.submission.adapter.ImageWithMultipleVariants;
+import me.saket.dank.urlparser.MediaLink;
 import me.saket.dank.utils.Animations;
 import me.saket.dank.utils.FileSizeUnit;
+import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Views;
 import me.saket.dank.utils.glide.GlidePaddingTransformation;
 import me.saket.dank.utils.glide.GlideProgressTarget;
@@ -46,6 +54,8 @@ import timber.log.Timber;
 public class MediaImageFragment extends BaseMediaViewerFragment {
 
   private static final String KEY_MEDIA_ITEM = "mediaItem";
+  private static final float HIGH_RESOLUTION_UPGRADE_ZOOM = 1.5f;
+  private static final int DRAWABLE_PADDING_PX = 1;
 
   @BindView(R.id.albumviewer_image_flickdismisslayout) FlickDismissLayout flickDismissViewGroup;
   @BindView(R.id.albumviewer_image_imageview) ZoomableImageView imageView;
@@ -59,6 +69,10 @@ public class MediaImageFragment extends BaseMediaViewerFragment {
   @Inject MediaHostRepository mediaHostRepository;
   @Inject Lazy<ErrorResolver> errorResolver;
 
+  private ZoomableImageView.OnZoomChangeListener zoomUpgradeListener;
+  private GlidePaddingTransformation paddingTransformation;
+  private Target<File> tiledImageSourceTarget;
+
   private enum ScreenState {
     LOADING_IMAGE,
     IMAGE_READY,
@@ -164,52 +178,147 @@ public class MediaImageFragment extends BaseMediaViewerFragment {
         .takeUntil(lifecycle().onDestroyCompletable())
         .subscribe(
             redditImages -> {
+              int deviceDisplayWidth = ((MediaFragmentCallbacks) requireActivity()).getDeviceDisplayWidth();
+              String screenResolutionUrl = screenResolutionImageUrl(mediaAlbumItemToShow.mediaLink(), redditImages, deviceDisplayWidth);
+
               String imageUrl;
+              String thumbnailUrl;
               if (mediaAlbumItemToShow.highDefinitionEnabled()) {
                 imageUrl = mediaAlbumItemToShow.mediaLink().highQualityUrl();
-
+                // Usually cached already by the submission screen or album prefetching.
+                thumbnailUrl = screenResolutionUrl.equals(imageUrl) ? null : screenResolutionUrl;
               } else {
-                String lowQualityUrl = mediaAlbumItemToShow.mediaLink().lowQualityUrl();
-                if (mediaAlbumItemToShow.mediaLink().isGif()) {
-                  imageUrl = lowQualityUrl;
-
-
-                } else {
-                  int deviceDisplayWidth = ((MediaFragmentCallbacks) requireActivity()).getDeviceDisplayWidth();
-                  ImageWithMultipleVariants imageWithMultipleVariants = ImageWithMultipleVariants.Companion.of(redditImages);
-                  imageUrl = imageWithMultipleVariants.findNearestFor(deviceDisplayWidth, lowQualityUrl);
-                }
+                imageUrl = screenResolutionUrl;
+                thumbnailUrl = null;
               }
 
-              loadImage(mediaAlbumItemToShow, isFirstLoad, imageUrl, false);
+              loadImage(mediaAlbumItemToShow, isFirstLoad, imageUrl, thumbnailUrl, false);
               imageView.setOnImageTooLargeExceptionListener(e -> {
                 Timber.e("Failed to draw image: %s, url: %s", e.getMessage(), imageUrl);
-                loadImage(mediaAlbumItemToShow, isFirstLoad, imageUrl, true);
+                loadImage(mediaAlbumItemToShow, isFirstLoad, imageUrl, null, true);
               });
+
+              upgradeToHighResolutionOnZoom(mediaAlbumItemToShow, screenResolutionUrl);
             }, error -> {
               ResolvedError resolvedError = errorResolver.get().resolve(error);
               resolvedError.ifUnknown(() -> Timber.e(error, "Error while trying to get option buttons' height"));
             });
   }
 
-  private void loadImage(MediaAlbumItem mediaAlbumItemToShow, boolean isFirstLoad, String imageUrl, boolean downSampleToFixError) {
+  /**
+   * URL of the image variant closest to the device's width. Also used by
+   * {@link AlbumNeighborPrefetcher} so that prefetched images get reused here.
+   */
+  static String screenResolutionImageUrl(MediaLink mediaLink, Optional<SubmissionPreview> redditImages, int deviceDisplayWidth) {
+    String lowQualityUrl = mediaLink.lowQualityUrl();
+    if (mediaLink.isGif()) {
+      return lowQualityUrl;
+    }
+    ImageWithMultipleVariants imageWithMultipleVariants = ImageWithMultipleVariants.Companion.of(redditImages);
+    return imageWithMultipleVariants.findNearestFor(deviceDisplayWidth, lowQualityUrl);
+  }
+
+  /**
+   * Draws the full-resolution image in tiles once the user zooms in far
+   * enough for the missing detail in the screen-resolution image to be noticeable.
+   */
+  private void upgradeToHighResolutionOnZoom(MediaAlbumItem mediaAlbumItem, String screenResolutionUrl) {
+    if (zoomUpgradeListener != null) {
+      imageView.removeOnImageZoomChangeListener(zoomUpgradeListener);
+      zoomUpgradeListener = null;
+    }
+
+    String highQualityUrl = mediaAlbumItem.mediaLink().highQualityUrl();
+    if (mediaAlbumItem.highDefinitionEnabled() || mediaAlbumItem.mediaLink().isGif() || highQualityUrl.equals(screenResolutionUrl)) {
+      return;
+    }
+
+    zoomUpgradeListener = new ZoomableImageView.OnZoomChangeListener() {
+      private boolean upgraded;
+
+      @Override
+      public void onZoomChange(float zoom) {
+        if (!upgraded && zoom > HIGH_RESOLUTION_UPGRADE_ZOOM && imageView.hasImage()) {
+          upgraded = true;
+          loadTiledImageSource(highQualityUrl);
+        }
+      }
+    };
+    imageView.addOnImageZoomChangeListener(zoomUpgradeListener);
+  }
+
+  /**
+   * Renders the visible region of the full resolution image in tiles, over the downsampled image.
+   */
+  private void loadTiledImageSource(String imageUrl) {
+    if (tiledImageSourceTarget != null) {
+      Glide.with(this).clear(tiledImageSourceTarget);
+    }
+
+    // Usually read from Glide's disk cache, which stores the original source.
+    tiledImageSourceTarget = Glide.with(this)
+        .downloadOnly()
+        .load(imageUrl)
+        .apply(RequestOptions.priorityOf(Priority.IMMEDIATE))
+        .into(new SimpleTarget<File>() {
+          @Override
+          public void onResourceReady(File sourceFile, Transition<? super File> transition) {
+            imageView.setTiledImageSource(sourceFile, DRAWABLE_PADDING_PX);
+          }
+
+          @Override
+          public void onLoadFailed(@Nullable Drawable errorDrawable) {
+            // The downsampled image is still good enough.
+            Timber.w("Couldn't load full resolution image for tiling: %s", imageUrl);
+          }
+        });
+  }
+
+  private RequestOptions imageRequestOptions(Priority priority) {
+    // Reusing the same transformation instance lets requests share Glide's memory cache.
+    if (paddingTransformation == null) {
+      paddingTransformation = new GlidePaddingTransformation(requireActivity(), Color.TRANSPARENT) {
+        @Override
+        public Size getPadding(int imageWidth, int imageHeight) {
+          // Adding a 1px transparent border improves anti-aliasing when rotating image (flick-dismiss).
+          return new Size(DRAWABLE_PADDING_PX, DRAWABLE_PADDING_PX);
+        }
+      };
+    }
+    return new RequestOptions()
+        .priority(priority)
+        .transform(paddingTransformation);
+  }
+
+  private void loadImage(
+      MediaAlbumItem mediaAlbumItemToShow,
+      boolean isFirstLoad,
+      String imageUrl,
+      @Nullable String thumbnailUrl,
+      boolean downSampleToFixError)
+  {
     DrawableImageViewTarget target = new DrawableImageViewTarget(imageView.view());
     ImageLoadProgressTarget<Drawable> targetWithProgress = new ImageLoadProgressTarget<>(target, progressView);
     targetWithProgress.setModel(requireActivity(), imageUrl);
 
     Size deviceDisplaySize = new Size(getResources().getDisplayMetrics().widthPixels, getResources().getDisplayMetrics().heightPixels);
 
-    RequestOptions options = new RequestOptions()
-        .priority(Priority.IMMEDIATE)
-        .transform(new GlidePaddingTransformation(requireActivity(), Color.TRANSPARENT) {
-          @Override
-          public Size getPadding(int imageWidth, int imageHeight) {
-            // Adding a 1px transparent border improves anti-aliasing when rotating image (flick-dismiss).
-            return new Size(1, 1);
-          }
-        });
+    // Neighbouring pages are created in advance by the ViewPager.
+    RequestOptions options = imageRequestOptions(getUserVisibleHint() ? Priority.IMMEDIATE : Priority.HIGH);
     //.apply(new RequestOptions().skipMemoryCache(true).diskCacheStrategy(DiskCacheStrategy.NONE))
 
+    imageView.clearTiledImageSource();
+    if (tiledImageSourceTarget != null) {
+      Glide.with(this).clear(tiledImageSourceTarget);
+      tiledImageSourceTarget = null;
+    }
+
+    // Full resolution images are fitted inside the View and their visible region
+    // gets drawn in tiles instead, so that huge images don't need huge bitmaps.
+    boolean renderInTiles = mediaAlbumItemToShow.highDefinitionEnabled()
+        && !mediaAlbumItemToShow.mediaLink().isGif()
+        && !downSampleToFixError;
+
     // Glide sometimes fails to load even tiny images with a "Failed to draw image: Canvas:
     // trying to draw too large(118103056bytes) bitmap."
     RequestOptions downscaledOptions;
@@ -217,17 +326,42 @@ public class MediaImageFragment extends BaseMediaViewerFragment {
       downscaledOptions = options
           .downsample(DownsampleStrategy.AT_LEAST)
           .override(deviceDisplaySize.getWidth(), deviceDisplaySize.getHeight());
+    } else if (renderInTiles) {
+      downscaledOptions = options.downsample(DownsampleStrategy.CENTER_INSIDE);
     } else {
       downscaledOptions = options;
     }
 
-    Glide.with(this)
+    RequestBuilder<Drawable> request = Glide.with(this)
         .load(imageUrl)
-        .apply(downscaledOptions)
+        .apply(downscaledOptions);
+
+    if (thumbnailUrl != null) {
+      // Show a lower resolution version while the full one loads.
+      request = request.thumbnail(Glide.with(this)
+          .load(thumbnailUrl)
+          .apply(options)
+          .listener(new SimpleRequestListener<Drawable>() {
+            @Override
+            public void onResourceReady(Drawable resource) {
+              imageView.setVisibility(View.VISIBLE);
+            }
+
+            @Override
+            public void onLoadFailed(@Nullable Exception e) {
+              // Ignored. The full resolution image is still loading.
+            }
+          }));
+    }
+
+    request
         .listener(new SimpleRequestListener<Drawable>() {
           @Override
           public void onResourceReady(Drawable drawable) {
             moveToScreenState(ScreenState.IMAGE_READY);
+            if (renderInTiles) {
+              loadTiledImageSource(imageUrl);
+            }
 
             Views.executeOnMeasure(imageView.view(), () -> {
               int deviceDisplayWidth = getResources().getDisplayMetrics().widthPixels;
@@ -0,0 +1,114 @@
+package me.saket.dank.ui.media;
+
+import android.support.annotation.CheckResult;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.urlparser.MediaLink;
+
+/**
+ * Runs remote resolutions of media links. Identical resolutions that are in flight are
+ * shared, and each media host gets its own concurrency limit and a minimum gap between
+ * requests so that resolving a whole page of links doesn't hammer any one host.
+ */
+@Singleton
+public class MediaResolutionScheduler {
+
+  enum Host {
+    IMGUR(2, 250),
+    GFYCAT(3, 100),
+    STREAMABLE(3, 100);
+
+    private final int maxConcurrentRequests;
+    private final long minGapBetweenRequestsMillis;
+
+    Host(int maxConcurrentRequests, long minGapBetweenRequestsMillis) {
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      this.minGapBetweenRequestsMillis = minGapBetweenRequestsMillis;
+    }
+  }
+
+  private final Map<Host, HostLane> lanes = new EnumMap<>(Host.class);
+  private final Map<String, Single<MediaLink>> inFlightResolutions = new HashMap<>();
+
+  @Inject
+  public MediaResolutionScheduler() {
+    for (Host host : Host.values()) {
+      lanes.put(host, new HostLane(host));
+    }
+  }
+
+  /**
+   * @param resolution Expected to make blocking network calls, like Retrofit's synchronous call adapter does.
+   */
+  @CheckResult
+  Single<MediaLink> schedule(Host host, MediaLink unresolvedLink, Single<MediaLink> resolution) {
+    String key = unresolvedLink.cacheKey();
+
+    return Single.defer(() -> {
+      synchronized (inFlightResolutions) {
+        Single<MediaLink> inFlightResolution = inFlightResolutions.get(key);
+        if (inFlightResolution != null) {
+          return inFlightResolution;
+        }
+
+        Single<MediaLink> sharedResolution = lanes.get(host).run(resolution)
+            .doOnEvent((resolvedLink, error) -> {
+              synchronized (inFlightResolutions) {
+                inFlightResolutions.remove(key);
+              }
+            })
+            .cache();
+        inFlightResolutions.put(key, sharedResolution);
+        return sharedResolution;
+      }
+    });
+  }
+
+  private static class HostLane {
+    private final Scheduler scheduler;
+    private final long minGapMillis;
+    private long nextStartTimeMillis;
+
+    HostLane(Host host) {
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(
+          host.maxConcurrentRequests,
+          host.maxConcurrentRequests,
+          30, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          runnable -> {
+            Thread thread = new Thread(runnable, "MediaResolution-" + host.name().toLowerCase());
+            thread.setDaemon(true);
+            return thread;
+          });
+      executor.allowCoreThreadTimeOut(true);
+
+      this.scheduler = Schedulers.from(executor);
+      this.minGapMillis = host.minGapBetweenRequestsMillis;
+    }
+
+    <T> Single<T> run(Single<T> task) {
+      return Completable.fromAction(() -> Thread.sleep(reserveStartDelayMillis()))
+          .andThen(task)
+          .subscribeOn(scheduler);
+    }
+
+    private synchronized long reserveStartDelayMillis() {
+      long now = System.currentTimeMillis();
+      long startTime = Math.max(now, nextStartTimeMillis);
+      nextStartTimeMillis = startTime + minGapMillis;
+      return startTime - now;
+    }
+  }
+}
@@ -6,7 +6,6 @@ import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 
 import dagger.Lazy;
-import io.reactivex.Completable;
 import io.reactivex.Single;
 import me.saket.dank.di.DankApi;
 import me.saket.dank.urlparser.GfycatLink;
@@ -18,6 +17,8 @@ public class GfycatRepository {
   private final Lazy<DankApi> dankApi;
   private final Lazy<UrlParserConfig> urlParserConfig;
   private final Lazy<GfycatRepositoryData> data;
+  private final Object tokenRefreshLock = new Object();
+  private Single<String> ongoingTokenRefresh;
 
   @Inject
   public GfycatRepository(
@@ -54,19 +55,30 @@ public class GfycatRepository {
 
   private Single<String> authToken() {
     return data.get().tokenExpiryTimeMillis()
-        .map(expiryTimeMillis -> {
-          long fiveMinutesAgo = currentTimeMillis() - TimeUnit.MINUTES.toMillis(5);
-          return expiryTimeMillis < fiveMinutesAgo;
-        })
-        .flatMapCompletable(hasTokenExpired -> {
-          if (hasTokenExpired) {
-            return dankApi.get()
-                .gfycatOAuth("2_K1VUup", "vk8KwIPVFNa2eRWr7JbPfACeG0LPAVw2nHZ-cWc19te7RaMr0X_UrSKXOYHClctA")
-                .flatMapCompletable(response -> data.get().saveOAuthResponse(response));
-          } else {
-            return Completable.complete();
-          }
-        })
-        .andThen(data.get().accessToken());
+        .flatMap(expiryTimeMillis -> {
+          long fiveMinutesFromNow = currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+          boolean isTokenExpiring = expiryTimeMillis < fiveMinutesFromNow;
+          return isTokenExpiring ? refreshAuthToken() : data.get().accessToken();
+        });
+  }
+
+  /**
+   * Concurrent resolutions that find the token expired share one refresh instead of fetching a token each.
+   */
+  private Single<String> refreshAuthToken() {
+    synchronized (tokenRefreshLock) {
+      if (ongoingTokenRefresh == null) {
+        ongoingTokenRefresh = dankApi.get()
+            .gfycatOAuth("2_K1VUup", "vk8KwIPVFNa2eRWr7JbPfACeG0LPAVw2nHZ-cWc19te7RaMr0X_UrSKXOYHClctA")
+            .flatMap(response -> data.get().saveOAuthResponse(response).andThen(Single.just(response.accessToken())))
+            .doOnEvent((token, error) -> {
+              synchronized (tokenRefreshLock) {
+                ongoingTokenRefresh = null;
+              }
+            })
+            .cache();
+      }
+      return ongoingTokenRefresh;
+    }
   }
 }
@@ -10,6 +10,7 @@ import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.design.widget.Snackbar;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.widget.Toolbar;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,7 +18,6 @@ import android.widget.Button;
 import android.widget.ScrollView;
 
 import com.bumptech.glide.Glide;
-import com.squareup.sqlbrite2.BriteDatabase;
 
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
@@ -29,6 +29,7 @@ import dagger.Lazy;
 import io.reactivex.Completable;
 import io.reactivex.schedulers.Schedulers;
 import me.saket.dank.R;
+import me.saket.dank.data.InboxRepository;
 import me.saket.dank.data.LinkMetadataRepository;
 import me.saket.dank.di.Dank;
 import me.saket.dank.notifs.CheckUnreadMessagesJobService;
@@ -36,14 +37,16 @@ import me.saket.dank.reply.ReplyRepository;
 import me.saket.dank.ui.DankPullCollapsibleActivity;
 import me.saket.dank.ui.appshortcuts.AppShortcutRepository;
 import me.saket.dank.ui.media.MediaHostRepository;
-import me.saket.dank.ui.submission.SubmissionCommentTreeUiConstructor;
+import me.saket.dank.ui.submission.CommentRowStateRepository;
 import me.saket.dank.ui.submission.SubmissionRepository;
 import me.saket.dank.ui.subscriptions.SubscriptionRepository;
-import me.saket.dank.ui.user.messages.CachedMessage;
 import me.saket.dank.urlparser.UrlParser;
+import me.saket.dank.utils.PipelineProfiler;
 import me.saket.dank.utils.RxUtils;
 import me.saket.dank.utils.Views;
 import me.saket.dank.utils.markdown.Markdown;
+import me.saket.dank.utils.okhttp.OkHttpNetworkStats;
+import me.saket.dank.utils.okhttp.OkHttpRequestMetrics;
 import me.saket.dank.vote.VotingManager;
 import me.saket.dank.widgets.InboxUI.IndependentExpandablePageLayout;
 import timber.log.Timber;
@@ -56,8 +59,8 @@ public class HiddenPreferencesActivity extends DankPullCollapsibleActivity {
   @BindView(R.id.hiddenpreferences_content_scrollview) ScrollView contentScrollView;
   @BindView(R.id.hiddenpreferences_content) ViewGroup contentContainer;
 
-  @Inject BriteDatabase briteDatabase;
   @Inject SubmissionRepository submissionRepository;
+  @Inject Lazy<InboxRepository> inboxRepository;
   @Inject SubscriptionRepository subscriptionRepository;
   @Inject ReplyRepository replyRepository;
   @Inject LinkMetadataRepository linkMetadataRepository;
@@ -67,6 +70,10 @@ public class HiddenPreferencesActivity extends DankPullCollapsibleActivity {
   @Inject Lazy<MediaHostRepository> mediaHostRepository;
   @Inject Lazy<AppShortcutRepository> appShortcutRepository;
   @Inject @Named("walkthroughs") Lazy<SharedPreferences> sharedPreferences;
+  @Inject Lazy<OkHttpRequestMetrics> requestMetrics;
+  @Inject Lazy<OkHttpNetworkStats> networkStats;
+  @Inject Lazy<PipelineProfiler> pipelineProfiler;
+  @Inject Lazy<CommentRowStateRepository> commentRowStateRepository;
 
   public static void start(Context context) {
     context.startActivity(new Intent(context, HiddenPreferencesActivity.class));
@@ -101,12 +108,9 @@ public class HiddenPreferencesActivity extends DankPullCollapsibleActivity {
           .subscribe();
     });
 
-    addButton("Drop messages table", v -> {
-      Completable
-          .fromAction(() -> {
-            briteDatabase.executeAndTrigger(CachedMessage.TABLE_NAME, "DROP TABLE " + CachedMessage.TABLE_NAME);
-            briteDatabase.executeAndTrigger(CachedMessage.TABLE_NAME, CachedMessage.QUERY_CREATE_TABLE);
-          })
+    addButton("Clear cached messages", v -> {
+      inboxRepository.get()
+          .removeAllCachedMessages()
           .compose(RxUtils.applySchedulersCompletable())
           .subscribe(() -> {
             Snackbar.make(v, "Messages dropped", Snackbar.LENGTH_SHORT).show();
@@ -187,7 +191,38 @@ public class HiddenPreferencesActivity extends DankPullCollapsibleActivity {
     });
 
     addButton("Reset collapsed comments", o -> {
-      SubmissionCommentTreeUiConstructor.COLLAPSED_COMMENT_IDS.clear();
+      commentRowStateRepository.get().expandAllComments();
+    });
+
+    addButton("Show network metrics", o -> {
+      new AlertDialog.Builder(this)
+          .setTitle(networkStats.get().toString())
+          .setMessage(requestMetrics.get().summary())
+          .setPositiveButton("Close", null)
+          .setNeutralButton("Reset", (dialog, which) -> requestMetrics.get().clear())
+          .show();
+    });
+
+    addButton("Export network metrics as JSON", o -> {
+      Intent shareIntent = new Intent(Intent.ACTION_SEND);
+      shareIntent.setType("application/json");
+      shareIntent.putExtra(Intent.EXTRA_SUBJECT, "Dank network metrics");
+      shareIntent.putExtra(Intent.EXTRA_TEXT, requestMetrics.get().toJson());
+      startActivity(Intent.createChooser(shareIntent, "Export network metrics"));
+    });
+
+    addButton("Toggle UI pipeline profiler", o -> {
+      boolean enabled = !pipelineProfiler.get().isEnabled();
+      pipelineProfiler.get().setEnabled(enabled);
+      Snackbar.make(o, enabled ? "Profiling new subscriptions" : "Profiler disabled", Snackbar.LENGTH_SHORT).show();
+    });
+
+    addButton("Show UI pipeline profile", o -> {
+      new AlertDialog.Builder(this)
+          .setMessage(pipelineProfiler.get().dump())
+          .setPositiveButton("Close", null)
+          .setNeutralButton("Reset", (dialog, which) -> pipelineProfiler.get().clear())
+          .show();
     });
   }
 
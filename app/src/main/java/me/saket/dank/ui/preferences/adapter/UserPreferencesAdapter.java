@@ -1,7 +1,6 @@
 package me.saket.dank.ui.preferences.adapter;
 
 import android.support.annotation.CheckResult;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
@@ -15,11 +14,12 @@ import io.reactivex.Observable;
 import io.reactivex.functions.Consumer;
 import me.saket.dank.ui.preferences.events.UserPreferenceButtonClickEvent;
 import me.saket.dank.ui.preferences.events.UserPreferenceSwitchToggleEvent;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RecyclerViewArrayAdapter;
 
 public class UserPreferencesAdapter extends RecyclerViewArrayAdapter<UserPreferencesScreenUiModel, RecyclerView.ViewHolder>
-    implements Consumer<Pair<List<UserPreferencesScreenUiModel>, DiffUtil.DiffResult>>
+    implements Consumer<Pair<List<UserPreferencesScreenUiModel>, ListDiff>>
 {
 
   private static final UserPreferencesScreenUiModel.Type[] VIEW_TYPES = UserPreferencesScreenUiModel.Type.values();
@@ -66,7 +66,7 @@ public class UserPreferencesAdapter extends RecyclerViewArrayAdapter<UserPrefere
   }
 
   @Override
-  public void accept(Pair<List<UserPreferencesScreenUiModel>, DiffUtil.DiffResult> pair) throws Exception {
+  public void accept(Pair<List<UserPreferencesScreenUiModel>, ListDiff> pair) throws Exception {
     updateData(pair.first());
     pair.second().dispatchUpdatesTo(this);
   }
@@ -2,9 +2,9 @@ package me.saket.dank.ui.preferences.adapter;
 
 import java.util.List;
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks;
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks;
 
-public class UserPrefsItemDiffer extends SimpleDiffUtilsCallbacks<UserPreferencesScreenUiModel> {
+public class UserPrefsItemDiffer extends StableIdDiffUtilsCallbacks<UserPreferencesScreenUiModel> {
 
   public static UserPrefsItemDiffer create(List<UserPreferencesScreenUiModel> oldModels, List<UserPreferencesScreenUiModel> newModels) {
     return new UserPrefsItemDiffer(oldModels, newModels);
@@ -15,8 +15,8 @@ public class UserPrefsItemDiffer extends SimpleDiffUtilsCallbacks<UserPreference
   }
 
   @Override
-  public boolean areItemsTheSame(UserPreferencesScreenUiModel oldModel, UserPreferencesScreenUiModel newModel) {
-    return oldModel.adapterId() == newModel.adapterId();
+  public long getItemId(UserPreferencesScreenUiModel item) {
+    return item.adapterId();
   }
 
   @Override
@@ -0,0 +1,73 @@
+package me.saket.dank.ui.submission;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.google.auto.value.AutoValue;
+
+import io.reactivex.functions.Function;
+import me.saket.dank.utils.Cursors;
+
+/**
+ * A submission or comment saved by the user. Saves and unsaves that couldn't reach Reddit
+ * are stored with a pending state until {@link BookmarksSyncJob} executes them.
+ */
+@AutoValue
+public abstract class Bookmark {
+
+  static final String TABLE_NAME = "Bookmark";
+  static final String COLUMN_FULLNAME = "fullname";
+  static final String COLUMN_PENDING_ACTION = "pending_action";
+
+  public static final String QUERY_CREATE_TABLE =
+      "CREATE TABLE " + TABLE_NAME + " ("
+          + COLUMN_FULLNAME + " TEXT NOT NULL PRIMARY KEY, "
+          + COLUMN_PENDING_ACTION + " TEXT NOT NULL)";
+
+  static final String QUERY_GET_ALL =
+      "SELECT * FROM " + TABLE_NAME;
+
+  static final String QUERY_GET_ALL_PENDING =
+      "SELECT * FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_PENDING_ACTION + " != '" + PendingState.NONE + "'";
+
+  static final String WHERE_FULLNAME_AND_PENDING_ACTION =
+      COLUMN_FULLNAME + " = ? AND " + COLUMN_PENDING_ACTION + " = ?";
+
+  static final String QUERY_GET_WITH_FULLNAME_AND_PENDING_ACTION =
+      "SELECT * FROM " + TABLE_NAME
+          + " WHERE " + WHERE_FULLNAME_AND_PENDING_ACTION;
+
+  public enum PendingState {
+    NONE,
+    PENDING_SAVE,
+    PENDING_UNSAVE,
+  }
+
+  public abstract String fullName();
+
+  public abstract PendingState pendingState();
+
+  /**
+   * Pending-unsave bookmarks are shown as unsaved while they wait to be synced.
+   */
+  public boolean isSaved() {
+    return pendingState() != PendingState.PENDING_UNSAVE;
+  }
+
+  public ContentValues toContentValues() {
+    ContentValues values = new ContentValues(2);
+    values.put(COLUMN_FULLNAME, fullName());
+    values.put(COLUMN_PENDING_ACTION, pendingState().toString());
+    return values;
+  }
+
+  public static final Function<Cursor, Bookmark> MAPPER =
+      cursor -> create(
+          Cursors.string(cursor, COLUMN_FULLNAME),
+          PendingState.valueOf(Cursors.string(cursor, COLUMN_PENDING_ACTION)));
+
+  public static Bookmark create(String fullName, PendingState pendingState) {
+    return new AutoValue_Bookmark(fullName, pendingState);
+  }
+}
@@ -1,36 +1,468 @@
 package me.saket.dank.ui.submission;
 
+import android.app.Application;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.CheckResult;
+import android.support.annotation.VisibleForTesting;
+
+import com.f2prateek.rx.preferences2.Preference;
+import com.google.auto.value.AutoValue;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.jakewharton.rxrelay2.Relay;
+import com.squareup.sqlbrite2.BriteDatabase;
+
 import net.dean.jraw.models.Identifiable;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
+import dagger.Lazy;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
-import me.saket.dank.utils.RxHashSet;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Function;
+import me.saket.dank.reddit.Reddit;
+import me.saket.dank.ui.compose.SimpleIdentifiable;
+import me.saket.dank.walkthrough.SyntheticData;
+import timber.log.Timber;
 
+/**
+ * Saved submissions and comments of the logged-in user.
+ * <p>
+ * Bookmarks are stored in the database and mirrored in memory so that {@link #isSaved(Identifiable)}
+ * can be called while constructing UI models. The mirror is loaded in background when this repository
+ * is created and reads wait for it. Saves and unsaves are shown immediately and written as pending until
+ * Reddit acknowledges them. Ones that fail are retried by {@link BookmarksSyncJob}, which also brings
+ * in items saved on other devices.
+ */
 @Singleton
 public class BookmarksRepository {
 
-  private final RxHashSet<String> savedFullNames = new RxHashSet<>();
+  /** Reddit stops listing saved items after these many. */
+  @VisibleForTesting
+  static final int REMOTE_LISTING_MAX_SIZE = 1000;
+
+  private final Lazy<Reddit> reddit;
+  private final Lazy<BriteDatabase> database;
+  private final Lazy<Application> appContext;
+  private final Lazy<Preference<Boolean>> refreshedOncePref;
+  private final Relay<Change> changes = PublishRelay.<Change>create().toSerialized();
+
+  /**
+   * Database writes, saves and unsaves happen one at a time on this scheduler, so that Reddit
+   * receives them in the order they were made. The monitor of this repository only guards the
+   * in-memory mirror and is never held during database writes.
+   */
+  private final Scheduler sendScheduler;
+
+  /** Guarded by this. */
+  private final Set<String> savedFullNames = new HashSet<>();
+
+  /** Counted down once the mirror has been loaded from the database, or loading has failed. */
+  private final CountDownLatch mirrorLoadLatch = new CountDownLatch(1);
+
+  /**
+   * Guarded by this. Number of toggles per full-name whose pending rows haven't been written yet.
+   * Their in-memory state is newer than the database's.
+   */
+  private final Map<String, Integer> unwrittenToggleCounts = new HashMap<>();
+
+  /** Guarded by this. Number of refreshes whose remote listing is still being downloaded or merged. */
+  private int refreshesInFlight;
+
+  /**
+   * Guarded by this. Full-names whose rows were written while a refresh was running. The remote
+   * listing could be older than these rows, so the merge keeps their local state.
+   */
+  private final Set<String> writtenDuringRefresh = new HashSet<>();
 
   @Inject
-  public BookmarksRepository() {
+  public BookmarksRepository(
+      Lazy<Reddit> reddit,
+      Lazy<BriteDatabase> database,
+      Lazy<Application> appContext,
+      @Named("bookmarks_refreshed_once") Lazy<Preference<Boolean>> refreshedOncePref,
+      @Named("bookmarks") Scheduler sendScheduler)
+  {
+    this.reddit = reddit;
+    this.database = database;
+    this.appContext = appContext;
+    this.refreshedOncePref = refreshedOncePref;
+    this.sendScheduler = sendScheduler;
+
+    // Queued before anything else on the scheduler, so waiting for it is only as long as one read.
+    Completable.fromAction(() -> replaceSavedFullNames(readSavedFullNames()))
+        .doFinally(() -> mirrorLoadLatch.countDown())
+        .subscribeOn(sendScheduler)
+        .subscribe(() -> {}, error -> Timber.e(error, "Couldn't load bookmarks"));
   }
 
   public void markAsSaved(Identifiable contribution) {
-    // TODO: ignore SyntheticData.ID_SUBMISSION_FOR_GESTURE_WALKTHROUGH.
-    savedFullNames.add(contribution.getFullName());
+    setSaved(contribution.getFullName(), true);
   }
 
   public void markAsUnsaved(Identifiable contribution) {
-    savedFullNames.remove(contribution.getFullName());
+    setSaved(contribution.getFullName(), false);
   }
 
+  /**
+   * Blocks until the mirror has been loaded the first time. A bookmark shown as unsaved because
+   * the load was still running wouldn't get corrected until it changes again.
+   */
   public boolean isSaved(Identifiable contribution) {
-    return savedFullNames.contains(contribution.getFullName());
+    awaitMirrorLoad();
+    synchronized (this) {
+      return savedFullNames.contains(contribution.getFullName());
+    }
+  }
+
+  private void awaitMirrorLoad() {
+    try {
+      mirrorLoadLatch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Emits full-names of items whose saved state changed, so that only their rows get rebuilt.
+   */
+  @CheckResult
+  public Observable<Change> streamChanges() {
+    return changes;
+  }
+
+  private void setSaved(String fullName, boolean saved) {
+    // Otherwise the load would overwrite this toggle.
+    awaitMirrorLoad();
+
+    // The gesture walkthrough's submission doesn't exist on Reddit.
+    boolean isSynthetic = fullName.equalsIgnoreCase(SyntheticData.Companion.getSUBMISSION_FULLNAME_FOR_GESTURE_WALKTHROUGH());
+    Bookmark pendingBookmark = Bookmark.create(fullName, saved ? Bookmark.PendingState.PENDING_SAVE : Bookmark.PendingState.PENDING_UNSAVE);
+
+    synchronized (this) {
+      boolean stateChanged = saved
+          ? savedFullNames.add(fullName)
+          : savedFullNames.remove(fullName);
+      if (!stateChanged) {
+        return;
+      }
+      if (!isSynthetic) {
+        Integer unwrittenCount = unwrittenToggleCounts.get(fullName);
+        unwrittenToggleCounts.put(fullName, unwrittenCount == null ? 1 : unwrittenCount + 1);
+      }
+    }
+    changes.accept(Change.create(Collections.singleton(fullName)));
+
+    if (!isSynthetic) {
+      Completable.fromAction(() -> writePendingBookmark(pendingBookmark))
+          .andThen(Completable.defer(() -> send(pendingBookmark)))
+          .subscribeOn(sendScheduler)
+          .subscribe(
+              () -> {},
+              error -> {
+                Timber.e(error, "Couldn't update %s. Will try again later.", pendingBookmark);
+                BookmarksSyncJob.syncPendingActionsImmediately(appContext.get());
+              });
+    }
+  }
+
+  private void writePendingBookmark(Bookmark pendingBookmark) {
+    try {
+      database.get().insert(Bookmark.TABLE_NAME, pendingBookmark.toContentValues(), SQLiteDatabase.CONFLICT_REPLACE);
+    } finally {
+      markAsWritten(pendingBookmark);
+    }
+  }
+
+  private synchronized void markAsWritten(Bookmark pendingBookmark) {
+    int unwrittenCount = unwrittenToggleCounts.get(pendingBookmark.fullName()) - 1;
+    if (unwrittenCount == 0) {
+      unwrittenToggleCounts.remove(pendingBookmark.fullName());
+    } else {
+      unwrittenToggleCounts.put(pendingBookmark.fullName(), unwrittenCount);
+    }
+    recordWriteDuringRefresh(pendingBookmark.fullName());
+  }
+
+  private synchronized void recordWriteDuringRefresh(String fullName) {
+    if (refreshesInFlight > 0) {
+      writtenDuringRefresh.add(fullName);
+    }
+  }
+
+  @CheckResult
+  private Completable send(Bookmark pendingBookmark) {
+    Identifiable contribution = SimpleIdentifiable.Companion.from(pendingBookmark.fullName());
+    Completable request = pendingBookmark.pendingState() == Bookmark.PendingState.PENDING_SAVE
+        ? reddit.get().loggedInUser().save(contribution)
+        : reddit.get().loggedInUser().unsave(contribution);
+    return request.andThen(Completable.fromAction(() -> markAsSynced(pendingBookmark)));
+  }
+
+  private void markAsSynced(Bookmark pendingBookmark) {
+    // Skipped if the user toggled it again in the meantime. That action is still pending.
+    String[] whereArgs = { pendingBookmark.fullName(), pendingBookmark.pendingState().toString() };
+    if (pendingBookmark.pendingState() == Bookmark.PendingState.PENDING_SAVE) {
+      Bookmark syncedBookmark = Bookmark.create(pendingBookmark.fullName(), Bookmark.PendingState.NONE);
+      database.get().update(Bookmark.TABLE_NAME, syncedBookmark.toContentValues(), Bookmark.WHERE_FULLNAME_AND_PENDING_ACTION, whereArgs);
+    } else {
+      database.get().delete(Bookmark.TABLE_NAME, Bookmark.WHERE_FULLNAME_AND_PENDING_ACTION, whereArgs);
+    }
+    recordWriteDuringRefresh(pendingBookmark.fullName());
+  }
+
+  /**
+   * Execute pending saves and unsaves that failed earlier because of some error.
+   */
+  @CheckResult
+  public Completable executePendingSavesAndUnsaves() {
+    return Observable.fromCallable(() -> readAll(Bookmark.QUERY_GET_ALL_PENDING))
+        .subscribeOn(sendScheduler)
+        .flatMapIterable(bookmarks -> bookmarks)
+        .concatMap(pendingBookmark -> Completable
+            .defer(() -> isStillPending(pendingBookmark) ? send(pendingBookmark) : Completable.complete())
+            .subscribeOn(sendScheduler)
+            .toObservable())
+        .ignoreElements();
+  }
+
+  /**
+   * The user may have toggled the item again after the pending rows were read. Sending the older
+   * action after the newer one would leave Reddit in a different state than the app.
+   */
+  private boolean isStillPending(Bookmark pendingBookmark) {
+    String[] selectionArgs = { pendingBookmark.fullName(), pendingBookmark.pendingState().toString() };
+    try (Cursor cursor = database.get().query(Bookmark.QUERY_GET_WITH_FULLNAME_AND_PENDING_ACTION, selectionArgs)) {
+      return cursor.moveToNext();
+    }
+  }
+
+  /**
+   * Get user's saved items from remote and save to DB.
+   */
+  @CheckResult
+  public Completable refreshAndSaveBookmarks() {
+    return Completable.defer(() -> {
+      startRefresh();
+      return reddit.get().loggedInUser().savedFullNames()
+          .flatMapCompletable(remoteFullNames -> Completable
+              .fromAction(() -> saveRemoteBookmarks(remoteFullNames))
+              .subscribeOn(sendScheduler))
+          .doFinally(() -> finishRefresh());
+    });
+  }
+
+  /**
+   * Whether the saved items have been fetched from remote at least once for the logged-in user.
+   */
+  public boolean hasBeenRefreshedOnce() {
+    return refreshedOncePref.get().get();
+  }
+
+  private synchronized void startRefresh() {
+    ++refreshesInFlight;
+  }
+
+  private synchronized void finishRefresh() {
+    --refreshesInFlight;
+    if (refreshesInFlight == 0) {
+      writtenDuringRefresh.clear();
+    }
+  }
+
+  @CheckResult
+  public Completable removeAll() {
+    return Completable
+        .fromAction(() -> {
+          database.get().delete(Bookmark.TABLE_NAME, null);
+          refreshedOncePref.get().set(false);
+
+          Set<String> removedFullNames;
+          synchronized (this) {
+            removedFullNames = new HashSet<>(savedFullNames);
+            savedFullNames.clear();
+          }
+          if (!removedFullNames.isEmpty()) {
+            changes.accept(Change.create(removedFullNames));
+          }
+        })
+        .subscribeOn(sendScheduler);
+  }
+
+  /**
+   * Replace all bookmarks in the database with the remote ones, retaining pending actions.
+   * Runs on {@link #sendScheduler}, so no pending row gets written between the read and the merge.
+   */
+  private void saveRemoteBookmarks(List<String> remoteFullNames) throws Exception {
+    List<Bookmark> localBookmarks = readAll(Bookmark.QUERY_GET_ALL);
+    Set<String> locallyWrittenFullNames;
+    synchronized (this) {
+      locallyWrittenFullNames = new HashSet<>(writtenDuringRefresh);
+    }
+    List<Bookmark> mergedBookmarks = mergeRemoteBookmarksWithLocal(localBookmarks, locallyWrittenFullNames).apply(remoteFullNames);
+
+    Set<String> mergedSavedFullNames = new HashSet<>();
+    List<ContentValues> mergedValuesList = new ArrayList<>(mergedBookmarks.size());
+    for (Bookmark mergedBookmark : mergedBookmarks) {
+      mergedValuesList.add(mergedBookmark.toContentValues());
+      if (mergedBookmark.isSaved()) {
+        mergedSavedFullNames.add(mergedBookmark.fullName());
+      }
+    }
+
+    try (BriteDatabase.Transaction transaction = database.get().newTransaction()) {
+      database.get().delete(Bookmark.TABLE_NAME, null);
+      for (ContentValues mergedValues : mergedValuesList) {
+        database.get().insert(Bookmark.TABLE_NAME, mergedValues);
+      }
+      transaction.markSuccessful();
+    }
+    Timber.i("Saved %s bookmarks", mergedBookmarks.size());
+    refreshedOncePref.get().set(true);
+
+    replaceSavedFullNames(mergedSavedFullNames);
+  }
+
+  private Set<String> readSavedFullNames() throws Exception {
+    Set<String> savedFullNames = new HashSet<>();
+    for (Bookmark bookmark : readAll(Bookmark.QUERY_GET_ALL)) {
+      if (bookmark.isSaved()) {
+        savedFullNames.add(bookmark.fullName());
+      }
+    }
+    return savedFullNames;
   }
 
-  public Observable<Object> streamChanges() {
-    return savedFullNames.changes().cast(Object.class);
+  private List<Bookmark> readAll(String query) throws Exception {
+    List<Bookmark> bookmarks = new ArrayList<>();
+    try (Cursor cursor = database.get().query(query)) {
+      while (cursor.moveToNext()) {
+        bookmarks.add(Bookmark.MAPPER.apply(cursor));
+      }
+    }
+    return bookmarks;
+  }
+
+  /**
+   * Items toggled by the user whose pending rows haven't been written yet keep their in-memory state.
+   */
+  private void replaceSavedFullNames(Set<String> newSavedFullNames) {
+    Set<String> changedFullNames = new HashSet<>();
+    synchronized (this) {
+      for (String fullName : savedFullNames) {
+        if (!newSavedFullNames.contains(fullName) && !unwrittenToggleCounts.containsKey(fullName)) {
+          changedFullNames.add(fullName);
+        }
+      }
+      for (String fullName : newSavedFullNames) {
+        if (!savedFullNames.contains(fullName) && !unwrittenToggleCounts.containsKey(fullName)) {
+          changedFullNames.add(fullName);
+        }
+      }
+      for (String fullName : changedFullNames) {
+        if (!savedFullNames.remove(fullName)) {
+          savedFullNames.add(fullName);
+        }
+      }
+    }
+
+    if (!changedFullNames.isEmpty()) {
+      changes.accept(Change.create(changedFullNames));
+    }
+  }
+
+  /**
+   * Similar to {@link me.saket.dank.ui.subscriptions.SubscriptionRepository}'s merge. Local bookmarks
+   * are considered as the source of truth for pending saves and unsaves.
+   * <p>
+   * Reddit only lists the latest {@link #REMOTE_LISTING_MAX_SIZE} saved items. When the listing is
+   * that long, synced bookmarks missing from it could be older ones, so they're retained.
+   *
+   * @param locallyWrittenFullNames Items whose rows were written after the remote listing started
+   *                                downloading. Their local state is newer, including their absence.
+   */
+  @VisibleForTesting
+  Function<List<String>, List<Bookmark>> mergeRemoteBookmarksWithLocal(List<Bookmark> localBookmarks, Set<String> locallyWrittenFullNames) {
+    return remoteFullNames -> {
+      Set<String> remoteFullNamesSet = new HashSet<>(remoteFullNames);
+      boolean isRemoteListingTruncated = remoteFullNames.size() >= REMOTE_LISTING_MAX_SIZE;
+      List<Bookmark> mergedBookmarks = new ArrayList<>(Math.max(localBookmarks.size(), remoteFullNames.size()));
+
+      for (Bookmark localBookmark : localBookmarks) {
+        if (locallyWrittenFullNames.contains(localBookmark.fullName())) {
+          mergedBookmarks.add(localBookmark);
+          continue;
+        }
+
+        switch (localBookmark.pendingState()) {
+          case PENDING_SAVE:
+            if (remoteFullNamesSet.contains(localBookmark.fullName())) {
+              // Already saved on remote. Great.
+              mergedBookmarks.add(Bookmark.create(localBookmark.fullName(), Bookmark.PendingState.NONE));
+            } else {
+              // We haven't been able to make the save API call yet.
+              mergedBookmarks.add(localBookmark);
+            }
+            break;
+
+          case PENDING_UNSAVE:
+            if (remoteFullNamesSet.contains(localBookmark.fullName())) {
+              // We haven't been able to make the unsave API call yet.
+              mergedBookmarks.add(localBookmark);
+            }
+            // Else, already unsaved on remote.
+            break;
+
+          case NONE:
+            if (isRemoteListingTruncated || remoteFullNamesSet.contains(localBookmark.fullName())) {
+              mergedBookmarks.add(localBookmark);
+            }
+            // Else, unsaved from another device.
+            break;
+
+          default:
+            throw new AssertionError("Unknown pending state: " + localBookmark);
+        }
+      }
+
+      // Do a second pass to find items that were saved from another device.
+      Map<String, Bookmark> localBookmarksMap = new HashMap<>(localBookmarks.size());
+      for (Bookmark localBookmark : localBookmarks) {
+        localBookmarksMap.put(localBookmark.fullName(), localBookmark);
+      }
+      for (String remoteFullName : remoteFullNames) {
+        if (!localBookmarksMap.containsKey(remoteFullName) && !locallyWrittenFullNames.contains(remoteFullName)) {
+          mergedBookmarks.add(Bookmark.create(remoteFullName, Bookmark.PendingState.NONE));
+        }
+      }
+
+      return Collections.unmodifiableList(mergedBookmarks);
+    };
+  }
+
+  @AutoValue
+  public abstract static class Change {
+
+    public abstract Set<String> fullNames();
+
+    public boolean affects(String fullName) {
+      return fullNames().contains(fullName);
+    }
+
+    static Change create(Set<String> fullNames) {
+      return new AutoValue_BookmarksRepository_Change(fullNames);
+    }
   }
 }
@@ -0,0 +1,121 @@
+package me.saket.dank.ui.submission;
+
+import static me.saket.dank.utils.RxUtils.applySchedulersCompletable;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import javax.inject.Inject;
+
+import io.reactivex.Completable;
+import me.saket.dank.BuildConfig;
+import me.saket.dank.DankJobService;
+import me.saket.dank.data.ResolvedError;
+import me.saket.dank.di.Dank;
+import me.saket.dank.ui.user.UserSessionRepository;
+import timber.log.Timber;
+
+/**
+ * Syncs user's saved submissions and comments in background. Executes pending saves and unsaves
+ * and brings in items saved on other devices.
+ */
+public class BookmarksSyncJob extends DankJobService {
+
+  @Inject BookmarksRepository bookmarksRepository;
+  @Inject UserSessionRepository userSessionRepository;
+
+  /**
+   * Sync bookmarks every ~6 hours when the device is idle, charging and on an unmetered connection.
+   */
+  public static void schedule(Context context) {
+    JobInfo syncJob = new JobInfo.Builder(ID_BOOKMARKS_RECURRING_JOB, new ComponentName(context, BookmarksSyncJob.class))
+        .setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+        .setRequiresCharging(true)
+        .setRequiresDeviceIdle(true)
+        .setPersisted(true)
+        .setPeriodic(DateUtils.HOUR_IN_MILLIS * 6)
+        .build();
+
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    //noinspection ConstantConditions
+    jobScheduler.schedule(syncJob);
+  }
+
+  /**
+   * Syncs everything once, as soon as the device is online.
+   */
+  public static void syncImmediately(Context context) {
+    JobInfo syncJob = new JobInfo.Builder(ID_BOOKMARKS_ONE_TIME_JOB, new ComponentName(context, BookmarksSyncJob.class))
+        .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+        .setPersisted(false)
+        .setOverrideDeadline(0)
+        .build();
+
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    //noinspection ConstantConditions
+    jobScheduler.schedule(syncJob);
+  }
+
+  /**
+   * Only executes pending saves and unsaves, as soon as the device is online.
+   */
+  public static void syncPendingActionsImmediately(Context context) {
+    JobInfo syncJob = new JobInfo.Builder(ID_BOOKMARKS_PENDING_ACTIONS_JOB, new ComponentName(context, BookmarksSyncJob.class))
+        .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+        .setPersisted(true)
+        .build();
+
+    JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+    //noinspection ConstantConditions
+    jobScheduler.schedule(syncJob);
+  }
+
+  @Override
+  public void onCreate() {
+    Dank.dependencyInjector().inject(this);
+    super.onCreate();
+  }
+
+  @Override
+  public JobStartCallback onStartJob2(JobParameters params) {
+    if (!userSessionRepository.isUserLoggedIn()) {
+      return JobStartCallback.finished();
+    }
+
+    Completable syncCompletable = params.getJobId() != ID_BOOKMARKS_PENDING_ACTIONS_JOB
+        ? bookmarksRepository.executePendingSavesAndUnsaves().andThen(bookmarksRepository.refreshAndSaveBookmarks())
+        : bookmarksRepository.executePendingSavesAndUnsaves();
+
+    syncCompletable
+        .compose(applySchedulersCompletable())
+        .ambWith(lifecycleOnDestroy().ignoreElements())
+        .subscribe(
+            () -> {
+              if (params.getJobId() == ID_BOOKMARKS_RECURRING_JOB && BuildConfig.DEBUG) {
+                displayDebugNotification("Bookmarks synced");
+              }
+              jobFinished(params, false);
+            },
+            error -> {
+              ResolvedError resolvedError = Dank.errors().resolve(error);
+              if (resolvedError.isUnknown()) {
+                Timber.e(error, "Unknown error while syncing bookmarks");
+              }
+
+              boolean isNotOurFault = resolvedError.isNetworkError() || resolvedError.isRedditServerError();
+              jobFinished(params, isNotOurFault);
+            }
+        );
+
+    return JobStartCallback.runningInBackground();
+  }
+
+  @Override
+  public JobStopCallback onStopJob2() {
+    return JobStopCallback.rescheduleRequired();
+  }
+}
@@ -26,15 +26,25 @@ public class CommentOptionsPopup extends NestedOptionsPopupMenu {
   private static final int ID_UNSAVE = 1_2;
   private static final int ID_SHARE_PERMALINK = 2;
   private static final int ID_COPY_PERMALINK = 3;
+  private static final int ID_COLLAPSE_REPLIES = 4;
+  private static final int ID_COLLAPSE_ALL_TO_TOP_LEVEL = 5;
 
   @Inject Lazy<Markdown> markdown;
   @Inject Lazy<BookmarksRepository> bookmarksRepository;
 
   private final Comment comment;
+  private final CollapseListener collapseListener;
 
-  public CommentOptionsPopup(Context c, Comment comment) {
+  public interface CollapseListener {
+    void onCollapseReplies(Comment comment);
+
+    void onCollapseAllToTopLevel();
+  }
+
+  public CommentOptionsPopup(Context c, Comment comment, CollapseListener collapseListener) {
     super(c);
     this.comment = comment;
+    this.collapseListener = collapseListener;
 
     Dank.dependencyInjector().inject(this);
     createMenuLayout(c, menuStructure(c));
@@ -44,7 +54,7 @@ public class CommentOptionsPopup extends NestedOptionsPopupMenu {
     //noinspection AccessStaticViaInstance
     String commentBody = markdown.get().stripMarkdown(comment);
 
-    List<MenuStructure.SingleLineItem> primaryItems = new ArrayList<>(3);
+    List<MenuStructure.SingleLineItem> primaryItems = new ArrayList<>(6);
     primaryItems.add(MenuStructure.SingleLineItem.create(
         ID_SHOW_USER_PROFILE,
         c.getString(R.string.user_name_u_prefix, comment.getAuthor()),
@@ -73,6 +83,16 @@ public class CommentOptionsPopup extends NestedOptionsPopupMenu {
         c.getString(R.string.submission_comment_option_copy_link),
         R.drawable.ic_copy_20dp
     ));
+    primaryItems.add(MenuStructure.SingleLineItem.create(
+        ID_COLLAPSE_REPLIES,
+        c.getString(R.string.submission_comment_option_collapse_replies),
+        R.drawable.ic_visibility_off_20dp
+    ));
+    primaryItems.add(MenuStructure.SingleLineItem.create(
+        ID_COLLAPSE_ALL_TO_TOP_LEVEL,
+        c.getString(R.string.submission_comment_option_collapse_all_to_top_level),
+        R.drawable.ic_sort_20dp
+    ));
     return MenuStructure.create(commentBody, primaryItems);
   }
 
@@ -107,6 +127,14 @@ public class CommentOptionsPopup extends NestedOptionsPopupMenu {
         Toast.makeText(c, R.string.copy_to_clipboard_confirmation, Toast.LENGTH_SHORT).show();
         break;
 
+      case ID_COLLAPSE_REPLIES:
+        collapseListener.onCollapseReplies(comment);
+        break;
+
+      case ID_COLLAPSE_ALL_TO_TOP_LEVEL:
+        collapseListener.onCollapseAllToTopLevel();
+        break;
+
       default:
         throw new UnsupportedOperationException("actionId: " + actionId);
     }
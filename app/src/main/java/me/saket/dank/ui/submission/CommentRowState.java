@@ -0,0 +1,217 @@
+package me.saket.dank.ui.submission;
+
+import static me.saket.dank.utils.Preconditions.checkNotNull;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Identifiable;
+import net.dean.jraw.models.Submission;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import me.saket.dank.data.LocallyPostedComment;
+import me.saket.dank.ui.compose.SimpleIdentifiable;
+
+/**
+ * Immutable snapshot of the collapsed comments, active inline replies and in-flight
+ * "load more" rows of a submission. Safe to read from any thread. New snapshots are
+ * created by {@link CommentRowStateStore#mutate(CommentRowStateStore.Mutator)}.
+ * <p>
+ * Keys are full-names, except for locally posted comments, which use their
+ * posting-status independent IDs.
+ */
+public final class CommentRowState {
+
+  private final long version;
+  private final Set<String> collapsedKeys;
+  private final Set<String> activeReplyKeys;
+  private final Set<String> inFlightLoadMoreKeys;
+
+  static CommentRowState empty() {
+    return new CommentRowState(0, Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+  }
+
+  private CommentRowState(long version, Set<String> collapsedKeys, Set<String> activeReplyKeys, Set<String> inFlightLoadMoreKeys) {
+    this.version = version;
+    this.collapsedKeys = collapsedKeys;
+    this.activeReplyKeys = activeReplyKeys;
+    this.inFlightLoadMoreKeys = inFlightLoadMoreKeys;
+  }
+
+  static String keyFor(Identifiable contribution) {
+    // We're doing an exhaustive check here just to make sure
+    // there's no unknown data model being passed.
+    if (contribution instanceof Submission) {
+      return contribution.getFullName();
+    }
+    if (contribution instanceof SimpleIdentifiable) {
+      return contribution.getFullName();
+    }
+    if (contribution instanceof LocallyPostedComment) {
+      String key = ((LocallyPostedComment) contribution).getPostingStatusIndependentId();
+      return checkNotNull(key, "LocallyPostedComment#getPostingStatusIndependentId()");
+    }
+    if (contribution instanceof Comment) {
+      return contribution.getFullName();
+    }
+    throw new UnsupportedOperationException("Unknown contribution: " + contribution);
+  }
+
+  /** Incremented by every mutation that changes this state. */
+  public long version() {
+    return version;
+  }
+
+  public boolean isCollapsed(String key) {
+    return collapsedKeys.contains(key);
+  }
+
+  public boolean isReplyActive(String key) {
+    return activeReplyKeys.contains(key);
+  }
+
+  public boolean isLoadMoreInFlight(String key) {
+    return inFlightLoadMoreKeys.contains(key);
+  }
+
+  public Set<String> collapsedKeys() {
+    return collapsedKeys;
+  }
+
+  /**
+   * Collects changes and copies each set only if it gets modified.
+   */
+  public static class Mutation {
+    private final CommentRowState base;
+    private final Set<String> changedKeys = new HashSet<>(4);
+    private Set<String> collapsedKeys;
+    private Set<String> activeReplyKeys;
+    private Set<String> inFlightLoadMoreKeys;
+
+    Mutation(CommentRowState base) {
+      this.base = base;
+      this.collapsedKeys = base.collapsedKeys;
+      this.activeReplyKeys = base.activeReplyKeys;
+      this.inFlightLoadMoreKeys = base.inFlightLoadMoreKeys;
+    }
+
+    public boolean isCollapsed(String key) {
+      return collapsedKeys.contains(key);
+    }
+
+    public boolean isReplyActive(String key) {
+      return activeReplyKeys.contains(key);
+    }
+
+    public boolean isLoadMoreInFlight(String key) {
+      return inFlightLoadMoreKeys.contains(key);
+    }
+
+    public Mutation collapse(String key) {
+      if (!collapsedKeys.contains(key)) {
+        collapsedKeys = copyIfUnchanged(collapsedKeys, base.collapsedKeys);
+        collapsedKeys.add(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    public Mutation expand(String key) {
+      if (collapsedKeys.contains(key)) {
+        collapsedKeys = copyIfUnchanged(collapsedKeys, base.collapsedKeys);
+        collapsedKeys.remove(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    /**
+     * Collapses all <var>keys</var> with a single copy of the collapsed set.
+     */
+    public Mutation collapseAll(Collection<String> keys) {
+      for (String key : keys) {
+        if (!collapsedKeys.contains(key)) {
+          collapsedKeys = copyIfUnchanged(collapsedKeys, base.collapsedKeys);
+          collapsedKeys.add(key);
+          changedKeys.add(key);
+        }
+      }
+      return this;
+    }
+
+    public Mutation expandAll() {
+      if (!collapsedKeys.isEmpty()) {
+        changedKeys.addAll(collapsedKeys);
+        collapsedKeys = new HashSet<>();
+      }
+      return this;
+    }
+
+    public Mutation showReply(String key) {
+      if (!activeReplyKeys.contains(key)) {
+        activeReplyKeys = copyIfUnchanged(activeReplyKeys, base.activeReplyKeys);
+        activeReplyKeys.add(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    public Mutation hideReply(String key) {
+      if (activeReplyKeys.contains(key)) {
+        activeReplyKeys = copyIfUnchanged(activeReplyKeys, base.activeReplyKeys);
+        activeReplyKeys.remove(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    public Mutation showLoadMore(String key) {
+      if (!inFlightLoadMoreKeys.contains(key)) {
+        inFlightLoadMoreKeys = copyIfUnchanged(inFlightLoadMoreKeys, base.inFlightLoadMoreKeys);
+        inFlightLoadMoreKeys.add(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    public Mutation hideLoadMore(String key) {
+      if (inFlightLoadMoreKeys.contains(key)) {
+        inFlightLoadMoreKeys = copyIfUnchanged(inFlightLoadMoreKeys, base.inFlightLoadMoreKeys);
+        inFlightLoadMoreKeys.remove(key);
+        changedKeys.add(key);
+      }
+      return this;
+    }
+
+    public Mutation hideAllLoadMore() {
+      if (!inFlightLoadMoreKeys.isEmpty()) {
+        changedKeys.addAll(inFlightLoadMoreKeys);
+        inFlightLoadMoreKeys = new HashSet<>();
+      }
+      return this;
+    }
+
+    Set<String> changedKeys() {
+      return Collections.unmodifiableSet(changedKeys);
+    }
+
+    CommentRowState build() {
+      if (changedKeys.isEmpty()) {
+        return base;
+      }
+      // Untouched sets are shared with the base state so that
+      // consumers can cheaply check which of them changed.
+      return new CommentRowState(
+          base.version + 1,
+          collapsedKeys == base.collapsedKeys ? base.collapsedKeys : Collections.unmodifiableSet(collapsedKeys),
+          activeReplyKeys == base.activeReplyKeys ? base.activeReplyKeys : Collections.unmodifiableSet(activeReplyKeys),
+          inFlightLoadMoreKeys == base.inFlightLoadMoreKeys ? base.inFlightLoadMoreKeys : Collections.unmodifiableSet(inFlightLoadMoreKeys));
+    }
+
+    private static Set<String> copyIfUnchanged(Set<String> current, Set<String> original) {
+      return current == original ? new HashSet<>(original) : current;
+    }
+  }
+}
@@ -0,0 +1,150 @@
+package me.saket.dank.ui.submission;
+
+import static io.reactivex.schedulers.Schedulers.io;
+
+import android.support.annotation.CheckResult;
+
+import com.nytimes.android.external.fs3.filesystem.FileSystem;
+import com.squareup.moshi.Moshi;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import me.saket.dank.cache.DiskLruCachePathResolver;
+import me.saket.dank.cache.MoshiStoreJsonParser;
+import me.saket.dank.cache.StoreFilePersister;
+import me.saket.dank.utils.Optional;
+import timber.log.Timber;
+
+/**
+ * Row states of recently opened submissions, so that collapsed comments and
+ * active replies are retained when the user navigates back to a submission.
+ * Collapsed comments are also saved to disk so that they survive process death.
+ */
+@Singleton
+public class CommentRowStateRepository {
+
+  private static final int MAX_RETAINED_SUBMISSIONS = 20;
+  private static final long PERSISTENCE_DEBOUNCE_MILLIS = 500;
+
+  private final StoreFilePersister<String, PersistedCollapsedComments> diskStore;
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+      boolean evict = size() > MAX_RETAINED_SUBMISSIONS;
+      if (evict) {
+        Entry evictedEntry = eldest.getValue();
+        evictedEntry.persistence.dispose();
+
+        // Don't lose the last change if it was still waiting for the debounce.
+        if (evictedEntry.hasPendingWrite.get()) {
+          write(eldest.getKey(), evictedEntry.store.snapshot().collapsedKeys())
+              .subscribeOn(io())
+              .subscribe();
+        }
+      }
+      return evict;
+    }
+  };
+
+  private static class Entry {
+    final CommentRowStateStore store;
+    final AtomicBoolean hasPendingWrite = new AtomicBoolean();
+    Disposable persistence;
+
+    Entry(CommentRowStateStore store) {
+      this.store = store;
+    }
+  }
+
+  @Inject
+  public CommentRowStateRepository(FileSystem cacheFileSystem, Moshi moshi) {
+    DiskLruCachePathResolver<String> pathResolver = new DiskLruCachePathResolver<String>() {
+      @Override
+      protected String resolveIn64Letters(String submissionFullName) {
+        return "collapsed_comments_" + submissionFullName;
+      }
+    };
+    diskStore = new StoreFilePersister<>(cacheFileSystem, pathResolver, new MoshiStoreJsonParser<>(moshi, PersistedCollapsedComments.class));
+  }
+
+  /**
+   * Emits once collapsed comments saved in an earlier session have been restored.
+   */
+  @CheckResult
+  public Single<CommentRowStateStore> store(String submissionFullName) {
+    return Single.defer(() -> {
+      synchronized (this) {
+        Entry entry = entries.get(submissionFullName);
+        if (entry != null) {
+          return Single.just(entry.store);
+        }
+      }
+
+      return diskStore.read(submissionFullName)
+          .map(PersistedCollapsedComments::collapsedKeys)
+          .doOnError(e -> Timber.e(e, "Couldn't read collapsed comments of %s", submissionFullName))
+          .onErrorComplete()
+          .map(restoredKeys -> putIfAbsent(submissionFullName, Optional.of(restoredKeys)))
+          .switchIfEmpty(Single.fromCallable(() -> putIfAbsent(submissionFullName, Optional.empty())))
+          .subscribeOn(io());
+    });
+  }
+
+  /**
+   * @param restoredCollapsedKeys Empty if nothing was saved for this submission.
+   */
+  private synchronized CommentRowStateStore putIfAbsent(String submissionFullName, Optional<List<String>> restoredCollapsedKeys) {
+    // Another subscriber could have restored this submission while the disk was being read.
+    Entry existingEntry = entries.get(submissionFullName);
+    if (existingEntry != null) {
+      return existingEntry.store;
+    }
+
+    CommentRowStateStore store = new CommentRowStateStore(submissionFullName, restoredCollapsedKeys.isEmpty());
+    restoredCollapsedKeys.ifPresent(keys -> store.mutate(mutation -> mutation.collapseAll(keys)));
+
+    Entry entry = new Entry(store);
+
+    // Untouched sets are shared across snapshots, so identity tells if collapsed comments changed.
+    entry.persistence = store.changes()
+        .map(change -> change.state().collapsedKeys())
+        .distinctUntilChanged((previous, next) -> previous == next)
+        .doOnNext(o -> entry.hasPendingWrite.set(true))
+        .debounce(PERSISTENCE_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS, io())
+        .doOnNext(o -> entry.hasPendingWrite.set(false))
+        .flatMapSingle(collapsedKeys -> write(submissionFullName, collapsedKeys))
+        .subscribe();
+
+    entries.put(submissionFullName, entry);
+    return store;
+  }
+
+  @CheckResult
+  private Single<Boolean> write(String submissionFullName, Set<String> collapsedKeys) {
+    return diskStore.write(submissionFullName, PersistedCollapsedComments.from(collapsedKeys))
+        .doOnError(e -> Timber.e(e, "Couldn't save collapsed comments of %s", submissionFullName))
+        .onErrorReturnItem(false);
+  }
+
+  public void expandAllComments() {
+    List<CommentRowStateStore> stores = new ArrayList<>();
+    synchronized (this) {
+      for (Entry entry : entries.values()) {
+        stores.add(entry.store);
+      }
+    }
+    for (CommentRowStateStore store : stores) {
+      store.expandAll();
+    }
+  }
+}
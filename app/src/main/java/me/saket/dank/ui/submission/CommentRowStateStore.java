@@ -0,0 +1,208 @@
+package me.saket.dank.ui.submission;
+
+import android.support.annotation.CheckResult;
+
+import com.google.auto.value.AutoValue;
+import com.jakewharton.rxrelay2.BehaviorRelay;
+import com.jakewharton.rxrelay2.PublishRelay;
+import com.jakewharton.rxrelay2.Relay;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.tree.CommentNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+
+/**
+ * Holds the {@link CommentRowState} of one submission. Writes are serialized, but
+ * reads are lock-free so that comments can be flattened on a background thread
+ * without racing with the main thread.
+ */
+public class CommentRowStateStore {
+
+  private final String submissionFullName;
+  private final Relay<Change> changes = PublishRelay.create();
+  private final BehaviorRelay<CommentRowState> snapshots = BehaviorRelay.createDefault(CommentRowState.empty());
+  private final AtomicBoolean autoCollapsePending;
+  private volatile CommentRowState state = CommentRowState.empty();
+
+  public interface Mutator {
+    void apply(CommentRowState.Mutation mutation);
+  }
+
+  public interface ScoreProvider {
+    int scoreOf(Comment comment);
+  }
+
+  @AutoValue
+  public abstract static class Change {
+    public abstract CommentRowState state();
+
+    /** Keys of contributions whose rows were affected by this change. */
+    public abstract Set<String> changedKeys();
+
+    static Change create(CommentRowState state, Set<String> changedKeys) {
+      return new AutoValue_CommentRowStateStore_Change(state, changedKeys);
+    }
+  }
+
+  /**
+   * @param autoCollapsePending Whether low scoring comments should be collapsed once comments are
+   *                            available. False if the user's collapse state was restored from disk.
+   */
+  CommentRowStateStore(String submissionFullName, boolean autoCollapsePending) {
+    this.submissionFullName = submissionFullName;
+    this.autoCollapsePending = new AtomicBoolean(autoCollapsePending);
+  }
+
+  /**
+   * Returns true only once, if comments haven't been auto-collapsed yet.
+   */
+  public boolean consumeAutoCollapse() {
+    return autoCollapsePending.compareAndSet(true, false);
+  }
+
+  public String submissionFullName() {
+    return submissionFullName;
+  }
+
+  public CommentRowState snapshot() {
+    return state;
+  }
+
+  /**
+   * Emits the current snapshot immediately and then after every change.
+   */
+  @CheckResult
+  public Observable<CommentRowState> streamSnapshots() {
+    return snapshots;
+  }
+
+  @CheckResult
+  public Observable<Change> changes() {
+    return changes;
+  }
+
+  /**
+   * Applies all changes made by <var>mutator</var> atomically, with a single emission.
+   * Nothing is emitted if the state remained the same.
+   */
+  public synchronized void mutate(Mutator mutator) {
+    CommentRowState.Mutation mutation = new CommentRowState.Mutation(state);
+    mutator.apply(mutation);
+    CommentRowState newState = mutation.build();
+    if (newState == state) {
+      return;
+    }
+    state = newState;
+
+    // Emitted inside the lock so that changes are received in the order of their versions.
+    snapshots.accept(newState);
+    changes.accept(Change.create(newState, mutation.changedKeys()));
+  }
+
+  /**
+   * Collapse every comment at <var>depth</var> that has replies, so that only comments
+   * up to <var>depth</var> remain visible. Depth of top-level comments is 1.
+   */
+  public void collapseAllAtDepth(CommentNode rootNode, int depth) {
+    List<String> keysToCollapse = new ArrayList<>();
+    walkTree(rootNode, node -> {
+      if (node.getDepth() == depth && hasChildRows(node)) {
+        keysToCollapse.add(CommentRowState.keyFor(node.getSubject()));
+      }
+      return node.getDepth() < depth;
+    });
+    mutate(mutation -> mutation.collapseAll(keysToCollapse));
+  }
+
+  /**
+   * Collapse all direct replies of <var>parentNode</var> that have replies of their own.
+   */
+  public void collapseChildrenOf(CommentNode parentNode) {
+    //noinspection unchecked
+    List<CommentNode> replies = parentNode.getReplies();
+    List<String> keysToCollapse = new ArrayList<>(replies.size());
+    for (int i = 0; i < replies.size(); i++) {  // Intentionally avoiding thrashing Iterator objects.
+      if (hasChildRows(replies.get(i))) {
+        keysToCollapse.add(CommentRowState.keyFor(replies.get(i).getSubject()));
+      }
+    }
+    mutate(mutation -> mutation.collapseAll(keysToCollapse));
+  }
+
+  /**
+   * Collapse every comment whose score is below <var>scoreThreshold</var>, like reddit.com does.
+   */
+  public void collapseAllBelowScore(CommentNode rootNode, int scoreThreshold, ScoreProvider scores) {
+    List<String> keysToCollapse = new ArrayList<>();
+    walkTree(rootNode, node -> {
+      if (node.getDepth() > 0) {
+        Comment comment = (Comment) node.getSubject();
+        if (scores.scoreOf(comment) < scoreThreshold) {
+          keysToCollapse.add(CommentRowState.keyFor(comment));
+          // Children of a collapsed comment are hidden anyway.
+          return false;
+        }
+      }
+      return true;
+    });
+    mutate(mutation -> mutation.collapseAll(keysToCollapse));
+  }
+
+  /**
+   * Collapse all direct replies of the comment identified by <var>parentKey</var>.
+   * No-op if it isn't present in the tree of <var>rootNode</var>.
+   */
+  public void collapseChildrenOf(CommentNode rootNode, String parentKey) {
+    CommentNode[] parentNode = new CommentNode[1];
+    walkTree(rootNode, node -> {
+      if (parentNode[0] == null && node.getDepth() > 0 && CommentRowState.keyFor(node.getSubject()).equals(parentKey)) {
+        parentNode[0] = node;
+      }
+      return parentNode[0] == null;
+    });
+    if (parentNode[0] != null) {
+      collapseChildrenOf(parentNode[0]);
+    }
+  }
+
+  public void expandAll() {
+    mutate(CommentRowState.Mutation::expandAll);
+  }
+
+  private static boolean hasChildRows(CommentNode node) {
+    return !node.getReplies().isEmpty() || node.hasMoreChildren();
+  }
+
+  private interface NodeVisitor {
+    /**
+     * @return Whether replies of <var>node</var> should be visited.
+     */
+    boolean visit(CommentNode node);
+  }
+
+  /**
+   * Pre-order walk without recursion, because threads can get thousands of levels deep.
+   */
+  private static void walkTree(CommentNode rootNode, NodeVisitor visitor) {
+    ArrayDeque<CommentNode> pendingNodes = new ArrayDeque<>();
+    pendingNodes.push(rootNode);
+
+    while (!pendingNodes.isEmpty()) {
+      CommentNode node = pendingNodes.pop();
+      if (visitor.visit(node)) {
+        //noinspection unchecked
+        List<CommentNode> replies = node.getReplies();
+        for (int i = replies.size() - 1; i >= 0; i--) {
+          pendingNodes.push(replies.get(i));
+        }
+      }
+    }
+  }
+}
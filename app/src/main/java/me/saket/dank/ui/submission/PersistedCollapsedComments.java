@@ -0,0 +1,56 @@
+package me.saket.dank.ui.submission;
+
+import com.google.auto.value.AutoValue;
+import com.squareup.moshi.Json;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import me.saket.dank.data.FullNameType;
+
+/**
+ * Collapsed comments of a submission, saved by {@link CommentRowStateRepository}. Comment
+ * full-names are stored without their "t1_" prefix to keep large threads compact.
+ */
+@AutoValue
+public abstract class PersistedCollapsedComments {
+
+  private static final String COMMENT_PREFIX = FullNameType.COMMENT.prefix();
+
+  /** IDs of collapsed remote comments. */
+  @Json(name = "comment_ids")
+  abstract List<String> commentIds();
+
+  /** Keys of collapsed locally posted comments. */
+  @Json(name = "other_keys")
+  abstract List<String> otherKeys();
+
+  static PersistedCollapsedComments from(Collection<String> collapsedKeys) {
+    List<String> commentIds = new ArrayList<>(collapsedKeys.size());
+    List<String> otherKeys = new ArrayList<>(0);
+    for (String key : collapsedKeys) {
+      if (key.startsWith(COMMENT_PREFIX)) {
+        commentIds.add(key.substring(COMMENT_PREFIX.length()));
+      } else {
+        otherKeys.add(key);
+      }
+    }
+    return new AutoValue_PersistedCollapsedComments(commentIds, otherKeys);
+  }
+
+  List<String> collapsedKeys() {
+    List<String> keys = new ArrayList<>(commentIds().size() + otherKeys().size());
+    for (String commentId : commentIds()) {
+      keys.add(COMMENT_PREFIX + commentId);
+    }
+    keys.addAll(otherKeys());
+    return keys;
+  }
+
+  public static JsonAdapter<PersistedCollapsedComments> jsonAdapter(Moshi moshi) {
+    return new AutoValue_PersistedCollapsedComments.MoshiJsonAdapter(moshi);
+  }
+}
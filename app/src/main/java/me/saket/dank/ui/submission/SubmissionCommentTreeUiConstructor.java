@@ -1,8 +1,8 @@
 package me.saket.dank.ui.submission;
 
 import static io.reactivex.schedulers.Schedulers.io;
+import static me.saket.dank.ui.submission.CommentRowState.keyFor;
 import static me.saket.dank.utils.Arrays2.immutable;
-import static me.saket.dank.utils.Preconditions.checkNotNull;
 
 import android.content.Context;
 import android.support.annotation.CheckResult;
@@ -23,18 +23,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Inject;
 
 import dagger.Lazy;
 import io.reactivex.Observable;
 import io.reactivex.Scheduler;
-import kotlin.Triple;
 import me.saket.dank.R;
 import me.saket.dank.data.LocallyPostedComment;
 import me.saket.dank.data.SpannableWithTextEquality;
 import me.saket.dank.reply.PendingSyncReply;
 import me.saket.dank.reply.ReplyRepository;
-import me.saket.dank.ui.compose.SimpleIdentifiable;
 import me.saket.dank.ui.submission.adapter.SubmissionCommentInlineReply;
 import me.saket.dank.ui.submission.adapter.SubmissionCommentsLoadMore;
 import me.saket.dank.ui.submission.adapter.SubmissionLocalComment;
@@ -47,13 +46,12 @@ import me.saket.dank.utils.DankSubmissionRequest;
 import me.saket.dank.utils.Dates;
 import me.saket.dank.utils.JrawUtils2;
 import me.saket.dank.utils.Optional;
-import me.saket.dank.utils.RxHashSet;
+import me.saket.dank.utils.PipelineProfiler;
 import me.saket.dank.utils.Strings;
 import me.saket.dank.utils.Themes;
 import me.saket.dank.utils.Truss;
 import me.saket.dank.utils.markdown.Markdown;
 import me.saket.dank.vote.VotingManager;
-import timber.log.Timber;
 
 /**
  * Constructs comments to show in a submission. Ignores collapsed comments + adds reply fields + adds "load more"
@@ -62,91 +60,16 @@ import timber.log.Timber;
 @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
 public class SubmissionCommentTreeUiConstructor {
 
-  private static final ActiveReplyIds ACTIVE_REPLY_IDS = new ActiveReplyIds();
-  public static final CollapsedCommentIds COLLAPSED_COMMENT_IDS = new CollapsedCommentIds(50);
-  private static final InFlightLoadMoreIds IN_FLIGHT_LOAD_MORE_IDS = new InFlightLoadMoreIds();
+  /** Same as reddit.com's default. */
+  private static final int AUTO_COLLAPSE_SCORE_THRESHOLD = -4;
 
   private final Lazy<ReplyRepository> replyRepository;
   private final Lazy<VotingManager> votingManager;
   private final Lazy<Markdown> markdown;
   private final Lazy<UserSessionRepository> userSessionRepository;
-
-  /** Contribution IDs for which inline replies are active. */
-  static class ActiveReplyIds extends RxHashSet<String> {
-    public boolean isActive(Identifiable parentContribution) {
-      return contains(keyFor(parentContribution));
-    }
-
-    public void showFor(Identifiable parentContribution) {
-      add(keyFor(parentContribution));
-    }
-
-    public void hideFor(Identifiable parentContribution) {
-      remove(keyFor(parentContribution));
-    }
-  }
-
-  /** Comment IDs that are collapsed. */
-  public static class CollapsedCommentIds extends RxHashSet<String> {
-    private boolean changeEventsEnabled = true;
-
-    public CollapsedCommentIds(int initialCapacity) {
-      super(initialCapacity);
-    }
-
-    @Override
-    public Observable<Integer> changes() {
-      return super
-          .changes()
-          .filter(o -> {
-            if (!changeEventsEnabled) {
-              Timber.w("Filtering collapse change event");
-            }
-            return changeEventsEnabled;
-          });
-    }
-
-    public boolean isCollapsed(Identifiable comment) {
-      return contains(keyFor(comment));
-    }
-
-    public void expand(Identifiable comment) {
-      boolean removed = remove(keyFor(comment));
-      if (!removed) {
-        throw new AssertionError("This comment isn't collapsed: " + comment);
-      }
-    }
-
-    public void collapse(Identifiable comment) {
-      add(keyFor(comment));
-    }
-
-    public void pauseChangeEvents() {
-      changeEventsEnabled = false;
-    }
-
-    public void resumeChangeEvents() {
-      changeEventsEnabled = true;
-    }
-  }
-
-  /** Comment IDs for which more child comments are being fetched. */
-  static class InFlightLoadMoreIds extends RxHashSet<String> {
-    public boolean isInFlightFor(CommentNode commentNode) {
-      return contains(keyFor(commentNode.getSubject()));
-    }
-
-    public void showLoadMoreFor(Identifiable parentComment) {
-      add(keyFor(parentComment));
-    }
-
-    public void hideLoadMoreFor(Identifiable parentComment) {
-      boolean removed = remove(keyFor(parentComment));
-      if (!removed) {
-        throw new AssertionError("More comments weren't in flight for: " + parentComment);
-      }
-    }
-  }
+  private final PipelineProfiler pipelineProfiler;
+  private final CommentRowStateRepository rowStateRepository;
+  private final AtomicReference<CommentRowStateStore> activeRowStateStore = new AtomicReference<>();
 
   class PendingSyncRepliesMap extends HashMap<String, List<PendingSyncReply>> {
     @Override
@@ -168,17 +91,40 @@ public class SubmissionCommentTreeUiConstructor {
     }
   }
 
+  private static class CommentTreeInputs {
+    final SubmissionAndComments submissionData;
+    final PendingSyncRepliesMap pendingSyncRepliesMap;
+    final Optional<FocusedComment> focusedComment;
+    final CommentRowState rowState;
+
+    CommentTreeInputs(
+        SubmissionAndComments submissionData,
+        PendingSyncRepliesMap pendingSyncRepliesMap,
+        Optional<FocusedComment> focusedComment,
+        CommentRowState rowState)
+    {
+      this.submissionData = submissionData;
+      this.pendingSyncRepliesMap = pendingSyncRepliesMap;
+      this.focusedComment = focusedComment;
+      this.rowState = rowState;
+    }
+  }
+
   @Inject
   public SubmissionCommentTreeUiConstructor(
       Lazy<ReplyRepository> replyRepository,
       Lazy<VotingManager> votingManager,
       Lazy<Markdown> markdown,
-      Lazy<UserSessionRepository> userSessionRepository)
+      Lazy<UserSessionRepository> userSessionRepository,
+      PipelineProfiler pipelineProfiler,
+      CommentRowStateRepository rowStateRepository)
   {
     this.replyRepository = replyRepository;
     this.votingManager = votingManager;
     this.markdown = markdown;
     this.userSessionRepository = userSessionRepository;
+    this.pipelineProfiler = pipelineProfiler;
+    this.rowStateRepository = rowStateRepository;
   }
 
   @CheckResult
@@ -198,14 +144,20 @@ public class SubmissionCommentTreeUiConstructor {
         .startWith(Collections.<PendingSyncReply>emptyList())
         .map(replyList -> createPendingSyncReplyMap(replyList));
 
-    Observable<?> rowVisibilityChanges = Observable
-        .merge(
-            ACTIVE_REPLY_IDS.changes(),
-            COLLAPSED_COMMENT_IDS.changes(),
-            IN_FLIGHT_LOAD_MORE_IDS.changes()
-        )
-        //.observeOn(scheduler)   // observeOn() because the relays emit on the main thread)
-        .startWith(0);          // Occasionally takes a while to emit something. I'm guessing the scheduler gets blocked.
+    // Row states are read from immutable snapshots so that the main thread
+    // can keep mutating them while the tree is being flattened.
+    Observable<CommentRowState> rowStates = submissionDatum
+        .map(submissionData -> submissionData.getSubmission().getFullName())
+        .distinctUntilChanged()
+        .switchMap(submissionFullName -> rowStateRepository.store(submissionFullName).toObservable())
+        .doOnNext(store -> {
+          CommentRowStateStore previousStore = activeRowStateStore.getAndSet(store);
+          if (previousStore != null && previousStore != store) {
+            // Load-more calls of the previous submission can't update its rows anymore.
+            previousStore.mutate(CommentRowState.Mutation::hideAllLoadMore);
+          }
+        })
+        .switchMap(CommentRowStateStore::streamSnapshots);
 
     Observable<Optional<FocusedComment>> focusedComments = submissionRequests
         .map(submissionRequest -> Optional.ofNullable(submissionRequest.focusCommentId()))
@@ -215,42 +167,43 @@ public class SubmissionCommentTreeUiConstructor {
 
     Observable<Object> voteChanges = votingManager.get().streamChanges();
 
-    return CombineLatestWithLog
+    return pipelineProfiler.profile("SubmissionCommentTree", trace -> CombineLatestWithLog
         .from(
+            trace,
             O.of("submission and root comments", submissionDatum),
             O.of("pendingSyncRepliesMap", pendingSyncRepliesMaps),
             O.of("focusedComment", focusedComments),
-            O.of("row-visibility", rowVisibilityChanges),
+            O.of("row-states", rowStates),
             O.of("votes", voteChanges),
-            (submissionData, pendingSyncRepliesMap, focusedComment, o, oo) -> new Triple<>(submissionData, pendingSyncRepliesMap, focusedComment))
+            (submissionData, pendingSyncRepliesMap, focusedComment, rowState, o) -> new CommentTreeInputs(submissionData, pendingSyncRepliesMap, focusedComment, rowState))
         .observeOn(scheduler)
-        .map(triple -> {
-          SubmissionAndComments submissionData = triple.getFirst();
-          PendingSyncRepliesMap pendingSyncRepliesMap = triple.getSecond();
-          Optional<FocusedComment> focusedComment = triple.getThird();
-          String submissionAuthor = submissionData.getSubmission().getAuthor();
-          return constructComments(context, submissionData, pendingSyncRepliesMap, submissionAuthor, focusedComment);
-        })
+        .map(inputs -> {
+          CommentRowState rowState = autoCollapseIfNeeded(inputs.submissionData).orElse(inputs.rowState);
+          String submissionAuthor = inputs.submissionData.getSubmission().getAuthor();
+          return constructComments(context, inputs.submissionData, inputs.pendingSyncRepliesMap, rowState, submissionAuthor, inputs.focusedComment);
+        }))
         .as(immutable());
   }
 
-  private static String keyFor(Identifiable contribution) {
-    // We're doing an exhaustive check here just to make sure
-    // there's no unknown data model being passed.
-    if (contribution instanceof Submission) {
-      return contribution.getFullName();
-    }
-    if (contribution instanceof SimpleIdentifiable) {
-      return contribution.getFullName();
-    }
-    if (contribution instanceof LocallyPostedComment) {
-      String key = ((LocallyPostedComment) contribution).getPostingStatusIndependentId();
-      return checkNotNull(key, "LocallyPostedComment#getPostingStatusIndependentId()");
-    }
-    if (contribution instanceof Comment) {
-      return contribution.getFullName();
-    }
-    throw new UnsupportedOperationException("Unknown contribution: " + contribution);
+  /**
+   * Collapses low scoring comments the first time a submission's comments are shown, unless
+   * the user's collapse state was restored from disk. The returned state is used for the
+   * current construction so that the collapsed comments don't show up for a frame.
+   */
+  private Optional<CommentRowState> autoCollapseIfNeeded(SubmissionAndComments submissionData) {
+    CommentRowStateStore store = activeRowStateStore.get();
+    if (store == null
+        || !submissionData.getComments().isPresent()
+        || !store.submissionFullName().equals(submissionData.getSubmission().getFullName())
+        || !store.consumeAutoCollapse())
+    {
+      return Optional.empty();
+    }
+    store.collapseAllBelowScore(
+        submissionData.getComments().get(),
+        AUTO_COLLAPSE_SCORE_THRESHOLD,
+        comment -> votingManager.get().getScoreAfterAdjustingPendingVote(comment));
+    return Optional.of(store.snapshot());
   }
 
   // Key: comment full-name.
@@ -270,19 +223,61 @@ public class SubmissionCommentTreeUiConstructor {
     return pendingReplyMap;
   }
 
+  /**
+   * Empty until stream() receives a submission. The UI can ask for row states before that,
+   * like while restoring its state.
+   */
+  private CommentRowState rowStateSnapshot() {
+    CommentRowStateStore store = activeRowStateStore.get();
+    return store != null ? store.snapshot() : CommentRowState.empty();
+  }
+
+  /**
+   * No-op until stream() receives a submission.
+   */
+  private void mutateRowState(CommentRowStateStore.Mutator mutator) {
+    CommentRowStateStore store = activeRowStateStore.get();
+    if (store != null) {
+      store.mutate(mutator);
+    }
+  }
+
   /**
    * Collapse/expand a comment.
    */
   void toggleCollapse(Identifiable comment) {
-    if (COLLAPSED_COMMENT_IDS.isCollapsed(comment)) {
-      COLLAPSED_COMMENT_IDS.expand(comment);
-    } else {
-      COLLAPSED_COMMENT_IDS.collapse(comment);
+    String key = keyFor(comment);
+    mutateRowState(mutation -> {
+      if (mutation.isCollapsed(key)) {
+        mutation.expand(key);
+      } else {
+        mutation.collapse(key);
+      }
+    });
+  }
+
+  /**
+   * Collapse all threads so that only top-level comments remain visible, with a single emission.
+   */
+  void collapseAllToTopLevel(CommentNode rootNode) {
+    CommentRowStateStore store = activeRowStateStore.get();
+    if (store != null) {
+      store.collapseAllAtDepth(rootNode, 1);
+    }
+  }
+
+  /**
+   * Collapse all replies of <var>parentComment</var>, with a single emission.
+   */
+  void collapseRepliesOf(CommentNode rootNode, Comment parentComment) {
+    CommentRowStateStore store = activeRowStateStore.get();
+    if (store != null) {
+      store.collapseChildrenOf(rootNode, keyFor(parentComment));
     }
   }
 
   boolean isCollapsed(Identifiable contribution) {
-    return COLLAPSED_COMMENT_IDS.isCollapsed(contribution);
+    return rowStateSnapshot().isCollapsed(keyFor(contribution));
   }
 
   /**
@@ -291,46 +286,48 @@ public class SubmissionCommentTreeUiConstructor {
    * @param parentComment for which more child nodes are being fetched.
    */
   void setMoreCommentsLoading(Identifiable parentComment, boolean loading) {
-    if (loading) {
-      IN_FLIGHT_LOAD_MORE_IDS.showLoadMoreFor(parentComment);
-    } else {
-      IN_FLIGHT_LOAD_MORE_IDS.hideLoadMoreFor(parentComment);
-    }
+    String key = keyFor(parentComment);
+    mutateRowState(mutation -> {
+      if (loading) {
+        mutation.showLoadMore(key);
+      } else {
+        mutation.hideLoadMore(key);
+      }
+    });
   }
 
   /**
-   * Show reply field for a comment and also expand any hidden comments.
+   * Show reply field for a comment and also expand any hidden comments, with a single emission.
    */
   void showReplyAndExpandComments(Identifiable parentComment) {
-    if (COLLAPSED_COMMENT_IDS.isCollapsed(parentComment)) {
-      COLLAPSED_COMMENT_IDS.pauseChangeEvents();
-      COLLAPSED_COMMENT_IDS.expand(parentComment);
-      COLLAPSED_COMMENT_IDS.resumeChangeEvents();
-    }
-
-    ACTIVE_REPLY_IDS.showFor(parentComment);
+    String key = keyFor(parentComment);
+    mutateRowState(mutation -> mutation
+        .expand(key)
+        .showReply(key));
   }
 
   /**
    * Show reply field for the submission or a comment.
    */
   void showReply(Identifiable parentContribution) {
-    ACTIVE_REPLY_IDS.showFor(parentContribution);
+    String key = keyFor(parentContribution);
+    mutateRowState(mutation -> mutation.showReply(key));
   }
 
   /**
    * Hide reply field for a comment.
    */
   void hideReply(Identifiable parentContribution) {
-    ACTIVE_REPLY_IDS.hideFor(parentContribution);
+    String key = keyFor(parentContribution);
+    mutateRowState(mutation -> mutation.hideReply(key));
   }
 
   boolean isReplyActiveFor(Identifiable contribution) {
-    return ACTIVE_REPLY_IDS.isActive(contribution);
+    return rowStateSnapshot().isReplyActive(keyFor(contribution));
   }
 
   public boolean isMoreCommentsInFlightFor(CommentNode commentNode) {
-    return IN_FLIGHT_LOAD_MORE_IDS.isInFlightFor(commentNode);
+    return rowStateSnapshot().isLoadMoreInFlight(keyFor(commentNode.getSubject()));
   }
 
   /**
@@ -340,11 +337,14 @@ public class SubmissionCommentTreeUiConstructor {
       Context context,
       SubmissionAndComments submissionData,
       PendingSyncRepliesMap pendingSyncRepliesMap,
+      CommentRowState rowState,
       String submissionAuthor,
       Optional<FocusedComment> focusedComment)
   {
+    boolean isSubmissionReplyActive = rowState.isReplyActive(keyFor(submissionData.getSubmission()));
+
     int totalRowsSize = 0;
-    if (ACTIVE_REPLY_IDS.isActive(submissionData.getSubmission())) {
+    if (isSubmissionReplyActive) {
       totalRowsSize += 1;
     }
 
@@ -354,7 +354,7 @@ public class SubmissionCommentTreeUiConstructor {
         .orElse(0);
 
     ArrayList<SubmissionScreenUiModel> flattenComments = new ArrayList<>(totalRowsSize);
-    if (ACTIVE_REPLY_IDS.isActive(submissionData.getSubmission())) {
+    if (isSubmissionReplyActive) {
       String loggedInUserName = userSessionRepository.get().loggedInUserName();
       flattenComments.add(inlineReplyUiModel(context, submissionData.getSubmission(), submissionAuthor, loggedInUserName, 0));
     }
@@ -368,6 +368,7 @@ public class SubmissionCommentTreeUiConstructor {
           submissionData.getComments().get(),
           submissionData.getSubmission(),
           pendingSyncRepliesMap,
+          rowState,
           submissionAuthor,
           focusedComment);
     }
@@ -382,6 +383,7 @@ public class SubmissionCommentTreeUiConstructor {
       CommentNode nextNode,
       Submission submission,
       PendingSyncRepliesMap pendingSyncRepliesMap,
+      CommentRowState rowState,
       String submissionAuthor,
       Optional<FocusedComment> focusedComment)
   {
@@ -392,8 +394,9 @@ public class SubmissionCommentTreeUiConstructor {
     //  }
     //}
 
-    boolean isCommentNodeCollapsed = COLLAPSED_COMMENT_IDS.isCollapsed(nextNode.getSubject());
-    boolean isReplyActive = ACTIVE_REPLY_IDS.isActive(nextNode.getSubject());
+    String nodeKey = keyFor(nextNode.getSubject());
+    boolean isCommentNodeCollapsed = rowState.isCollapsed(nodeKey);
+    boolean isReplyActive = rowState.isReplyActive(nodeKey);
 
     if (nextNode.getDepth() != 0) {
       //Timber.i("%s(%s) %s: %s", indentation, nextNode.getComment().getFullName(), nextNode.getComment().getAuthor(), nextNode.getComment().getBody());
@@ -417,7 +420,7 @@ public class SubmissionCommentTreeUiConstructor {
       List<PendingSyncReply> pendingSyncReplies = pendingSyncRepliesMap.getForParent(nextNode.getSubject());
       for (int i = 0; i < pendingSyncReplies.size(); i++) {     // Intentionally avoiding thrashing Iterator objects.
         LocallyPostedComment locallyPostedComment = new LocallyPostedComment(pendingSyncReplies.get(i));
-        boolean isReplyCollapsed = COLLAPSED_COMMENT_IDS.isCollapsed(locallyPostedComment);
+        boolean isReplyCollapsed = rowState.isCollapsed(keyFor(locallyPostedComment));
         int depth = nextNode.getDepth() + 1;
         boolean isFocused = focusedComment.isPresent()
             && locallyPostedComment.isPosted()
@@ -437,7 +440,7 @@ public class SubmissionCommentTreeUiConstructor {
         List<CommentNode> childCommentsTree = nextNode.getReplies();
         for (int i = 0; i < childCommentsTree.size(); i++) {  // Intentionally avoiding thrashing Iterator objects.
           CommentNode node = childCommentsTree.get(i);
-          constructComments(context, flattenComments, node, submission, pendingSyncRepliesMap, submissionAuthor, focusedComment);
+          constructComments(context, flattenComments, node, submission, pendingSyncRepliesMap, rowState, submissionAuthor, focusedComment);
         }
 
         if (nextNode.hasMoreChildren()) {
@@ -445,7 +448,7 @@ public class SubmissionCommentTreeUiConstructor {
           //    indentation, nextNode.getComment().getFullName(), nextNode.getComment().getAuthor(), nextNode.getMoreChildren().getCount()
           //);
           //Timber.d("%s %s", indentation, nextNode.getMoreChildren().getChildrenIds());
-          flattenComments.add(loadMoreUiModel(context, nextNode, IN_FLIGHT_LOAD_MORE_IDS.isInFlightFor(nextNode)));
+          flattenComments.add(loadMoreUiModel(context, nextNode, rowState.isLoadMoreInFlight(nodeKey)));
         }
       }
       return flattenComments;
@@ -52,6 +52,7 @@ import com.jakewharton.rxrelay2.Relay;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 
+import net.dean.jraw.models.Comment;
 import net.dean.jraw.models.Identifiable;
 import net.dean.jraw.models.Message;
 import net.dean.jraw.models.Submission;
@@ -79,6 +80,7 @@ import me.saket.dank.data.ActivityResult;
 import me.saket.dank.data.ErrorResolver;
 import me.saket.dank.data.LinkMetadataRepository;
 import me.saket.dank.data.OnLoginRequireListener;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.data.ResolvedError;
 import me.saket.dank.data.StatusBarTint;
 import me.saket.dank.data.UserPreferences;
@@ -216,6 +218,7 @@ public class SubmissionPageLayout extends ExpandablePageLayout implements Expand
   @Inject Lazy<SubmissionImageHolder> contentImageViewHolder;
   @Inject Lazy<ErrorResolver> errorResolver;
   @Inject Lazy<MediaHostRepository> mediaHostRepository;
+  @Inject Lazy<PaletteRepository> paletteRepository;
 
   private BehaviorRelay<DankSubmissionRequest> submissionRequestStream = BehaviorRelay.create();
   private BehaviorRelay<Optional<SubmissionAndComments>> submissionStream = BehaviorRelay.createDefault(Optional.empty());
@@ -556,7 +559,21 @@ public class SubmissionPageLayout extends ExpandablePageLayout implements Expand
     commentsAdapter.swipeEvents()
         .ofType(CommentOptionSwipeEvent.class)
         .takeUntil(lifecycle().onDestroy())
-        .subscribe(event -> event.showPopup(toolbar));
+        .subscribe(event -> event.showPopup(toolbar, new CommentOptionsPopup.CollapseListener() {
+          @Override
+          public void onCollapseReplies(Comment comment) {
+            submissionStream.getValue()
+                .flatMap(SubmissionAndComments::getComments)
+                .ifPresent(rootNode -> commentTreeUiConstructor.collapseRepliesOf(rootNode, comment));
+          }
+
+          @Override
+          public void onCollapseAllToTopLevel() {
+            submissionStream.getValue()
+                .flatMap(SubmissionAndComments::getComments)
+                .ifPresent(rootNode -> commentTreeUiConstructor.collapseAllToTopLevel(rootNode));
+          }
+        }));
 
     // Open in new tab gestures.
     commentsAdapter.swipeEvents()
@@ -1161,15 +1178,17 @@ public class SubmissionPageLayout extends ExpandablePageLayout implements Expand
   private void setupStatusBarTint() {
     //noinspection ConstantConditions
     int defaultStatusBarColor = ContextCompat.getColor(getContext(), R.color.color_primary_dark);
-    Observable<Optional<Bitmap>> contentBitmapStream = Observable.merge(
-        contentImageViewHolder.get().streamImageBitmaps(),
-        contentVideoViewHolder.get().streamVideoFirstFrameBitmaps().map(Optional::of)
-    );
+    Observable<Pair<String, Optional<Bitmap>>> contentBitmapStream = Observable
+        .merge(
+            contentImageViewHolder.get().streamImageBitmaps(),
+            contentVideoViewHolder.get().streamVideoFirstFrameBitmaps().map(Optional::of))
+        .withLatestFrom(submissionContentStream, (optionalBitmap, contentLink) -> Pair.create(contentLink.unparsedUrl(), optionalBitmap));
 
     SubmissionStatusBarTintProvider statusBarTintProvider = new SubmissionStatusBarTintProvider(
         defaultStatusBarColor,
         Views.statusBarHeight(getResources()),
-        deviceDisplayWidth
+        deviceDisplayWidth,
+        paletteRepository.get()
     );
 
     // Reset the toolbar icons' tint until the content is loaded.
@@ -13,6 +13,7 @@ import com.squareup.sqlbrite2.BriteDatabase;
 
 import net.dean.jraw.models.CommentSort;
 import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.PublicContribution;
 import net.dean.jraw.models.Submission;
 import net.dean.jraw.tree.CommentNode;
 import net.dean.jraw.tree.RootCommentNode;
@@ -23,8 +24,10 @@ import org.threeten.bp.ZoneId;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -40,6 +43,8 @@ import me.saket.dank.data.ErrorResolver;
 import me.saket.dank.data.FullNameType;
 import me.saket.dank.data.PaginationAnchor;
 import me.saket.dank.data.ResolvedError;
+import me.saket.dank.data.search.OfflineSearchIndex;
+import me.saket.dank.data.search.SearchableContent;
 import me.saket.dank.reddit.Reddit;
 import me.saket.dank.reply.ReplyRepository;
 import me.saket.dank.ui.submission.AuditedCommentSort.SelectedBy;
@@ -66,6 +71,7 @@ public class SubmissionRepository {
   private final Lazy<SubscriptionRepository> subscriptionRepository;
   private final Lazy<SyntheticData> syntheticData;
   private final Lazy<ReplyRepository> replyRepository;
+  private final Lazy<OfflineSearchIndex> searchIndex;
 
   private Cache<DankSubmissionRequest, CachedSubmissionAndComments> inMemoryCache;
 
@@ -79,7 +85,8 @@ public class SubmissionRepository {
       Lazy<ErrorResolver> errorResolver,
       Lazy<SubscriptionRepository> subscriptionRepository,
       Lazy<ReplyRepository> replyRepository,
-      Lazy<SyntheticData> syntheticData)
+      Lazy<SyntheticData> syntheticData,
+      Lazy<OfflineSearchIndex> searchIndex)
   {
     this.database = briteDatabase;
     this.moshi = moshi;
@@ -90,6 +97,7 @@ public class SubmissionRepository {
     this.subscriptionRepository = subscriptionRepository;
     this.syntheticData = syntheticData;
     this.replyRepository = replyRepository;
+    this.searchIndex = searchIndex;
 
     inMemoryCache = CacheBuilder.newBuilder()
         .expireAfterAccess(1, TimeUnit.HOURS)
@@ -201,7 +209,9 @@ public class SubmissionRepository {
                     System.currentTimeMillis());
                 return Pair.create(cachedSubmission, cachedComments);
               })
-              .flatMapCompletable(this::saveSubmissionData);
+              .flatMapCompletable(this::saveSubmissionData)
+              .andThen(cachedNetworkStream.flatMapCompletable(node ->
+                  Completable.fromAction(() -> searchIndex.get().indexSubmissionWithComments(node))));
 
           Completable removeStaleSyncedLocalReplies = cachedNetworkStream
               .map(node -> node.getSubject())
@@ -244,9 +254,34 @@ public class SubmissionRepository {
       throw new AssertionError("CommentNode does not belong to this submission");
     }
 
+    return Completable.defer(() -> {
+      Set<String> loadedReplyFullNames = replyFullNames(commentNode);
+
+      //noinspection unchecked
+      return ((Single<SubmissionAndComments>) reddit.get().submissions().fetchMoreComments(submissionData, commentNode))
+          .flatMapCompletable(updatedSubmissionData -> saveSubmissionComments(updatedSubmissionData, request))
+          .andThen(Completable.fromAction(() -> {
+            // The rest of the tree was indexed when it was loaded.
+            List<CommentNode> newReplies = new ArrayList<>();
+            //noinspection unchecked
+            for (CommentNode reply : (List<CommentNode>) commentNode.getReplies()) {
+              if (!loadedReplyFullNames.contains(((PublicContribution) reply.getSubject()).getFullName())) {
+                newReplies.add(reply);
+              }
+            }
+            searchIndex.get().indexCommentTrees(newReplies);
+          }));
+    });
+  }
+
+  private static Set<String> replyFullNames(CommentNode commentNode) {
     //noinspection unchecked
-    return ((Single<SubmissionAndComments>) reddit.get().submissions().fetchMoreComments(submissionData, commentNode))
-        .flatMapCompletable(updatedSubmissionData -> saveSubmissionComments(updatedSubmissionData, request));
+    List<CommentNode> replies = commentNode.getReplies();
+    Set<String> fullNames = new HashSet<>(replies.size());
+    for (CommentNode reply : replies) {
+      fullNames.add(((PublicContribution) reply.getSubject()).getFullName());
+    }
+    return fullNames;
   }
 
   public Completable clearCachedSubmissionComments(DankSubmissionRequest request) {
@@ -450,6 +485,9 @@ public class SubmissionRepository {
     });
     //Timber.i("Saved %d items in: %sms", submissionsToSave.size(), (System.currentTimeMillis() - startTime));
 
+    // Duplicates are indexed too, so that their scores stay fresh.
+    searchIndex.get().indexSubmissions(submissionsToSave);
+
     return SaveResult.create(Collections.unmodifiableList(savedSubmissions));
   }
 
@@ -494,7 +532,13 @@ public class SubmissionRepository {
     }
 
     return logCompletable
-        .andThen(Single.fromCallable(() -> roomDatabase.get().submissionDao().deleteAllSubmissionRelatedRows(millisBeforeNow)));
+        .andThen(Single.fromCallable(() -> {
+          int deletedRowCount = roomDatabase.get().submissionDao().deleteAllSubmissionRelatedRows(millisBeforeNow);
+          int removedIndexCount = searchIndex.get().removeIndexedBefore(SearchableContent.Type.SUBMISSION, millisBeforeNow)
+              + searchIndex.get().removeIndexedBefore(SearchableContent.Type.COMMENT, millisBeforeNow);
+          Timber.i("Removed %s items from the search index", removedIndexCount);
+          return deletedRowCount;
+        }));
   }
 
   @AutoValue
@@ -5,8 +5,10 @@ import android.support.annotation.CheckResult;
 
 import io.reactivex.Observable;
 import io.reactivex.Single;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.data.StatusBarTint;
 import me.saket.dank.utils.Optional;
+import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.StatusBarTintProvider;
 import me.saket.dank.widgets.InboxUI.ExpandablePageLayout;
 import me.saket.dank.widgets.InboxUI.PullToCollapseListener;
@@ -30,23 +32,27 @@ class SubmissionStatusBarTintProvider {
   /**
    * @param statusBarHeight Used with Palette for setting the photo's region from where the color will be extracted.
    */
-  SubmissionStatusBarTintProvider(int defaultStatusBarColor, int statusBarHeight, int displayWidth) {
+  SubmissionStatusBarTintProvider(int defaultStatusBarColor, int statusBarHeight, int displayWidth, PaletteRepository paletteRepository) {
     this.defaultStatusBarColor = defaultStatusBarColor;
-    this.statusBarTintProvider = new StatusBarTintProvider(this.defaultStatusBarColor, statusBarHeight, displayWidth);
+    this.statusBarTintProvider = new StatusBarTintProvider(this.defaultStatusBarColor, statusBarHeight, displayWidth, paletteRepository);
   }
 
+  /**
+   * @param contentBitmapStream Bitmaps paired with the URL of their content, which is used for caching their palettes.
+   */
   // TODO v2: This doesn't work with SubmissionPageLayoutActivity. Pull-to-collapse listener uses Activity's root page instead of submission page.
   @CheckResult
   public Observable<StatusBarTint> streamStatusBarTintColor(
-      Observable<Optional<Bitmap>> contentBitmapStream,
+      Observable<Pair<String, Optional<Bitmap>>> contentBitmapStream,
       ExpandablePageLayout expandablePageLayout,
       ScrollingRecyclerViewSheet commentListParentSheet)
   {
     StatusBarTint defaultTint = StatusBarTint.create(defaultStatusBarColor, true);
     return contentBitmapStream
-        .switchMapSingle(optionalBitmap -> {
+        .switchMapSingle(urlAndOptionalBitmap -> {
+          Optional<Bitmap> optionalBitmap = urlAndOptionalBitmap.second();
           if (optionalBitmap.isPresent()) {
-            return statusBarTintProvider.generateTint(optionalBitmap.get());
+            return statusBarTintProvider.generateTint(urlAndOptionalBitmap.first(), optionalBitmap.get());
           } else {
             Timber.i("Empty image. Returning default tint.");
             return Single.just(defaultTint);
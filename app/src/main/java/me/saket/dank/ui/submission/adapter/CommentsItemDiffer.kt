@@ -1,15 +1,15 @@
 package me.saket.dank.ui.submission.adapter
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks
 import java.util.ArrayList
 
 class CommentsItemDiffer private constructor(
     oldComments: List<SubmissionScreenUiModel>,
     newComments: List<SubmissionScreenUiModel>
-) : SimpleDiffUtilsCallbacks<SubmissionScreenUiModel>(oldComments, newComments) {
+) : StableIdDiffUtilsCallbacks<SubmissionScreenUiModel>(oldComments, newComments) {
 
-  override fun areItemsTheSame(oldModel: SubmissionScreenUiModel, newModel: SubmissionScreenUiModel): Boolean {
-    return oldModel.adapterId() == newModel.adapterId()
+  override fun getItemId(item: SubmissionScreenUiModel): Long {
+    return item.adapterId()
   }
 
   override fun areContentsTheSame(oldModel: SubmissionScreenUiModel, newModel: SubmissionScreenUiModel): Boolean {
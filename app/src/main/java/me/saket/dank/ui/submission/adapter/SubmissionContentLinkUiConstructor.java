@@ -6,21 +6,17 @@ import static java.util.Arrays.asList;
 
 import android.app.Activity;
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.support.annotation.ColorRes;
 import android.support.v4.content.ContextCompat;
-import android.support.v7.graphics.Palette;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 import com.bumptech.glide.load.resource.gif.GifDrawable;
 import com.bumptech.glide.request.FutureTarget;
-import com.bumptech.glide.request.RequestOptions;
 import com.bumptech.glide.request.target.Target;
 import com.google.auto.value.AutoValue;
 
@@ -34,7 +30,9 @@ import io.reactivex.Observable;
 import io.reactivex.Single;
 import me.saket.dank.R;
 import me.saket.dank.data.ErrorResolver;
+import me.saket.dank.data.FaviconRepository;
 import me.saket.dank.data.LinkMetadataRepository;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.data.ResolvedError;
 import me.saket.dank.urlparser.ExternalLink;
 import me.saket.dank.urlparser.ImgurAlbumLink;
@@ -48,8 +46,8 @@ import me.saket.dank.urlparser.UrlParser;
 import me.saket.dank.utils.Colors;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Pair;
+import me.saket.dank.utils.PipelineProfiler;
 import me.saket.dank.utils.Urls;
-import me.saket.dank.utils.glide.GlideCircularTransformation;
 import timber.log.Timber;
 
 /**
@@ -61,17 +59,31 @@ public class SubmissionContentLinkUiConstructor {
   private static final TintDetails DEFAULT_TINT_DETAILS = TintDetails.create(Optional.of(Color.DKGRAY), R.color.submission_link_title, R.color.submission_link_byline);
   private static final boolean PROGRESS_VISIBLE = true;
   private static final boolean PROGRESS_HIDDEN = false;
+  private static final String ALBUM_ICON_PALETTE_KEY = "resource:ic_photo_library_24dp";
 
   private final LinkMetadataRepository linkMetadataRepository;
+  private final FaviconRepository faviconRepository;
+  private final PaletteRepository paletteRepository;
   private final BitmapPool bitmapPool;
   private final Lazy<ErrorResolver> errorResolver;
+  private final PipelineProfiler pipelineProfiler;
   private final Map<Target, Drawable> targetsToDispose = new HashMap<>(8);
 
   @Inject
-  public SubmissionContentLinkUiConstructor(LinkMetadataRepository linkMetadataRepository, BitmapPool bitmapPool, Lazy<ErrorResolver> errorResolver) {
+  public SubmissionContentLinkUiConstructor(
+      LinkMetadataRepository linkMetadataRepository,
+      FaviconRepository faviconRepository,
+      PaletteRepository paletteRepository,
+      BitmapPool bitmapPool,
+      Lazy<ErrorResolver> errorResolver,
+      PipelineProfiler pipelineProfiler)
+  {
     this.linkMetadataRepository = linkMetadataRepository;
+    this.faviconRepository = faviconRepository;
+    this.paletteRepository = paletteRepository;
     this.bitmapPool = bitmapPool;
     this.errorResolver = errorResolver;
+    this.pipelineProfiler = pipelineProfiler;
   }
 
   /**
@@ -90,13 +102,17 @@ public class SubmissionContentLinkUiConstructor {
     int windowBackgroundColor = ContextCompat.getColor(context, R.color.window_background);
 
     if (link.isExternal()) {
-      return streamLoadExternalLink(context, (ExternalLink) link, windowBackgroundColor, redditSuppliedThumbnails);
+      return pipelineProfiler.profile(
+          "SubmissionContentLink:external",
+          trace -> streamLoadExternalLink(trace, context, (ExternalLink) link, windowBackgroundColor, redditSuppliedThumbnails));
 
     } else if (link.isRedditPage()) {
       return streamLoadRedditLink(context, ((RedditLink) link));
 
     } else if (link.isMediaAlbum() && link instanceof ImgurAlbumLink) {
-      return streamLoadImgurAlbum(context, ((ImgurAlbumLink) link), windowBackgroundColor, redditSuppliedThumbnails);
+      return pipelineProfiler.profile(
+          "SubmissionContentLink:album",
+          trace -> streamLoadImgurAlbum(trace, context, ((ImgurAlbumLink) link), windowBackgroundColor, redditSuppliedThumbnails));
 
     } else {
       throw new AssertionError("Unknown link: " + link);
@@ -130,6 +146,7 @@ public class SubmissionContentLinkUiConstructor {
   }
 
   private Observable<SubmissionContentLinkUiModel> streamLoadExternalLink(
+      PipelineProfiler.Trace trace,
       Context context,
       ExternalLink link,
       int windowBackgroundColor,
@@ -145,14 +162,16 @@ public class SubmissionContentLinkUiConstructor {
     Observable<String> sharedTitleStream = fetchTitle(link, sharedLinkMetadataStream)
         .replay()
         .refCount();
-    Observable<Optional<Drawable>> sharedFaviconStream = fetchFavicon(context, sharedLinkMetadataStream)
+    Observable<Optional<Pair<String, Drawable>>> sharedFaviconWithUrlStream = fetchFavicon(context, link, sharedLinkMetadataStream)
         .replay()
         .refCount();
+    Observable<Optional<Drawable>> sharedFaviconStream = sharedFaviconWithUrlStream.map(optional -> optional.map(Pair::second));
     Observable<Optional<String>> thumbnailUrlStream = sharedLinkMetadataStream.map(linkMetadata -> Optional.ofNullable(linkMetadata.imageUrl()));
-    Observable<Optional<Drawable>> sharedThumbnailStream = fetchThumbnail(context, redditSuppliedThumbnails, thumbnailUrlStream)
+    Observable<Optional<Pair<String, Drawable>>> sharedThumbnailWithUrlStream = fetchThumbnail(context, redditSuppliedThumbnails, thumbnailUrlStream)
         .replay()
         .refCount();
-    Observable<TintDetails> tintDetailsStream = streamTintDetails(link, windowBackgroundColor, sharedFaviconStream, sharedThumbnailStream);
+    Observable<Optional<Drawable>> sharedThumbnailStream = sharedThumbnailWithUrlStream.map(optional -> optional.map(Pair::second));
+    Observable<TintDetails> tintDetailsStream = streamTintDetails(link, windowBackgroundColor, sharedFaviconWithUrlStream, sharedThumbnailWithUrlStream);
 
     Observable<Boolean> progressVisibleStream = Completable
         .mergeDelayError(asList(
@@ -183,11 +202,11 @@ public class SubmissionContentLinkUiConstructor {
         .startWith(Optional.empty());
 
     return Observable.combineLatest(
-        sharedTitleStream,
-        faviconStreamWithDefault,
-        sharedThumbnailStream,
-        tintDetailsStream,
-        progressVisibleStream,
+        sharedTitleStream.compose(trace.source("title")),
+        faviconStreamWithDefault.compose(trace.source("favicon")),
+        sharedThumbnailStream.compose(trace.source("thumbnail")),
+        tintDetailsStream.compose(trace.source("tint")),
+        progressVisibleStream.compose(trace.source("progress")),
         (title, optionalFavicon, optionalThumbnail, tintDetails, progressVisible) -> {
           //noinspection ConstantConditions
           Optional<Integer> optionalFaviconBackground = optionalThumbnail.isPresent()
@@ -304,7 +323,8 @@ public class SubmissionContentLinkUiConstructor {
     );
   }
 
-  public Observable<SubmissionContentLinkUiModel> streamLoadImgurAlbum(
+  private Observable<SubmissionContentLinkUiModel> streamLoadImgurAlbum(
+      PipelineProfiler.Trace trace,
       Context context,
       ImgurAlbumLink albumLink,
       int windowBackgroundColor,
@@ -324,27 +344,30 @@ public class SubmissionContentLinkUiConstructor {
             : context.getString(R.string.submission_image_album_image_count, albumLink.images().size()));
 
     Observable<Optional<String>> albumThumbnailStream = Observable.just(Optional.of(albumLink.coverImageUrl()));
-    Observable<Optional<Drawable>> sharedThumbnailStream = fetchThumbnail(context, redditSuppliedThumbnails, albumThumbnailStream)
+    Observable<Optional<Pair<String, Drawable>>> sharedThumbnailWithUrlStream = fetchThumbnail(context, redditSuppliedThumbnails, albumThumbnailStream)
         .replay()
         .refCount();
-    Observable<Optional<Drawable>> sharedFaviconStream = Observable.fromCallable(() -> context.getDrawable(R.drawable.ic_photo_library_24dp))
+    Observable<Optional<Drawable>> sharedThumbnailStream = sharedThumbnailWithUrlStream.map(optional -> optional.map(Pair::second));
+    Observable<Optional<Pair<String, Drawable>>> sharedFaviconWithUrlStream = Observable
+        .fromCallable(() -> Pair.create(ALBUM_ICON_PALETTE_KEY, context.getDrawable(R.drawable.ic_photo_library_24dp)))
         .as(Optional.of())
         .replay()
         .refCount();
+    Observable<Optional<Drawable>> sharedFaviconStream = sharedFaviconWithUrlStream.map(optional -> optional.map(Pair::second));
 
-    Observable<TintDetails> tintDetailsStream = streamTintDetails(albumLink, windowBackgroundColor, sharedFaviconStream, sharedThumbnailStream);
+    Observable<TintDetails> tintDetailsStream = streamTintDetails(albumLink, windowBackgroundColor, sharedFaviconWithUrlStream, sharedThumbnailWithUrlStream);
     Observable<Boolean> progressVisibleStream = sharedThumbnailStream
         .map(o -> false)
         .onErrorReturnItem(false)
         .startWith(true);
 
     return Observable.combineLatest(
-        titleStream,
-        bylineStream,
-        sharedFaviconStream,
-        sharedThumbnailStream,
-        tintDetailsStream,
-        progressVisibleStream,
+        titleStream.compose(trace.source("title")),
+        bylineStream.compose(trace.source("byline")),
+        sharedFaviconStream.compose(trace.source("favicon")),
+        sharedThumbnailStream.compose(trace.source("thumbnail")),
+        tintDetailsStream.compose(trace.source("tint")),
+        progressVisibleStream.compose(trace.source("progress")),
         (title, byline, optionalFavicon, optionalThumbnail, tintDetails, progressVisible) ->
             SubmissionContentLinkUiModel.builder()
                 .title(title)
@@ -371,8 +394,9 @@ public class SubmissionContentLinkUiConstructor {
   /**
    * @param redditSuppliedThumbnails   Default source for images.
    * @param fallbackThumbnailUrlStream Fallback in case reddit didn't supply any images.
+   * @return Thumbnails paired with their URLs.
    */
-  private Observable<Optional<Drawable>> fetchThumbnail(
+  private Observable<Optional<Pair<String, Drawable>>> fetchThumbnail(
       Context context,
       ImageWithMultipleVariants redditSuppliedThumbnails,
       Observable<Optional<String>> fallbackThumbnailUrlStream)
@@ -392,26 +416,32 @@ public class SubmissionContentLinkUiConstructor {
           FutureTarget<Drawable> imageTarget = Glide.with(context)
               .load(imageUrl)
               .submit();
-          return loadImage(imageTarget);
+          return loadImage(imageTarget).map(image -> Pair.create(imageUrl, image));
         })
-        .map(image -> Optional.of(image))
+        .map(urlAndImage -> Optional.of(urlAndImage))
         .startWith(Optional.empty());
   }
 
-  private Observable<Optional<Drawable>> fetchFavicon(Context context, Observable<LinkMetadata> linkMetadataStream) {
+  /**
+   * @return Favicons paired with their URLs.
+   */
+  private Observable<Optional<Pair<String, Drawable>>> fetchFavicon(Context context, Link link, Observable<LinkMetadata> linkMetadataStream) {
+    String domain = Urls.parseDomainName(link.unparsedUrl());
+
+    // Favicons are shared by all links of a domain and are owned by FaviconRepository,
+    // so they're intentionally not added to targetsToDispose for recycling.
     //noinspection ConstantConditions
     return linkMetadataStream
         .observeOn(io())
         .flatMap(metadata -> metadata.hasFavicon() ? Observable.just(metadata.faviconUrl()) : Observable.empty())
-        .flatMap(faviconUrl -> {
-          // Keep this context in sync with the one used in loadImage() for clearing this load on dispose.
-          FutureTarget<Drawable> iconTarget = Glide.with(context)
-              .load(faviconUrl)
-              .apply(RequestOptions.bitmapTransform(GlideCircularTransformation.INSTANCE))
-              .submit();
-          return loadImage(iconTarget);
+        .flatMapSingle(faviconUrl -> faviconRepository.favicon(domain, faviconUrl)
+            .map(favicon -> Pair.<String, Drawable>create(faviconUrl, new BitmapDrawable(context.getResources(), favicon))))
+        .onErrorResumeNext(error -> {
+          ResolvedError resolvedError = errorResolver.get().resolve(error);
+          resolvedError.ifUnknown(() -> Timber.e(error, "Couldn't load favicon"));
+          return Observable.empty();
         })
-        .map(favicon -> Optional.of(favicon))
+        .map(urlAndFavicon -> Optional.of(urlAndFavicon))
         .startWith(Optional.empty());
   }
 
@@ -432,11 +462,15 @@ public class SubmissionContentLinkUiConstructor {
         });
   }
 
+  /**
+   * @param sharedFaviconStream   Favicons paired with their URLs.
+   * @param sharedThumbnailStream Thumbnails paired with their URLs.
+   */
   private Observable<TintDetails> streamTintDetails(
       Link link,
       int windowBackgroundColor,
-      Observable<Optional<Drawable>> sharedFaviconStream,
-      Observable<Optional<Drawable>> sharedThumbnailStream)
+      Observable<Optional<Pair<String, Drawable>>> sharedFaviconStream,
+      Observable<Optional<Pair<String, Drawable>>> sharedThumbnailStream)
   {
     boolean isGooglePlayThumbnail = UrlParser.isGooglePlayUrl(Uri.parse(link.unparsedUrl()));
 
@@ -445,27 +479,27 @@ public class SubmissionContentLinkUiConstructor {
         .take(1)
         .map(imageOptional -> imageOptional.get())
         .observeOn(single())
-        .flatMapSingle(image -> generateTint(image, isGooglePlayThumbnail, windowBackgroundColor))
+        .flatMapSingle(urlAndImage -> generateTint(urlAndImage.first(), urlAndImage.second(), isGooglePlayThumbnail, windowBackgroundColor))
         .startWith(DEFAULT_TINT_DETAILS);
   }
 
-  private Single<TintDetails> generateTint(Drawable drawable, boolean isGooglePlayThumbnail, int windowBackgroundColor) {
-    return bitmapFromDrawable(drawable)
-        .flatMap(bitmap -> Single.fromCallable(() -> Palette.from(bitmap)
-            .maximumColorCount(Integer.MAX_VALUE)    // Don't understand why, but this changes the darkness of the colors.
-            .generate()
-        ))
+  private Single<TintDetails> generateTint(String imageUrl, Drawable drawable, boolean isGooglePlayThumbnail, int windowBackgroundColor) {
+    return paletteRepository.contentLinkPalette(imageUrl, drawable)
         .map(palette -> {
+          int lightVibrantColor = palette.lightVibrantColor() != null ? palette.lightVibrantColor() : -1;
+          int mutedColor = palette.mutedColor() != null ? palette.mutedColor() : -1;
+          int darkMutedColor = palette.darkMutedColor() != null ? palette.darkMutedColor() : -1;
+
           int tint = -1;
           if (isGooglePlayThumbnail) {
-            tint = palette.getLightVibrantColor(-1);
+            tint = lightVibrantColor;
           }
-          if (tint == -1 && palette.getDarkMutedColor(-1) != -1 && palette.getMutedColor(-1) != -1) {
-            tint = Colors.mix(palette.getMutedColor(-1), palette.getDarkMutedColor(-1));
+          if (tint == -1 && darkMutedColor != -1 && mutedColor != -1) {
+            tint = Colors.mix(mutedColor, darkMutedColor);
           }
           if (tint == -1) {
             // Mix the color with the window's background color to neutralize possibly strong colors.
-            tint = Colors.mix(windowBackgroundColor, palette.getMutedColor(-1));
+            tint = Colors.mix(windowBackgroundColor, mutedColor);
           }
           return tint != -1
               ? Optional.of(tint)
@@ -484,22 +518,6 @@ public class SubmissionContentLinkUiConstructor {
         });
   }
 
-  private Single<Bitmap> bitmapFromDrawable(Drawable drawable) {
-    return Single.create(emitter -> {
-      if (drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
-        throw new AssertionError();
-      }
-
-      Bitmap bitmap = bitmapPool.get(drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight(), Bitmap.Config.RGB_565);
-      Canvas canvas = new Canvas(bitmap);
-      drawable.setBounds(0, 0, drawable.getIntrinsicWidth(), drawable.getIntrinsicHeight());
-      drawable.draw(canvas);
-
-      emitter.onSuccess(bitmap);
-      emitter.setCancellable(() -> bitmapPool.put(bitmap));
-    });
-  }
-
   @AutoValue
   abstract static class TintDetails {
 
@@ -31,6 +31,7 @@ import me.saket.dank.utils.Dates
 import me.saket.dank.utils.JrawUtils2
 import me.saket.dank.utils.Optional
 import me.saket.dank.utils.Pair
+import me.saket.dank.utils.PipelineProfiler
 import me.saket.dank.utils.Strings
 import me.saket.dank.utils.Themes
 import me.saket.dank.utils.Truss
@@ -51,7 +52,8 @@ constructor(
     private val votingManager: VotingManager,
     private val markdown: Markdown,
     private val userSessionRepository: UserSessionRepository,
-    private val bookmarksRepository: Lazy<BookmarksRepository>
+    private val bookmarksRepository: Lazy<BookmarksRepository>,
+    private val pipelineProfiler: PipelineProfiler
 ) {
 
   @CheckResult
@@ -126,23 +128,35 @@ constructor(
               .map { it.size }
               .startWith(0)  // Stream sometimes takes too long to emit anything.
 
+          // Saving or unsaving other submissions and comments doesn't affect the header.
+          val submissionBookmarkChanges = sharedSubmissionDatum2
+              .map { it.submission.fullName }
+              .distinctUntilChanged()
+              .switchMap { fullName -> bookmarksRepository.get().streamChanges().filter { it.affects(fullName) } }
+
           val externalChanges = Observable
-              .merge(votingManager.streamChanges(), bookmarksRepository.get().streamChanges())
+              .merge(votingManager.streamChanges(), submissionBookmarkChanges)
               .startWith(NOTHING)
 
-          val headerUiModels = CombineLatestWithLog.from<Context, Submission, Optional<SubmissionContentLinkUiModel>, Any, SubmissionCommentsHeader.UiModel>(
-              O.of("ext-change", externalChanges.map { context }),
-              O.of("submission 2", sharedSubmissionDatum2.map { it.submission }.distinctUntilChanged()),
-              O.of("content-link", contentLinkUiModels),
-              ::headerUiModel
-          )
+          val headerUiModels = pipelineProfiler.profile("SubmissionHeader") { trace ->
+            CombineLatestWithLog.from<Context, Submission, Optional<SubmissionContentLinkUiModel>, Any, SubmissionCommentsHeader.UiModel>(
+                trace,
+                O.of("ext-change", externalChanges.map { context }),
+                O.of("submission 2", sharedSubmissionDatum2.map { it.submission }.distinctUntilChanged()),
+                O.of("content-link", contentLinkUiModels),
+                ::headerUiModel
+            )
+          }
 
-          val commentOptionsUiModels = CombineLatestWithLog.from<Submission, DankSubmissionRequest, Int, Any, SubmissionCommentOptions.UiModel>(
-              O.of("submission 3", sharedSubmissionDatum2.map { it.submission }.distinctUntilChanged()),
-              O.of("submission requests", submissionRequests),
-              O.of("pending-sync-reply-count", submissionPendingSyncReplyCounts),
-              ::commentOptionsUiModel
-          )
+          val commentOptionsUiModels = pipelineProfiler.profile("SubmissionCommentOptions") { trace ->
+            CombineLatestWithLog.from<Submission, DankSubmissionRequest, Int, Any, SubmissionCommentOptions.UiModel>(
+                trace,
+                O.of("submission 3", sharedSubmissionDatum2.map { it.submission }.distinctUntilChanged()),
+                O.of("submission requests", submissionRequests),
+                O.of("pending-sync-reply-count", submissionPendingSyncReplyCounts),
+                ::commentOptionsUiModel
+            )
+          }
 
           val contentLoadErrorUiModels = mediaContentLoadErrors
               .map { optionalError -> optionalError.map { error -> error.uiModel(context) } }
@@ -179,36 +193,39 @@ constructor(
           val commentsLoadErrorUiModels = commentsLoadErrors
               .map { optionalError -> optionalError.map { error -> SubmissionCommentsLoadError.UiModel.create(error) } }
 
-          CombineLatestWithLog.from(
-              O.of("header", headerUiModels),
-              O.of("comment options", commentOptionsUiModels),
-              O.of("content-load-error", contentLoadErrorUiModels),
-              O.of("view-full-thread", viewFullThreadUiModels),
-              O.of("comments-load-progress", commentsLoadProgressUiModels),
-              O.of("comments-load-error", commentsLoadErrorUiModels),
-              O.of("comment-rows", commentRowUiModels)
-          ) { header, commentOptions, optionalContentError, viewFullThread, optionalCommentsLoadProgress, optionalCommentsLoadError, commentModels ->
-            // Steps to update this list:
-            // 1. Update the initial capacity.
-            // 2. Ensure that the ordering is correct. This is
-            //    the same order in which they'll be displayed.
-            val allItems = ArrayList<SubmissionScreenUiModel>(6 + commentModels.size)
-
-            allItems.add(header)
-            optionalContentError.ifPresent { allItems.add(it) }
-            viewFullThread.ifPresent { allItems.add(it) }
-            allItems.add(commentOptions)
-            allItems.addAll(commentModels)
-
-            if (BuildConfig.DEBUG) {
-              Timber.i("Received %s comment ui models", commentModels.size)
-            }
+          pipelineProfiler.profile<List<SubmissionScreenUiModel>>("Submission") { trace ->
+            CombineLatestWithLog.from(
+                trace,
+                O.of("header", headerUiModels),
+                O.of("comment options", commentOptionsUiModels),
+                O.of("content-load-error", contentLoadErrorUiModels),
+                O.of("view-full-thread", viewFullThreadUiModels),
+                O.of("comments-load-progress", commentsLoadProgressUiModels),
+                O.of("comments-load-error", commentsLoadErrorUiModels),
+                O.of("comment-rows", commentRowUiModels)
+            ) { header, commentOptions, optionalContentError, viewFullThread, optionalCommentsLoadProgress, optionalCommentsLoadError, commentModels ->
+              // Steps to update this list:
+              // 1. Update the initial capacity.
+              // 2. Ensure that the ordering is correct. This is
+              //    the same order in which they'll be displayed.
+              val allItems = ArrayList<SubmissionScreenUiModel>(6 + commentModels.size)
+
+              allItems.add(header)
+              optionalContentError.ifPresent { allItems.add(it) }
+              viewFullThread.ifPresent { allItems.add(it) }
+              allItems.add(commentOptions)
+              allItems.addAll(commentModels)
+
+              if (BuildConfig.DEBUG) {
+                Timber.i("Received %s comment ui models", commentModels.size)
+              }
 
-            // Comments progress and error go after comment rows
-            // so that inline reply for submission appears above them.
-            optionalCommentsLoadProgress.ifPresent { allItems.add(it) }
-            optionalCommentsLoadError.ifPresent { allItems.add(it) }
-            Collections.unmodifiableList(allItems)
+              // Comments progress and error go after comment rows
+              // so that inline reply for submission appears above them.
+              optionalCommentsLoadProgress.ifPresent { allItems.add(it) }
+              optionalCommentsLoadError.ifPresent { allItems.add(it) }
+              Collections.unmodifiableList(allItems)
+            }
           }
         }
   }
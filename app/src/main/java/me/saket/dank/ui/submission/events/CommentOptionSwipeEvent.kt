@@ -12,7 +12,7 @@ import net.dean.jraw.models.Comment
 
 data class CommentOptionSwipeEvent(private val comment: Comment, private val itemView: SwipeableLayout) : SwipeEvent {
 
-  fun showPopup(toolbar: View) {
+  fun showPopup(toolbar: View, collapseListener: CommentOptionsPopup.CollapseListener) {
     val commentLayout = itemView
     val sheetLocation = Views.locationOnScreen(commentLayout)
     val popupLocation = Point(0, sheetLocation.y)
@@ -27,7 +27,7 @@ data class CommentOptionSwipeEvent(private val comment: Comment, private val ite
     val toolbarBottom = Views.locationOnScreen(toolbar).y + toolbar.bottom + resources.getDimensionPixelSize(R.dimen.spacing16)
     popupLocation.y = Math.max(popupLocation.y, toolbarBottom)
 
-    val optionsPopup = CommentOptionsPopup(commentLayout.context, comment)
+    val optionsPopup = CommentOptionsPopup(commentLayout.context, comment, collapseListener)
     optionsPopup.showAtLocation(commentLayout, Gravity.TOP or Gravity.START, popupLocation)
   }
 }
@@ -19,7 +19,6 @@ import android.os.Parcelable;
 import android.support.annotation.Nullable;
 import android.support.transition.TransitionManager;
 import android.support.transition.TransitionSet;
-import android.support.v7.util.DiffUtil;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -27,6 +26,8 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
 import com.f2prateek.rx.preferences2.Preference;
 import com.github.zagum.expandicon.ExpandIconView;
 import com.jakewharton.rxbinding2.internal.Notification;
@@ -80,6 +81,7 @@ import me.saket.dank.ui.subreddit.events.SubmissionOptionSwipeEvent;
 import me.saket.dank.ui.subreddit.events.SubredditScreenCreateEvent;
 import me.saket.dank.ui.subreddit.uimodels.SubmissionItemDiffer;
 import me.saket.dank.ui.subreddit.uimodels.SubredditScreenUiModel;
+import me.saket.dank.ui.subreddit.uimodels.SubredditSubmission;
 import me.saket.dank.ui.subreddit.uimodels.SubredditUiConstructor;
 import me.saket.dank.ui.subscriptions.SubredditPickerSheetView;
 import me.saket.dank.ui.subscriptions.SubscriptionRepository;
@@ -90,10 +92,12 @@ import me.saket.dank.utils.Animations;
 import me.saket.dank.utils.DankSubmissionRequest;
 import me.saket.dank.utils.InfiniteScroller;
 import me.saket.dank.utils.Keyboards;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RxDiffUtil;
 import me.saket.dank.utils.RxUtils;
+import me.saket.dank.utils.glide.ScrollAwareImagePreloader;
 import me.saket.dank.utils.itemanimators.SubmissionCommentsItemAnimator;
 import me.saket.dank.vote.VotingManager;
 import me.saket.dank.widgets.DankToolbar;
@@ -115,6 +119,9 @@ public class SubredditActivity extends DankPullCollapsibleActivity
   private static final String KEY_IS_USER_PROFILE_SHEET_VISIBLE = "isUserProfileSheetVisible";
   private static final String KEY_SORTING_AND_TIME_PERIOD = "sortingAndTimePeriod";
   private static final String KEY_SUBREDDIT_LINK = "subredditLink";
+  private static final int MAX_RECYCLED_SUBMISSION_ROWS = 15;
+  private static final int MIN_THUMBNAIL_PRELOAD_COUNT = 4;
+  private static final int MAX_THUMBNAIL_PRELOAD_COUNT = 25;
 
   @BindView(R.id.subreddit_root) IndependentExpandablePageLayout contentPage;
   @BindView(R.id.subreddit_submission_page) SubmissionPageLayout submissionPage;
@@ -435,6 +442,38 @@ public class SubredditActivity extends DankPullCollapsibleActivity
     submissionRecyclerView.setExpandablePage(submissionPage, toolbarContainer);
     submissionRecyclerView.addOnItemTouchListener(new RecyclerSwipeListener(submissionRecyclerView));
 
+    // Flings recycle rows faster than RV's default pool size of 5 per view-type can hold.
+    submissionRecyclerView.getRecycledViewPool().setMaxRecycledViews(
+        SubredditScreenUiModel.SubmissionRowUiModel.Type.SUBMISSION.ordinal(),
+        MAX_RECYCLED_SUBMISSION_ROWS);
+
+    // Load thumbnails of rows that are about to scroll into view.
+    int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.subreddit_submission_thumbnail);
+    RequestManager glide = Glide.with(this);
+    ScrollAwareImagePreloader thumbnailPreloader = new ScrollAwareImagePreloader(
+        glide,
+        position -> {
+          if (position >= submissionsAdapter.getItemCount()) {
+            return Optional.empty();
+          }
+          SubredditScreenUiModel.SubmissionRowUiModel row = submissionsAdapter.getItem(position);
+          if (row.type() != SubredditScreenUiModel.SubmissionRowUiModel.Type.SUBMISSION) {
+            return Optional.empty();
+          }
+          Optional<SubredditSubmission.UiModel.Thumbnail> thumbnail = ((SubredditSubmission.UiModel) row).thumbnail();
+          if (thumbnail.isEmpty() || thumbnail.get().remoteUrl().isEmpty()) {
+            return Optional.empty();
+          }
+          return Optional.of(SubredditSubmission.UiModel.Thumbnail.remoteImageRequest(glide, thumbnail.get().remoteUrl().get()));
+        },
+        thumbnailSize,
+        thumbnailSize,
+        MIN_THUMBNAIL_PRELOAD_COUNT,
+        MAX_THUMBNAIL_PRELOAD_COUNT);
+    submissionRecyclerView.addOnScrollListener(thumbnailPreloader);
+    // Submissions get replaced on subreddit, sort or refresh changes.
+    submissionsAdapter.registerAdapterDataObserver(thumbnailPreloader.dataObserver());
+
     // RV restores scroll position if the adapter data-set is the same.
     submissionsAdapter.dataChanges()
         .filter(uiModels -> !uiModels.isEmpty())
@@ -581,7 +620,7 @@ public class SubredditActivity extends DankPullCollapsibleActivity
         .subscribeOn(io())
         .share();
 
-    Observable<Pair<List<SubredditScreenUiModel.SubmissionRowUiModel>, DiffUtil.DiffResult>> adapterUpdates = sharedUiModels
+    Observable<Pair<List<SubredditScreenUiModel.SubmissionRowUiModel>, ListDiff>> adapterUpdates = sharedUiModels
         .map(SubredditScreenUiModel::rowUiModels)
         .observeOn(io())
         .toFlowable(BackpressureStrategy.LATEST)
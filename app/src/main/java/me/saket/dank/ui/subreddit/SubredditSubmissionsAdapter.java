@@ -2,7 +2,6 @@ package me.saket.dank.ui.subreddit;
 
 import android.annotation.SuppressLint;
 import android.support.annotation.CheckResult;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
@@ -22,13 +21,14 @@ import me.saket.dank.ui.subreddit.uimodels.SubredditScreenUiModel.SubmissionRowU
 import me.saket.dank.ui.subreddit.uimodels.SubredditSubmission;
 import me.saket.dank.ui.subreddit.uimodels.SubredditSubmissionPagination;
 import me.saket.dank.utils.InfinitelyScrollableRecyclerViewAdapter;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RecyclerViewArrayAdapter;
 import me.saket.dank.walkthrough.SubmissionGestureWalkthroughProceedEvent;
 import me.saket.dank.walkthrough.SubmissionGesturesWalkthrough;
 
 public class SubredditSubmissionsAdapter extends RecyclerViewArrayAdapter<SubmissionRowUiModel, RecyclerView.ViewHolder>
-    implements Consumer<Pair<List<SubmissionRowUiModel>, DiffUtil.DiffResult>>, InfinitelyScrollableRecyclerViewAdapter
+    implements Consumer<Pair<List<SubmissionRowUiModel>, ListDiff>>, InfinitelyScrollableRecyclerViewAdapter
 {
 
   public static final int ADAPTER_ID_PAGINATION_FOOTER = -99;
@@ -123,7 +123,7 @@ public class SubredditSubmissionsAdapter extends RecyclerViewArrayAdapter<Submis
   }
 
   @Override
-  public void accept(Pair<List<SubmissionRowUiModel>, DiffUtil.DiffResult> pair) {
+  public void accept(Pair<List<SubmissionRowUiModel>, ListDiff> pair) {
     findCollidingIds(pair.first());
 
     updateData(pair.first());
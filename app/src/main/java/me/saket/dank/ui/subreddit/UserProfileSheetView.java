@@ -102,9 +102,8 @@ public class UserProfileSheetView extends FrameLayout {
             });
 
     Observable<Integer> unreadCountFromInbox = inboxRepository.get()
-        .messages(InboxFolder.UNREAD)
-        .subscribeOn(io())
-        .map(unreads -> unreads.size());
+        .messageCount(InboxFolder.UNREAD)
+        .subscribeOn(io());
 
     // TODO JRAW
     Observable<Integer> unreadCountFromAccount = replayedUserAccount
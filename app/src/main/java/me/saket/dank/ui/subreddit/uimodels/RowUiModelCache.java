@@ -0,0 +1,107 @@
+package me.saket.dank.ui.subreddit.uimodels;
+
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.functions.Function;
+
+/**
+ * Reuses row UI models across emissions of a UI pipeline, so that a change to one item (like
+ * saving a submission) doesn't rebuild every row. A row is rebuilt only if its source changed or
+ * its key was invalidated. Not thread safe. Expected to be used inside a single combiner.
+ *
+ * @param <S> Source of a row, like a submission.
+ * @param <T> Row UI model.
+ */
+class RowUiModelCache<S, T> {
+
+  private Map<String, Entry<S, T>> entries = new HashMap<>();
+  private Map<String, Entry<S, T>> nextEntries = new HashMap<>();
+  private Invalidation lastInvalidation;
+  private int rebuildCount;
+
+  /**
+   * Call once at the start of every emission with the latest invalidation. Invalidations are compared
+   * by identity, so the same invalidation received again with other changes is only applied once.
+   */
+  void startPass(Invalidation invalidation) {
+    rebuildCount = 0;
+    nextEntries.clear();
+    if (invalidation == lastInvalidation) {
+      return;
+    }
+    lastInvalidation = invalidation;
+
+    if (invalidation.keys() == null) {
+      entries.clear();
+    } else {
+      for (String key : invalidation.keys()) {
+        entries.remove(key);
+      }
+    }
+  }
+
+  T row(String key, S source, Function<S, T> rowBuilder) throws Exception {
+    Entry<S, T> entry = entries.get(key);
+    if (entry == null || !entry.source.equals(source)) {
+      entry = new Entry<>(source, rowBuilder.apply(source));
+      ++rebuildCount;
+    }
+    nextEntries.put(key, entry);
+    return entry.row;
+  }
+
+  /**
+   * Call once at the end of every emission. Rows that weren't requested in this pass are dropped.
+   *
+   * @return Number of rows rebuilt in this pass.
+   */
+  int endPass() {
+    Map<String, Entry<S, T>> previousEntries = entries;
+    entries = nextEntries;
+    nextEntries = previousEntries;
+    return rebuildCount;
+  }
+
+  private static class Entry<S, T> {
+    final S source;
+    final T row;
+
+    Entry(S source, T row) {
+      this.source = source;
+      this.row = row;
+    }
+  }
+
+  /**
+   * Rows to rebuild. Every emission of an invalidation stream should be a new instance.
+   */
+  static class Invalidation {
+
+    @Nullable private final Set<String> keys;
+
+    private Invalidation(@Nullable Set<String> keys) {
+      this.keys = keys;
+    }
+
+    /**
+     * Null if all rows should be rebuilt.
+     */
+    @Nullable
+    Set<String> keys() {
+      return keys;
+    }
+
+    static Invalidation all() {
+      return new Invalidation(null);
+    }
+
+    static Invalidation of(Set<String> keys) {
+      return new Invalidation(Collections.unmodifiableSet(keys));
+    }
+  }
+}
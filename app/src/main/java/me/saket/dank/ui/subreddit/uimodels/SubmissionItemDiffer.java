@@ -5,10 +5,10 @@ import android.support.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks;
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks;
 import me.saket.dank.ui.subreddit.uimodels.SubredditScreenUiModel.SubmissionRowUiModel;
 
-public class SubmissionItemDiffer extends SimpleDiffUtilsCallbacks<SubmissionRowUiModel> {
+public class SubmissionItemDiffer extends StableIdDiffUtilsCallbacks<SubmissionRowUiModel> {
 
   public static SubmissionItemDiffer create(List<SubmissionRowUiModel> oldItems, List<SubmissionRowUiModel> newItems) {
     return new SubmissionItemDiffer(oldItems, newItems);
@@ -19,8 +19,8 @@ public class SubmissionItemDiffer extends SimpleDiffUtilsCallbacks<SubmissionRow
   }
 
   @Override
-  public boolean areItemsTheSame(SubmissionRowUiModel oldItem, SubmissionRowUiModel newItem) {
-    return oldItem.adapterId() == newItem.adapterId();
+  public long getItemId(SubmissionRowUiModel item) {
+    return item.adapterId();
   }
 
   @Override
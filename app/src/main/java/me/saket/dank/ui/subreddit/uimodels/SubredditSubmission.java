@@ -1,5 +1,6 @@
 package me.saket.dank.ui.subreddit.uimodels;
 
+import android.graphics.drawable.Drawable;
 import android.support.annotation.CheckResult;
 import android.support.annotation.LayoutRes;
 import android.support.v7.widget.RecyclerView;
@@ -10,6 +11,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
 import com.bumptech.glide.load.resource.drawable.DrawableTransitionOptions;
 import com.bumptech.glide.request.RequestOptions;
 import com.google.auto.value.AutoValue;
@@ -118,6 +121,16 @@ public interface SubredditSubmission {
         return new AutoValue_SubredditSubmission_UiModel_Thumbnail.Builder();
       }
 
+      /**
+       * Shared with the thumbnail preloader. Its request must match the
+       * one used for binding or else it'll miss Glide's memory cache.
+       */
+      public static RequestBuilder<Drawable> remoteImageRequest(RequestManager glide, String url) {
+        return glide
+            .load(url)
+            .apply(RequestOptions.bitmapTransform(GlideCircularTransformation.INSTANCE));
+      }
+
       @AutoValue.Builder
       public abstract static class Builder {
         public abstract Builder staticRes(Optional<Integer> resId);
@@ -213,9 +226,7 @@ public interface SubredditSubmission {
         if (thumb.staticRes().isPresent()) {
           thumbnailView.setImageResource(thumb.staticRes().get());
         } else {
-          Glide.with(itemView)
-              .load(thumb.remoteUrl().get())
-              .apply(RequestOptions.bitmapTransform(GlideCircularTransformation.INSTANCE))
+          UiModel.Thumbnail.remoteImageRequest(Glide.with(itemView), thumb.remoteUrl().get())
               .transition(DrawableTransitionOptions.withCrossFade())
               .into(thumbnailView);
         }
@@ -35,11 +35,13 @@ import me.saket.dank.ui.subreddit.SubmissionThumbnailTypeMinusNsfw;
 import me.saket.dank.utils.JrawUtils2;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Pair;
+import me.saket.dank.utils.PipelineProfiler;
 import me.saket.dank.utils.Strings;
 import me.saket.dank.utils.Themes;
 import me.saket.dank.utils.Truss;
 import me.saket.dank.vote.VotingManager;
 import me.saket.dank.walkthrough.SubmissionGesturesWalkthrough;
+import timber.log.Timber;
 
 public class SubredditUiConstructor {
 
@@ -53,12 +55,14 @@ public class SubredditUiConstructor {
   private final Preference<Boolean> showThumbnailsPref;
   private final ErrorResolver errorResolver;
   private final Lazy<BookmarksRepository> bookmarksRepository;
+  private final PipelineProfiler pipelineProfiler;
 
   @Inject
   public SubredditUiConstructor(
       VotingManager votingManager,
       ErrorResolver errorResolver,
       Lazy<BookmarksRepository> bookmarksRepository,
+      PipelineProfiler pipelineProfiler,
       Lazy<SubmissionGesturesWalkthrough> gesturesWalkthrough,
       @Named("comment_count_in_submission_list_byline") Preference<Boolean> showCommentCountInByline,
       @Named("show_nsfw_content") Preference<Boolean> showNsfwContent,
@@ -67,6 +71,7 @@ public class SubredditUiConstructor {
     this.votingManager = votingManager;
     this.errorResolver = errorResolver;
     this.bookmarksRepository = bookmarksRepository;
+    this.pipelineProfiler = pipelineProfiler;
     this.gesturesWalkthrough = gesturesWalkthrough;
     this.showCommentCountInByline = showCommentCountInByline;
     this.showNsfwContent = showNsfwContent;
@@ -83,23 +88,44 @@ public class SubredditUiConstructor {
         .merge(showCommentCountInByline.asObservable(), showNsfwContent.asObservable(), showThumbnailsPref.asObservable())
         .skip(1); // Skip initial values.
 
-    Observable<Object> externalChanges = Observable.merge(
-        userPrefChanges,
-        votingManager.streamChanges(),
-        bookmarksRepository.get().streamChanges());
+    // Votes and preferences can change every row. Bookmarks only change the rows of their submissions.
+    Observable<RowUiModelCache.Invalidation> externalChanges = Observable.merge(
+        userPrefChanges.map(o -> RowUiModelCache.Invalidation.all()),
+        votingManager.streamChanges().map(o -> RowUiModelCache.Invalidation.all()),
+        bookmarksRepository.get().streamChanges().map(change -> RowUiModelCache.Invalidation.of(change.fullNames())));
 
     Observable<Boolean> sharedFullscreenProgressVisibilities = fullscreenProgressVisibilities(cachedSubmissionLists, paginationResults)
         .share();
 
-    return Observable.combineLatest(
-        sharedFullscreenProgressVisibilities.distinctUntilChanged(),
-        fullscreenErrors(cachedSubmissionLists, paginationResults).distinctUntilChanged(),
-        fullscreenEmptyStates(cachedSubmissionLists, paginationResults).distinctUntilChanged(),
-        toolbarRefreshVisibilities(sharedFullscreenProgressVisibilities).distinctUntilChanged(),
-        paginationProgressUiModels(cachedSubmissionLists, paginationResults).distinctUntilChanged(),
-        gesturesWalkthrough.get().walkthroughRows(),
-        cachedSubmissionLists,
-        externalChanges,
+    return Observable.defer(() -> {
+      RowUiModelCache<Submission, SubredditSubmission.UiModel> submissionRowCache = new RowUiModelCache<>();
+      return submissionUiModels(
+          context,
+          cachedSubmissionLists,
+          paginationResults,
+          externalChanges,
+          sharedFullscreenProgressVisibilities,
+          submissionRowCache);
+    });
+  }
+
+  private Observable<SubredditScreenUiModel> submissionUiModels(
+      Context context,
+      Observable<Optional<List<Submission>>> cachedSubmissionLists,
+      Observable<SubmissionPaginationResult> paginationResults,
+      Observable<RowUiModelCache.Invalidation> externalChanges,
+      Observable<Boolean> sharedFullscreenProgressVisibilities,
+      RowUiModelCache<Submission, SubredditSubmission.UiModel> submissionRowCache)
+  {
+    return pipelineProfiler.profile("Subreddit", trace -> Observable.combineLatest(
+        sharedFullscreenProgressVisibilities.distinctUntilChanged().compose(trace.source("fullscreen-progress")),
+        fullscreenErrors(cachedSubmissionLists, paginationResults).distinctUntilChanged().compose(trace.source("fullscreen-error")),
+        fullscreenEmptyStates(cachedSubmissionLists, paginationResults).distinctUntilChanged().compose(trace.source("empty-state")),
+        toolbarRefreshVisibilities(sharedFullscreenProgressVisibilities).distinctUntilChanged().compose(trace.source("toolbar-refresh")),
+        paginationProgressUiModels(cachedSubmissionLists, paginationResults).distinctUntilChanged().compose(trace.source("pagination")),
+        gesturesWalkthrough.get().walkthroughRows().compose(trace.source("walkthrough")),
+        cachedSubmissionLists.compose(trace.source("submissions")),
+        externalChanges.compose(trace.source("external-changes")),
         (fullscreenProgressVisible,
             optFullscreenError,
             optEmptyState,
@@ -107,21 +133,29 @@ public class SubredditUiConstructor {
             optPagination,
             optWalkthroughRow,
             optCachedSubs,
-            o) ->
+            invalidation) ->
         {
           int rowCount = optPagination.map(p -> 1).orElse(0) + optCachedSubs.map(subs -> subs.size()).orElse(0);
           List<SubredditScreenUiModel.SubmissionRowUiModel> rowUiModels = new ArrayList<>(rowCount);
 
-          optCachedSubs.ifPresent(cachedSubs -> {
+          submissionRowCache.startPass(invalidation);
+          if (optCachedSubs.isPresent()) {
             optWalkthroughRow.ifPresent(walkthroughUiModel -> {
               rowUiModels.add(walkthroughUiModel);
             });
 
-            for (Submission submission : cachedSubs) {
+            for (Submission submission : optCachedSubs.get()) {
               int pendingSyncReplyCount = 0;  // TODO v2:  Get this from database.
-              rowUiModels.add(submissionUiModel(context, submission, pendingSyncReplyCount));
+              rowUiModels.add(submissionRowCache.row(
+                  submission.getFullName(),
+                  submission,
+                  sub -> submissionUiModel(context, sub, pendingSyncReplyCount)));
             }
-          });
+          }
+          int rebuiltRowCount = submissionRowCache.endPass();
+          if (rebuiltRowCount > 0) {
+            Timber.d("Rebuilt %s of %s submission rows", rebuiltRowCount, optCachedSubs.map(List::size).orElse(0));
+          }
           optPagination.ifPresent(pagination -> rowUiModels.add(pagination));
 
           return SubredditScreenUiModel.builder()
@@ -131,7 +165,7 @@ public class SubredditUiConstructor {
               .toolbarRefreshVisible(toolbarRefreshVisible)
               .rowUiModels(rowUiModels)
               .build();
-        });
+        }));
   }
 
   private Observable<Boolean> fullscreenProgressVisibilities(
@@ -19,6 +19,8 @@ import io.reactivex.Observable;
 import me.saket.dank.analytics.CrashReporter;
 import me.saket.dank.notifs.CheckUnreadMessagesJobService;
 import me.saket.dank.ui.preferences.NetworkStrategy;
+import me.saket.dank.ui.submission.BookmarksRepository;
+import me.saket.dank.ui.submission.BookmarksSyncJob;
 import me.saket.dank.ui.subscriptions.SubredditSubscriptionsSyncJob;
 import me.saket.dank.ui.subscriptions.SubscriptionRepository;
 import me.saket.dank.utils.Optional;
@@ -29,6 +31,7 @@ import timber.log.Timber;
 public class UserAuthListener {
 
   private final Lazy<SubscriptionRepository> subscriptionRepository;
+  private final Lazy<BookmarksRepository> bookmarksRepository;
   private final Lazy<UserSessionRepository> userSessionRepository;
   private Lazy<CrashReporter> crashReporter;
   private final Lazy<Preference<Boolean>> unreadMessagesPollEnabledPref;
@@ -38,6 +41,7 @@ public class UserAuthListener {
   @Inject
   public UserAuthListener(
       Lazy<SubscriptionRepository> subscriptionRepository,
+      Lazy<BookmarksRepository> bookmarksRepository,
       Lazy<UserSessionRepository> userSessionRepository,
       Lazy<CrashReporter> crashReporter,
       @Named("unread_messages") Lazy<Preference<Boolean>> unreadMessagesPollEnabledPref,
@@ -49,6 +53,7 @@ public class UserAuthListener {
     this.unreadMessagesPollEnabledPref = unreadMessagesPollEnabledPref;
     this.unreadMessagesPollInterval = unreadMessagesPollInterval;
     this.subscriptionRepository = subscriptionRepository;
+    this.bookmarksRepository = bookmarksRepository;
     this.userSessionRepository = userSessionRepository;
     this.unreadMessagesPollNetworkStrategy = unreadMessagesPollNetworkStrategy;
   }
@@ -84,6 +89,11 @@ public class UserAuthListener {
   void handleActiveSessionOnAppStartup(Context context) {
     //Timber.d("User is already logged in. Running background jobs");
     runBackgroundJobs(context);
+
+    // Users who logged in before bookmarks were stored locally have none of them yet.
+    if (!bookmarksRepository.get().hasBeenRefreshedOnce()) {
+      BookmarksSyncJob.syncImmediately(context);
+    }
   }
 
   @VisibleForTesting
@@ -99,6 +109,11 @@ public class UserAuthListener {
         .subscribeOn(io())
         .subscribe();
 
+    bookmarksRepository.get().removeAll()
+        .andThen(bookmarksRepository.get().refreshAndSaveBookmarks())
+        .subscribeOn(io())
+        .subscribe();
+
     runBackgroundJobs(context);
   }
 
@@ -113,12 +128,19 @@ public class UserAuthListener {
         .subscribe(() -> {
           Timber.i("Default sub set to: %s", subscriptionRepository.get().defaultSubreddit());
         });
+
+    bookmarksRepository.get().removeAll()
+        .subscribeOn(io())
+        .subscribe();
   }
 
   void runBackgroundJobs(Context context) {
     SubredditSubscriptionsSyncJob.syncImmediately(context);
     SubredditSubscriptionsSyncJob.schedule(context);
 
+    BookmarksSyncJob.syncPendingActionsImmediately(context);
+    BookmarksSyncJob.schedule(context);
+
     Boolean isMessagePollingEnabled = unreadMessagesPollEnabledPref.get().get();
     if (isMessagePollingEnabled) {
       CheckUnreadMessagesJobService.syncImmediately(context);
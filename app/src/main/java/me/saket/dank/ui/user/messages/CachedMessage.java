@@ -9,14 +9,20 @@ import com.squareup.moshi.JsonAdapter;
 import net.dean.jraw.models.Message;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 import io.reactivex.functions.Function;
 import me.saket.dank.data.MoshiAdapter;
 import me.saket.dank.utils.Cursors;
+import me.saket.dank.utils.JrawUtils2;
 import me.saket.dank.utils.Optional;
 
 /**
  * {@link Message} stored in the DB.
+ * <p>
+ * Details needed for rendering the inbox are also stored as columns so that folders can
+ * be read as {@link CachedMessageSummary} without decoding the JSON of every message.
  */
 @AutoValue
 public abstract class CachedMessage {
@@ -26,6 +32,20 @@ public abstract class CachedMessage {
   static final String COLUMN_MESSAGE = "message";
   static final String COLUMN_LATEST_MESSAGE_TIME = "latest_message_time";
   static final String COLUMN_FOLDER = "folder";
+  static final String COLUMN_TYPE = "type";
+  static final String COLUMN_AUTHOR = "author";
+  static final String COLUMN_DESTINATION = "destination";
+  static final String COLUMN_SUBJECT = "subject";
+  static final String COLUMN_BODY = "body";
+  static final String COLUMN_LINK_TITLE = "link_title";
+  static final String COLUMN_SUBREDDIT = "subreddit";
+  static final String COLUMN_CREATED_TIME = "created_time";
+  static final String COLUMN_IS_UNREAD = "is_unread";
+  static final String COLUMN_PARENT_THREAD_ID = "parent_thread_id";
+  static final String COLUMN_REPLY_COUNT = "reply_count";
+  static final String COLUMN_LATEST_MESSAGE_FULLNAME = "latest_message_fullname";
+  static final String COLUMN_LATEST_MESSAGE_AUTHOR = "latest_message_author";
+  static final String COLUMN_LATEST_MESSAGE_BODY = "latest_message_body";
 
   public static final String QUERY_CREATE_TABLE =
       "CREATE TABLE " + TABLE_NAME + " ("
@@ -33,20 +53,88 @@ public abstract class CachedMessage {
           + COLUMN_MESSAGE + " TEXT NOT NULL, "
           + COLUMN_LATEST_MESSAGE_TIME + " INTEGER NOT NULL, "
           + COLUMN_FOLDER + " TEXT NOT NULL, "
+          + COLUMN_TYPE + " TEXT NOT NULL, "
+          + COLUMN_AUTHOR + " TEXT, "
+          + COLUMN_DESTINATION + " TEXT, "
+          + COLUMN_SUBJECT + " TEXT NOT NULL, "
+          + COLUMN_BODY + " TEXT NOT NULL, "
+          + COLUMN_LINK_TITLE + " TEXT, "
+          + COLUMN_SUBREDDIT + " TEXT, "
+          + COLUMN_CREATED_TIME + " INTEGER NOT NULL, "
+          + COLUMN_IS_UNREAD + " INTEGER NOT NULL, "
+          + COLUMN_PARENT_THREAD_ID + " TEXT, "
+          + COLUMN_REPLY_COUNT + " INTEGER NOT NULL, "
+          + COLUMN_LATEST_MESSAGE_FULLNAME + " TEXT NOT NULL, "
+          + COLUMN_LATEST_MESSAGE_AUTHOR + " TEXT, "
+          + COLUMN_LATEST_MESSAGE_BODY + " TEXT NOT NULL, "
           + "PRIMARY KEY (" + COLUMN_FULLNAME + ", " + COLUMN_FOLDER + ")"
           + ")";
 
+  public static final String QUERY_CREATE_INDEX_FOLDER_AND_TIME =
+      "CREATE INDEX " + TABLE_NAME + "_folder_time ON " + TABLE_NAME
+          + " (" + COLUMN_FOLDER + ", " + COLUMN_LATEST_MESSAGE_TIME + ")";
+
+  public static final String QUERY_CREATE_INDEX_FOLDER_AND_UNREAD =
+      "CREATE INDEX " + TABLE_NAME + "_folder_unread ON " + TABLE_NAME
+          + " (" + COLUMN_FOLDER + ", " + COLUMN_IS_UNREAD + ")";
+
+  public static final String QUERY_CREATE_INDEX_PARENT_THREAD =
+      "CREATE INDEX " + TABLE_NAME + "_parent_thread ON " + TABLE_NAME
+          + " (" + COLUMN_PARENT_THREAD_ID + ")";
+
   public static final String QUERY_GET_ALL_IN_FOLDER =
       "SELECT * FROM " + TABLE_NAME
           + " WHERE " + COLUMN_FOLDER + " == ?"
           + " ORDER BY " + COLUMN_LATEST_MESSAGE_TIME + " DESC"; // Latest message first
 
-  public static final String QUERY_GET_LAST_IN_FOLDER =
-      "SELECT * FROM " + TABLE_NAME
+  /**
+   * Skips the message's JSON, which is the bulk of each row.
+   */
+  public static final String QUERY_GET_SUMMARIES_IN_FOLDER =
+      "SELECT "
+          + COLUMN_FULLNAME + ", "
+          + COLUMN_FOLDER + ", "
+          + COLUMN_TYPE + ", "
+          + COLUMN_AUTHOR + ", "
+          + COLUMN_DESTINATION + ", "
+          + COLUMN_SUBJECT + ", "
+          + COLUMN_BODY + ", "
+          + COLUMN_LINK_TITLE + ", "
+          + COLUMN_SUBREDDIT + ", "
+          + COLUMN_CREATED_TIME + ", "
+          + COLUMN_LATEST_MESSAGE_TIME + ", "
+          + COLUMN_IS_UNREAD + ", "
+          + COLUMN_PARENT_THREAD_ID + ", "
+          + COLUMN_REPLY_COUNT + ", "
+          + COLUMN_LATEST_MESSAGE_AUTHOR + ", "
+          + COLUMN_LATEST_MESSAGE_BODY
+          + " FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_FOLDER + " == ?"
+          + " ORDER BY " + COLUMN_LATEST_MESSAGE_TIME + " DESC";
+
+  public static final String QUERY_COUNT_IN_FOLDER =
+      "SELECT COUNT(*) FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_FOLDER + " == ?";
+
+  public static final String QUERY_GET_LAST_FULLNAME_IN_FOLDER =
+      "SELECT " + COLUMN_LATEST_MESSAGE_FULLNAME + " FROM " + TABLE_NAME
           + " WHERE " + COLUMN_FOLDER + " == ?"
           + " ORDER BY " + COLUMN_LATEST_MESSAGE_TIME + " ASC"
           + " LIMIT 1";
 
+  /**
+   * Details that are compared by {@link #revision(boolean, int, String, String)}.
+   */
+  public static final String QUERY_GET_REVISIONS_IN_FOLDER =
+      "SELECT "
+          + COLUMN_FULLNAME + ", "
+          + COLUMN_IS_UNREAD + ", "
+          + COLUMN_REPLY_COUNT + ", "
+          + COLUMN_LATEST_MESSAGE_FULLNAME + ", "
+          + COLUMN_BODY
+          + " FROM " + TABLE_NAME
+          + " WHERE " + COLUMN_FOLDER + " == ?";
+
   public static final String QUERY_GET_SINGLE =
       "SELECT * FROM " + TABLE_NAME
           + " WHERE " + COLUMN_FULLNAME + " == ? "
@@ -71,25 +159,72 @@ public abstract class CachedMessage {
   public abstract InboxFolder folder();
 
   public ContentValues toContentValues(MoshiAdapter moshiAdapter) {
-    ContentValues values = new ContentValues(4);
+    Message message = message();
+    List<Message> replies = message.isComment()
+        ? Collections.emptyList()
+        : JrawUtils2.messageReplies(message);
+    Message latestMessage = replies.isEmpty() ? message : replies.get(replies.size() - 1);
+
+    ContentValues values = new ContentValues(18);
     values.put(COLUMN_FULLNAME, fullname());
-    String json = moshiAdapter.create(Message.class).toJson(message());
-    if (!json.contains("distinguished")) {
-      throw new AssertionError("Invalid json serialization");
-    }
-    values.put(COLUMN_MESSAGE, json);
+    values.put(COLUMN_MESSAGE, moshiAdapter.create(Message.class).toJson(message));
     values.put(COLUMN_LATEST_MESSAGE_TIME, latestMessageTimestamp());
     values.put(COLUMN_FOLDER, folder().name());
+    values.put(COLUMN_TYPE, InboxMessageType.parse(message).name());
+    values.put(COLUMN_AUTHOR, message.getAuthor());
+    values.put(COLUMN_DESTINATION, message.getDest());
+    values.put(COLUMN_SUBJECT, message.getSubject());
+    values.put(COLUMN_BODY, message.getBody());
+    values.put(COLUMN_LINK_TITLE, message.getLinkTitle());
+    values.put(COLUMN_SUBREDDIT, message.getSubreddit());
+    values.put(COLUMN_CREATED_TIME, message.getCreated().getTime());
+    values.put(COLUMN_IS_UNREAD, message.isUnread());
+    values.put(COLUMN_PARENT_THREAD_ID, parentThreadId(message));
+    values.put(COLUMN_REPLY_COUNT, replies.size());
+    values.put(COLUMN_LATEST_MESSAGE_FULLNAME, latestMessage.getFullName());
+    values.put(COLUMN_LATEST_MESSAGE_AUTHOR, latestMessage.getAuthor());
+    values.put(COLUMN_LATEST_MESSAGE_BODY, latestMessage.getBody());
     return values;
   }
 
-  public static Function<Cursor, CachedMessage> fromCursor(MoshiAdapter moshiAdapter) {
-    return cursor -> {
-      Message message = messageFromCursor(moshiAdapter).apply(cursor);
-      long latestMessageTimestamp = Cursors.longg(cursor, COLUMN_LATEST_MESSAGE_TIME);
-      InboxFolder folder = InboxFolder.valueOf(Cursors.string(cursor, COLUMN_FOLDER));
-      return create(message.getFullName(), message, latestMessageTimestamp, folder);
-    };
+  /**
+   * Private messages are stored as threads, so they are their own parent thread. For comment
+   * replies and mentions, this is the comment or the submission that was replied to.
+   */
+  private static String parentThreadId(Message message) {
+    return message.isComment() ? message.getParentId() : message.getFullName();
+  }
+
+  /**
+   * Changes whenever a stored message needs to be written again: when it's read, edited,
+   * or when its thread receives a reply.
+   */
+  public static long revision(boolean isUnread, int replyCount, String latestMessageFullname, String body) {
+    long revision = isUnread ? 1 : 0;
+    revision = 31 * revision + replyCount;
+    revision = 31 * revision + latestMessageFullname.hashCode();
+    revision = 31 * revision + body.hashCode();
+    return revision;
+  }
+
+  public static long revision(Message message) {
+    List<Message> replies = message.isComment()
+        ? Collections.emptyList()
+        : JrawUtils2.messageReplies(message);
+    Message latestMessage = replies.isEmpty() ? message : replies.get(replies.size() - 1);
+    return revision(message.isUnread(), replies.size(), latestMessage.getFullName(), message.getBody());
+  }
+
+  public static Function<Cursor, Long> revisionFromCursor() {
+    return cursor -> revision(
+        Cursors.intt(cursor, COLUMN_IS_UNREAD) == 1,
+        Cursors.intt(cursor, COLUMN_REPLY_COUNT),
+        Cursors.string(cursor, COLUMN_LATEST_MESSAGE_FULLNAME),
+        Cursors.string(cursor, COLUMN_BODY));
+  }
+
+  public static Function<Cursor, String> fullnameFromCursor() {
+    return cursor -> Cursors.string(cursor, COLUMN_FULLNAME);
   }
 
   public static Function<Cursor, Optional<Message>> optionalMessageFromCursor(MoshiAdapter moshiAdapter) {
@@ -0,0 +1,105 @@
+package me.saket.dank.ui.user.messages;
+
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_AUTHOR;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_BODY;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_CREATED_TIME;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_DESTINATION;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_FOLDER;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_FULLNAME;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_IS_UNREAD;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_LATEST_MESSAGE_AUTHOR;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_LATEST_MESSAGE_BODY;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_LATEST_MESSAGE_TIME;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_LINK_TITLE;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_PARENT_THREAD_ID;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_REPLY_COUNT;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_SUBJECT;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_SUBREDDIT;
+import static me.saket.dank.ui.user.messages.CachedMessage.COLUMN_TYPE;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+
+import net.dean.jraw.models.Message;
+
+import io.reactivex.functions.Function;
+import me.saket.dank.utils.Cursors;
+
+/**
+ * Columns of a {@link CachedMessage} that are enough for rendering it in the inbox. The full
+ * {@link Message} is only decoded when it's opened.
+ */
+@AutoValue
+public abstract class CachedMessageSummary {
+
+  public abstract String fullname();
+
+  public abstract InboxFolder folder();
+
+  public abstract InboxMessageType type();
+
+  @Nullable
+  public abstract String author();
+
+  @Nullable
+  public abstract String destination();
+
+  public abstract String subject();
+
+  public abstract String body();
+
+  @Nullable
+  public abstract String linkTitle();
+
+  @Nullable
+  public abstract String subreddit();
+
+  public abstract long createdTimeMillis();
+
+  /**
+   * See {@link CachedMessage#latestMessageTimestamp()}.
+   */
+  public abstract long latestMessageTimeMillis();
+
+  public abstract boolean isUnread();
+
+  @Nullable
+  public abstract String parentThreadId();
+
+  public abstract int replyCount();
+
+  /**
+   * Author of the last reply in a private message thread, or of the message itself.
+   */
+  @Nullable
+  public abstract String latestMessageAuthor();
+
+  public abstract String latestMessageBody();
+
+  /**
+   * Same as {@link me.saket.dank.utils.JrawUtils2#generateAdapterId}.
+   */
+  public long adapterId() {
+    return fullname().hashCode() + createdTimeMillis();
+  }
+
+  public static final Function<Cursor, CachedMessageSummary> MAPPER = cursor -> new AutoValue_CachedMessageSummary(
+      Cursors.string(cursor, COLUMN_FULLNAME),
+      InboxFolder.valueOf(Cursors.string(cursor, COLUMN_FOLDER)),
+      InboxMessageType.valueOf(Cursors.string(cursor, COLUMN_TYPE)),
+      Cursors.string(cursor, COLUMN_AUTHOR),
+      Cursors.string(cursor, COLUMN_DESTINATION),
+      Cursors.string(cursor, COLUMN_SUBJECT),
+      Cursors.string(cursor, COLUMN_BODY),
+      Cursors.string(cursor, COLUMN_LINK_TITLE),
+      Cursors.string(cursor, COLUMN_SUBREDDIT),
+      Cursors.longg(cursor, COLUMN_CREATED_TIME),
+      Cursors.longg(cursor, COLUMN_LATEST_MESSAGE_TIME),
+      Cursors.intt(cursor, COLUMN_IS_UNREAD) == 1,
+      Cursors.string(cursor, COLUMN_PARENT_THREAD_ID),
+      Cursors.intt(cursor, COLUMN_REPLY_COUNT),
+      Cursors.string(cursor, COLUMN_LATEST_MESSAGE_AUTHOR),
+      Cursors.string(cursor, COLUMN_LATEST_MESSAGE_BODY));
+}
@@ -1,7 +1,9 @@
 package me.saket.dank.ui.user.messages;
 
+import static io.reactivex.android.schedulers.AndroidSchedulers.mainThread;
 import static io.reactivex.schedulers.Schedulers.io;
 import static me.saket.dank.utils.RxUtils.doNothing;
+import static me.saket.dank.utils.RxUtils.doNothingCompletable;
 import static me.saket.dank.utils.RxUtils.logError;
 import static me.saket.dank.utils.Units.dpToPx;
 import static me.saket.dank.utils.Views.touchLiesOn;
@@ -22,12 +24,10 @@ import android.widget.ViewFlipper;
 import com.jakewharton.rxbinding2.widget.RxAdapterView;
 import com.jakewharton.rxrelay2.BehaviorRelay;
 import com.jakewharton.rxrelay2.Relay;
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Types;
 
 import net.dean.jraw.models.Message;
 
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -52,7 +52,6 @@ import me.saket.dank.utils.Arrays2;
 import me.saket.dank.utils.JrawUtils2;
 import me.saket.dank.utils.Views;
 import me.saket.dank.widgets.InboxUI.IndependentExpandablePageLayout;
-import timber.log.Timber;
 
 public class InboxActivity extends DankPullCollapsibleActivity implements InboxFolderFragment.Callbacks {
 
@@ -73,7 +72,7 @@ public class InboxActivity extends DankPullCollapsibleActivity implements InboxF
 
   private Set<InboxFolder> firstRefreshDoneForFolders = new HashSet<>(InboxFolder.getALL().length);
   private InboxPagerAdapter inboxPagerAdapter;
-  private Set<Message> seenUnreadMessages = new HashSet<>();
+  private Set<String> seenUnreadMessageFullnames = new HashSet<>();
   private Relay<MessagesRefreshState> messagesRefreshStateStream = BehaviorRelay.create();
 
   public static void start(Context context) {
@@ -117,6 +116,14 @@ public class InboxActivity extends DankPullCollapsibleActivity implements InboxF
   protected void onPostCreate(@Nullable Bundle savedInstanceState) {
     super.onPostCreate(savedInstanceState);
 
+    if (savedInstanceState == null) {
+      // Folders that aren't visible yet get synced too. Refreshes started by
+      // the folder pages join these syncs instead of fetching again.
+      inboxRepository.refreshAllFolders()
+          .subscribeOn(io())
+          .subscribe(doNothing(), logError("Couldn't sync inbox folders"));
+    }
+
     inboxPagerAdapter = new InboxPagerAdapter(getResources(), getSupportFragmentManager());
 
     final CharSequence[] folderNames = getResources().getTextArray(R.array.inbox_folder_names);
@@ -181,8 +188,7 @@ public class InboxActivity extends DankPullCollapsibleActivity implements InboxF
 
   @Override
   public void onSaveInstanceState(Bundle outState) {
-    JsonAdapter<Set<Message>> jsonAdapter = moshiAdapter.get().create(Types.newParameterizedType(Set.class, Message.class));
-    outState.putString(KEY_SEEN_UNREAD_MESSAGES, jsonAdapter.toJson(seenUnreadMessages));
+    outState.putStringArrayList(KEY_SEEN_UNREAD_MESSAGES, new ArrayList<>(seenUnreadMessageFullnames));
 
     // ViewPager is supposed to handle restoring page index on its own, but that
     // is not working for some reason. And I don't have time to investigate why.
@@ -193,16 +199,9 @@ public class InboxActivity extends DankPullCollapsibleActivity implements InboxF
   @Override
   public void onRestoreInstanceState(Bundle inState) {
     if (inState != null) {
-      final long startTime = System.currentTimeMillis();
-      JsonAdapter<Set<Message>> jsonAdapter = moshiAdapter.get().create(Types.newParameterizedType(Set.class, Message.class));
-      String seenUnreadMessagesJson = inState.getString(KEY_SEEN_UNREAD_MESSAGES);
-      try {
-        //noinspection ConstantConditions
-        seenUnreadMessages = jsonAdapter.fromJson(seenUnreadMessagesJson);
-        //Timber.i("Deserialized in: %sms", System.currentTimeMillis() - startTime);
-
-      } catch (IOException e) {
-        Timber.e(e, "Couldn't deserialize seen unread messages json: %s", seenUnreadMessagesJson);
+      List<String> seenFullnames = inState.getStringArrayList(KEY_SEEN_UNREAD_MESSAGES);
+      if (seenFullnames != null) {
+        seenUnreadMessageFullnames.addAll(seenFullnames);
       }
     }
   }
@@ -259,25 +258,35 @@ public class InboxActivity extends DankPullCollapsibleActivity implements InboxF
   }
 
   @Override
-  public void markUnreadMessageAsSeen(Message unreadMessage) {
-    if (!seenUnreadMessages.contains(unreadMessage)) {
-      seenUnreadMessages.add(unreadMessage);
-    }
+  public void markUnreadMessageAsSeen(String unreadMessageFullname) {
+    seenUnreadMessageFullnames.add(unreadMessageFullname);
   }
 
   private void markSeenMessagesAsRead() {
-    if (seenUnreadMessages.isEmpty()) {
+    if (seenUnreadMessageFullnames.isEmpty()) {
       return;
     }
 
-    Message[] seenMessagesArray = Arrays2.toArray(seenUnreadMessages, Message.class);
-    sendBroadcast(MessageNotifActionReceiver.createMarkAsReadIntent(this, moshiAdapter.get(), seenMessagesArray));
+    // Only fullnames are tracked while scrolling, so the messages are decoded here just once. The
+    // application context is used because this Activity is finishing and is about to be destroyed.
+    Context appContext = getApplicationContext();
+    MoshiAdapter moshi = moshiAdapter.get();
 
-    // Marking messages as read happens on the UI thread so we can immediately refresh messages after that.
-    // Though this is dangerous in case the implementation of MessageNotifActionReceiver is ever changed in the future.
-    inboxRepository.refreshMessages(InboxFolder.UNREAD, false)
+    inboxRepository.messages(InboxFolder.UNREAD, new ArrayList<>(seenUnreadMessageFullnames))
         .subscribeOn(io())
-        .subscribe(doNothing(), logError("Couldn't refresh messages"));
+        .observeOn(mainThread())
+        .filter(seenMessages -> !seenMessages.isEmpty())
+        .flatMapCompletable(seenMessages -> {
+          Message[] seenMessagesArray = Arrays2.toArray(seenMessages, Message.class);
+          appContext.sendBroadcast(MessageNotifActionReceiver.createMarkAsReadIntent(appContext, moshi, seenMessagesArray));
+
+          // Marking messages as read happens on the UI thread so we can immediately refresh messages after that.
+          // Though this is dangerous in case the implementation of MessageNotifActionReceiver is ever changed in the future.
+          return inboxRepository.refreshMessages(InboxFolder.UNREAD)
+              .subscribeOn(io())
+              .toCompletable();
+        })
+        .subscribe(doNothingCompletable(), logError("Couldn't mark seen messages as read"));
   }
 
   @Override
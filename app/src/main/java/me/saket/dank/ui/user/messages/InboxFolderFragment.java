@@ -28,7 +28,6 @@ import javax.inject.Inject;
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import dagger.Lazy;
-import io.reactivex.BackpressureStrategy;
 import io.reactivex.Observable;
 import io.reactivex.SingleTransformer;
 import io.reactivex.functions.Consumer;
@@ -43,7 +42,8 @@ import me.saket.dank.ui.user.UserSessionRepository;
 import me.saket.dank.utils.DankLinkMovementMethod;
 import me.saket.dank.utils.InfiniteScrollListener;
 import me.saket.dank.utils.InfiniteScrollRecyclerAdapter;
-import me.saket.dank.utils.RxDiffUtil;
+import me.saket.dank.utils.Optional;
+import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.Views;
 import me.saket.dank.utils.markdown.Markdown;
 import me.saket.dank.widgets.EmptyStateView;
@@ -86,7 +86,7 @@ public class InboxFolderFragment extends DankFragment {
      * Called as the user scrolls the unread message list. All the seen unread messages are
      * marked as read on Activity exit.
      */
-    void markUnreadMessageAsSeen(Message unreadMessage);
+    void markUnreadMessageAsSeen(String unreadMessageFullname);
 
     void markAllUnreadMessagesAsReadAndExit(List<Message> unreadMessages);
 
@@ -127,12 +127,18 @@ public class InboxFolderFragment extends DankFragment {
     messageRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
     messageRecyclerView.setItemAnimator(new DefaultItemAnimator());
 
-    // Message clicks.
+    // Message clicks. Only the clicked message gets decoded.
     messagesAdapter.get().streamMessageClicks()
+        .flatMapMaybe(event -> inboxRepository.messages(event.messageSummary().fullname(), folder)
+            .firstElement()
+            .filter(Optional::isPresent)
+            .map(message -> Pair.create(message.get(), event.itemView()))
+            .subscribeOn(Schedulers.io())
+            .observeOn(mainThread()))
         .takeUntil(lifecycle().onDestroy())
-        .subscribe(event -> {
+        .subscribe(messageAndItemView -> {
           //noinspection ConstantConditions
-          ((Callbacks) getActivity()).onClickMessage(event.message(), event.itemView());
+          ((Callbacks) getActivity()).onClickMessage(messageAndItemView.first(), messageAndItemView.second());
         });
 
     populateEmptyStateView();
@@ -141,7 +147,7 @@ public class InboxFolderFragment extends DankFragment {
     Callbacks callbacks = (Callbacks) getActivity();
     assert callbacks != null;
 
-    Observable<List<Message>> sharedMessageStream = inboxRepository.messages(folder)
+    Observable<List<CachedMessageSummary>> sharedMessageStream = inboxRepository.messageSummaries(folder)
         .subscribeOn(Schedulers.io())
         .replay(1)
         .refCount();
@@ -181,7 +187,7 @@ public class InboxFolderFragment extends DankFragment {
 
           // Refresh messages once we've received the messages from database for the first time.
           if (!callbacks.isFirstRefreshDone(folder)) {
-            refreshMessages(false);
+            refreshMessages();
           }
         });
 
@@ -189,16 +195,18 @@ public class InboxFolderFragment extends DankFragment {
     boolean constructThreads = folder == InboxFolder.PRIVATE_MESSAGES;
     boolean isUnreadFolder = folder == InboxFolder.UNREAD;
     //noinspection ConstantConditions
+    // Diffs are precomputed against the previous emission, so none of them can be dropped.
     uiConstructor.get().stream(requireContext(), sharedMessageStream, constructThreads, isUnreadFolder)
-        .toFlowable(BackpressureStrategy.LATEST)
-        .compose(RxDiffUtil.calculateDiff(InboxFolderScreenUiModel.ItemDiffer::new))
         .observeOn(mainThread())
-        .takeUntil(lifecycle().onDestroyFlowable())
+        .takeUntil(lifecycle().onDestroy())
         .subscribe(messagesAdapter.get());
 
     // FAB clicks.
     RxView.clicks(markAllAsReadButton)
-        .withLatestFrom(sharedMessageStream, (o, messages) -> messages)
+        .flatMapSingle(o -> inboxRepository.messages(folder)
+            .firstOrError()
+            .subscribeOn(Schedulers.io())
+            .observeOn(mainThread()))
         .takeUntil(lifecycle().onDestroy())
         .subscribe(messages -> ((Callbacks) getActivity()).markAllUnreadMessagesAsReadAndExit(messages));
   }
@@ -212,14 +220,14 @@ public class InboxFolderFragment extends DankFragment {
    */
   protected void handleOnClickRefreshMenuItem() {
     if (!isRefreshOngoing) {
-      refreshMessages(true);
+      refreshMessages();
     }
   }
 
-  protected void refreshMessages(boolean replaceAllExistingMessages) {
-    inboxRepository.refreshMessages(folder, replaceAllExistingMessages)
+  protected void refreshMessages() {
+    inboxRepository.refreshMessages(folder)
         .compose(applySchedulersSingle())
-        .compose(handleProgressAndErrorForFirstRefresh(replaceAllExistingMessages))
+        .compose(handleProgressAndErrorForFirstRefresh())
         .compose(handleProgressAndErrorForSubsequentRefresh())
         .compose(doOnSingleStartAndTerminate(ongoing -> isRefreshOngoing = ongoing))
         .doOnSubscribe(o -> emptyStateView.setVisibility(View.GONE))
@@ -233,7 +241,7 @@ public class InboxFolderFragment extends DankFragment {
         }, doNothing());
   }
 
-  private <T> SingleTransformer<T, T> handleProgressAndErrorForFirstRefresh(boolean deleteAllMessagesInFolder) {
+  private <T> SingleTransformer<T, T> handleProgressAndErrorForFirstRefresh() {
     if (messagesAdapter.get().getItemCount() > 0) {
       return upstream -> upstream;
     }
@@ -251,7 +259,7 @@ public class InboxFolderFragment extends DankFragment {
           }
           firstLoadErrorStateView.applyFrom(resolvedError);
           firstLoadErrorStateView.setVisibility(View.VISIBLE);
-          firstLoadErrorStateView.setOnRetryClickListener(o -> refreshMessages(deleteAllMessagesInFolder));
+          firstLoadErrorStateView.setOnRetryClickListener(o -> refreshMessages());
 
           firstLoadProgressView.setVisibility(View.GONE);
         });
@@ -352,9 +360,9 @@ public class InboxFolderFragment extends DankFragment {
           if (firstVisiblePosition != -1) {
             for (int i = firstVisiblePosition; i <= lastVisiblePosition; i++) {
               if (messagesAdapterWithProgress.isWrappedAdapterItem(i)) {
-                Message message = messagesAdapterWithProgress.getItemInWrappedAdapter(i).message();
+                CachedMessageSummary message = messagesAdapterWithProgress.getItemInWrappedAdapter(i).messageSummary();
                 //noinspection ConstantConditions
-                ((Callbacks) getActivity()).markUnreadMessageAsSeen(message);
+                ((Callbacks) getActivity()).markUnreadMessageAsSeen(message.fullname());
               }
             }
           }
@@ -4,11 +4,9 @@ import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
-import net.dean.jraw.models.Message;
-
 import java.util.List;
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks;
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks;
 
 public interface InboxFolderScreenUiModel {
 
@@ -21,7 +19,7 @@ public interface InboxFolderScreenUiModel {
 
   Type type();
 
-  Message message();
+  CachedMessageSummary messageSummary();
 
   interface Adapter<T extends InboxFolderScreenUiModel, VH extends RecyclerView.ViewHolder> {
     VH onCreate(LayoutInflater inflater, ViewGroup parent);
@@ -31,15 +29,15 @@ public interface InboxFolderScreenUiModel {
     void onBind(VH holder, T uiModel, List<Object> payloads);
   }
 
-  class ItemDiffer extends SimpleDiffUtilsCallbacks<InboxFolderScreenUiModel> {
+  class ItemDiffer extends StableIdDiffUtilsCallbacks<InboxFolderScreenUiModel> {
 
     public ItemDiffer(List<InboxFolderScreenUiModel> oldItems, List<InboxFolderScreenUiModel> newItems) {
       super(oldItems, newItems);
     }
 
     @Override
-    public boolean areItemsTheSame(InboxFolderScreenUiModel oldItem, InboxFolderScreenUiModel newItem) {
-      return oldItem.adapterId() == newItem.adapterId();
+    public long getItemId(InboxFolderScreenUiModel item) {
+      return item.adapterId();
     }
 
     @Override
@@ -2,92 +2,182 @@ package me.saket.dank.ui.user.messages;
 
 import android.content.Context;
 
-import net.dean.jraw.models.Message;
-
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.inject.Inject;
 
 import dagger.Lazy;
 import io.reactivex.Observable;
+import io.reactivex.functions.Function;
 import me.saket.dank.R;
 import me.saket.dank.ui.user.UserSessionRepository;
 import me.saket.dank.utils.Dates;
 import me.saket.dank.utils.JrawUtils2;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Optional;
+import me.saket.dank.utils.Pair;
+import me.saket.dank.utils.PipelineProfiler;
 import me.saket.dank.utils.markdown.Markdown;
 
 public class InboxFolderUiConstructor {
 
   private final Lazy<Markdown> markdown;
   private final Lazy<UserSessionRepository> userSessionRepo;
+  private final PipelineProfiler pipelineProfiler;
 
   @Inject
-  public InboxFolderUiConstructor(Lazy<Markdown> markdown, Lazy<UserSessionRepository> userSessionRepo) {
+  public InboxFolderUiConstructor(Lazy<Markdown> markdown, Lazy<UserSessionRepository> userSessionRepo, PipelineProfiler pipelineProfiler) {
     this.markdown = markdown;
     this.userSessionRepo = userSessionRepo;
+    this.pipelineProfiler = pipelineProfiler;
   }
 
-  public Observable<List<InboxFolderScreenUiModel>> stream(
+  /**
+   * UI models are memoized per subscription, so only messages that were added or changed
+   * get their models rebuilt. The emitted diffs must be applied in order.
+   */
+  public Observable<Pair<List<InboxFolderScreenUiModel>, ListDiff>> stream(
       Context c,
-      Observable<List<Message>> messagesStream,
+      Observable<List<CachedMessageSummary>> messagesStream,
       boolean constructThreads,
       boolean isUnreadFolder)
   {
-    return messagesStream
-        .map(messages -> {
-          List<InboxFolderScreenUiModel> models = new ArrayList<>(messages.size());
-          String loggedInUserName = userSessionRepo.get().loggedInUserName();
-          for (Message message : messages) {
-            if (constructThreads) {
-              models.add(messageThreadUiModel(c, message, loggedInUserName));
-            } else {
-              models.add(individualMessageUiModel(c, message, isUnreadFolder));
-            }
+    // IncrementalBuilder is stateful, so every subscription gets its own.
+    return pipelineProfiler.profile("InboxFolder", trace -> Observable.defer(() -> messagesStream
+        .compose(trace.source("messages"))
+        .map(new IncrementalBuilder(c, constructThreads, isUnreadFolder))));
+  }
+
+  /**
+   * Keeps the last built UI model of each message, keyed by its fullname.
+   */
+  class IncrementalBuilder implements Function<List<CachedMessageSummary>, Pair<List<InboxFolderScreenUiModel>, ListDiff>> {
+    private final Context context;
+    private final boolean constructThreads;
+    private final boolean isUnreadFolder;
+    private Map<String, MemoizedRow> rows = new HashMap<>();
+    private long[] lastAdapterIds = new long[0];
+
+    IncrementalBuilder(Context context, boolean constructThreads, boolean isUnreadFolder) {
+      this.context = context;
+      this.constructThreads = constructThreads;
+      this.isUnreadFolder = isUnreadFolder;
+    }
+
+    @Override
+    public Pair<List<InboxFolderScreenUiModel>, ListDiff> apply(List<CachedMessageSummary> messages) {
+      String loggedInUserName = constructThreads
+          ? userSessionRepo.get().loggedInUserName()
+          : null;
+
+      Map<String, MemoizedRow> nextRows = new HashMap<>(messages.size() * 2);
+      List<InboxFolderScreenUiModel> models = new ArrayList<>(messages.size());
+      long[] adapterIds = new long[messages.size()];
+      Set<Long> changedAdapterIds = new HashSet<>();
+
+      for (int i = 0; i < messages.size(); i++) {
+        CachedMessageSummary message = messages.get(i);
+        MemoizedRow existingRow = rows.get(message.fullname());
+
+        MemoizedRow row;
+        if (existingRow != null && existingRow.isBuiltFrom(message, constructThreads)) {
+          row = existingRow;
+        } else {
+          InboxFolderScreenUiModel model = constructThreads
+              ? messageThreadUiModel(context, message, loggedInUserName)
+              : individualMessageUiModel(context, message, isUnreadFolder);
+          row = new MemoizedRow(message, constructThreads, model);
+          if (existingRow != null && existingRow.model.adapterId() == model.adapterId()) {
+            changedAdapterIds.add(model.adapterId());
           }
-          return models;
-        });
+        }
+
+        nextRows.put(message.fullname(), row);
+        models.add(row.model);
+        adapterIds[i] = row.model.adapterId();
+      }
+
+      ListDiff diff = ListDiff.fromKnownChanges(lastAdapterIds, adapterIds, changedAdapterIds);
+      rows = nextRows;
+      lastAdapterIds = adapterIds;
+      return Pair.create(Collections.unmodifiableList(models), diff);
+    }
+  }
+
+  /**
+   * A message's UI model gets reused as long as the details it was built from haven't changed.
+   */
+  private static class MemoizedRow {
+    private final int bodyHash;
+    private final boolean isUnread;
+    private final int replyCount;
+    private final InboxFolderScreenUiModel model;
+
+    MemoizedRow(CachedMessageSummary message, boolean isThread, InboxFolderScreenUiModel model) {
+      this.bodyHash = bodyHash(message, isThread);
+      this.isUnread = message.isUnread();
+      this.replyCount = message.replyCount();
+      this.model = model;
+    }
+
+    boolean isBuiltFrom(CachedMessageSummary message, boolean isThread) {
+      return bodyHash == bodyHash(message, isThread)
+          && isUnread == message.isUnread()
+          && replyCount == message.replyCount();
+    }
+
+    private static int bodyHash(CachedMessageSummary message, boolean isThread) {
+      // Threads show a snippet of their latest message.
+      return isThread
+          ? message.latestMessageBody().hashCode()
+          : message.body().hashCode();
+    }
   }
 
   /**
    * IMPORTANT: Keep the identification of these details like title, author, etc., in sync with MessagesNotificationManager.
    */
-  private InboxIndividualMessage.UiModel individualMessageUiModel(Context c, Message message, boolean isUnreadFolder) {
-    InboxMessageType messageType = InboxMessageType.parse(message);
+  private InboxIndividualMessage.UiModel individualMessageUiModel(Context c, CachedMessageSummary message, boolean isUnreadFolder) {
+    InboxMessageType messageType = message.type();
 
     String title;
     String byline;
     String senderInformation;
-    String timestamp = Dates.createTimestamp(c.getResources(), message.getCreated().getTime()).toString();
-    String subredditName = c.getString(R.string.subreddit_name_r_prefix, message.getSubreddit());
+    String timestamp = Dates.createTimestamp(c.getResources(), message.createdTimeMillis()).toString();
+    String subredditName = c.getString(R.string.subreddit_name_r_prefix, message.subreddit());
 
     switch (messageType) {
       case COMMENT_REPLY:
-        title = message.getLinkTitle();
+        title = message.linkTitle();
         byline = isUnreadFolder
             ? c.getString(R.string.inbox_message_byline_for_unread_folder_comment_reply, timestamp)
             : timestamp;
-        senderInformation = c.getString(R.string.inbox_message_sender_info_for_comment_reply, message.getAuthor(), subredditName);
+        senderInformation = c.getString(R.string.inbox_message_sender_info_for_comment_reply, message.author(), subredditName);
         break;
 
       case USERNAME_MENTION:
-        title = message.getLinkTitle();
+        title = message.linkTitle();
         byline = isUnreadFolder
             ? c.getString(R.string.inbox_message_byline_for_unread_folder_username_mention, timestamp)
             : timestamp;
-        senderInformation = c.getString(R.string.inbox_message_sender_info_for_username_mention, message.getAuthor(), subredditName);
+        senderInformation = c.getString(R.string.inbox_message_sender_info_for_username_mention, message.author(), subredditName);
         break;
 
       case POST_REPLY:
-        title = message.getSubject();
+        title = message.subject();
         byline = isUnreadFolder
             ? c.getString(R.string.inbox_message_byline_for_unread_folder_post_reply, timestamp)
             : timestamp;
-        senderInformation = c.getString(R.string.inbox_message_sender_info_for_comment_reply, message.getAuthor(), subredditName);
+        senderInformation = c.getString(R.string.inbox_message_sender_info_for_comment_reply, message.author(), subredditName);
         break;
 
       case SUBREDDIT_MESSAGE:
-        title = message.getSubject();
+        title = message.subject();
         byline = isUnreadFolder
             ? c.getString(R.string.inbox_message_byline_for_unread_folder_subreddit_message, timestamp)
             : timestamp;
@@ -95,47 +185,45 @@ public class InboxFolderUiConstructor {
         break;
 
       case PRIVATE_MESSAGE:
-        title = message.getSubject();
+        title = message.subject();
         byline = isUnreadFolder
             ? c.getString(R.string.inbox_message_byline_for_unread_folder_private_message, timestamp)
             : timestamp;
-        senderInformation = c.getString(R.string.inbox_message_sender_info_for_private_message, message.getAuthor());
+        senderInformation = c.getString(R.string.inbox_message_sender_info_for_private_message, message.author());
         break;
 
       default:
       case UNKNOWN:
-        title = message.getSubject();
+        title = message.subject();
         byline = timestamp;
-        senderInformation = c.getString(R.string.inbox_message_sender_info_for_private_message, message.getAuthor());
+        senderInformation = c.getString(R.string.inbox_message_sender_info_for_private_message, message.author());
         break;
     }
 
-    long adapterId = JrawUtils2.generateAdapterId(message);
-    CharSequence body = markdown.get().parse(message);
+    long adapterId = message.adapterId();
+    CharSequence body = markdown.get().parseMessageBody(message.body());
     //noinspection ConstantConditions
     return InboxIndividualMessage.UiModel.create(adapterId, title, byline, senderInformation, body, message);
   }
 
-  private InboxMessageThread.UiModel messageThreadUiModel(Context c, Message messageThread, String loggedInUserName) {
-    List<Message> replies = JrawUtils2.messageReplies(messageThread);
-    Message latestMessageInThread = replies.isEmpty()
-        ? messageThread
-        : replies.get(replies.size() - 1);
-
+  private InboxMessageThread.UiModel messageThreadUiModel(Context c, CachedMessageSummary messageThread, String loggedInUserName) {
+    //noinspection ConstantConditions
     Optional<String> secondPartyName = Optional.ofNullable(JrawUtils2.secondPartyName(
         c.getResources(),
-        messageThread,
+        messageThread.destination(),
+        messageThread.author(),
+        messageThread.subreddit(),
         loggedInUserName));
 
-    String snippet = markdown.get().stripMarkdown(latestMessageInThread).replace("\n", " ");
+    String snippet = markdown.get().stripMarkdownFromMessageBody(messageThread.latestMessageBody()).replace("\n", " ");
 
-    boolean wasLastMessageBySelf = loggedInUserName.equalsIgnoreCase(latestMessageInThread.getAuthor());  // Author can be null.
+    boolean wasLastMessageBySelf = loggedInUserName.equalsIgnoreCase(messageThread.latestMessageAuthor());  // Author can be null.
     snippet = wasLastMessageBySelf
         ? c.getResources().getString(R.string.inbox_snippet_sent_by_logged_in_user, snippet)
         : snippet;
 
-    long adapterId = JrawUtils2.generateAdapterId(messageThread);
-    String timestamp = Dates.createTimestamp(c.getResources(), latestMessageInThread.getCreated().getTime()).toString();
-    return InboxMessageThread.UiModel.create(adapterId, secondPartyName, messageThread.getSubject(), snippet, timestamp, messageThread);
+    long adapterId = messageThread.adapterId();
+    String timestamp = Dates.createTimestamp(c.getResources(), messageThread.latestMessageTimeMillis()).toString();
+    return InboxMessageThread.UiModel.create(adapterId, secondPartyName, messageThread.subject(), snippet, timestamp, messageThread);
   }
 }
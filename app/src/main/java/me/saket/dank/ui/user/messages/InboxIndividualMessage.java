@@ -10,8 +10,6 @@ import android.widget.TextView;
 import com.google.auto.value.AutoValue;
 import com.jakewharton.rxrelay2.PublishRelay;
 
-import net.dean.jraw.models.Message;
-
 import java.util.List;
 import javax.inject.Inject;
 
@@ -43,7 +41,7 @@ public interface InboxIndividualMessage {
     }
 
     @Override
-    public abstract Message message();
+    public abstract CachedMessageSummary messageSummary();
 
     public static UiModel create(
         long adapterId,
@@ -51,7 +49,7 @@ public interface InboxIndividualMessage {
         String byline,
         String senderInformation,
         CharSequence body,
-        Message message)
+        CachedMessageSummary messageSummary)
     {
       return new AutoValue_InboxIndividualMessage_UiModel(
           adapterId,
@@ -59,7 +57,7 @@ public interface InboxIndividualMessage {
           byline,
           senderInformation,
           SpannableWithTextEquality.wrap(body),
-          message);
+          messageSummary);
     }
   }
 
@@ -123,7 +121,7 @@ public interface InboxIndividualMessage {
       holder.setBodyLinkMovementMethod(linkMovementMethod.get());
       holder.forwardTouchEventsToBackground(linkMovementMethod.get());
       holder.itemView.setOnClickListener(o ->
-          messageClicks.accept(MessageClickEvent.create(holder.uiModel.message(), holder.itemView))
+          messageClicks.accept(MessageClickEvent.create(holder.uiModel.messageSummary(), holder.itemView))
       );
       return holder;
     }
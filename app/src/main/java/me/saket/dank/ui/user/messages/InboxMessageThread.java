@@ -11,7 +11,6 @@ import java.util.List;
 import javax.inject.Inject;
 import me.saket.dank.R;
 import me.saket.dank.utils.Optional;
-import net.dean.jraw.models.Message;
 
 public interface InboxMessageThread {
 
@@ -35,7 +34,7 @@ public interface InboxMessageThread {
     }
 
     @Override
-    public abstract Message message();
+    public abstract CachedMessageSummary messageSummary();
 
     public static UiModel create(
         long adapterId,
@@ -43,8 +42,8 @@ public interface InboxMessageThread {
         String subject,
         String snippet,
         String timestamp,
-        Message message) {
-      return new AutoValue_InboxMessageThread_UiModel(adapterId, secondPartyName, subject, snippet, timestamp, message);
+        CachedMessageSummary messageSummary) {
+      return new AutoValue_InboxMessageThread_UiModel(adapterId, secondPartyName, subject, snippet, timestamp, messageSummary);
     }
   }
 
@@ -92,7 +91,7 @@ public interface InboxMessageThread {
     public ViewHolder onCreate(LayoutInflater inflater, ViewGroup parent) {
       ViewHolder holder = ViewHolder.create(inflater, parent);
       holder.itemView.setOnClickListener(o ->
-          messageClicks.accept(MessageClickEvent.create(holder.uiModel.message(), holder.itemView))
+          messageClicks.accept(MessageClickEvent.create(holder.uiModel.messageSummary(), holder.itemView))
       );
       return holder;
     }
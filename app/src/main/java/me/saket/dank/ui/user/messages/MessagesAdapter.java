@@ -1,7 +1,6 @@
 package me.saket.dank.ui.user.messages;
 
 import android.support.annotation.CheckResult;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.ViewGroup;
@@ -13,11 +12,12 @@ import javax.inject.Inject;
 
 import io.reactivex.Observable;
 import io.reactivex.functions.Consumer;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RecyclerViewArrayAdapter;
 
 public class MessagesAdapter extends RecyclerViewArrayAdapter<InboxFolderScreenUiModel, RecyclerView.ViewHolder>
-    implements Consumer<Pair<List<InboxFolderScreenUiModel>, DiffUtil.DiffResult>>
+    implements Consumer<Pair<List<InboxFolderScreenUiModel>, ListDiff>>
 {
 
   private static final InboxFolderScreenUiModel.Type[] VIEW_TYPES = InboxFolderScreenUiModel.Type.values();
@@ -74,7 +74,7 @@ public class MessagesAdapter extends RecyclerViewArrayAdapter<InboxFolderScreenU
   }
 
   @Override
-  public void accept(Pair<List<InboxFolderScreenUiModel>, DiffUtil.DiffResult> pair) throws Exception {
+  public void accept(Pair<List<InboxFolderScreenUiModel>, ListDiff> pair) throws Exception {
     updateData(pair.first());
     pair.second().dispatchUpdatesTo(this);
   }
@@ -2,9 +2,9 @@ package me.saket.dank.ui.user.messages;
 
 import java.util.List;
 
-import me.saket.dank.utils.SimpleDiffUtilsCallbacks;
+import me.saket.dank.utils.StableIdDiffUtilsCallbacks;
 
-public class PrivateMessageItemDiffer extends SimpleDiffUtilsCallbacks<PrivateMessageUiModel> {
+public class PrivateMessageItemDiffer extends StableIdDiffUtilsCallbacks<PrivateMessageUiModel> {
 
   public static PrivateMessageItemDiffer create(List<PrivateMessageUiModel> oldItems, List<PrivateMessageUiModel> newItems) {
     return new PrivateMessageItemDiffer(oldItems, newItems);
@@ -15,8 +15,8 @@ public class PrivateMessageItemDiffer extends SimpleDiffUtilsCallbacks<PrivateMe
   }
 
   @Override
-  public boolean areItemsTheSame(PrivateMessageUiModel oldItem, PrivateMessageUiModel newItem) {
-    return oldItem.adapterId() == newItem.adapterId();
+  public long getItemId(PrivateMessageUiModel item) {
+    return item.adapterId();
   }
 
   @Override
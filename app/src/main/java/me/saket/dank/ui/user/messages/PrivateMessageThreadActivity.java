@@ -12,7 +12,6 @@ import android.content.Intent;
 import android.graphics.Rect;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
-import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
@@ -63,6 +62,7 @@ import me.saket.dank.utils.Arrays2;
 import me.saket.dank.utils.DankLinkMovementMethod;
 import me.saket.dank.utils.Dates;
 import me.saket.dank.utils.JrawUtils2;
+import me.saket.dank.utils.ListDiff;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.Pair;
 import me.saket.dank.utils.RxDiffUtil;
@@ -212,7 +212,7 @@ public class PrivateMessageThreadActivity extends DankPullCollapsibleActivity {
               messagesAdapter.updateData(newComments);
               messageRecyclerView.post(() -> messageRecyclerView.scrollToPosition(messagesAdapter.getItemCount() - 1));
 
-              DiffUtil.DiffResult diffResult = itemsAndDiff.second();
+              ListDiff diffResult = itemsAndDiff.second();
               //noinspection ConstantConditions
               diffResult.dispatchUpdatesTo(messagesAdapter);
             },
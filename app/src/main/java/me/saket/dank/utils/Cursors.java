@@ -16,4 +16,8 @@ public class Cursors {
   public static int intt(Cursor cursor, String columnName) {
     return cursor.getInt(cursor.getColumnIndexOrThrow(columnName));
   }
+
+  public static byte[] blob(Cursor cursor, String columnName) {
+    return cursor.getBlob(cursor.getColumnIndexOrThrow(columnName));
+  }
 }
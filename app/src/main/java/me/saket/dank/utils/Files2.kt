@@ -17,17 +17,23 @@ object Files2 {
    */
   @Throws(IOException::class)
   fun copyFileToPicturesDirectory(resources: Resources, fileToCopy: File, newFileName: String): File {
+    val userAccessibleFile = fileInPicturesDirectory(resources, newFileName)
+    userAccessibleFile.createNewFile()
+
+    fileToCopy.copyTo(userAccessibleFile, overwrite = true)
+    return userAccessibleFile
+  }
+
+  /**
+   * sdcard/Pictures/[fileName]. Creates the directory, but not the file.
+   */
+  fun fileInPicturesDirectory(resources: Resources, fileName: String): File {
     val picturesDirectory = File(
         Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES).absolutePath,
         resources.getString(R.string.image_download_directory_name)
     )
-    val userAccessibleFile = File(picturesDirectory, newFileName)
-
     picturesDirectory.mkdirs()
-    userAccessibleFile.createNewFile()
-
-    fileToCopy.copyTo(userAccessibleFile, overwrite = true)
-    return userAccessibleFile
+    return File(picturesDirectory, fileName)
   }
 
   fun copy(from: File, to: File) {
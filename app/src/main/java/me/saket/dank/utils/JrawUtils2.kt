@@ -37,13 +37,16 @@ object JrawUtils2 {
 
   @JvmStatic
   fun secondPartyName(resources: Resources, message: Message, loggedInUserName: String): String? {
-    val destination = message.dest
+    return secondPartyName(resources, message.dest, message.author, message.subreddit, loggedInUserName)
+  }
 
+  @JvmStatic
+  fun secondPartyName(resources: Resources, destination: String?, author: String?, subreddit: String?, loggedInUserName: String): String? {
     return when {
-      destination.startsWith("#") -> resources.getString(R.string.subreddit_name_r_prefix, message.subreddit)
+      destination?.startsWith("#") == true -> resources.getString(R.string.subreddit_name_r_prefix, subreddit)
       destination.equals(loggedInUserName, ignoreCase = true) -> when {
-        message.author == null -> resources.getString(R.string.subreddit_name_r_prefix, message.subreddit)!!
-        else -> message.author
+        author == null -> resources.getString(R.string.subreddit_name_r_prefix, subreddit)!!
+        else -> author
       }
       else -> destination
     }
@@ -0,0 +1,239 @@
+package me.saket.dank.utils;
+
+import android.support.annotation.Nullable;
+import android.support.v7.util.AdapterListUpdateCallback;
+import android.support.v7.util.BatchingListUpdateCallback;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes between two lists, calculated by {@link RxDiffUtil}. Wraps {@link DiffUtil.DiffResult},
+ * which can't be created for changes that were calculated without using DiffUtil.
+ */
+public abstract class ListDiff {
+
+  public enum Strategy {
+    /** Myers diff through DiffUtil. */
+    DIFF_UTIL,
+    /** Reconciliation of unique item IDs, in O(n log n). */
+    ID_RECONCILIATION,
+    /** Changes reported by whoever built the new list. */
+    KNOWN_CHANGES,
+  }
+
+  private final Strategy strategy;
+  private final long computeMillis;
+
+  private ListDiff(Strategy strategy, long computeMillis) {
+    this.strategy = strategy;
+    this.computeMillis = computeMillis;
+  }
+
+  public Strategy strategy() {
+    return strategy;
+  }
+
+  /** Time taken to calculate this diff. */
+  public long computeMillis() {
+    return computeMillis;
+  }
+
+  public abstract void dispatchUpdatesTo(ListUpdateCallback callback);
+
+  public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+    dispatchUpdatesTo(new AdapterListUpdateCallback(adapter));
+  }
+
+  static ListDiff fromDiffResult(DiffUtil.DiffResult diffResult, long computeMillis) {
+    return new ListDiff(Strategy.DIFF_UTIL, computeMillis) {
+      @Override
+      public void dispatchUpdatesTo(ListUpdateCallback callback) {
+        diffResult.dispatchUpdatesTo(callback);
+      }
+    };
+  }
+
+  /**
+   * @param operations Flattened as [type, position, payload] triplets. Positions are valid at
+   *                   the time of each operation, in the order of the list.
+   */
+  private static ListDiff fromOperations(Strategy strategy, List<Object> operations, long computeMillis) {
+    return new ListDiff(strategy, computeMillis) {
+      @Override
+      public void dispatchUpdatesTo(ListUpdateCallback callback) {
+        BatchingListUpdateCallback batchingCallback = new BatchingListUpdateCallback(callback);
+        for (int i = 0; i < operations.size(); i += 3) {
+          int type = (Integer) operations.get(i);
+          int position = (Integer) operations.get(i + 1);
+          switch (type) {
+            case OPERATION_REMOVE:
+              batchingCallback.onRemoved(position, 1);
+              break;
+
+            case OPERATION_INSERT:
+              batchingCallback.onInserted(position, 1);
+              break;
+
+            case OPERATION_CHANGE:
+              batchingCallback.onChanged(position, 1, operations.get(i + 2));
+              break;
+
+            default:
+              throw new AssertionError("Unknown operation: " + type);
+          }
+        }
+        batchingCallback.dispatchLastEvent();
+      }
+    };
+  }
+
+  /**
+   * Compares the old and new versions of an item present in both lists.
+   */
+  interface ItemChanges {
+    boolean hasChanged(int oldPosition, int newPosition);
+
+    @Nullable
+    Object changePayload(int oldPosition, int newPosition);
+  }
+
+  /**
+   * For lists whose changed items are already known, which saves comparing the contents of every item.
+   * Items that moved are removed and inserted again.
+   *
+   * @param oldIds     Unique IDs of the old items.
+   * @param newIds     Unique IDs of the new items.
+   * @param changedIds IDs of items present in both lists whose contents have changed.
+   */
+  public static ListDiff fromKnownChanges(long[] oldIds, long[] newIds, Set<Long> changedIds) {
+    long startTime = System.nanoTime();
+    ItemChanges changes = new ItemChanges() {
+      @Override
+      public boolean hasChanged(int oldPosition, int newPosition) {
+        return changedIds.contains(newIds[newPosition]);
+      }
+
+      @Override
+      public Object changePayload(int oldPosition, int newPosition) {
+        return null;
+      }
+    };
+    return fromReconciledIds(Strategy.KNOWN_CHANGES, oldIds, newIds, changes, startTime);
+  }
+
+  /**
+   * Items that moved are removed and inserted again. Everything else keeps its position,
+   * so reordering a few items of a large list doesn't rebind the rest of it.
+   *
+   * @param oldIds         Unique IDs of the old items.
+   * @param newIds         Unique IDs of the new items.
+   * @param startTimeNanos When the calculation of this diff was started.
+   */
+  static ListDiff fromReconciledIds(Strategy strategy, long[] oldIds, long[] newIds, ItemChanges changes, long startTimeNanos) {
+    Map<Long, Integer> oldPositions = new HashMap<>(oldIds.length * 2);
+    for (int i = 0; i < oldIds.length; i++) {
+      oldPositions.put(oldIds[i], i);
+    }
+    int[] oldPositionsInNewOrder = new int[newIds.length];
+    for (int i = 0; i < newIds.length; i++) {
+      Integer oldPosition = oldPositions.get(newIds[i]);
+      oldPositionsInNewOrder[i] = oldPosition != null ? oldPosition : -1;
+    }
+
+    // Items that stayed in order are the longest run of increasing old positions.
+    // Everything else was either added, removed or moved.
+    boolean[] isOldItemRetained = new boolean[oldIds.length];
+    boolean[] isNewItemRetained = new boolean[newIds.length];
+    markLongestIncreasingSubsequence(oldPositionsInNewOrder, isNewItemRetained, isOldItemRetained);
+
+    List<Object> operations = new ArrayList<>();
+    int oldPosition = 0;
+    int newPosition = 0;
+    int adapterPosition = 0;
+    while (oldPosition < oldIds.length || newPosition < newIds.length) {
+      if (oldPosition < oldIds.length && !isOldItemRetained[oldPosition]) {
+        addOperation(operations, OPERATION_REMOVE, adapterPosition, null);
+        ++oldPosition;
+
+      } else if (newPosition < newIds.length && !isNewItemRetained[newPosition]) {
+        addOperation(operations, OPERATION_INSERT, adapterPosition, null);
+        ++newPosition;
+        ++adapterPosition;
+
+      } else {
+        // Retained items are in the same order in both lists.
+        if (changes.hasChanged(oldPosition, newPosition)) {
+          addOperation(operations, OPERATION_CHANGE, adapterPosition, changes.changePayload(oldPosition, newPosition));
+        }
+        ++oldPosition;
+        ++newPosition;
+        ++adapterPosition;
+      }
+    }
+
+    return fromOperations(strategy, operations, (System.nanoTime() - startTimeNanos) / 1_000_000);
+  }
+
+  /**
+   * Patience sorting, in O(n log n).
+   *
+   * @param values Negative values are skipped.
+   */
+  private static void markLongestIncreasingSubsequence(int[] values, boolean[] isIndexInSubsequence, boolean[] isValueInSubsequence) {
+    int[] tailIndices = new int[values.length];
+    int[] predecessorIndices = new int[values.length];
+    Arrays.fill(predecessorIndices, -1);
+    int length = 0;
+
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] < 0) {
+        continue;
+      }
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (values[tailIndices[mid]] < values[i]) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      if (low > 0) {
+        predecessorIndices[i] = tailIndices[low - 1];
+      }
+      tailIndices[low] = i;
+      if (low == length) {
+        ++length;
+      }
+    }
+
+    for (int i = length > 0 ? tailIndices[length - 1] : -1; i >= 0; i = predecessorIndices[i]) {
+      isIndexInSubsequence[i] = true;
+      isValueInSubsequence[values[i]] = true;
+    }
+  }
+
+  private static void addOperation(List<Object> operations, int type, int position, @Nullable Object payload) {
+    operations.add(type);
+    operations.add(position);
+    operations.add(payload);
+  }
+
+  static final int OPERATION_REMOVE = 0;
+  static final int OPERATION_INSERT = 1;
+  static final int OPERATION_CHANGE = 2;
+
+  @Override
+  public String toString() {
+    return "ListDiff{" + strategy + " in " + computeMillis + "ms}";
+  }
+}
@@ -0,0 +1,299 @@
+package me.saket.dank.utils;
+
+import android.support.annotation.CheckResult;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.google.auto.value.AutoValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableTransformer;
+import io.reactivex.functions.Function;
+import me.saket.dank.BuildConfig;
+import timber.log.Timber;
+
+/**
+ * Records how UI model pipelines behave: time taken for their first emission, time taken
+ * for every recompute and the upstream source that triggered it. Events are written to a
+ * fixed size ring buffer that can be dumped from hidden preferences or asserted on in tests.
+ * <p>
+ * Usage:
+ * <pre>
+ * profiler.profile("Subreddit", trace -> Observable.combineLatest(
+ *     submissions.compose(trace.source("submissions")),
+ *     votes.compose(trace.source("votes")),
+ *     combiner));
+ * </pre>
+ * When disabled, {@link Trace} transformers are no-ops and nothing gets recorded.
+ */
+@Singleton
+public class PipelineProfiler {
+
+  private static final int RING_BUFFER_CAPACITY = 512;
+  private static final long SLOW_FIRST_EMISSION_THRESHOLD_MILLIS = 500;
+
+  private final Event[] ringBuffer;
+  private int nextWriteIndex;
+  private int size;
+  private volatile boolean enabled;
+
+  public enum EventType {
+    /** A source emitted for the first time after subscription. */
+    SOURCE_FIRST_EMISSION,
+    /** The pipeline emitted for the first time after subscription. */
+    FIRST_EMISSION,
+    /** The pipeline re-emitted because one of its sources changed. */
+    RECOMPUTE
+  }
+
+  @AutoValue
+  public abstract static class Event {
+    public abstract String pipeline();
+
+    public abstract EventType type();
+
+    /** Source that caused this event. Null if the pipeline emitted before any traced source. */
+    @Nullable
+    public abstract String trigger();
+
+    public abstract long millisSinceSubscribe();
+
+    /** Time between the triggering source's emission and the pipeline's emission. */
+    public abstract long computeMicros();
+
+    /** Zero for {@link EventType#SOURCE_FIRST_EMISSION}. */
+    public abstract int emissionIndex();
+
+    static Event create(String pipeline, EventType type, @Nullable String trigger, long millisSinceSubscribe, long computeMicros, int emissionIndex) {
+      return new AutoValue_PipelineProfiler_Event(pipeline, type, trigger, millisSinceSubscribe, computeMicros, emissionIndex);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ENGLISH, "%s %s #%d via %s: +%dms, took %dµs",
+          pipeline(), type(), emissionIndex(), trigger(), millisSinceSubscribe(), computeMicros());
+    }
+  }
+
+  public interface Trace {
+    /**
+     * Marks emissions of <var>upstream</var> as the trigger for the pipeline's next recompute.
+     */
+    <T> ObservableTransformer<T, T> source(String name);
+  }
+
+  @Inject
+  public PipelineProfiler() {
+    this(RING_BUFFER_CAPACITY, BuildConfig.DEBUG);
+  }
+
+  @VisibleForTesting
+  PipelineProfiler(int capacity, boolean enabled) {
+    this.ringBuffer = new Event[capacity];
+    this.enabled = enabled;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Whether profiling is enabled is decided once per subscription.
+   */
+  @CheckResult
+  public <T> Observable<T> profile(String pipelineName, Function<Trace, Observable<T>> pipelineBuilder) {
+    return Observable.defer(() -> {
+      if (!enabled) {
+        return pipelineBuilder.apply(NoOpTrace.INSTANCE);
+      }
+      RecordingTrace trace = new RecordingTrace(pipelineName);
+      return pipelineBuilder.apply(trace).compose(trace.output());
+    });
+  }
+
+  private synchronized void record(Event event) {
+    ringBuffer[nextWriteIndex] = event;
+    nextWriteIndex = (nextWriteIndex + 1) % ringBuffer.length;
+    size = Math.min(size + 1, ringBuffer.length);
+  }
+
+  /**
+   * Recorded events, oldest first.
+   */
+  public synchronized List<Event> events() {
+    List<Event> events = new ArrayList<>(size);
+    int oldestIndex = (nextWriteIndex - size + ringBuffer.length) % ringBuffer.length;
+    for (int i = 0; i < size; i++) {
+      events.add(ringBuffer[(oldestIndex + i) % ringBuffer.length]);
+    }
+    return Collections.unmodifiableList(events);
+  }
+
+  public synchronized void clear() {
+    for (int i = 0; i < ringBuffer.length; i++) {
+      ringBuffer[i] = null;
+    }
+    nextWriteIndex = 0;
+    size = 0;
+  }
+
+  /**
+   * Per-pipeline stats followed by the raw events.
+   */
+  public String dump() {
+    List<Event> events = events();
+    Map<String, PipelineStats> statsByPipeline = new LinkedHashMap<>();
+
+    for (Event event : events) {
+      if (event.type() == EventType.SOURCE_FIRST_EMISSION) {
+        continue;
+      }
+      PipelineStats stats = statsByPipeline.get(event.pipeline());
+      if (stats == null) {
+        stats = new PipelineStats();
+        statsByPipeline.put(event.pipeline(), stats);
+      }
+      stats.record(event);
+    }
+
+    StringBuilder dump = new StringBuilder();
+    for (Map.Entry<String, PipelineStats> entry : statsByPipeline.entrySet()) {
+      PipelineStats stats = entry.getValue();
+      dump.append(String.format(Locale.ENGLISH,
+          "%s\n  first emission avg %dms, %d recomputes, avg %dµs, max %dµs, %.1f/s\n",
+          entry.getKey(),
+          stats.averageFirstEmissionMillis(),
+          stats.recomputeCount,
+          stats.averageComputeMicros(),
+          stats.maxComputeMicros,
+          stats.emissionsPerSecond()));
+    }
+    dump.append('\n');
+    for (Event event : events) {
+      dump.append(event).append('\n');
+    }
+    return dump.toString();
+  }
+
+  private static class PipelineStats {
+    long firstEmissionCount;
+    long totalFirstEmissionMillis;
+    long recomputeCount;
+    long totalComputeMicros;
+    long maxComputeMicros;
+    long earliestMillis = Long.MAX_VALUE;
+    long latestMillis;
+    long emissionCount;
+
+    void record(Event event) {
+      emissionCount++;
+      totalComputeMicros += event.computeMicros();
+      maxComputeMicros = Math.max(maxComputeMicros, event.computeMicros());
+      earliestMillis = Math.min(earliestMillis, event.millisSinceSubscribe());
+      latestMillis = Math.max(latestMillis, event.millisSinceSubscribe());
+
+      if (event.type() == EventType.FIRST_EMISSION) {
+        firstEmissionCount++;
+        totalFirstEmissionMillis += event.millisSinceSubscribe();
+      } else {
+        recomputeCount++;
+      }
+    }
+
+    long averageFirstEmissionMillis() {
+      return firstEmissionCount == 0 ? 0 : totalFirstEmissionMillis / firstEmissionCount;
+    }
+
+    long averageComputeMicros() {
+      return emissionCount == 0 ? 0 : totalComputeMicros / emissionCount;
+    }
+
+    /** Approximate, because timestamps are relative to each subscription. */
+    float emissionsPerSecond() {
+      long spanMillis = latestMillis - earliestMillis;
+      return spanMillis <= 0 ? 0 : emissionCount * 1000f / spanMillis;
+    }
+  }
+
+  private enum NoOpTrace implements Trace {
+    INSTANCE;
+
+    @Override
+    public <T> ObservableTransformer<T, T> source(String name) {
+      return upstream -> upstream;
+    }
+  }
+
+  /**
+   * Created for every subscription. Sources of a pipeline can emit on different threads,
+   * so attribution of a recompute to its trigger is best-effort.
+   */
+  private class RecordingTrace implements Trace {
+    private final String pipelineName;
+    private final long subscribeNanos = System.nanoTime();
+    private final Map<String, Long> sourceFirstEmissionMillis = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile String lastTrigger;
+    private volatile long lastTriggerNanos = subscribeNanos;
+    private int emissionCount;
+
+    RecordingTrace(String pipelineName) {
+      this.pipelineName = pipelineName;
+    }
+
+    @Override
+    public <T> ObservableTransformer<T, T> source(String name) {
+      return upstream -> upstream.doOnNext(o -> {
+        long nowNanos = System.nanoTime();
+        if (!sourceFirstEmissionMillis.containsKey(name)) {
+          long millisSinceSubscribe = TimeUnit.NANOSECONDS.toMillis(nowNanos - subscribeNanos);
+          sourceFirstEmissionMillis.put(name, millisSinceSubscribe);
+          record(Event.create(pipelineName, EventType.SOURCE_FIRST_EMISSION, name, millisSinceSubscribe, 0, 0));
+        }
+        lastTrigger = name;
+        lastTriggerNanos = nowNanos;
+      });
+    }
+
+    <T> ObservableTransformer<T, T> output() {
+      return upstream -> upstream.doOnNext(o -> {
+        long nowNanos = System.nanoTime();
+        long millisSinceSubscribe = TimeUnit.NANOSECONDS.toMillis(nowNanos - subscribeNanos);
+        long computeMicros = TimeUnit.NANOSECONDS.toMicros(nowNanos - lastTriggerNanos);
+        int emissionIndex = emissionCount++;
+        EventType type = emissionIndex == 0 ? EventType.FIRST_EMISSION : EventType.RECOMPUTE;
+        record(Event.create(pipelineName, type, lastTrigger, millisSinceSubscribe, computeMicros, emissionIndex));
+
+        if (type == EventType.FIRST_EMISSION && millisSinceSubscribe > SLOW_FIRST_EMISSION_THRESHOLD_MILLIS) {
+          logSlowSources(millisSinceSubscribe);
+        }
+      });
+    }
+
+    private void logSlowSources(long millisSinceSubscribe) {
+      Timber.w("------------------------------------------------");
+      Timber.w("%s took %sms to emit [SLOW]", pipelineName, millisSinceSubscribe);
+      synchronized (sourceFirstEmissionMillis) {
+        for (Map.Entry<String, Long> entry : sourceFirstEmissionMillis.entrySet()) {
+          if (entry.getValue() > SLOW_FIRST_EMISSION_THRESHOLD_MILLIS) {
+            Timber.w("%s = %sms [SLOW]", entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      Timber.i("------------------------------------------------");
+    }
+  }
+}
@@ -1,40 +1,215 @@
 package me.saket.dank.utils;
 
+import android.support.annotation.Nullable;
 import android.support.v7.util.DiffUtil;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.FlowableTransformer;
+import io.reactivex.Scheduler;
 import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.BooleanSupplier;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.BuildConfig;
+import timber.log.Timber;
 
+/**
+ * Calculates diffs on a dedicated background thread. A diff that is still being calculated
+ * when a newer list arrives is abandoned and the newer list gets diffed against the last
+ * emitted list instead.
+ * <p>
+ * Lists whose differ has stable IDs are reconciled in O(n log n), even if their items were
+ * reordered. DiffUtil's move detection, which is quadratic, is only used for small lists.
+ */
 public class RxDiffUtil {
 
+  /** Lists larger than this are never diffed with move detection. */
+  private static final int MOVE_DETECTION_SIZE_THRESHOLD = 500;
+  private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+  private static final long SLOW_DIFF_THRESHOLD_MILLIS = 16;
+
+  private static final Scheduler DIFF_SCHEDULER = Schedulers.from(Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "RxDiffUtil");
+    thread.setDaemon(true);
+    return thread;
+  }));
+
   // FIXME rename to calculate().
-  public static <T> FlowableTransformer<List<T>, Pair<List<T>, DiffUtil.DiffResult>> calculateDiff(
+  public static <T> FlowableTransformer<List<T>, Pair<List<T>, ListDiff>> calculateDiff(
       BiFunction<List<T>, List<T>, SimpleDiffUtilsCallbacks<T>> diffCallbacks)
   {
-    Pair<List<T>, DiffUtil.DiffResult> initialPair = Pair.createNullable(Collections.emptyList(), null);
-    return upstream -> upstream
-        //.doOnNext(o -> {
-        //  boolean isImmutable = false;
-        //  try {
-        //    if (!o.isEmpty()) {
-        //      o.remove(0);
-        //    }
-        //  } catch (UnsupportedOperationException expected) {
-        //    isImmutable = true;
-        //  }
-        //
-        //  if (!isImmutable) {
-        //    throw new AssertionError("Non immutable list");
-        //  }
-        //})
-        .scan(initialPair, (latestPair, nextItems) -> {
-          DiffUtil.Callback callback = diffCallbacks.apply(latestPair.first(), nextItems);
-          DiffUtil.DiffResult result = DiffUtil.calculateDiff(callback, true);
-          return Pair.create(nextItems, result);
-        })
-        .skip(1);  // Initial value is dummy.
+    return upstream -> Flowable.defer(() -> {
+      AtomicReference<List<T>> lastEmittedItems = new AtomicReference<>(Collections.emptyList());
+
+      return upstream
+          .switchMap(nextItems -> Flowable.<Pair<List<T>, ListDiff>>create(
+              emitter -> {
+                SimpleDiffUtilsCallbacks<T> callbacks = diffCallbacks.apply(lastEmittedItems.get(), nextItems);
+                ListDiff diff;
+                try {
+                  diff = calculate(callbacks, emitter::isCancelled);
+                } catch (CancellationException ignored) {
+                  return;
+                }
+                emitter.onNext(Pair.create(nextItems, diff));
+                emitter.onComplete();
+              },
+              BackpressureStrategy.LATEST)
+              .subscribeOn(DIFF_SCHEDULER))
+          // Diffs are calculated on a single thread, so the next
+          // diff can only start after this has been updated.
+          .doOnNext(itemsAndDiff -> lastEmittedItems.set(itemsAndDiff.first()));
+    });
+  }
+
+  /**
+   * @throws CancellationException if <var>isCancelled</var> returns true while diffing.
+   */
+  static <T> ListDiff calculate(SimpleDiffUtilsCallbacks<T> callbacks, BooleanSupplier isCancelled) throws Exception {
+    long startTime = System.nanoTime();
+    int oldSize = callbacks.getOldListSize();
+    int newSize = callbacks.getNewListSize();
+    boolean isSmallList = Math.max(oldSize, newSize) <= MOVE_DETECTION_SIZE_THRESHOLD;
+
+    ListDiff diff = null;
+    if (callbacks instanceof StableIdDiffUtilsCallbacks) {
+      //noinspection unchecked
+      diff = reconcileIds((StableIdDiffUtilsCallbacks<T>) callbacks, isCancelled, startTime);
+    }
+    if (diff == null) {
+      // No stable IDs, or they weren't unique.
+      DiffUtil.DiffResult result = DiffUtil.calculateDiff(new CancellableCallback(callbacks, isCancelled), isSmallList);
+      diff = ListDiff.fromDiffResult(result, elapsedMillis(startTime));
+    }
+
+    if (BuildConfig.DEBUG && diff.computeMillis() > SLOW_DIFF_THRESHOLD_MILLIS) {
+      Timber.w("Slow diff of %s: %d -> %d items, %s", callbacks.getClass().getSimpleName(), oldSize, newSize, diff);
+    }
+    return diff;
+  }
+
+  /**
+   * Keeps items whose relative order didn't change and removes and inserts everything else.
+   *
+   * @return Null if the IDs weren't unique.
+   */
+  @Nullable
+  private static <T> ListDiff reconcileIds(StableIdDiffUtilsCallbacks<T> callbacks, BooleanSupplier isCancelled, long startTime) throws Exception {
+    List<T> oldItems = callbacks.oldItems();
+    List<T> newItems = callbacks.newItems();
+
+    long[] oldIds = uniqueIds(callbacks, oldItems, isCancelled);
+    long[] newIds = uniqueIds(callbacks, newItems, isCancelled);
+    if (oldIds == null || newIds == null) {
+      return null;
+    }
+
+    ListDiff.ItemChanges changes = new ListDiff.ItemChanges() {
+      private int callCount;
+
+      @Override
+      public boolean hasChanged(int oldPosition, int newPosition) {
+        if (++callCount % CANCELLATION_CHECK_INTERVAL == 0) {
+          throwIfCancelled(isCancelled);
+        }
+        return !callbacks.areContentsTheSame(oldItems.get(oldPosition), newItems.get(newPosition));
+      }
+
+      @Nullable
+      @Override
+      public Object changePayload(int oldPosition, int newPosition) {
+        return callbacks.getChangePayload(oldItems.get(oldPosition), newItems.get(newPosition));
+      }
+    };
+    return ListDiff.fromReconciledIds(ListDiff.Strategy.ID_RECONCILIATION, oldIds, newIds, changes, startTime);
+  }
+
+  /**
+   * @return Null if any ID was found more than once.
+   */
+  @Nullable
+  private static <T> long[] uniqueIds(StableIdDiffUtilsCallbacks<T> callbacks, List<T> items, BooleanSupplier isCancelled) throws Exception {
+    long[] ids = new long[items.size()];
+    Set<Long> seenIds = new HashSet<>(items.size() * 2);
+    for (int i = 0; i < items.size(); i++) {
+      if ((i + 1) % CANCELLATION_CHECK_INTERVAL == 0 && isCancelled.getAsBoolean()) {
+        throw new CancellationException();
+      }
+      ids[i] = callbacks.getItemId(items.get(i));
+      if (!seenIds.add(ids[i])) {
+        return null;
+      }
+    }
+    return ids;
+  }
+
+  private static long elapsedMillis(long startTimeNanos) {
+    return (System.nanoTime() - startTimeNanos) / 1_000_000;
+  }
+
+  /**
+   * Periodically checks if the diff is still needed because DiffUtil cannot be interrupted otherwise.
+   */
+  private static class CancellableCallback extends DiffUtil.Callback {
+    private final DiffUtil.Callback delegate;
+    private final BooleanSupplier isCancelled;
+    private int callCount;
+
+    CancellableCallback(DiffUtil.Callback delegate, BooleanSupplier isCancelled) {
+      this.delegate = delegate;
+      this.isCancelled = isCancelled;
+    }
+
+    @Override
+    public int getOldListSize() {
+      return delegate.getOldListSize();
+    }
+
+    @Override
+    public int getNewListSize() {
+      return delegate.getNewListSize();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+      if (++callCount % CANCELLATION_CHECK_INTERVAL == 0) {
+        throwIfCancelled(isCancelled);
+      }
+      return delegate.areItemsTheSame(oldItemPosition, newItemPosition);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+      return delegate.areContentsTheSame(oldItemPosition, newItemPosition);
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+      return delegate.getChangePayload(oldItemPosition, newItemPosition);
+    }
+  }
+
+  /**
+   * For callbacks that can't throw checked exceptions.
+   */
+  private static void throwIfCancelled(BooleanSupplier isCancelled) {
+    boolean cancelled;
+    try {
+      cancelled = isCancelled.getAsBoolean();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    if (cancelled) {
+      throw new CancellationException();
+    }
   }
 }
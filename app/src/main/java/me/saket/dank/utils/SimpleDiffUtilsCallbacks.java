@@ -71,6 +71,14 @@ public abstract class SimpleDiffUtilsCallbacks<T> extends DiffUtil.Callback {
     return null;
   }
 
+  List<T> oldItems() {
+    return oldItems;
+  }
+
+  List<T> newItems() {
+    return newItems;
+  }
+
   @Override
   public final int getOldListSize() {
     return oldItems.size();
@@ -0,0 +1,24 @@
+package me.saket.dank.utils;
+
+import java.util.List;
+
+/**
+ * {@link SimpleDiffUtilsCallbacks} for items with unique, stable IDs. These lists are
+ * diffed by {@link RxDiffUtil} by reconciling their IDs instead of running DiffUtil.
+ */
+public abstract class StableIdDiffUtilsCallbacks<T> extends SimpleDiffUtilsCallbacks<T> {
+
+  public StableIdDiffUtilsCallbacks(List<T> oldItems, List<T> newItems) {
+    super(oldItems, newItems);
+  }
+
+  public abstract long getItemId(T item);
+
+  /**
+   * Two items are considered the same if they have the same ID.
+   */
+  @Override
+  public boolean areItemsTheSame(T oldItem, T newItem) {
+    return getItemId(oldItem) == getItemId(newItem);
+  }
+}
@@ -9,6 +9,8 @@ import android.support.v7.graphics.Palette;
 
 import io.reactivex.Single;
 import io.reactivex.functions.Function;
+import me.saket.dank.data.CachedPalette;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.data.StatusBarTint;
 
 /**
@@ -21,39 +23,32 @@ public class StatusBarTintProvider {
   private final int statusBarHeight;
   private final int defaultStatusBarColor;
   private final int displayWidth;
+  private final PaletteRepository paletteRepository;
 
-  public StatusBarTintProvider(int defaultStatusBarColor, int statusBarHeight, int displayWidth) {
+  public StatusBarTintProvider(int defaultStatusBarColor, int statusBarHeight, int displayWidth, PaletteRepository paletteRepository) {
+    this.paletteRepository = paletteRepository;
     this.statusBarHeight = statusBarHeight;
     this.defaultStatusBarColor = defaultStatusBarColor;
     this.displayWidth = displayWidth;
   }
 
+  /**
+   * @param imageUrl Used for caching the extracted palette.
+   */
   @CheckResult
-  public Single<StatusBarTint> generateTint(Bitmap bitmap) {
-    return generatePaletteFromBitmap(bitmap).map(generateTintFromPalette(bitmap));
+  public Single<StatusBarTint> generateTint(String imageUrl, Bitmap bitmap) {
+    return paletteRepository.statusBarPalette(imageUrl, bitmap, statusBarHeight, displayWidth)
+        .map(generateTintFromPalette(bitmap));
   }
 
-  @CheckResult
-  private Single<Palette> generatePaletteFromBitmap(Bitmap bitmap) {
-    return Single.fromCallable(() -> {
-      int imageHeightToUse = (int) (statusBarHeight * ((float) bitmap.getWidth() / displayWidth));
-
-      return Palette.from(bitmap)
-          .maximumColorCount(3)
-          .clearFilters() /* by default palette ignore certain hues (e.g. pure black/white) but we don't want this. */
-          .setRegion(0, 0, bitmap.getWidth(), imageHeightToUse)
-          .generate();
-    });
-  }
-
-  private Function<Palette, StatusBarTint> generateTintFromPalette(Bitmap bitmap) {
+  private Function<CachedPalette, StatusBarTint> generateTintFromPalette(Bitmap bitmap) {
     return palette -> {
       // Color the status bar. Set a complementary dark color on L,
       // light or dark color on M (with matching status bar icons).
       int statusBarColor = defaultStatusBarColor;
-      Palette.Swatch topSwatch = palette.getDominantSwatch();
-      TintColorUtils.Lightness lightness = topSwatch != null
-          ? TintColorUtils.isDark(topSwatch)
+      Integer topSwatchColor = palette.dominantColor();
+      TintColorUtils.Lightness lightness = topSwatchColor != null
+          ? TintColorUtils.isDark(topSwatchColor) ? TintColorUtils.Lightness.IS_DARK : TintColorUtils.Lightness.IS_LIGHT
           : TintColorUtils.Lightness.LIGHTNESS_UNKNOWN;
 
       boolean isDarkPalette = lightness == TintColorUtils.Lightness.LIGHTNESS_UNKNOWN
@@ -61,10 +56,10 @@ public class StatusBarTintProvider {
           : lightness == TintColorUtils.Lightness.IS_DARK;
 
       // TODO: Uncomment the condition after testing on Lollipop.
-      if (topSwatch != null
+      if (topSwatchColor != null
         //&& (isDarkPalette || Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
           ) {
-        statusBarColor = TintColorUtils.scrimify(topSwatch.getRgb(), isDarkPalette, SCRIM_ADJUSTMENT);
+        statusBarColor = TintColorUtils.scrimify(topSwatchColor, isDarkPalette, SCRIM_ADJUSTMENT);
       }
 
       //statusBarColor = TintColorUtils.scrimify(topSwatch.getRgb(), 0.075f);
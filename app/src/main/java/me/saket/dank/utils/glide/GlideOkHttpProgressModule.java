@@ -10,9 +10,8 @@ import com.bumptech.glide.load.model.GlideUrl;
 import com.bumptech.glide.module.LibraryGlideModule;
 
 import java.io.InputStream;
-import java.util.concurrent.TimeUnit;
 
-import me.saket.dank.di.RootModule;
+import me.saket.dank.di.Dank;
 import me.saket.dank.utils.okhttp.OkHttpResponseBodyWithProgress;
 import me.saket.dank.utils.okhttp.OkHttpResponseReadProgressListener;
 import okhttp3.Interceptor;
@@ -25,9 +24,8 @@ public class GlideOkHttpProgressModule extends LibraryGlideModule {
 
   @Override
   public void registerComponents(Context context, Glide glide, Registry registry) {
-    OkHttpClient.Builder builder = new OkHttpClient.Builder()
-        .connectTimeout(RootModule.NETWORK_CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-        .readTimeout(RootModule.NETWORK_READ_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    // Glide maintains its own disk cache, so the shared client is used only for sharing its connections.
+    OkHttpClient.Builder builder = Dank.dependencyInjector().sharedOkHttpClient().newBuilder()
         .addNetworkInterceptor(createInterceptor(new OkHttpProgressListenersRepository()));
 
     //if (BuildConfig.DEBUG) {
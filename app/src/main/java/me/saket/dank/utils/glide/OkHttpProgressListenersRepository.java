@@ -2,9 +2,13 @@ package me.saket.dank.utils.glide;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.view.Choreographer;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import me.saket.dank.utils.okhttp.OkHttpResponseReadProgressListener;
 import okhttp3.HttpUrl;
@@ -15,56 +19,113 @@ import okhttp3.HttpUrl;
  * <p>
  * We could have created a custom OkHttp client with a custom intercepter for each request to have local listeners,
  * but this also works where listeners are held globally.
+ * <p>
+ * Progress is written by OkHttp's reader threads into a slot per URL and delivered on the main thread once per
+ * frame, so a fast download results in one callback per frame instead of one per read. Listeners are held weakly
+ * so that targets abandoned by Glide without a cleanup don't leak.
  */
 public class OkHttpProgressListenersRepository implements OkHttpResponseReadProgressListener {
 
-  // Key for both the maps: URL.
-  private static final Map<String, GlideOkHttpProgressModule.UiProgressListener> LISTENERS = new HashMap<>();
-  private static final Map<String, Long> PROGRESSES = new HashMap<>();
+  // Key: URL.
+  private static final ConcurrentHashMap<String, ProgressSlot> SLOTS = new ConcurrentHashMap<>();
+  private static final Queue<ProgressSlot> PENDING_DISPATCHES = new ConcurrentLinkedQueue<>();
+  private static final AtomicBoolean FRAME_SCHEDULED = new AtomicBoolean(false);
 
   private final Handler handler;
+  private final Runnable frameScheduler;
+  private final Choreographer.FrameCallback frameCallback;
 
   public OkHttpProgressListenersRepository() {
     this.handler = new Handler(Looper.getMainLooper());
+    this.frameCallback = frameTimeNanos -> dispatchPendingProgresses();
+    this.frameScheduler = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
   }
 
   public static void removeUiProgressListener(String url) {
-    LISTENERS.remove(url);
-    PROGRESSES.remove(url);
+    SLOTS.remove(url);
   }
 
   public static void addUiProgressListener(String url, GlideOkHttpProgressModule.UiProgressListener listener) {
-    LISTENERS.put(url, listener);
+    SLOTS.put(url, new ProgressSlot(url, listener));
   }
 
   @Override
   public void update(HttpUrl url, final long bytesRead, final long expectedContentBytes) {
     //System.out.printf("%s: %d/%d = %.2f%%%n", url, bytesRead, contentLength, (100f * bytesRead) / contentLength);
-    String key = url.toString();
-    final GlideOkHttpProgressModule.UiProgressListener listener = LISTENERS.get(key);
+    ProgressSlot slot = SLOTS.get(url.toString());
+    if (slot == null) {
+      return;
+    }
+    GlideOkHttpProgressModule.UiProgressListener listener = slot.listener.get();
     if (listener == null) {
+      SLOTS.remove(slot.url, slot);
       return;
     }
-    if (expectedContentBytes <= bytesRead) {
-      removeUiProgressListener(key);
+
+    if (slot.needsDispatch(bytesRead, expectedContentBytes, listener.getGranularityPercentage())) {
+      slot.bytesRead = bytesRead;
+      slot.expectedBytes = expectedContentBytes;
+
+      if (slot.dispatchPending.compareAndSet(false, true)) {
+        PENDING_DISPATCHES.add(slot);
+        if (FRAME_SCHEDULED.compareAndSet(false, true)) {
+          handler.post(frameScheduler);
+        }
+      }
     }
-    if (needsDispatch(key, bytesRead, expectedContentBytes, listener.getGranularityPercentage())) {
-      handler.post(() -> listener.onProgress(bytesRead, expectedContentBytes));
+  }
+
+  /**
+   * Runs on the main thread. Only the latest progress of each URL gets delivered.
+   */
+  private void dispatchPendingProgresses() {
+    FRAME_SCHEDULED.set(false);
+
+    ProgressSlot slot;
+    while ((slot = PENDING_DISPATCHES.poll()) != null) {
+      // Cleared before reading so that progress written after this gets dispatched in the next frame.
+      slot.dispatchPending.set(false);
+      long bytesRead = slot.bytesRead;
+      long expectedBytes = slot.expectedBytes;
+
+      GlideOkHttpProgressModule.UiProgressListener listener = slot.listener.get();
+      boolean isForgotten = SLOTS.get(slot.url) != slot;
+      if (listener == null || expectedBytes <= bytesRead) {
+        SLOTS.remove(slot.url, slot);
+      }
+      if (listener != null && !isForgotten) {
+        listener.onProgress(bytesRead, expectedBytes);
+      }
     }
   }
 
-  private boolean needsDispatch(String key, long current, long total, float granularity) {
-    if (granularity == 0 || current == 0 || total == current) {
-      return true;
+  private static class ProgressSlot {
+    private final String url;
+    private final WeakReference<GlideOkHttpProgressModule.UiProgressListener> listener;
+    private final AtomicBoolean dispatchPending = new AtomicBoolean(false);
+    private volatile long bytesRead;
+    private volatile long expectedBytes;
+
+    /** Only touched by the thread reading the response. */
+    private long lastDispatchedStep = -1;
+
+    ProgressSlot(String url, GlideOkHttpProgressModule.UiProgressListener listener) {
+      this.url = url;
+      this.listener = new WeakReference<>(listener);
     }
-    float percent = 100f * current / total;
-    long currentProgress = (long) (percent / granularity);
-    Long lastProgress = PROGRESSES.get(key);
-    if (lastProgress == null || currentProgress != lastProgress) {
-      PROGRESSES.put(key, currentProgress);
-      return true;
-    } else {
-      return false;
+
+    boolean needsDispatch(long current, long total, float granularity) {
+      if (granularity == 0 || current == 0 || total <= current) {
+        return true;
+      }
+      float percent = 100f * current / total;
+      long currentStep = (long) (percent / granularity);
+      if (currentStep != lastDispatchedStep) {
+        lastDispatchedStep = currentStep;
+        return true;
+      } else {
+        return false;
+      }
     }
   }
 }
@@ -0,0 +1,197 @@
+package me.saket.dank.utils.glide;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import me.saket.dank.utils.Optional;
+
+/**
+ * Preloads images of rows that are about to scroll into view so that they're already in
+ * memory by the time they get bound. Unlike Glide's RecyclerViewPreloader, the number of
+ * rows preloaded ahead grows with the scroll velocity, so that flings don't outrun it.
+ */
+public class ScrollAwareImagePreloader extends RecyclerView.OnScrollListener {
+
+  /** Number of frames worth of scrolling to stay ahead of. */
+  private static final int LOOKAHEAD_FRAMES = 20;
+
+  private final RequestManager glide;
+  private final RequestProvider requestProvider;
+  private final int imageWidth;
+  private final int imageHeight;
+  private final int minPreloadCount;
+  private final int maxPreloadCount;
+  private final Queue<Target<?>> preloadTargets;
+
+  private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+    @Override
+    public void onChanged() {
+      cancelAll();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+      forgetPreloadedRange();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+      forgetPreloadedRange();
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+      forgetPreloadedRange();
+    }
+  };
+
+  private boolean isScrollingDownwards = true;
+  private int preloadedRangeStart = RecyclerView.NO_POSITION;
+  private int preloadedRangeEnd = RecyclerView.NO_POSITION;
+
+  public interface RequestProvider {
+    /**
+     * @return Empty if the row at <var>position</var> has no image.
+     */
+    Optional<RequestBuilder<?>> preloadRequest(int position);
+  }
+
+  /**
+   * @param imageWidth  Must match the size of the ImageView for the preloaded image to be reused.
+   * @param imageHeight Must match the size of the ImageView for the preloaded image to be reused.
+   */
+  public ScrollAwareImagePreloader(
+      RequestManager glide,
+      RequestProvider requestProvider,
+      int imageWidth,
+      int imageHeight,
+      int minPreloadCount,
+      int maxPreloadCount)
+  {
+    this.glide = glide;
+    this.requestProvider = requestProvider;
+    this.imageWidth = imageWidth;
+    this.imageHeight = imageHeight;
+    this.minPreloadCount = minPreloadCount;
+    this.maxPreloadCount = maxPreloadCount;
+    this.preloadTargets = new ArrayDeque<>(maxPreloadCount);
+  }
+
+  @Override
+  public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+    // RecyclerView also calls this with 0 after layouts.
+    if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+      return;
+    }
+
+    LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+    int firstVisiblePosition = layoutManager.findFirstVisibleItemPosition();
+    int lastVisiblePosition = layoutManager.findLastVisibleItemPosition();
+    if (firstVisiblePosition == RecyclerView.NO_POSITION) {
+      return;
+    }
+
+    boolean scrollingDownwards = dy > 0;
+    if (scrollingDownwards != isScrollingDownwards) {
+      // Images behind the scroll direction are no longer needed.
+      isScrollingDownwards = scrollingDownwards;
+      cancelAll();
+    }
+
+    int averageRowHeight = Math.max(1, recyclerView.getHeight() / (lastVisiblePosition - firstVisiblePosition + 1));
+    int preloadCount = preloadCountForVelocity(Math.abs(dy), averageRowHeight);
+    int itemCount = layoutManager.getItemCount();
+
+    int start;
+    int end;
+    if (scrollingDownwards) {
+      start = lastVisiblePosition + 1;
+      end = Math.min(itemCount, start + preloadCount);
+    } else {
+      end = firstVisiblePosition;
+      start = Math.max(0, end - preloadCount);
+    }
+    preload(start, end);
+  }
+
+  private int preloadCountForVelocity(int pixelsPerFrame, int averageRowHeight) {
+    int rowsAhead = (pixelsPerFrame * LOOKAHEAD_FRAMES) / averageRowHeight;
+    return Math.max(minPreloadCount, Math.min(maxPreloadCount, minPreloadCount + rowsAhead));
+  }
+
+  /**
+   * Preloads positions in [start, end) that weren't preloaded in an earlier scroll event.
+   */
+  private void preload(int start, int end) {
+    boolean overlapsPreloadedRange = preloadedRangeStart != RecyclerView.NO_POSITION
+        && start < preloadedRangeEnd
+        && end > preloadedRangeStart;
+
+    if (overlapsPreloadedRange) {
+      if (isScrollingDownwards) {
+        preloadRange(preloadedRangeEnd, end);
+      } else {
+        preloadRange(start, preloadedRangeStart);
+      }
+      preloadedRangeStart = Math.min(start, preloadedRangeStart);
+      preloadedRangeEnd = Math.max(end, preloadedRangeEnd);
+
+    } else {
+      preloadRange(start, end);
+      preloadedRangeStart = start;
+      preloadedRangeEnd = end;
+    }
+  }
+
+  private void preloadRange(int start, int end) {
+    if (isScrollingDownwards) {
+      for (int position = start; position < end; position++) {
+        preloadPosition(position);
+      }
+    } else {
+      // Nearest rows first.
+      for (int position = end - 1; position >= start; position--) {
+        preloadPosition(position);
+      }
+    }
+  }
+
+  private void preloadPosition(int position) {
+    requestProvider.preloadRequest(position).ifPresent(request -> {
+      if (preloadTargets.size() >= maxPreloadCount) {
+        glide.clear(preloadTargets.poll());
+      }
+      preloadTargets.add(request.preload(imageWidth, imageHeight));
+    });
+  }
+
+  /**
+   * Register with the adapter so that positions preloaded for its earlier items
+   * aren't skipped after the items get replaced, like on a refresh.
+   */
+  public RecyclerView.AdapterDataObserver dataObserver() {
+    return dataObserver;
+  }
+
+  public void cancelAll() {
+    while (!preloadTargets.isEmpty()) {
+      glide.clear(preloadTargets.poll());
+    }
+    forgetPreloadedRange();
+  }
+
+  /**
+   * In-flight preloads are kept because their images are still likely to be shown.
+   */
+  private void forgetPreloadedRange() {
+    preloadedRangeStart = RecyclerView.NO_POSITION;
+    preloadedRangeEnd = RecyclerView.NO_POSITION;
+  }
+}
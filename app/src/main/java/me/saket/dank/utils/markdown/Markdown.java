@@ -19,6 +19,11 @@ public interface Markdown {
 
   CharSequence parse(Message message);
 
+  /**
+   * For messages stored without their {@link Message}.
+   */
+  CharSequence parseMessageBody(String messageBody);
+
   CharSequence parse(Comment comment);
 
   CharSequence parseSelfText(Submission submission);
@@ -33,5 +38,7 @@ public interface Markdown {
 
   String stripMarkdown(Message message);
 
+  String stripMarkdownFromMessageBody(String messageBody);
+
   void clearCache();
 }
@@ -124,6 +124,11 @@ public class MarkwonBasedMarkdownRenderer implements Markdown {
     return getOrParse(message.getBody());
   }
 
+  @Override
+  public CharSequence parseMessageBody(String messageBody) {
+    return getOrParse(messageBody);
+  }
+
   @Override
   public CharSequence parse(Comment comment) {
     return getOrParse(comment.getBody());
@@ -170,6 +175,11 @@ public class MarkwonBasedMarkdownRenderer implements Markdown {
     return stripMarkdown(message.getBody());
   }
 
+  @Override
+  public String stripMarkdownFromMessageBody(String messageBody) {
+    return stripMarkdown(messageBody);
+  }
+
   @Override
   public void clearCache() {
     if (!BuildConfig.DEBUG) {
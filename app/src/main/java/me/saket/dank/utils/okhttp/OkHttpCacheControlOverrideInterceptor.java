@@ -0,0 +1,64 @@
+package me.saket.dank.utils.okhttp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Third party APIs like Imgur, Gfycat, Giphy and Streamable either send no caching headers
+ * or ask for no caching at all, even though their responses rarely change. This network
+ * interceptor rewrites their Cache-Control headers so that OkHttp's disk cache can store them.
+ */
+public class OkHttpCacheControlOverrideInterceptor implements Interceptor {
+
+  private final List<HostOverride> overrides = new ArrayList<>();
+
+  private static class HostOverride {
+    private final String host;
+    private final String pathPrefix;
+    private final long maxAgeSeconds;
+
+    HostOverride(String host, String pathPrefix, long maxAgeSeconds) {
+      this.host = host;
+      this.pathPrefix = pathPrefix;
+      this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    boolean matches(Request request) {
+      return request.url().host().equals(host) && request.url().encodedPath().startsWith(pathPrefix);
+    }
+  }
+
+  /**
+   * @param pathPrefix Use "/" for matching all paths.
+   */
+  public OkHttpCacheControlOverrideInterceptor maxAge(String host, String pathPrefix, long maxAge, TimeUnit timeUnit) {
+    overrides.add(new HostOverride(host, pathPrefix, timeUnit.toSeconds(maxAge)));
+    return this;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    Request request = chain.request();
+    Response response = chain.proceed(request);
+
+    if (!request.method().equals("GET") || !response.isSuccessful()) {
+      return response;
+    }
+
+    for (HostOverride override : overrides) {
+      if (override.matches(request)) {
+        return response.newBuilder()
+            .removeHeader("Pragma")
+            .header("Cache-Control", "public, max-age=" + override.maxAgeSeconds)
+            .build();
+      }
+    }
+    return response;
+  }
+}
@@ -0,0 +1,73 @@
+package me.saket.dank.utils.okhttp;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Cache;
+import okhttp3.Connection;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Counts how often connections get reused across all OkHttp clients sharing a
+ * connection pool and how often responses are served from the HTTP disk cache.
+ * <p>
+ * Must be installed as a network interceptor, because only those get access to the connection.
+ */
+public class OkHttpNetworkStats implements Interceptor {
+
+  private final Cache httpCache;
+  private final AtomicLong networkRequestCount = new AtomicLong();
+  private final AtomicLong reusedConnectionCount = new AtomicLong();
+  private final Map<Connection, Boolean> seenConnections = Collections.synchronizedMap(new WeakHashMap<>());
+
+  public OkHttpNetworkStats(Cache httpCache) {
+    this.httpCache = httpCache;
+  }
+
+  @Override
+  public Response intercept(Chain chain) throws IOException {
+    networkRequestCount.incrementAndGet();
+
+    Connection connection = chain.connection();
+    if (connection != null && seenConnections.put(connection, Boolean.TRUE) != null) {
+      reusedConnectionCount.incrementAndGet();
+    }
+    return chain.proceed(chain.request());
+  }
+
+  /**
+   * Requests that went to the network, including conditional requests for validating stale cache entries.
+   */
+  public long networkRequestCount() {
+    return networkRequestCount.get();
+  }
+
+  /**
+   * Network requests that were made on a connection that was already used earlier, skipping DNS and TLS handshakes.
+   */
+  public long reusedConnectionCount() {
+    return reusedConnectionCount.get();
+  }
+
+  public long cacheHitCount() {
+    return httpCache.hitCount();
+  }
+
+  public long cacheRequestCount() {
+    return httpCache.requestCount();
+  }
+
+  @Override
+  public String toString() {
+    return "OkHttpNetworkStats{"
+        + "networkRequests=" + networkRequestCount()
+        + ", reusedConnections=" + reusedConnectionCount()
+        + ", cacheHits=" + cacheHitCount()
+        + ", cacheRequests=" + cacheRequestCount()
+        + '}';
+  }
+}
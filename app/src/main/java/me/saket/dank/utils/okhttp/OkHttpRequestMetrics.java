@@ -0,0 +1,463 @@
+package me.saket.dank.utils.okhttp;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import com.squareup.moshi.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Records latency histograms, bytes transferred, cache hits, retries and status codes of
+ * every request, grouped by host and by endpoint. Useful for finding out which API is slowing
+ * down screen loads on a given device.
+ * <p>
+ * {@link #interceptor()} must be added as an application interceptor and {@link #networkInterceptor()}
+ * as a network interceptor on the same client. The former measures a call end-to-end, including
+ * cache lookups and reading of the response body, while the latter counts network attempts made
+ * for the call.
+ */
+public class OkHttpRequestMetrics {
+
+  private static final long[] LATENCY_BUCKETS_MILLIS = { 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000 };
+  private static final int MAX_TRACKED_ENDPOINTS = 200;
+  private static final String OVERFLOW_ENDPOINT_PATH = "/…";
+  private static final int MIN_ID_LENGTH = 5;
+  private static final String FILE_SEGMENT = "{file}";
+  private static final Set<String> MEDIA_FILE_EXTENSIONS = new HashSet<>(Arrays.asList(
+      "jpg", "jpeg", "png", "gif", "gifv", "webp", "mp4", "webm"));
+
+  /**
+   * Known endpoints of hosts that Dank talks to, keyed by host or a parent domain of the host. Segments
+   * in braces match any segment. Paths that match none of them fall back to {@link #looksLikeId(String)}.
+   */
+  private static final Map<String, List<String>> ROUTES_BY_HOST = new HashMap<>();
+
+  static {
+    List<String> redditRoutes = Arrays.asList(
+        "/comments/{id}",
+        "/comments/{id}/{slug}",
+        "/comments/{id}/{slug}/{id}",
+        "/r/{subreddit}/comments/{id}",
+        "/r/{subreddit}/comments/{id}/{slug}",
+        "/r/{subreddit}/comments/{id}/{slug}/{id}");
+    ROUTES_BY_HOST.put("reddit.com", redditRoutes);
+
+    // Version segments are kept so that requests to a new API version show up separately.
+    List<String> imgurRoutes = Arrays.asList(
+        "/3/album/{id}",
+        "/3/album/{id}/images",
+        "/3/image/{id}",
+        "/3/gallery/{id}",
+        "/3/gallery/album/{id}",
+        "/3/gallery/image/{id}");
+    ROUTES_BY_HOST.put("api.imgur.com", imgurRoutes);
+    ROUTES_BY_HOST.put("imgur-apiv3.p.mashape.com", imgurRoutes);
+
+    // Gfycat names are made of words, without any digits.
+    ROUTES_BY_HOST.put("api.gfycat.com", Collections.singletonList("/v1/gfycats/{id}"));
+    ROUTES_BY_HOST.put("api.streamable.com", Collections.singletonList("/videos/{id}"));
+
+    ROUTES_BY_HOST.put("i.imgur.com", Collections.singletonList("/" + FILE_SEGMENT));
+    ROUTES_BY_HOST.put("i.redd.it", Collections.singletonList("/" + FILE_SEGMENT));
+    ROUTES_BY_HOST.put("v.redd.it", Arrays.asList("/{id}/" + FILE_SEGMENT, "/{id}/{id}/" + FILE_SEGMENT));
+    ROUTES_BY_HOST.put("gfycat.com", Collections.singletonList("/" + FILE_SEGMENT));
+  }
+
+  private final Map<String, Metric> hostMetrics = new TreeMap<>();
+  private final Map<String, Metric> endpointMetrics = new TreeMap<>();
+  private final ThreadLocal<int[]> networkAttemptsOnThisThread = new ThreadLocal<>();
+
+  private final Interceptor interceptor = chain -> {
+    int[] networkAttempts = new int[1];
+    networkAttemptsOnThisThread.set(networkAttempts);
+
+    HttpUrl url = chain.request().url();
+    long startNanos = System.nanoTime();
+    Response response;
+    try {
+      response = chain.proceed(chain.request());
+
+    } catch (IOException e) {
+      recordFailure(url, millisSince(startNanos), networkAttempts[0]);
+      throw e;
+
+    } finally {
+      networkAttemptsOnThisThread.remove();
+    }
+
+    ResponseBody body = response.body();
+    if (body == null) {
+      record(url, millisSince(startNanos), response, networkAttempts[0]);
+      return response;
+    }
+
+    // Calls are measured until their body is consumed, because
+    // the headers of a slow response can still arrive quickly.
+    BufferedSource timedSource = Okio.buffer(new ForwardingSource(body.source()) {
+      private boolean recorded;
+
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        long bytesRead;
+        try {
+          bytesRead = super.read(sink, byteCount);
+        } catch (IOException e) {
+          if (markRecorded()) {
+            recordFailure(url, millisSince(startNanos), networkAttempts[0]);
+          }
+          throw e;
+        }
+        if (bytesRead == -1 && markRecorded()) {
+          record(url, millisSince(startNanos), response, networkAttempts[0]);
+        }
+        return bytesRead;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (markRecorded()) {
+          record(url, millisSince(startNanos), response, networkAttempts[0]);
+        }
+        super.close();
+      }
+
+      private synchronized boolean markRecorded() {
+        boolean wasRecorded = recorded;
+        recorded = true;
+        return !wasRecorded;
+      }
+    });
+    return response.newBuilder()
+        .body(ResponseBody.create(body.contentType(), body.contentLength(), timedSource))
+        .build();
+  };
+
+  private final Interceptor networkInterceptor = chain -> {
+    int[] networkAttempts = networkAttemptsOnThisThread.get();
+    if (networkAttempts != null) {
+      networkAttempts[0]++;
+    }
+
+    // Counted here instead of the application interceptor so that compressed bytes are counted.
+    Response response = chain.proceed(chain.request());
+    ResponseBody body = response.body();
+    if (body == null) {
+      return response;
+    }
+    HttpUrl url = chain.request().url();
+    BufferedSource countingSource = Okio.buffer(new ForwardingSource(body.source()) {
+      @Override
+      public long read(Buffer sink, long byteCount) throws IOException {
+        long bytesRead = super.read(sink, byteCount);
+        if (bytesRead > 0) {
+          recordBytesReceived(url, bytesRead);
+        }
+        return bytesRead;
+      }
+    });
+    return response.newBuilder()
+        .body(ResponseBody.create(body.contentType(), body.contentLength(), countingSource))
+        .build();
+  };
+
+  public Interceptor interceptor() {
+    return interceptor;
+  }
+
+  public Interceptor networkInterceptor() {
+    return networkInterceptor;
+  }
+
+  private static long millisSince(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private void record(HttpUrl url, long tookMillis, Response response, int networkAttempts) {
+    boolean servedFromCache = response.cacheResponse() != null && response.networkResponse() == null;
+
+    synchronized (this) {
+      for (Metric metric : metricsFor(url)) {
+        metric.recordLatency(tookMillis);
+        metric.retries += Math.max(0, networkAttempts - 1);
+        if (servedFromCache) {
+          metric.cacheHits++;
+        } else {
+          metric.cacheMisses++;
+        }
+        Long statusCount = metric.statusCodes.get(response.code());
+        metric.statusCodes.put(response.code(), statusCount == null ? 1 : statusCount + 1);
+      }
+    }
+  }
+
+  private synchronized void recordBytesReceived(HttpUrl url, long bytes) {
+    for (Metric metric : metricsFor(url)) {
+      metric.bytesReceived += bytes;
+    }
+  }
+
+  private void recordFailure(HttpUrl url, long tookMillis, int networkAttempts) {
+    synchronized (this) {
+      for (Metric metric : metricsFor(url)) {
+        metric.recordLatency(tookMillis);
+        metric.retries += Math.max(0, networkAttempts - 1);
+        metric.failures++;
+      }
+    }
+  }
+
+  private List<Metric> metricsFor(HttpUrl url) {
+    String host = url.host();
+    String endpoint = host + normalizePath(url);
+    if (!endpointMetrics.containsKey(endpoint) && endpointMetrics.size() >= MAX_TRACKED_ENDPOINTS) {
+      endpoint = host + OVERFLOW_ENDPOINT_PATH;
+    }
+
+    List<Metric> metrics = new ArrayList<>(2);
+    metrics.add(metricFor(hostMetrics, host));
+    metrics.add(metricFor(endpointMetrics, endpoint));
+    return metrics;
+  }
+
+  private static Metric metricFor(Map<String, Metric> metrics, String key) {
+    Metric metric = metrics.get(key);
+    if (metric == null) {
+      metric = new Metric();
+      metrics.put(key, metric);
+    }
+    return metric;
+  }
+
+  /**
+   * Replaces path segments that are IDs, slugs or file names with placeholders so that requests
+   * for different submissions, images, etc. get grouped under the same endpoint.
+   */
+  @VisibleForTesting
+  static String normalizePath(HttpUrl url) {
+    List<String> segments = new ArrayList<>(url.pathSegments().size());
+    for (String segment : url.pathSegments()) {
+      if (!segment.isEmpty()) {
+        segments.add(segment);
+      }
+    }
+
+    String matchingRoute = findRoute(url.host(), segments);
+    if (matchingRoute != null) {
+      return matchingRoute;
+    }
+
+    StringBuilder path = new StringBuilder();
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+      path.append('/');
+      if (i == segments.size() - 1 && isMediaFileName(segment)) {
+        path.append(FILE_SEGMENT);
+      } else {
+        path.append(looksLikeId(segment) ? "{id}" : segment);
+      }
+    }
+    return path.length() == 0 ? "/" : path.toString();
+  }
+
+  /**
+   * @return Route of the host or its closest parent domain that matches the segments.
+   */
+  @Nullable
+  private static String findRoute(String host, List<String> segments) {
+    String domain = host;
+    while (true) {
+      List<String> routes = ROUTES_BY_HOST.get(domain);
+      if (routes != null) {
+        for (String route : routes) {
+          if (routeMatches(route, segments)) {
+            return route;
+          }
+        }
+        return null;
+      }
+
+      int nextDotIndex = domain.indexOf('.');
+      if (nextDotIndex == -1) {
+        return null;
+      }
+      domain = domain.substring(nextDotIndex + 1);
+    }
+  }
+
+  private static boolean routeMatches(String route, List<String> segments) {
+    // Routes start with a slash, so the first split is empty.
+    String[] routeSegments = route.split("/");
+    if (routeSegments.length - 1 != segments.size()) {
+      return false;
+    }
+    for (int i = 1; i < routeSegments.length; i++) {
+      String routeSegment = routeSegments[i];
+      boolean isPlaceholder = routeSegment.startsWith("{");
+      if (!isPlaceholder && !routeSegment.equals(segments.get(i - 1))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isMediaFileName(String segment) {
+    int extensionIndex = segment.lastIndexOf('.');
+    return extensionIndex > 0
+        && MEDIA_FILE_EXTENSIONS.contains(segment.substring(extensionIndex + 1).toLowerCase(Locale.ENGLISH));
+  }
+
+  private static boolean looksLikeId(String segment) {
+    int digitCount = 0;
+    for (int i = 0; i < segment.length(); i++) {
+      if (Character.isDigit(segment.charAt(i))) {
+        ++digitCount;
+      }
+    }
+    // Short segments with a digit are usually API versions, like "v1".
+    return digitCount == segment.length() || (digitCount > 0 && segment.length() >= MIN_ID_LENGTH);
+  }
+
+  public synchronized void clear() {
+    hostMetrics.clear();
+    endpointMetrics.clear();
+  }
+
+  /**
+   * Human readable summary of the slowest hosts and endpoints, sorted by their average latency.
+   */
+  public synchronized String summary() {
+    StringBuilder summary = new StringBuilder();
+    summary.append("Hosts\n");
+    appendSummary(summary, hostMetrics);
+    summary.append("\nEndpoints\n");
+    appendSummary(summary, endpointMetrics);
+    return summary.toString();
+  }
+
+  private static void appendSummary(StringBuilder summary, Map<String, Metric> metrics) {
+    List<Map.Entry<String, Metric>> entries = new ArrayList<>(metrics.entrySet());
+    Collections.sort(entries, (first, second) -> Long.compare(second.getValue().averageMillis(), first.getValue().averageMillis()));
+
+    for (Map.Entry<String, Metric> entry : entries) {
+      Metric metric = entry.getValue();
+      summary.append(String.format(Locale.ENGLISH,
+          "%s\n  %d calls, avg %dms, max %dms, %d cached, %d retries, %d failed, %dKB\n",
+          entry.getKey(),
+          metric.count,
+          metric.averageMillis(),
+          metric.maxMillis,
+          metric.cacheHits,
+          metric.retries,
+          metric.failures,
+          metric.bytesReceived / 1024));
+    }
+  }
+
+  /**
+   * Dump of all metrics, for exporting out of the device.
+   */
+  public synchronized String toJson() {
+    Buffer buffer = new Buffer();
+    try (JsonWriter writer = JsonWriter.of(buffer)) {
+      writer.setIndent("  ");
+      writer.beginObject();
+      writer.name("latency_buckets_millis");
+      writer.beginArray();
+      for (long bucket : LATENCY_BUCKETS_MILLIS) {
+        writer.value(bucket);
+      }
+      writer.endArray();
+      writer.name("hosts");
+      writeMetrics(writer, hostMetrics);
+      writer.name("endpoints");
+      writeMetrics(writer, endpointMetrics);
+      writer.endObject();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return buffer.readUtf8();
+  }
+
+  private static void writeMetrics(JsonWriter writer, Map<String, Metric> metrics) throws IOException {
+    writer.beginObject();
+    for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+      Metric metric = entry.getValue();
+      writer.name(entry.getKey());
+      writer.beginObject();
+      writer.name("count").value(metric.count);
+      writer.name("average_millis").value(metric.averageMillis());
+      writer.name("max_millis").value(metric.maxMillis);
+      writer.name("latency_histogram");
+      writer.beginArray();
+      for (long bucketCount : metric.latencyHistogram) {
+        writer.value(bucketCount);
+      }
+      writer.endArray();
+      writer.name("bytes_received").value(metric.bytesReceived);
+      writer.name("cache_hits").value(metric.cacheHits);
+      writer.name("cache_misses").value(metric.cacheMisses);
+      writer.name("retries").value(metric.retries);
+      writer.name("failures").value(metric.failures);
+      writer.name("status_codes");
+      writer.beginObject();
+      for (Map.Entry<Integer, Long> statusCount : metric.statusCodes.entrySet()) {
+        writer.name(String.valueOf(statusCount.getKey())).value(statusCount.getValue());
+      }
+      writer.endObject();
+      writer.endObject();
+    }
+    writer.endObject();
+  }
+
+  private static class Metric {
+    /** The last bucket holds calls slower than the largest entry in {@link #LATENCY_BUCKETS_MILLIS}. */
+    final long[] latencyHistogram = new long[LATENCY_BUCKETS_MILLIS.length + 1];
+    final Map<Integer, Long> statusCodes = new LinkedHashMap<>(4);
+    long count;
+    long totalMillis;
+    long maxMillis;
+    long bytesReceived;
+    long cacheHits;
+    long cacheMisses;
+    long retries;
+    long failures;
+
+    void recordLatency(long millis) {
+      count++;
+      totalMillis += millis;
+      maxMillis = Math.max(maxMillis, millis);
+
+      int bucket = 0;
+      while (bucket < LATENCY_BUCKETS_MILLIS.length && millis > LATENCY_BUCKETS_MILLIS[bucket]) {
+        bucket++;
+      }
+      latencyHistogram[bucket]++;
+    }
+
+    long averageMillis() {
+      return count == 0 ? 0 : totalMillis / count;
+    }
+  }
+}
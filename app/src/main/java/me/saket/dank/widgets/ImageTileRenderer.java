@@ -0,0 +1,257 @@
+package me.saket.dank.widgets;
+
+import static io.reactivex.android.schedulers.AndroidSchedulers.mainThread;
+import static io.reactivex.schedulers.Schedulers.io;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+import android.view.View;
+
+import com.google.auto.value.AutoValue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import timber.log.Timber;
+
+/**
+ * Draws full-resolution tiles of an image over its downsampled drawable. Only the tiles
+ * that are visible at the current zoom are decoded, at the lowest resolution that's still
+ * sharp, so that huge images can be zoomed at full detail without decoding them entirely.
+ * <p>
+ * Decoded tiles of all images share one LRU cache, sized by the app's memory class.
+ */
+class ImageTileRenderer {
+
+  /** Size of decoded tile bitmaps. */
+  private static final int TILE_SIZE_PX = 512;
+  /** Fraction of the app's memory class that tiles can occupy. */
+  private static final int TILE_CACHE_MEMORY_CLASS_DIVISOR = 8;
+
+  private static LruCache<TileKey, Bitmap> tileCache;
+
+  private final View view;
+  private final Map<TileKey, Disposable> pendingDecodes = new HashMap<>();
+  private final Set<TileKey> visibleTiles = new HashSet<>();
+  private final Matrix imageToViewMatrix = new Matrix();
+  private final Matrix viewToImageMatrix = new Matrix();
+  private final RectF visibleImageRect = new RectF();
+  private final Rect tileRect = new Rect();
+  private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+  private String sourcePath;
+  private Disposable decoderDisposable = Disposables.disposed();
+  @Nullable private BitmapRegionDecoder decoder;
+
+  @AutoValue
+  abstract static class TileKey {
+    abstract String sourcePath();
+
+    abstract int sampleSize();
+
+    abstract int column();
+
+    abstract int row();
+
+    static TileKey create(String sourcePath, int sampleSize, int column, int row) {
+      return new AutoValue_ImageTileRenderer_TileKey(sourcePath, sampleSize, column, row);
+    }
+  }
+
+  ImageTileRenderer(View view) {
+    this.view = view;
+    ensureTileCache(view.getContext());
+  }
+
+  private static synchronized void ensureTileCache(Context context) {
+    if (tileCache != null) {
+      return;
+    }
+    ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+    //noinspection ConstantConditions
+    int maxBytes = activityManager.getMemoryClass() * 1024 * 1024 / TILE_CACHE_MEMORY_CLASS_DIVISOR;
+    tileCache = new LruCache<TileKey, Bitmap>(maxBytes) {
+      @Override
+      protected int sizeOf(TileKey key, Bitmap tile) {
+        return tile.getByteCount();
+      }
+    };
+  }
+
+  /**
+   * @param sourceFile Full resolution image, usually from Glide's disk cache.
+   */
+  void setSource(File sourceFile) {
+    release();
+    sourcePath = sourceFile.getAbsolutePath();
+
+    String path = sourcePath;
+    decoderDisposable = Single.fromCallable(() -> BitmapRegionDecoder.newInstance(path, false))
+        .subscribeOn(io())
+        .observeOn(mainThread())
+        .subscribe(
+            openedDecoder -> {
+              decoder = openedDecoder;
+              view.invalidate();
+            },
+            error -> Timber.w(error, "Couldn't open image for tiling: %s", path));
+  }
+
+  boolean hasSource() {
+    return sourcePath != null;
+  }
+
+  void release() {
+    decoderDisposable.dispose();
+    for (Disposable pendingDecode : pendingDecodes.values()) {
+      pendingDecode.dispose();
+    }
+    pendingDecodes.clear();
+
+    if (decoder != null) {
+      // Pending decodes were disposed, but may still be running.
+      BitmapRegionDecoder decoderToRecycle = decoder;
+      io().scheduleDirect(decoderToRecycle::recycle);
+      decoder = null;
+    }
+    sourcePath = null;
+  }
+
+  /**
+   * @param drawableMatrix  Maps the drawable's coordinates to the View's.
+   * @param drawableWidth   Width of the downsampled drawable, excluding its padding.
+   * @param drawablePadding Transparent padding around the drawable's content.
+   */
+  void draw(Canvas canvas, Matrix drawableMatrix, int drawableWidth, int drawablePadding) {
+    if (decoder == null || drawableWidth <= 0) {
+      return;
+    }
+
+    int imageWidth = decoder.getWidth();
+    int imageHeight = decoder.getHeight();
+    float imagePxPerDrawablePx = imageWidth / (float) drawableWidth;
+
+    imageToViewMatrix.set(drawableMatrix);
+    imageToViewMatrix.preTranslate(drawablePadding, drawablePadding);
+    imageToViewMatrix.preScale(1 / imagePxPerDrawablePx, 1 / imagePxPerDrawablePx);
+
+    // Decode at the lowest resolution that still has one image pixel per screen pixel.
+    float viewPxPerImagePx = imageToViewMatrix.mapRadius(1f);
+    int sampleSize = 1;
+    while (sampleSize * 2 * viewPxPerImagePx <= 1f) {
+      sampleSize *= 2;
+    }
+
+    visibleTiles.clear();
+    boolean drawableIsSharpEnough = sampleSize >= imagePxPerDrawablePx;
+    if (!drawableIsSharpEnough && imageToViewMatrix.invert(viewToImageMatrix)) {
+      visibleImageRect.set(0, 0, view.getWidth(), view.getHeight());
+      viewToImageMatrix.mapRect(visibleImageRect);
+
+      if (visibleImageRect.intersect(0, 0, imageWidth, imageHeight)) {
+        drawVisibleTiles(canvas, sampleSize, imageWidth, imageHeight);
+      }
+    }
+    cancelDecodesOfInvisibleTiles();
+  }
+
+  private void drawVisibleTiles(Canvas canvas, int sampleSize, int imageWidth, int imageHeight) {
+    int tileSpan = TILE_SIZE_PX * sampleSize;
+    int firstColumn = (int) (visibleImageRect.left / tileSpan);
+    int lastColumn = (int) ((visibleImageRect.right - 1) / tileSpan);
+    int firstRow = (int) (visibleImageRect.top / tileSpan);
+    int lastRow = (int) ((visibleImageRect.bottom - 1) / tileSpan);
+
+    canvas.save();
+    canvas.concat(imageToViewMatrix);
+
+    for (int row = firstRow; row <= lastRow; row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        TileKey key = TileKey.create(sourcePath, sampleSize, column, row);
+        visibleTiles.add(key);
+
+        tileRect.set(
+            column * tileSpan,
+            row * tileSpan,
+            Math.min((column + 1) * tileSpan, imageWidth),
+            Math.min((row + 1) * tileSpan, imageHeight));
+
+        Bitmap tile = tileCache.get(key);
+        if (tile != null) {
+          canvas.drawBitmap(tile, null, tileRect, tilePaint);
+        } else if (!pendingDecodes.containsKey(key)) {
+          decodeTile(key, new Rect(tileRect));
+        }
+      }
+    }
+    canvas.restore();
+  }
+
+  private void decodeTile(TileKey key, Rect region) {
+    BitmapRegionDecoder regionDecoder = decoder;
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inSampleSize = key.sampleSize();
+
+    Disposable disposable = Maybe
+        .fromCallable(() -> {
+          try {
+            return regionDecoder.decodeRegion(region, options);
+          } catch (IllegalStateException e) {
+            if (regionDecoder.isRecycled()) {
+              // Source was changed while this tile was decoding.
+              return null;
+            }
+            throw e;
+          }
+        })
+        .subscribeOn(io())
+        .observeOn(mainThread())
+        .subscribe(
+            tile -> {
+              pendingDecodes.remove(key);
+              tileCache.put(key, tile);
+              view.invalidate();
+            },
+            error -> {
+              pendingDecodes.remove(key);
+              Timber.w(error, "Couldn't decode tile %s", key);
+            },
+            () -> pendingDecodes.remove(key));
+
+    if (!disposable.isDisposed()) {
+      pendingDecodes.put(key, disposable);
+    }
+  }
+
+  /**
+   * Tiles that were scrolled or zoomed away before they could be decoded aren't needed anymore.
+   */
+  private void cancelDecodesOfInvisibleTiles() {
+    Iterator<Map.Entry<TileKey, Disposable>> iterator = pendingDecodes.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<TileKey, Disposable> entry = iterator.next();
+      if (!visibleTiles.contains(entry.getKey())) {
+        entry.getValue().dispose();
+        iterator.remove();
+      }
+    }
+  }
+}
@@ -4,6 +4,7 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.util.AttributeSet;
 import android.view.GestureDetector;
@@ -15,6 +16,7 @@ import com.alexvasilkov.gestures.Settings;
 import com.alexvasilkov.gestures.State;
 import com.alexvasilkov.gestures.views.GestureImageView;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,6 +39,8 @@ public class ZoomableGestureImageView extends GestureImageView implements Zoomab
   private final Map<OnZoomChangeListener, GestureController.OnStateChangeListener> onZoomChangeListeners = new HashMap<>(2);
   private GestureDetector gestureDetector;
   private OnImageTooLargeExceptionListener imageTooLargeExceptionListener;
+  private ImageTileRenderer tileRenderer;
+  private int tileDrawablePadding;
 
   public ZoomableGestureImageView(Context context, AttributeSet attrs) {
     super(context, attrs);
@@ -75,6 +79,14 @@ public class ZoomableGestureImageView extends GestureImageView implements Zoomab
   public void draw(@NonNull Canvas canvas) {
     try {
       super.draw(canvas);
+
+      Drawable drawable = getDrawable();
+      if (tileRenderer != null && tileRenderer.hasSource() && drawable != null) {
+        canvas.save();
+        canvas.translate(getPaddingLeft(), getPaddingTop());
+        tileRenderer.draw(canvas, getImageMatrix(), drawable.getIntrinsicWidth() - tileDrawablePadding * 2, tileDrawablePadding);
+        canvas.restore();
+      }
     } catch (RuntimeException e) {
       if (e.getMessage().contains("trying to draw too large")) {
         imageTooLargeExceptionListener.onImageTooLargeException(e);
@@ -225,7 +237,41 @@ public class ZoomableGestureImageView extends GestureImageView implements Zoomab
 
   @Override
   public void removeOnImageZoomChangeListener(OnZoomChangeListener listener) {
-    onZoomChangeListeners.remove(listener);
+    GestureController.OnStateChangeListener stateChangeListener = onZoomChangeListeners.remove(listener);
+    if (stateChangeListener != null) {
+      getController().removeOnStateChangeListener(stateChangeListener);
+    }
+  }
+
+  /**
+   * Draws full-resolution tiles from <var>sourceFile</var> over the current drawable when it is zoomed
+   * beyond its own resolution. This lets the drawable itself be downsampled to the View's size.
+   *
+   * @param drawablePadding Transparent padding around the drawable's content, if any.
+   */
+  @Override
+  public void setTiledImageSource(File sourceFile, int drawablePadding) {
+    if (tileRenderer == null) {
+      tileRenderer = new ImageTileRenderer(this);
+    }
+    tileDrawablePadding = drawablePadding;
+    tileRenderer.setSource(sourceFile);
+  }
+
+  @Override
+  public void clearTiledImageSource() {
+    if (tileRenderer != null && tileRenderer.hasSource()) {
+      tileRenderer.release();
+      invalidate();
+    }
+  }
+
+  @Override
+  protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    if (tileRenderer != null) {
+      tileRenderer.release();
+    }
   }
 
   @Override
@@ -6,6 +6,8 @@ import android.view.View;
 import android.view.ViewPropertyAnimator;
 import android.widget.ImageView;
 
+import java.io.File;
+
 public interface ZoomableImageView {
 
   interface OnPanChangeListener {
@@ -42,6 +44,10 @@ public interface ZoomableImageView {
 
   void removeOnImageZoomChangeListener(OnZoomChangeListener listener);
 
+  void setTiledImageSource(File sourceFile, int drawablePadding);
+
+  void clearTiledImageSource();
+
   boolean hasImage();
 
   int getImageHeight();
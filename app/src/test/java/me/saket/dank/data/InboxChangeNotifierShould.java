@@ -0,0 +1,100 @@
+package me.saket.dank.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.ui.user.messages.InboxFolder;
+
+public class InboxChangeNotifierShould {
+
+  private InboxChangeNotifier notifier;
+
+  @Before
+  public void setUp() {
+    notifier = new InboxChangeNotifier(Schedulers.trampoline());
+  }
+
+  @Test
+  public void rerunQueriesOnlyOfTheChangedFolder() {
+    CountingQuery unreadQuery = new CountingQuery();
+    CountingQuery privateMessagesQuery = new CountingQuery();
+    notifier.observeFolder(InboxFolder.UNREAD, unreadQuery).test();
+    notifier.observeFolder(InboxFolder.PRIVATE_MESSAGES, privateMessagesQuery).test();
+
+    notifier.notifyMessagesChanged(InboxFolder.UNREAD, singletonList("t4_a"));
+    notifier.notifyFolderChanged(InboxFolder.UNREAD);
+
+    assertThat(unreadQuery.executions()).isEqualTo(3);
+    assertThat(privateMessagesQuery.executions()).isEqualTo(1);
+  }
+
+  @Test
+  public void rerunMessageQueriesOnlyWhenTheirRowChanges() {
+    CountingQuery messageQuery = new CountingQuery();
+    TestObserver<Integer> observer = notifier.observeMessage(InboxFolder.UNREAD, "t4_a", messageQuery).test();
+
+    notifier.notifyMessagesChanged(InboxFolder.UNREAD, asList("t4_b", "t4_c"));
+    notifier.notifyMessagesChanged(InboxFolder.PRIVATE_MESSAGES, singletonList("t4_a"));
+    assertThat(messageQuery.executions()).isEqualTo(1);
+
+    notifier.notifyMessagesChanged(InboxFolder.UNREAD, asList("t4_a", "t4_b"));
+    assertThat(messageQuery.executions()).isEqualTo(2);
+    observer.assertValues(1, 2);
+  }
+
+  @Test
+  public void rerunMessageQueriesWhenTheirWholeFolderChanges() {
+    CountingQuery messageQuery = new CountingQuery();
+    notifier.observeMessage(InboxFolder.UNREAD, "t4_a", messageQuery).test();
+
+    notifier.notifyFolderChanged(InboxFolder.UNREAD);
+
+    assertThat(messageQuery.executions()).isEqualTo(2);
+  }
+
+  @Test
+  public void ignoreWritesThatChangedNothing() {
+    CountingQuery unreadQuery = new CountingQuery();
+    notifier.observeFolder(InboxFolder.UNREAD, unreadQuery).test();
+
+    notifier.notifyMessagesChanged(InboxFolder.UNREAD, emptyList());
+
+    assertThat(unreadQuery.executions()).isEqualTo(1);
+  }
+
+  @Test
+  public void stopRerunningQueriesAfterDisposal() {
+    CountingQuery unreadQuery = new CountingQuery();
+    notifier.observeFolder(InboxFolder.UNREAD, unreadQuery).test().dispose();
+
+    notifier.notifyFolderChanged(InboxFolder.UNREAD);
+
+    assertThat(unreadQuery.executions()).isEqualTo(1);
+  }
+
+  /**
+   * Stands in for a DB query and counts how many times it was run.
+   */
+  private static class CountingQuery implements Callable<Integer> {
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Override
+    public Integer call() {
+      return executions.incrementAndGet();
+    }
+
+    int executions() {
+      return executions.get();
+    }
+  }
+}
@@ -0,0 +1,258 @@
+package me.saket.dank.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.squareup.moshi.JsonAdapter;
+
+import net.dean.jraw.models.Listing;
+import net.dean.jraw.models.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.data.InboxSyncEngine.SyncResult;
+import me.saket.dank.di.StorageModule;
+import me.saket.dank.reddit.Reddit;
+import me.saket.dank.ui.user.messages.CachedMessage;
+import me.saket.dank.ui.user.messages.InboxFolder;
+
+public class InboxSyncEngineShould {
+
+  private static final String MESSAGE_JSON_TEMPLATE = "{\"distinguished\":null,\"id\":\"%1$s\",\"score\":0,\"author\":\"Intersebbtor\","
+      + "\"body\":\"Message %1$s\",\"context\":\"\",\"created_utc\":%2$d,\"dest\":\"Saketme\",\"name\":\"t4_%1$s\",\"was_comment\":false,"
+      + "\"new\":%3$b,\"subject\":\"usability\",\"likes\":null,\"replies\":{\"kind\":\"Listing\",\"data\":{\"after\":null,\"children\":[]}}}";
+
+  private JsonAdapter<Message> messageAdapter;
+  private FakeInbox remoteInbox;
+  private FakeMessageStore store;
+  private Reddit reddit;
+
+  @Before
+  public void setUp() {
+    messageAdapter = new MoshiAdapter(new StorageModule().provideMoshi()).create(Message.class);
+    remoteInbox = new FakeInbox();
+    store = new FakeMessageStore();
+
+    Reddit.LoggedInUser loggedInUser = mock(Reddit.LoggedInUser.class);
+    when(loggedInUser.messages(any(InboxFolder.class), anyInt(), any(PaginationAnchor.class))).thenAnswer(invocation -> {
+      InboxFolder folder = (InboxFolder) invocation.getArguments()[0];
+      int limit = (int) invocation.getArguments()[1];
+      return Single.fromCallable(() -> remoteInbox.pages(folder, limit));
+    });
+    reddit = mock(Reddit.class);
+    when(reddit.loggedInUser()).thenReturn(loggedInUser);
+  }
+
+  @Test
+  public void fetchOnlyOnePageWhenFolderIsSyncedForTheFirstTime() throws IOException {
+    remoteInbox.put(InboxFolder.PRIVATE_MESSAGES, messages(0, 120, true));
+
+    SyncResult result = syncEngine().sync(InboxFolder.PRIVATE_MESSAGES).blockingGet();
+
+    assertThat(remoteInbox.requestCount.get()).isEqualTo(1);
+    assertThat(result.rowsWritten()).isEqualTo(InboxRepository.MESSAGES_FETCHED_PER_PAGE);
+    assertThat(store.rowsWritten).isEqualTo(InboxRepository.MESSAGES_FETCHED_PER_PAGE);
+  }
+
+  @Test
+  public void stopPaginatingAtTheFirstStoredMessage() throws IOException {
+    remoteInbox.put(InboxFolder.PRIVATE_MESSAGES, messages(0, 120, true));
+    InboxSyncEngine syncEngine = syncEngine();
+    syncEngine.sync(InboxFolder.PRIVATE_MESSAGES).blockingGet();
+    remoteInbox.reset();
+
+    List<Message> withNewMessages = messages(120, 3, true);
+    withNewMessages.addAll(messages(0, 120, true));
+    remoteInbox.put(InboxFolder.PRIVATE_MESSAGES, withNewMessages);
+    SyncResult result = syncEngine.sync(InboxFolder.PRIVATE_MESSAGES).blockingGet();
+
+    assertThat(remoteInbox.requestCount.get()).isEqualTo(1);
+    assertThat(store.rowsWritten).isEqualTo(3);
+    assertThat(result.rowsRemoved()).isEqualTo(0);
+  }
+
+  @Test
+  public void rewriteOnlyMessagesThatChanged() throws IOException {
+    remoteInbox.put(InboxFolder.PRIVATE_MESSAGES, messages(0, 20, true));
+    InboxSyncEngine syncEngine = syncEngine();
+    syncEngine.sync(InboxFolder.PRIVATE_MESSAGES).blockingGet();
+    store.rowsWritten = 0;
+
+    List<Message> withReadMessage = messages(0, 1, false);
+    withReadMessage.addAll(messages(1, 19, true));
+    remoteInbox.put(InboxFolder.PRIVATE_MESSAGES, withReadMessage);
+    SyncResult result = syncEngine.sync(InboxFolder.PRIVATE_MESSAGES).blockingGet();
+
+    assertThat(result.rowsWritten()).isEqualTo(1);
+    assertThat(store.rowsWritten).isEqualTo(1);
+    assertThat(result.fetchedMessages()).hasSize(20);
+  }
+
+  @Test
+  public void removeUnreadMessagesThatWereReadElsewhere() throws IOException {
+    remoteInbox.put(InboxFolder.UNREAD, messages(0, 5, true));
+    InboxSyncEngine syncEngine = syncEngine();
+    syncEngine.sync(InboxFolder.UNREAD).blockingGet();
+    store.rowsWritten = 0;
+
+    remoteInbox.put(InboxFolder.UNREAD, messages(0, 3, true));
+    SyncResult result = syncEngine.sync(InboxFolder.UNREAD).blockingGet();
+
+    assertThat(result.rowsRemoved()).isEqualTo(2);
+    assertThat(store.rowsWritten).isEqualTo(0);
+    assertThat(store.rows.get(InboxFolder.UNREAD)).hasSize(3);
+  }
+
+  @Test
+  public void shareSyncsOfAFolderThatAreInFlight() throws IOException {
+    remoteInbox.put(InboxFolder.UNREAD, messages(0, 5, true));
+    remoteInbox.requestDelayMillis = 200;
+    InboxSyncEngine syncEngine = new InboxSyncEngine(() -> reddit, store);
+
+    TestObserver<SyncResult> firstSync = syncEngine.sync(InboxFolder.UNREAD).test();
+    TestObserver<SyncResult> secondSync = syncEngine.sync(InboxFolder.UNREAD).test();
+    firstSync.awaitTerminalEvent(2, TimeUnit.SECONDS);
+    secondSync.awaitTerminalEvent(2, TimeUnit.SECONDS);
+
+    firstSync.assertValueCount(1);
+    secondSync.assertValueCount(1);
+    assertThat(remoteInbox.requestCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void syncAllFoldersInParallelWithinTheBound() throws IOException {
+    for (InboxFolder folder : InboxFolder.getALL()) {
+      remoteInbox.put(folder, messages(0, 5, true));
+    }
+    remoteInbox.requestDelayMillis = 200;
+    InboxSyncEngine syncEngine = new InboxSyncEngine(() -> reddit, store);
+
+    List<SyncResult> results = syncEngine.syncAll().blockingGet();
+
+    assertThat(results).hasSize(InboxFolder.getALL().length);
+    assertThat(remoteInbox.requestCount.get()).isEqualTo(InboxFolder.getALL().length);
+    assertThat(remoteInbox.maxParallelRequests.get()).isGreaterThan(1);
+    assertThat(remoteInbox.maxParallelRequests.get()).isAtMost(InboxSyncEngine.MAX_PARALLEL_FOLDER_SYNCS);
+  }
+
+  private InboxSyncEngine syncEngine() {
+    return new InboxSyncEngine(() -> reddit, store, Schedulers.trampoline());
+  }
+
+  /**
+   * Newest first, like Reddit.
+   */
+  private List<Message> messages(int firstId, int count, boolean isUnread) throws IOException {
+    List<Message> messages = new ArrayList<>(count);
+    for (int id = firstId + count - 1; id >= firstId; id--) {
+      String json = String.format(MESSAGE_JSON_TEMPLATE, Integer.toString(id, 36), 1528532315L + id, isUnread);
+      messages.add(messageAdapter.fromJson(json));
+    }
+    return messages;
+  }
+
+  /**
+   * Serves messages in pages and counts the requests made for them.
+   */
+  private static class FakeInbox {
+    private final Map<InboxFolder, List<Message>> messages = new EnumMap<>(InboxFolder.class);
+    final AtomicInteger requestCount = new AtomicInteger();
+    final AtomicInteger parallelRequests = new AtomicInteger();
+    final AtomicInteger maxParallelRequests = new AtomicInteger();
+    volatile long requestDelayMillis;
+
+    synchronized void put(InboxFolder folder, List<Message> folderMessages) {
+      messages.put(folder, new ArrayList<>(folderMessages));
+    }
+
+    void reset() {
+      requestCount.set(0);
+    }
+
+    synchronized Iterator<Listing<Message>> pages(InboxFolder folder, int limit) {
+      List<Message> folderMessages = messages.containsKey(folder) ? messages.get(folder) : Collections.emptyList();
+      return new Iterator<Listing<Message>>() {
+        private int nextIndex = 0;
+
+        @Override
+        public boolean hasNext() {
+          return nextIndex < folderMessages.size();
+        }
+
+        @Override
+        public Listing<Message> next() {
+          requestCount.incrementAndGet();
+          maxParallelRequests.accumulateAndGet(parallelRequests.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(requestDelayMillis);
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } finally {
+            parallelRequests.decrementAndGet();
+          }
+
+          List<Message> page = folderMessages.subList(nextIndex, Math.min(folderMessages.size(), nextIndex + limit));
+          nextIndex += page.size();
+          return Listing.create(null, new ArrayList<>(page));
+        }
+      };
+    }
+  }
+
+  /**
+   * Keeps messages in memory and counts the rows written to it.
+   */
+  private static class FakeMessageStore extends InboxMessageStore {
+    final Map<InboxFolder, Map<String, Message>> rows = new EnumMap<>(InboxFolder.class);
+    int rowsWritten;
+
+    FakeMessageStore() {
+      super(null, null, null, null);
+    }
+
+    @Override
+    synchronized Map<String, Long> revisions(InboxFolder folder) {
+      Map<String, Long> revisions = new HashMap<>();
+      if (rows.containsKey(folder)) {
+        for (Message message : rows.get(folder).values()) {
+          revisions.put(message.getFullName(), CachedMessage.revision(message));
+        }
+      }
+      return revisions;
+    }
+
+    @Override
+    synchronized void write(InboxFolder folder, List<Message> messages, Collection<String> removedFullnames) {
+      if (!rows.containsKey(folder)) {
+        rows.put(folder, new HashMap<>());
+      }
+      Map<String, Message> folderRows = rows.get(folder);
+      for (String removedFullname : removedFullnames) {
+        folderRows.remove(removedFullname);
+      }
+      for (Message message : messages) {
+        folderRows.put(message.getFullName(), message);
+      }
+      rowsWritten += messages.size();
+    }
+  }
+}
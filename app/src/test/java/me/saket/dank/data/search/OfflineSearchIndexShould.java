@@ -0,0 +1,239 @@
+package me.saket.dank.data.search;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.anyVararg;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.models.Message;
+import net.dean.jraw.models.Submission;
+import net.dean.jraw.tree.CommentNode;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import me.saket.dank.data.search.SearchableContent.Type;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ BriteDatabase.class, ContentValues.class, OfflineSearchIndex.class, SearchableContent.class, Submission.class, Comment.class, Message.class })
+public class OfflineSearchIndexShould {
+
+  private static final long EXISTING_ROW_ID = 7;
+
+  private BriteDatabase briteDatabase;
+  private BriteDatabase.Transaction transaction;
+  private ContentValues contentValues;
+  private OfflineSearchIndex searchIndex;
+
+  @Before
+  public void setUp() throws Exception {
+    contentValues = PowerMockito.mock(ContentValues.class);
+    PowerMockito.whenNew(ContentValues.class).withAnyArguments().thenReturn(contentValues);
+
+    transaction = mock(BriteDatabase.Transaction.class);
+    briteDatabase = PowerMockito.mock(BriteDatabase.class);
+    when(briteDatabase.newTransaction()).thenReturn(transaction);
+
+    searchIndex = new OfflineSearchIndex(briteDatabase);
+  }
+
+  @Test
+  public void indexNewSubmissionsWithTheirComments() {
+    Submission submission = submission("t3_dark", "Dark theme is here", 120);
+    Comment comment = comment("t1_reply", "Finally, my eyes thank you", 45);
+    stubNewContent("t3_dark");
+    stubNewContent("t1_reply");
+
+    searchIndex.indexSubmissionWithComments(node(submission, node(comment)));
+
+    verify(briteDatabase, times(2)).insert(SearchableContent.TABLE_NAME, contentValues);
+    verify(briteDatabase, times(2)).insert(SearchableContent.FTS_TABLE_NAME, contentValues);
+    verify(briteDatabase, never()).update(anyString(), any(ContentValues.class), anyString(), anyVararg());
+    verify(transaction).markSuccessful();
+  }
+
+  @Test
+  public void indexNewMessages() {
+    Message message = message("t4_message", "Welcome to r/androiddev", "Please read the rules");
+    stubNewContent("t4_message");
+
+    searchIndex.indexMessages(Collections.singletonList(message));
+
+    verify(briteDatabase).insert(SearchableContent.TABLE_NAME, contentValues);
+    verify(briteDatabase).insert(SearchableContent.FTS_TABLE_NAME, contentValues);
+    verify(transaction).markSuccessful();
+  }
+
+  @Test
+  public void retokenizeContentWhoseTextOrScoreChanged() {
+    Comment comment = comment("t1_edited", "Edit: thanks for the gold", 300);
+    stubExistingContent("t1_edited", SearchableContent.create(comment).revision() + 1);
+
+    searchIndex.indexCommentTrees(Collections.singletonList(node(comment)));
+
+    verify(briteDatabase).update(SearchableContent.TABLE_NAME, contentValues, SearchableContent.WHERE_ID, String.valueOf(EXISTING_ROW_ID));
+    verify(briteDatabase).update(SearchableContent.FTS_TABLE_NAME, contentValues, SearchableContent.WHERE_DOCID, String.valueOf(EXISTING_ROW_ID));
+    verify(briteDatabase, never()).insert(anyString(), any(ContentValues.class));
+  }
+
+  @Test
+  public void onlyRenewIndexTimeOfUnchangedContent() {
+    Comment comment = comment("t1_unchanged", "Same as before", 12);
+    stubExistingContent("t1_unchanged", SearchableContent.create(comment).revision());
+
+    searchIndex.indexCommentTrees(Collections.singletonList(node(comment)));
+
+    verify(briteDatabase).update(SearchableContent.TABLE_NAME, contentValues, SearchableContent.WHERE_ID, String.valueOf(EXISTING_ROW_ID));
+    verify(briteDatabase, never()).update(eq(SearchableContent.FTS_TABLE_NAME), any(ContentValues.class), anyString(), anyVararg());
+    verify(briteDatabase, never()).insert(anyString(), any(ContentValues.class));
+  }
+
+  @Test
+  public void searchContentOfATypeAndReturnTheMatches() {
+    SearchableContent matchedComment = SearchableContent.create(comment("t1_reply", "Finally, my eyes thank you", 45));
+    Cursor results = resultsCursor(matchedComment);
+    when(briteDatabase.query(SearchableContent.QUERY_SEARCH_OF_TYPE, OfflineSearchIndex.toMatchQuery("eyes th"), Type.COMMENT.name(), "10")).thenReturn(results);
+
+    List<SearchableContent> matches = searchIndex.search("eyes th", Type.COMMENT, 10).blockingGet();
+
+    assertThat(matches).containsExactly(matchedComment);
+    verify(results).close();
+  }
+
+  @Test
+  public void searchAllTypesOfContent() {
+    Cursor results = resultsCursor();
+    when(briteDatabase.query(SearchableContent.QUERY_SEARCH, OfflineSearchIndex.toMatchQuery("theme"), "25")).thenReturn(results);
+
+    assertThat(searchIndex.search("theme", null, 25).blockingGet()).isEmpty();
+    verify(results).close();
+  }
+
+  @Test
+  public void notQueryTheDatabaseForBlankQueries() {
+    assertThat(searchIndex.search("  ?! ", null, 10).blockingGet()).isEmpty();
+    verify(briteDatabase, never()).query(anyString(), anyVararg());
+  }
+
+  @Test
+  public void searchNothingForBlankQueries() {
+    assertThat(OfflineSearchIndex.toMatchQuery("  ?! ")).isEmpty();
+  }
+
+  private void stubNewContent(String fullname) {
+    Cursor cursor = mock(Cursor.class);
+    when(cursor.moveToFirst()).thenReturn(false);
+    when(briteDatabase.query(SearchableContent.QUERY_GET_ID_AND_REVISION, fullname)).thenReturn(cursor);
+  }
+
+  private void stubExistingContent(String fullname, long revision) {
+    Cursor cursor = mock(Cursor.class);
+    when(cursor.moveToFirst()).thenReturn(true);
+    when(cursor.getLong(0)).thenReturn(EXISTING_ROW_ID);
+    when(cursor.getLong(1)).thenReturn(revision);
+    when(briteDatabase.query(SearchableContent.QUERY_GET_ID_AND_REVISION, fullname)).thenReturn(cursor);
+  }
+
+  /**
+   * A cursor over rows of <var>contents</var>, in the columns read by {@link SearchableContent#MAPPER}.
+   */
+  private static Cursor resultsCursor(SearchableContent... contents) {
+    List<String> columns = Arrays.asList(
+        SearchableContent.COLUMN_FULLNAME,
+        SearchableContent.COLUMN_TYPE,
+        SearchableContent.COLUMN_TITLE,
+        SearchableContent.COLUMN_BODY,
+        SearchableContent.COLUMN_AUTHOR,
+        SearchableContent.COLUMN_SUBREDDIT,
+        SearchableContent.COLUMN_PARENT_FULLNAME,
+        SearchableContent.COLUMN_CREATED_TIME,
+        SearchableContent.COLUMN_SCORE);
+    int[] position = { -1 };
+
+    Cursor cursor = mock(Cursor.class);
+    when(cursor.getCount()).thenReturn(contents.length);
+    when(cursor.moveToNext()).thenAnswer(invocation -> ++position[0] < contents.length);
+    when(cursor.getColumnIndexOrThrow(anyString())).thenAnswer(invocation -> columns.indexOf((String) invocation.getArguments()[0]));
+    when(cursor.getString(anyInt())).thenAnswer(invocation -> {
+      SearchableContent content = contents[position[0]];
+      switch ((Integer) invocation.getArguments()[0]) {
+        case 0: return content.fullname();
+        case 1: return content.type().name();
+        case 2: return content.title();
+        case 3: return content.body();
+        case 4: return content.author();
+        case 5: return content.subreddit();
+        case 6: return content.parentFullname();
+        default: throw new AssertionError();
+      }
+    });
+    when(cursor.getLong(columns.indexOf(SearchableContent.COLUMN_CREATED_TIME))).thenAnswer(invocation -> contents[position[0]].createdTimeMillis());
+    when(cursor.getInt(columns.indexOf(SearchableContent.COLUMN_SCORE))).thenAnswer(invocation -> contents[position[0]].score());
+    return cursor;
+  }
+
+  private static Submission submission(String fullname, String title, int score) {
+    Submission submission = PowerMockito.mock(Submission.class);
+    PowerMockito.when(submission.getFullName()).thenReturn(fullname);
+    PowerMockito.when(submission.getTitle()).thenReturn(title);
+    PowerMockito.when(submission.getAuthor()).thenReturn("Saketme");
+    PowerMockito.when(submission.getSubreddit()).thenReturn("GetDank");
+    PowerMockito.when(submission.getCreated()).thenReturn(new Date(1528532315000L));
+    PowerMockito.when(submission.getScore()).thenReturn(score);
+    return submission;
+  }
+
+  private static Comment comment(String fullname, String body, int score) {
+    Comment comment = PowerMockito.mock(Comment.class);
+    PowerMockito.when(comment.getFullName()).thenReturn(fullname);
+    PowerMockito.when(comment.getBody()).thenReturn(body);
+    PowerMockito.when(comment.getAuthor()).thenReturn("Tolkoton");
+    PowerMockito.when(comment.getSubreddit()).thenReturn("GetDank");
+    PowerMockito.when(comment.getSubmissionFullName()).thenReturn("t3_dark");
+    PowerMockito.when(comment.getCreated()).thenReturn(new Date(1528532400000L));
+    PowerMockito.when(comment.getScore()).thenReturn(score);
+    return comment;
+  }
+
+  private static Message message(String fullname, String subject, String body) {
+    Message message = PowerMockito.mock(Message.class);
+    PowerMockito.when(message.getFullName()).thenReturn(fullname);
+    PowerMockito.when(message.isComment()).thenReturn(false);
+    PowerMockito.when(message.getSubject()).thenReturn(subject);
+    PowerMockito.when(message.getBody()).thenReturn(body);
+    PowerMockito.when(message.getAuthor()).thenReturn("AutoModerator");
+    PowerMockito.when(message.getCreated()).thenReturn(new Date(1528532500000L));
+    return message;
+  }
+
+  private static CommentNode node(Object subject, CommentNode... replies) {
+    CommentNode node = mock(CommentNode.class);
+    doReturn(subject).when(node).getSubject();
+    doReturn(new ArrayList<>(Arrays.asList(replies))).when(node).getReplies();
+    return node;
+  }
+}
@@ -0,0 +1,145 @@
+package me.saket.dank.data.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.saket.dank.data.search.SearchableContent.Type;
+
+/**
+ * Runs match queries against a real SQLite FTS4 table, because FTS syntax mistakes
+ * only show up as missing results.
+ */
+public class OfflineSearchMatchQueryShould {
+
+  private Connection database;
+  private long nextId = 1;
+
+  @Before
+  public void setUp() throws SQLException {
+    database = DriverManager.getConnection("jdbc:sqlite::memory:");
+    try (Statement statement = database.createStatement()) {
+      statement.execute(SearchableContent.QUERY_CREATE_TABLE);
+      statement.execute(SearchableContent.QUERY_CREATE_FTS_TABLE);
+    }
+
+    insert("t3_dark", Type.SUBMISSION, "Dark theme is here", "Finally");
+    insert("t1_reply", Type.COMMENT, null, "Replying from the new dark theme, my eyes thank you");
+    insert("t4_welcome", Type.MESSAGE, "Welcome to r/androiddev", "Please read the rules");
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    database.close();
+  }
+
+  @Test
+  public void matchAPartlyTypedLastWordAsAPrefix() throws SQLException {
+    assertThat(search("dark th")).containsExactly("t3_dark", "t1_reply");
+    assertThat(search("welc")).containsExactly("t4_welcome");
+  }
+
+  @Test
+  public void notMatchEarlierWordsAsPrefixes() throws SQLException {
+    assertThat(search("dar theme")).isEmpty();
+  }
+
+  @Test
+  public void matchOnlyContentContainingAllWords() throws SQLException {
+    assertThat(search("dark eyes")).containsExactly("t1_reply");
+  }
+
+  @Test
+  public void matchDifferentFormsOfAWord() throws SQLException {
+    assertThat(search("replies thank")).containsExactly("t1_reply");
+  }
+
+  @Test
+  public void searchContentOfAType() throws SQLException {
+    assertThat(search("dark", Type.COMMENT)).containsExactly("t1_reply");
+  }
+
+  @Test
+  public void treatFtsSyntaxTypedByTheUserAsWords() throws SQLException {
+    assertThat(search("title:\"dark\" OR -them*")).isEmpty();
+    assertThat(search("\"dark\" -theme*")).containsExactly("t3_dark", "t1_reply");
+    assertThat(search("rules NEAR please")).isEmpty();
+  }
+
+  private void insert(String fullname, Type type, String title, String body) throws SQLException {
+    long id = nextId++;
+    String insertContent = "INSERT INTO " + SearchableContent.TABLE_NAME + " ("
+        + SearchableContent.COLUMN_ID + ", "
+        + SearchableContent.COLUMN_FULLNAME + ", "
+        + SearchableContent.COLUMN_TYPE + ", "
+        + SearchableContent.COLUMN_TITLE + ", "
+        + SearchableContent.COLUMN_BODY + ", "
+        + SearchableContent.COLUMN_CREATED_TIME + ", "
+        + SearchableContent.COLUMN_SCORE + ", "
+        + SearchableContent.COLUMN_RANK + ", "
+        + SearchableContent.COLUMN_REVISION + ", "
+        + SearchableContent.COLUMN_INDEX_TIME + ") VALUES (?, ?, ?, ?, ?, 0, 0, ?, 0, 0)";
+
+    try (PreparedStatement statement = database.prepareStatement(insertContent)) {
+      statement.setLong(1, id);
+      statement.setString(2, fullname);
+      statement.setString(3, type.name());
+      statement.setString(4, title);
+      statement.setString(5, body);
+      // Older rows rank higher, so that results come back in insertion order.
+      statement.setDouble(6, -id);
+      statement.executeUpdate();
+    }
+
+    String insertFts = "INSERT INTO " + SearchableContent.FTS_TABLE_NAME + " (docid, "
+        + SearchableContent.COLUMN_TITLE + ", "
+        + SearchableContent.COLUMN_BODY + ") VALUES (?, ?, ?)";
+
+    try (PreparedStatement statement = database.prepareStatement(insertFts)) {
+      statement.setLong(1, id);
+      statement.setString(2, title);
+      statement.setString(3, body);
+      statement.executeUpdate();
+    }
+  }
+
+  private List<String> search(String query) throws SQLException {
+    return search(query, null);
+  }
+
+  /**
+   * @return Fullnames of the matches.
+   */
+  private List<String> search(String query, Type type) throws SQLException {
+    String matchQuery = OfflineSearchIndex.toMatchQuery(query);
+    String sql = type == null ? SearchableContent.QUERY_SEARCH : SearchableContent.QUERY_SEARCH_OF_TYPE;
+
+    try (PreparedStatement statement = database.prepareStatement(sql)) {
+      int index = 1;
+      statement.setString(index++, matchQuery);
+      if (type != null) {
+        statement.setString(index++, type.name());
+      }
+      statement.setInt(index, 10);
+
+      List<String> fullnames = new ArrayList<>();
+      try (ResultSet results = statement.executeQuery()) {
+        while (results.next()) {
+          fullnames.add(results.getString(SearchableContent.COLUMN_FULLNAME));
+        }
+      }
+      return fullnames;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package me.saket.dank.notifs;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import me.saket.dank.notifs.MediaDownloadQueue.NetworkAvailability;
+import me.saket.dank.urlparser.MediaLink;
+import me.saket.dank.utils.Optional;
+
+public class MediaDownloadQueueShould {
+
+  private static final long NOW = 1_000_000;
+  private static final NetworkAvailability ANY_NETWORK = new NetworkAvailability(true, true);
+
+  @Test
+  public void startDownloadsInQueueOrderUpToTheFreeSlots() {
+    QueuedMediaDownload first = queued(image("first"), 0);
+    QueuedMediaDownload second = queued(image("second"), 0);
+    QueuedMediaDownload third = queued(image("third"), 0);
+
+    List<QueuedMediaDownload> toStart = MediaDownloadQueue.selectDownloadsToStart(
+        Arrays.asList(first, second, third), Collections.singleton("running"), 3, ANY_NETWORK, NOW);
+
+    assertThat(toStart).containsExactly(first, second).inOrder();
+  }
+
+  @Test
+  public void skipDownloadsThatAreWaitingForARetry() {
+    QueuedMediaDownload retryingLater = queued(image("later"), NOW + 1);
+    QueuedMediaDownload ready = queued(image("ready"), NOW);
+
+    List<QueuedMediaDownload> toStart = MediaDownloadQueue.selectDownloadsToStart(
+        Arrays.asList(retryingLater, ready), Collections.emptySet(), 2, ANY_NETWORK, NOW);
+
+    assertThat(toStart).containsExactly(ready);
+    assertThat(MediaDownloadQueue.nextRetryTimeMillis(Arrays.asList(retryingLater, ready), NOW)).isEqualTo(Optional.of(NOW + 1));
+  }
+
+  @Test
+  public void holdBackVideosUntilTheirNetworkIsAvailable() {
+    QueuedMediaDownload video = queued(video("video"), 0);
+    QueuedMediaDownload image = queued(image("image"), 0);
+
+    List<QueuedMediaDownload> toStart = MediaDownloadQueue.selectDownloadsToStart(
+        Arrays.asList(video, image), Collections.emptySet(), 2, new NetworkAvailability(true, false), NOW);
+
+    assertThat(toStart).containsExactly(image);
+  }
+
+  @Test
+  public void backOffExponentiallyBetweenRetries() {
+    assertThat(MediaDownloadQueue.retryDelayMillis(2)).isEqualTo(MediaDownloadQueue.retryDelayMillis(1) * 2);
+    assertThat(MediaDownloadQueue.retryDelayMillis(3)).isEqualTo(MediaDownloadQueue.retryDelayMillis(1) * 4);
+  }
+
+  private static QueuedMediaDownload queued(MediaLink mediaLink, long nextAttemptTimeMillis) {
+    QueuedMediaDownload download = QueuedMediaDownload.create(mediaLink, null, QueuedMediaDownload.PRIORITY_NORMAL, 0);
+    return new AutoValue_QueuedMediaDownload(
+        download.linkUrl(),
+        download.mediaLink(),
+        download.batchId(),
+        download.priority(),
+        download.state(),
+        download.attemptCount(),
+        nextAttemptTimeMillis,
+        download.enqueueTimeMillis());
+  }
+
+  private static MediaLink image(String url) {
+    return mediaLink(url, false);
+  }
+
+  private static MediaLink video(String url) {
+    return mediaLink(url, true);
+  }
+
+  private static MediaLink mediaLink(String url, boolean isVideo) {
+    MediaLink mediaLink = mock(MediaLink.class);
+    when(mediaLink.unparsedUrl()).thenReturn(url);
+    when(mediaLink.isVideo()).thenReturn(isVideo);
+    return mediaLink;
+  }
+}
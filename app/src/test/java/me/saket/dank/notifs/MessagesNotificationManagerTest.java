@@ -7,37 +7,22 @@ import static org.mockito.Mockito.when;
 import net.dean.jraw.models.Message;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-
-import io.reactivex.Completable;
-import io.reactivex.Single;
-import me.saket.dank.notifs.MessagesNotificationManager.SeenUnreadMessagesIdStore;
 
 public class MessagesNotificationManagerTest {
 
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private MessagesNotificationManager notificationManager;
 
   @Before
   public void setUp() throws Exception {
-    //noinspection ConstantConditions
-    SeenUnreadMessagesIdStore seenUnreadMessagesIdStore = new SeenUnreadMessagesIdStore(null) {
-      private Set<String> seenMessageIds = Collections.emptySet();
-
-      @Override
-      public Completable save(Set<String> seenMessageIds) {
-        return Completable.fromAction(() -> this.seenMessageIds = seenMessageIds);
-      }
-
-      @Override
-      public Single<Set<String>> get() {
-        return Single.just(seenMessageIds);
-      }
-    };
+    SeenUnreadMessagesIdStore seenUnreadMessagesIdStore = new SeenUnreadMessagesIdStore(temporaryFolder.newFile(), null);
 
     //noinspection ConstantConditions
     notificationManager = new MessagesNotificationManager(seenUnreadMessagesIdStore, null, null, null);
@@ -65,7 +50,6 @@ public class MessagesNotificationManagerTest {
     // Notifs are refreshed.
     notificationManager
         .markMessageNotifAsSeen(unreadMessages.get(0))
-        .andThen(notificationManager.removeMessageNotifSeenStatus(unreadMessages.get(0)))
         .subscribe();
 
     // Notifs are refreshed after marking the first as read.
@@ -95,7 +79,6 @@ public class MessagesNotificationManagerTest {
     // User marks another message as read.
     notificationManager
         .markMessageNotifAsSeen(unreadMessages.get(1))
-        .andThen(notificationManager.removeMessageNotifSeenStatus(unreadMessages.get(1)))
         .subscribe();
 
     // Notifs are refreshed.
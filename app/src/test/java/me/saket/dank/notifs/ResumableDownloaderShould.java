@@ -0,0 +1,189 @@
+package me.saket.dank.notifs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.reactivex.observers.TestObserver;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+public class ResumableDownloaderShould {
+
+  private static final int MIN_BYTES_PER_SEGMENT = 1024;
+  private static final String ETAG = "\"v1\"";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private MockWebServer server;
+  private ResumableDownloader downloader;
+  private File destination;
+
+  @Before
+  public void setUp() throws IOException {
+    server = new MockWebServer();
+    server.start();
+    downloader = new ResumableDownloader(new OkHttpClient(), 4, MIN_BYTES_PER_SEGMENT);
+    destination = new File(temporaryFolder.getRoot(), "video.mp4");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    server.shutdown();
+  }
+
+  @Test
+  public void downloadSmallFilesOverOneConnection() throws Exception {
+    byte[] content = randomBytes(MIN_BYTES_PER_SEGMENT);
+    server.setDispatcher(new RangeServingDispatcher(content));
+
+    awaitDownload().assertComplete();
+
+    assertThat(Files.readAllBytes(destination.toPath())).isEqualTo(content);
+    assertThat(server.getRequestCount()).isEqualTo(1);
+    assertThat(temporaryFolder.getRoot().list()).asList().containsExactly(destination.getName());
+  }
+
+  @Test
+  public void downloadLargeFilesInParallelSegments() throws Exception {
+    byte[] content = randomBytes(MIN_BYTES_PER_SEGMENT * 4 + 100);
+    server.setDispatcher(new RangeServingDispatcher(content));
+
+    awaitDownload().assertComplete();
+
+    assertThat(Files.readAllBytes(destination.toPath())).isEqualTo(content);
+    assertThat(server.getRequestCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void resumeFromWhereTheConnectionDropped() throws Exception {
+    byte[] content = randomBytes(MIN_BYTES_PER_SEGMENT);
+    int dropAt = 600;
+    server.enqueue(truncatedResponse(content, dropAt));
+
+    awaitDownload().assertError(IOException.class);
+    assertThat(destination.exists()).isFalse();
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(206)
+        .setHeader("Content-Range", "bytes " + dropAt + "-" + (content.length - 1) + "/" + content.length)
+        .setBody(new Buffer().write(Arrays.copyOfRange(content, dropAt, content.length))));
+
+    awaitDownload().assertComplete();
+
+    server.takeRequest();
+    RecordedRequest resumeRequest = server.takeRequest();
+    assertThat(resumeRequest.getHeader("Range")).isEqualTo("bytes=" + dropAt + "-" + (content.length - 1));
+    assertThat(resumeRequest.getHeader("If-Range")).isEqualTo(ETAG);
+    assertThat(Files.readAllBytes(destination.toPath())).isEqualTo(content);
+  }
+
+  @Test
+  public void restartWhenTheServerIgnoresTheRange() throws Exception {
+    byte[] content = randomBytes(MIN_BYTES_PER_SEGMENT);
+    server.enqueue(truncatedResponse(content, 600));
+    awaitDownload().assertError(IOException.class);
+
+    // File changed, so If-Range makes the server send all of it.
+    byte[] changedContent = randomBytes(MIN_BYTES_PER_SEGMENT);
+    server.enqueue(new MockResponse().setBody(new Buffer().write(changedContent)));
+    server.enqueue(new MockResponse().setBody(new Buffer().write(changedContent)));
+
+    awaitDownload().assertComplete();
+
+    assertThat(server.getRequestCount()).isEqualTo(3);
+    assertThat(Files.readAllBytes(destination.toPath())).isEqualTo(changedContent);
+  }
+
+  @Test
+  public void startOverAfterPartialDownloadIsDiscarded() throws Exception {
+    byte[] content = randomBytes(MIN_BYTES_PER_SEGMENT);
+    server.enqueue(truncatedResponse(content, 600));
+    awaitDownload().assertError(IOException.class);
+
+    downloader.discardPartialDownload(destination).blockingAwait();
+    server.enqueue(new MockResponse().setBody(new Buffer().write(content)));
+    awaitDownload().assertComplete();
+
+    server.takeRequest();
+    assertThat(server.takeRequest().getHeader("Range")).isNull();
+    assertThat(Files.readAllBytes(destination.toPath())).isEqualTo(content);
+  }
+
+  private TestObserver<ResumableDownloader.Progress> awaitDownload() {
+    TestObserver<ResumableDownloader.Progress> observer = downloader.download(server.url("/video.mp4").toString(), destination).test();
+    observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+    return observer;
+  }
+
+  /**
+   * Sends the headers of the whole file, but disconnects after <var>byteCount</var> bytes.
+   */
+  private static MockResponse truncatedResponse(byte[] content, int byteCount) {
+    return new MockResponse()
+        .setBody(new Buffer().write(Arrays.copyOf(content, byteCount)))
+        .setHeader("Content-Length", content.length)
+        .setHeader("ETag", ETAG)
+        .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END);
+  }
+
+  private static byte[] randomBytes(int count) {
+    byte[] bytes = new byte[count];
+    new Random(count).nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Serves a file like a CDN would, including byte ranges.
+   */
+  private static class RangeServingDispatcher extends Dispatcher {
+    private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    private final byte[] content;
+
+    RangeServingDispatcher(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+      String range = request.getHeader("Range");
+      if (range == null) {
+        return new MockResponse()
+            .setHeader("Accept-Ranges", "bytes")
+            .setHeader("ETag", ETAG)
+            .setBody(new Buffer().write(content));
+      }
+
+      Matcher matcher = RANGE_PATTERN.matcher(range);
+      if (!matcher.matches()) {
+        return new MockResponse().setResponseCode(416);
+      }
+      int start = Integer.parseInt(matcher.group(1));
+      int end = matcher.group(2).isEmpty() ? content.length - 1 : Integer.parseInt(matcher.group(2));
+      return new MockResponse()
+          .setResponseCode(206)
+          .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length)
+          .setHeader("ETag", ETAG)
+          .setBody(new Buffer().write(Arrays.copyOfRange(content, start, end + 1)));
+    }
+  }
+}
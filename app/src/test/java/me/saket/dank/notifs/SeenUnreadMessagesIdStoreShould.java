@@ -0,0 +1,99 @@
+package me.saket.dank.notifs;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class SeenUnreadMessagesIdStoreShould {
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File logFile;
+  private long now = 1528532315000L;
+
+  @Before
+  public void setUp() throws IOException {
+    logFile = new File(temporaryFolder.getRoot(), "seen_ids.log");
+  }
+
+  @Test
+  public void restoreSeenIdsFromTheLog() {
+    store().add(Arrays.asList("a", "b")).blockingAwait();
+    store().add(Collections.singletonList("c")).blockingAwait();
+
+    assertThat(store().get().blockingGet()).containsExactly("a", "b", "c");
+  }
+
+  @Test
+  public void pruneIdsThatWereSeenLongAgo() {
+    store().add(Collections.singletonList("old")).blockingAwait();
+    now += SeenUnreadMessagesIdStore.MAX_AGE_MILLIS / 2;
+    store().add(Collections.singletonList("recent")).blockingAwait();
+    now += SeenUnreadMessagesIdStore.MAX_AGE_MILLIS / 2 + 1;
+
+    assertThat(store().get().blockingGet()).containsExactly("recent");
+  }
+
+  @Test
+  public void keepIdsThatWereSeenAgainRecently() {
+    store().add(Collections.singletonList("a")).blockingAwait();
+    now += SeenUnreadMessagesIdStore.MAX_AGE_MILLIS / 2;
+    store().add(Collections.singletonList("a")).blockingAwait();
+    now += SeenUnreadMessagesIdStore.MAX_AGE_MILLIS / 2 + 1;
+
+    assertThat(store().get().blockingGet()).containsExactly("a");
+  }
+
+  @Test
+  public void compactTheLogWhenItIsMostlyRepeatedIds() {
+    SeenUnreadMessagesIdStore store = store();
+    for (int i = 0; i < SeenUnreadMessagesIdStore.MIN_LINES_FOR_COMPACTION; i++) {
+      store.add(Arrays.asList("a", "b")).blockingAwait();
+    }
+
+    assertThat(store.logLineCount()).isLessThan(SeenUnreadMessagesIdStore.MIN_LINES_FOR_COMPACTION);
+    assertThat(store().get().blockingGet()).containsExactly("a", "b");
+  }
+
+  @Test
+  public void forgetAllIdsWhenCleared() {
+    store().add(Arrays.asList("a", "b")).blockingAwait();
+    store().clear().blockingAwait();
+
+    assertThat(store().get().blockingGet()).isEmpty();
+  }
+
+  @Test
+  public void startOverWhenTheLogIsCorrupt() throws IOException {
+    try (Writer writer = new FileWriter(logFile)) {
+      writer.write("garbage a\n");
+    }
+
+    assertThat(store().get().blockingGet()).isEmpty();
+
+    store().add(Collections.singletonList("b")).blockingAwait();
+    assertThat(store().get().blockingGet()).containsExactly("b");
+  }
+
+  /**
+   * A new instance reads everything from the log, like it would after the app's process gets killed.
+   */
+  private SeenUnreadMessagesIdStore store() {
+    return new SeenUnreadMessagesIdStore(logFile, null) {
+      @Override
+      long currentTimeMillis() {
+        return now;
+      }
+    };
+  }
+}
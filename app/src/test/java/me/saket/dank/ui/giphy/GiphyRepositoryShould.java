@@ -0,0 +1,155 @@
+package me.saket.dank.ui.giphy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+import me.saket.dank.di.DankApi;
+
+public class GiphyRepositoryShould {
+
+  private static final int PAGE_SIZE = GiphyRepository.GIFS_TO_LOAD_PER_NETWORK_CALL;
+  /** Two full pages and a partial one. */
+  private static final int TOTAL_COUNT = PAGE_SIZE * 2 + 15;
+
+  @Rule public MockitoRule mockitoRule = MockitoJUnit.rule();
+  @Mock DankApi dankApi;
+
+  private GiphyRepository giphyRepository;
+
+  @Before
+  public void setUp() {
+    // Fake Giphy API that has TOTAL_COUNT GIFs for every query.
+    when(dankApi.giphySearch(anyString(), anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+      Object[] arguments = invocation.getArguments();
+      return Single.just(fakeResponse((String) arguments[1], (int) arguments[2], (int) arguments[3]));
+    });
+    when(dankApi.giphyTrending(anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+      Object[] arguments = invocation.getArguments();
+      return Single.just(fakeResponse("trending", (int) arguments[1], (int) arguments[2]));
+    });
+
+    giphyRepository = new GiphyRepository(dankApi);
+  }
+
+  @Test
+  public void request_only_queries_that_were_not_searched_before_while_typing() {
+    String[] keystrokes = { "c", "ca", "cat", "Cat ", "cat  ", "ca", "cat", "cats" };
+    for (String query : keystrokes) {
+      giphyRepository.pages(query, Observable.never())
+          .test()
+          .assertNoErrors()
+          .assertValueCount(1);
+    }
+
+    verify(dankApi, times(1)).giphySearch(anyString(), eq("c"), anyInt(), eq(0));
+    verify(dankApi, times(1)).giphySearch(anyString(), eq("ca"), anyInt(), eq(0));
+    verify(dankApi, times(1)).giphySearch(anyString(), eq("cat"), anyInt(), eq(0));
+    verify(dankApi, times(1)).giphySearch(anyString(), eq("cats"), anyInt(), eq(0));
+    verify(dankApi, times(4)).giphySearch(anyString(), anyString(), anyInt(), anyInt());
+  }
+
+  @Test
+  public void request_one_page_per_scroll_until_all_results_are_loaded() {
+    PublishSubject<Object> nextPageRequests = PublishSubject.create();
+    TestObserver<GiphySearchPage> pagesObserver = giphyRepository.pages("cat", nextPageRequests).test();
+
+    pagesObserver.assertValueCount(1);
+    verify(dankApi, times(1)).giphySearch(anyString(), anyString(), anyInt(), anyInt());
+
+    nextPageRequests.onNext(new Object());
+    pagesObserver.assertValueCount(2);
+    verify(dankApi).giphySearch(anyString(), eq("cat"), anyInt(), eq(PAGE_SIZE));
+
+    nextPageRequests.onNext(new Object());
+    verify(dankApi).giphySearch(anyString(), eq("cat"), anyInt(), eq(PAGE_SIZE * 2));
+    pagesObserver.assertValueCount(3);
+    pagesObserver.assertComplete();
+
+    // Scrolling past the last page.
+    nextPageRequests.onNext(new Object());
+    verify(dankApi, times(3)).giphySearch(anyString(), anyString(), anyInt(), anyInt());
+
+    int loadedGifCount = 0;
+    for (GiphySearchPage page : pagesObserver.values()) {
+      loadedGifCount += page.gifs().size();
+    }
+    assertThat(loadedGifCount).isEqualTo(TOTAL_COUNT);
+  }
+
+  @Test
+  public void not_request_pages_again_when_scrolling_through_an_earlier_query() {
+    PublishSubject<Object> nextPageRequests = PublishSubject.create();
+    TestObserver<GiphySearchPage> firstSearchObserver = giphyRepository.pages("cat", nextPageRequests).test();
+    nextPageRequests.onNext(new Object());
+    firstSearchObserver.dispose();
+
+    giphyRepository.pages("dog", Observable.never()).test();
+
+    TestObserver<GiphySearchPage> pagesObserver = giphyRepository.pages("cat", nextPageRequests).test();
+    nextPageRequests.onNext(new Object());
+    pagesObserver.assertValueCount(2);
+
+    verify(dankApi, times(2)).giphySearch(anyString(), eq("cat"), anyInt(), anyInt());
+  }
+
+  @Test
+  public void retry_only_the_page_that_failed_to_load() {
+    when(dankApi.giphySearch(anyString(), eq("cat"), anyInt(), eq(PAGE_SIZE)))
+        .thenReturn(Single.error(new RuntimeException("Giphy is down")))
+        .thenReturn(Single.just(fakeResponse("cat", PAGE_SIZE, PAGE_SIZE)));
+
+    PublishSubject<Object> nextPageRequests = PublishSubject.create();
+    TestObserver<GiphySearchPage> pagesObserver = giphyRepository.pages("cat", nextPageRequests).test();
+    nextPageRequests.onNext(new Object());
+
+    pagesObserver.assertNoErrors();
+    pagesObserver.assertValueCount(2);
+    verify(dankApi, times(1)).giphySearch(anyString(), eq("cat"), anyInt(), eq(0));
+    verify(dankApi, times(2)).giphySearch(anyString(), eq("cat"), anyInt(), eq(PAGE_SIZE));
+  }
+
+  @Test
+  public void load_trending_gifs_for_an_empty_query() {
+    giphyRepository.pages("  ", Observable.never())
+        .test()
+        .assertValueCount(1);
+
+    verify(dankApi).giphyTrending(anyString(), anyInt(), eq(0));
+    verify(dankApi, never()).giphySearch(anyString(), anyString(), anyInt(), anyInt());
+  }
+
+  private static GiphySearchResponse fakeResponse(String query, int limit, int offset) {
+    int count = Math.max(0, Math.min(limit, TOTAL_COUNT - offset));
+    List<GiphySearchResponse.GiphyItem> items = new ArrayList<>(count);
+    for (int i = offset; i < offset + count; i++) {
+      GiphySearchResponse.GifVariant variant = new AutoValue_GiphySearchResponse_GifVariant(
+          "https://media.giphy.com/" + query + "/" + i + ".gif", "200", "200", "1024");
+      items.add(new AutoValue_GiphySearchResponse_GiphyItem(
+          query + "_" + i,
+          query + " " + i,
+          "https://giphy.com/gifs/" + query + "_" + i,
+          new AutoValue_GiphySearchResponse_GifVariants(variant, variant)));
+    }
+    return new AutoValue_GiphySearchResponse(items, new AutoValue_GiphySearchResponse_PaginationInfo(offset, TOTAL_COUNT, count));
+  }
+}
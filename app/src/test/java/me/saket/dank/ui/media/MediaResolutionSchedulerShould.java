@@ -0,0 +1,80 @@
+package me.saket.dank.ui.media;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import me.saket.dank.ui.media.MediaResolutionScheduler.Host;
+import me.saket.dank.urlparser.MediaLink;
+
+public class MediaResolutionSchedulerShould {
+
+  private MediaResolutionScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    scheduler = new MediaResolutionScheduler();
+  }
+
+  @Test
+  public void shareIdenticalResolutionsThatAreInFlight() {
+    MediaLink unresolvedLink = mediaLink("album");
+    MediaLink resolvedLink = mediaLink("resolved");
+    AtomicInteger requestCount = new AtomicInteger();
+    Single<MediaLink> resolution = Single.fromCallable(() -> {
+      requestCount.incrementAndGet();
+      Thread.sleep(100);
+      return resolvedLink;
+    });
+
+    TestObserver<MediaLink> first = scheduler.schedule(Host.IMGUR, unresolvedLink, resolution).test();
+    TestObserver<MediaLink> second = scheduler.schedule(Host.IMGUR, unresolvedLink, resolution).test();
+
+    first.awaitTerminalEvent(2, TimeUnit.SECONDS);
+    second.awaitTerminalEvent(2, TimeUnit.SECONDS);
+    first.assertValue(resolvedLink);
+    second.assertValue(resolvedLink);
+    assertThat(requestCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void limitConcurrentRequestsPerHost() {
+    AtomicInteger runningCount = new AtomicInteger();
+    AtomicInteger maxRunningCount = new AtomicInteger();
+
+    List<TestObserver<MediaLink>> observers = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      MediaLink link = mediaLink("gif" + i);
+      Single<MediaLink> resolution = Single.fromCallable(() -> {
+        int running = runningCount.incrementAndGet();
+        maxRunningCount.accumulateAndGet(running, Math::max);
+        Thread.sleep(300);
+        runningCount.decrementAndGet();
+        return link;
+      });
+      observers.add(scheduler.schedule(Host.GFYCAT, link, resolution).test());
+    }
+
+    for (TestObserver<MediaLink> observer : observers) {
+      observer.awaitTerminalEvent(5, TimeUnit.SECONDS);
+      observer.assertComplete();
+    }
+    assertThat(maxRunningCount.get()).isAtMost(3);
+  }
+
+  private static MediaLink mediaLink(String cacheKey) {
+    MediaLink mediaLink = mock(MediaLink.class);
+    when(mediaLink.cacheKey()).thenReturn(cacheKey);
+    return mediaLink;
+  }
+}
@@ -4,6 +4,7 @@ import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -18,6 +19,8 @@ import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Completable;
 import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.SingleSubject;
 import me.saket.dank.di.DankApi;
 import me.saket.dank.urlparser.GfycatLink;
 import me.saket.dank.urlparser.UrlParserConfig;
@@ -104,6 +107,29 @@ public class GfycatRepositoryTest {
     verify(data).saveOAuthResponse(oAuthResponse);
   }
 
+  @Test
+  public void when_token_is_expired_and_multiple_gifs_are_requested_then_fetch_token_only_once() throws Exception {
+    when(data.isAccessTokenRequired()).thenReturn(true);
+    long thirtyMinutesBeforeNow = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(30);
+    when(data.tokenExpiryTimeMillis()).thenReturn(Single.just(thirtyMinutesBeforeNow));
+
+    SingleSubject<GfycatOauthResponse> oAuthResponseSubject = SingleSubject.create();
+    when(dankApi.gfycatOAuth(anyString(), anyString())).thenReturn(oAuthResponseSubject);
+    GfycatOauthResponse oAuthResponse = GfycatOauthResponse.create(3600, AUTH_TOKEN);
+    when(data.saveOAuthResponse(oAuthResponse)).thenReturn(Completable.complete());
+
+    GfycatResponse response = GfycatResponse.create(GFYCAT_RESPONSE);
+    when(dankApi.gfycat(AUTH_TOKEN, UNRESOLVED_ID)).thenReturn(Single.just(response));
+
+    TestObserver<GfycatLink> firstObserver = gfycatRepository.gif(UNRESOLVED_ID).test();
+    TestObserver<GfycatLink> secondObserver = gfycatRepository.gif(UNRESOLVED_ID).test();
+    oAuthResponseSubject.onSuccess(oAuthResponse);
+
+    firstObserver.assertValue(GFYCAT_RESOLVED_LINK);
+    secondObserver.assertValue(GFYCAT_RESOLVED_LINK);
+    verify(dankApi, times(1)).gfycatOAuth(anyString(), anyString());
+  }
+
   @Test
   public void when_access_token_is_not_used_and_gfycat_returns_with_403_then_get_token_and_retry() throws Exception {
     when(data.isAccessTokenRequired())
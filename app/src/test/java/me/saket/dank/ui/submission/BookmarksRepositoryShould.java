@@ -0,0 +1,191 @@
+package me.saket.dank.ui.submission;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.database.Cursor;
+
+import com.squareup.sqlbrite2.BriteDatabase;
+
+import net.dean.jraw.models.Identifiable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import io.reactivex.Completable;
+import io.reactivex.schedulers.Schedulers;
+import me.saket.dank.reddit.Reddit;
+import me.saket.dank.ui.submission.Bookmark.PendingState;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(BriteDatabase.class)
+public class BookmarksRepositoryShould {
+
+  private BookmarksRepository bookmarksRepository;
+
+  @Before
+  public void setUp() {
+    //noinspection ConstantConditions
+    bookmarksRepository = new BookmarksRepository(null, null, null, null, Schedulers.trampoline());
+  }
+
+  @Test
+  public void keepPendingSavesThatHaveNotReachedRemote() throws Exception {
+    List<Bookmark> merged = merge(
+        Collections.singletonList(Bookmark.create("t3_a", PendingState.PENDING_SAVE)),
+        Collections.emptyList());
+
+    assertThat(merged).containsExactly(Bookmark.create("t3_a", PendingState.PENDING_SAVE));
+  }
+
+  @Test
+  public void clearPendingSavesThatAreAlreadySavedOnRemote() throws Exception {
+    List<Bookmark> merged = merge(
+        Collections.singletonList(Bookmark.create("t3_a", PendingState.PENDING_SAVE)),
+        Collections.singletonList("t3_a"));
+
+    assertThat(merged).containsExactly(Bookmark.create("t3_a", PendingState.NONE));
+  }
+
+  @Test
+  public void keepPendingUnsavesThatAreStillSavedOnRemote() throws Exception {
+    List<Bookmark> merged = merge(
+        Collections.singletonList(Bookmark.create("t1_a", PendingState.PENDING_UNSAVE)),
+        Collections.singletonList("t1_a"));
+
+    assertThat(merged).containsExactly(Bookmark.create("t1_a", PendingState.PENDING_UNSAVE));
+  }
+
+  @Test
+  public void dropPendingUnsavesThatAreAlreadyUnsavedOnRemote() throws Exception {
+    List<Bookmark> merged = merge(
+        Collections.singletonList(Bookmark.create("t1_a", PendingState.PENDING_UNSAVE)),
+        Collections.emptyList());
+
+    assertThat(merged).isEmpty();
+  }
+
+  @Test
+  public void followRemoteForItemsWithoutPendingActions() throws Exception {
+    List<Bookmark> localBookmarks = Arrays.asList(
+        Bookmark.create("t3_kept", PendingState.NONE),
+        Bookmark.create("t3_unsavedElsewhere", PendingState.NONE));
+    List<String> remoteFullNames = Arrays.asList("t3_kept", "t1_savedElsewhere");
+
+    assertThat(merge(localBookmarks, remoteFullNames)).containsExactly(
+        Bookmark.create("t3_kept", PendingState.NONE),
+        Bookmark.create("t1_savedElsewhere", PendingState.NONE));
+  }
+
+  @Test
+  public void keepSyncedItemsMissingFromARemoteListingThatWasCutOff() throws Exception {
+    List<String> remoteFullNames = new ArrayList<>(BookmarksRepository.REMOTE_LISTING_MAX_SIZE);
+    for (int i = 0; i < BookmarksRepository.REMOTE_LISTING_MAX_SIZE; i++) {
+      remoteFullNames.add("t3_" + i);
+    }
+    List<Bookmark> localBookmarks = Collections.singletonList(Bookmark.create("t3_old", PendingState.NONE));
+
+    assertThat(merge(localBookmarks, remoteFullNames)).contains(Bookmark.create("t3_old", PendingState.NONE));
+  }
+
+  @Test
+  public void keepItemsSavedWhileTheRemoteListingWasDownloading() throws Exception {
+    List<Bookmark> localBookmarks = Collections.singletonList(Bookmark.create("t3_savedJustNow", PendingState.NONE));
+    Set<String> locallyWrittenFullNames = Collections.singleton("t3_savedJustNow");
+
+    assertThat(merge(localBookmarks, Collections.emptyList(), locallyWrittenFullNames))
+        .containsExactly(Bookmark.create("t3_savedJustNow", PendingState.NONE));
+  }
+
+  @Test
+  public void notBringBackItemsUnsavedWhileTheRemoteListingWasDownloading() throws Exception {
+    Set<String> locallyWrittenFullNames = Collections.singleton("t3_unsavedJustNow");
+
+    assertThat(merge(Collections.emptyList(), Collections.singletonList("t3_unsavedJustNow"), locallyWrittenFullNames))
+        .isEmpty();
+  }
+
+  @Test
+  public void skipPendingActionsThatWereToggledAgainBeforeBeingSent() throws Exception {
+    Cursor pendingRows = mock(Cursor.class);
+    when(pendingRows.moveToNext()).thenReturn(true, true, false);
+    when(pendingRows.getColumnIndexOrThrow(Bookmark.COLUMN_FULLNAME)).thenReturn(0);
+    when(pendingRows.getColumnIndexOrThrow(Bookmark.COLUMN_PENDING_ACTION)).thenReturn(1);
+    when(pendingRows.getString(0)).thenReturn("t3_toggled", "t1_unsaved");
+    when(pendingRows.getString(1)).thenReturn(PendingState.PENDING_SAVE.toString(), PendingState.PENDING_UNSAVE.toString());
+
+    Cursor emptyRows = mock(Cursor.class);
+    Cursor matchingRow = mock(Cursor.class);
+    when(matchingRow.moveToNext()).thenReturn(true);
+
+    BriteDatabase database = PowerMockito.mock(BriteDatabase.class);
+    when(database.query(Bookmark.QUERY_GET_ALL)).thenReturn(emptyRows);
+    when(database.query(Bookmark.QUERY_GET_ALL_PENDING)).thenReturn(pendingRows);
+    // The user unsaved "t3_toggled" after the pending rows were read, so its save is no longer pending.
+    when(database.query(Bookmark.QUERY_GET_WITH_FULLNAME_AND_PENDING_ACTION, "t3_toggled", PendingState.PENDING_SAVE.toString()))
+        .thenReturn(emptyRows);
+    when(database.query(Bookmark.QUERY_GET_WITH_FULLNAME_AND_PENDING_ACTION, "t1_unsaved", PendingState.PENDING_UNSAVE.toString()))
+        .thenReturn(matchingRow);
+
+    Reddit.LoggedInUser loggedInUser = mock(Reddit.LoggedInUser.class);
+    when(loggedInUser.save(any())).thenReturn(Completable.complete());
+    when(loggedInUser.unsave(any())).thenReturn(Completable.complete());
+    Reddit reddit = mock(Reddit.class);
+    when(reddit.loggedInUser()).thenReturn(loggedInUser);
+
+    BookmarksRepository repository = new BookmarksRepository(() -> reddit, () -> database, null, null, Schedulers.trampoline());
+    repository.executePendingSavesAndUnsaves()
+        .test()
+        .assertComplete();
+
+    verify(loggedInUser, never()).save(any());
+    verify(loggedInUser).unsave(any());
+  }
+
+  @Test
+  public void waitForBookmarksToLoadBeforeReadingThem() throws Exception {
+    Cursor cursor = mock(Cursor.class);
+    when(cursor.moveToNext()).thenReturn(true, false);
+    when(cursor.getColumnIndexOrThrow(Bookmark.COLUMN_FULLNAME)).thenReturn(0);
+    when(cursor.getColumnIndexOrThrow(Bookmark.COLUMN_PENDING_ACTION)).thenReturn(1);
+    when(cursor.getString(0)).thenReturn("t3_saved");
+    when(cursor.getString(1)).thenReturn(PendingState.NONE.toString());
+
+    BriteDatabase database = PowerMockito.mock(BriteDatabase.class);
+    when(database.query(Bookmark.QUERY_GET_ALL)).thenAnswer(invocation -> {
+      Thread.sleep(200);
+      return cursor;
+    });
+
+    Identifiable savedContribution = mock(Identifiable.class);
+    when(savedContribution.getFullName()).thenReturn("t3_saved");
+
+    BookmarksRepository repository = new BookmarksRepository(null, () -> database, null, null, Schedulers.single());
+
+    assertThat(repository.isSaved(savedContribution)).isTrue();
+  }
+
+  private List<Bookmark> merge(List<Bookmark> localBookmarks, List<String> remoteFullNames) throws Exception {
+    return merge(localBookmarks, remoteFullNames, Collections.emptySet());
+  }
+
+  private List<Bookmark> merge(List<Bookmark> localBookmarks, List<String> remoteFullNames, Set<String> locallyWrittenFullNames)
+      throws Exception
+  {
+    return bookmarksRepository.mergeRemoteBookmarksWithLocal(localBookmarks, locallyWrittenFullNames).apply(remoteFullNames);
+  }
+}
@@ -0,0 +1,182 @@
+package me.saket.dank.ui.submission;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import net.dean.jraw.models.Comment;
+import net.dean.jraw.tree.CommentNode;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import io.reactivex.observers.TestObserver;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Comment.class })
+public class CommentRowStateStoreShould {
+
+  @Test
+  public void applyMultipleChangesWithASingleEmission() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    store.mutate(mutation -> mutation.collapse("t1_comment"));
+
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+    store.mutate(mutation -> mutation
+        .expand("t1_comment")
+        .showReply("t1_comment"));
+
+    changeObserver.assertValueCount(1);
+    CommentRowStateStore.Change change = changeObserver.values().get(0);
+    assertThat(change.changedKeys()).containsExactly("t1_comment");
+    assertThat(change.state().isCollapsed("t1_comment")).isFalse();
+    assertThat(change.state().isReplyActive("t1_comment")).isTrue();
+  }
+
+  @Test
+  public void notModifyPreviousSnapshots() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    CommentRowState snapshotBeforeCollapse = store.snapshot();
+
+    store.mutate(mutation -> mutation.collapse("t1_comment"));
+
+    assertThat(snapshotBeforeCollapse.isCollapsed("t1_comment")).isFalse();
+    assertThat(store.snapshot().isCollapsed("t1_comment")).isTrue();
+    assertThat(store.snapshot().version()).isEqualTo(snapshotBeforeCollapse.version() + 1);
+  }
+
+  @Test
+  public void notEmitWhenNothingChanged() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.mutate(mutation -> mutation.hideReply("t1_comment"));
+
+    changeObserver.assertNoValues();
+  }
+
+  @Test
+  public void collapseAllCommentsAtDepthWithASingleEmission() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.collapseAllAtDepth(commentTree(), 1);
+
+    changeObserver.assertValueCount(1);
+    // t1_c has no replies, so there's nothing to collapse.
+    assertThat(store.snapshot().collapsedKeys()).containsExactly("t1_a", "t1_b");
+  }
+
+  @Test
+  public void collapseCommentsAtNestedDepthWithoutCollapsingTheirParents() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.collapseAllAtDepth(commentTree(), 2);
+
+    changeObserver.assertValueCount(1);
+    assertThat(store.snapshot().collapsedKeys()).containsExactly("t1_a1");
+  }
+
+  @Test
+  public void collapseChildrenOfACommentWithASingleEmission() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.collapseChildrenOf(commentTree(), "t1_a");
+
+    changeObserver.assertValueCount(1);
+    assertThat(store.snapshot().collapsedKeys()).containsExactly("t1_a1");
+  }
+
+  @Test
+  public void collapseCommentsBelowScoreThresholdWithASingleEmission() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.collapseAllBelowScore(commentTree(), -4, Comment::getScore);
+
+    changeObserver.assertValueCount(1);
+    // t1_a1a is hidden by its collapsed parent, so it doesn't need to be collapsed.
+    assertThat(store.snapshot().collapsedKeys()).containsExactly("t1_a1", "t1_c");
+  }
+
+  @Test
+  public void expandAllCommentsWithASingleEmission() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    store.collapseAllAtDepth(commentTree(), 1);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.expandAll();
+
+    changeObserver.assertValueCount(1);
+    assertThat(changeObserver.values().get(0).changedKeys()).containsExactly("t1_a", "t1_b");
+    assertThat(store.snapshot().collapsedKeys()).isEmpty();
+  }
+
+  @Test
+  public void notEmitWhenBulkCollapseFindsNothingNew() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", false);
+    store.collapseAllAtDepth(commentTree(), 1);
+    TestObserver<CommentRowStateStore.Change> changeObserver = store.changes().test();
+
+    store.collapseAllAtDepth(commentTree(), 1);
+    store.collapseChildrenOf(commentTree(), "t1_unknown");
+
+    changeObserver.assertNoValues();
+  }
+
+  @Test
+  public void autoCollapseOnlyOnce() {
+    CommentRowStateStore store = new CommentRowStateStore("t3_submission", true);
+
+    assertThat(store.consumeAutoCollapse()).isTrue();
+    assertThat(store.consumeAutoCollapse()).isFalse();
+  }
+
+  /**
+   * submission
+   * - t1_a (score 10)
+   *   - t1_a1 (score -5)
+   *     - t1_a1a (score -10)
+   *   - t1_a2 (score 1)
+   * - t1_b (score 2, has unloaded replies)
+   * - t1_c (score -8)
+   */
+  private static CommentNode commentTree() {
+    return node(0, null,
+        node(1, comment("t1_a", 10),
+            node(2, comment("t1_a1", -5),
+                node(3, comment("t1_a1a", -10))),
+            node(2, comment("t1_a2", 1))),
+        moreChildrenNode(node(1, comment("t1_b", 2))),
+        node(1, comment("t1_c", -8)));
+  }
+
+  private static Comment comment(String fullname, int score) {
+    Comment comment = PowerMockito.mock(Comment.class);
+    PowerMockito.when(comment.getFullName()).thenReturn(fullname);
+    PowerMockito.when(comment.getScore()).thenReturn(score);
+    return comment;
+  }
+
+  private static CommentNode node(int depth, Object subject, CommentNode... replies) {
+    CommentNode node = mock(CommentNode.class);
+    doReturn(depth).when(node).getDepth();
+    doReturn(subject).when(node).getSubject();
+    doReturn(new ArrayList<>(Arrays.asList(replies))).when(node).getReplies();
+    doReturn(false).when(node).hasMoreChildren();
+    return node;
+  }
+
+  private static CommentNode moreChildrenNode(CommentNode node) {
+    doReturn(true).when(node).hasMoreChildren();
+    return node;
+  }
+}
@@ -0,0 +1,49 @@
+package me.saket.dank.ui.submission;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import me.saket.dank.utils.AutoValueMoshiAdapterFactory;
+
+public class PersistedCollapsedCommentsShould {
+
+  private static final List<String> COLLAPSED_KEYS = Arrays.asList("t1_dq2h0xa", "t1_dq2h1bc", "local_comment_1510000000000");
+
+  @Test
+  public void restoreTheSameKeys() {
+    PersistedCollapsedComments persisted = PersistedCollapsedComments.from(COLLAPSED_KEYS);
+
+    assertThat(persisted.commentIds()).containsExactly("dq2h0xa", "dq2h1bc");
+    assertThat(persisted.otherKeys()).containsExactly("local_comment_1510000000000");
+    assertThat(persisted.collapsedKeys()).containsExactlyElementsIn(COLLAPSED_KEYS);
+  }
+
+  @Test
+  public void surviveJsonRoundTrip() throws Exception {
+    Moshi moshi = new Moshi.Builder()
+        .add(AutoValueMoshiAdapterFactory.create())
+        .build();
+    JsonAdapter<PersistedCollapsedComments> adapter = moshi.adapter(PersistedCollapsedComments.class);
+
+    String json = adapter.toJson(PersistedCollapsedComments.from(COLLAPSED_KEYS));
+    PersistedCollapsedComments restored = adapter.fromJson(json);
+
+    //noinspection ConstantConditions
+    assertThat(restored.collapsedKeys()).containsExactlyElementsIn(COLLAPSED_KEYS);
+  }
+
+  @Test
+  public void handleNoCollapsedComments() {
+    PersistedCollapsedComments persisted = PersistedCollapsedComments.from(Collections.emptyList());
+
+    assertThat(persisted.collapsedKeys()).isEmpty();
+  }
+}
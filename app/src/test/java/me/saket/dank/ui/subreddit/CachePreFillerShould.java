@@ -34,7 +34,9 @@ import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 import me.saket.dank.cache.CachePreFiller;
 import me.saket.dank.data.CachePreFillThing;
+import me.saket.dank.data.FaviconRepository;
 import me.saket.dank.data.LinkMetadataRepository;
+import me.saket.dank.data.PaletteRepository;
 import me.saket.dank.ui.preferences.NetworkStrategy;
 import me.saket.dank.ui.submission.SubmissionImageLoader;
 import me.saket.dank.urlparser.ExternalLink;
@@ -57,6 +59,8 @@ public class CachePreFillerShould {
   @Mock NetworkStateListener networkStateListener;
   @Mock MediaHostRepository mediaHostRepo;
   @Mock LinkMetadataRepository linkMetadataRepo;
+  @Mock FaviconRepository faviconRepo;
+  @Mock PaletteRepository paletteRepo;
   @Mock UrlParser urlParser;
   @Mock HashMap<CachePreFillThing, Preference<NetworkStrategy>> networkStrategies;
   @Mock SubmissionImageLoader imageLoader;
@@ -74,6 +78,8 @@ public class CachePreFillerShould {
         networkStateListener,
         mediaHostRepo,
         linkMetadataRepo,
+        faviconRepo,
+        paletteRepo,
         () -> urlParser,
         () -> imageLoader,
         () -> Schedulers.computation(),
@@ -0,0 +1,70 @@
+package me.saket.dank.ui.subreddit.uimodels;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class RowUiModelCacheShould {
+
+  private static final int ROW_COUNT = 100;
+
+  private RowUiModelCache<String, String> rowCache;
+  private List<String> sources;
+
+  @Before
+  public void setUp() {
+    rowCache = new RowUiModelCache<>();
+    sources = new ArrayList<>(ROW_COUNT);
+    for (int i = 0; i < ROW_COUNT; i++) {
+      sources.add("t3_" + i);
+    }
+  }
+
+  @Test
+  public void rebuildOnlyTheToggledRow() throws Exception {
+    assertThat(pass(RowUiModelCache.Invalidation.all())).isEqualTo(ROW_COUNT);
+
+    RowUiModelCache.Invalidation toggle = RowUiModelCache.Invalidation.of(Collections.singleton("t3_42"));
+    assertThat(pass(toggle)).isEqualTo(1);
+
+    // Other sources of the pipeline emitting with the same invalidation.
+    assertThat(pass(toggle)).isEqualTo(0);
+  }
+
+  @Test
+  public void rebuildAllRowsWhenEverythingIsInvalidated() throws Exception {
+    pass(RowUiModelCache.Invalidation.all());
+
+    assertThat(pass(RowUiModelCache.Invalidation.all())).isEqualTo(ROW_COUNT);
+  }
+
+  @Test
+  public void rebuildRowsWhoseSourceChanged() throws Exception {
+    RowUiModelCache.Invalidation invalidation = RowUiModelCache.Invalidation.all();
+    pass(invalidation);
+
+    sources.set(7, "t3_7");
+    assertThat(pass(invalidation)).isEqualTo(0);
+
+    sources.set(7, "t3_7_edited");
+    assertThat(pass(invalidation)).isEqualTo(1);
+  }
+
+  /**
+   * @return Number of rows rebuilt.
+   */
+  private int pass(RowUiModelCache.Invalidation invalidation) throws Exception {
+    rowCache.startPass(invalidation);
+    for (int i = 0; i < sources.size(); i++) {
+      String source = sources.get(i);
+      String row = rowCache.row("t3_" + i, source, s -> "row of " + s);
+      assertThat(row).isEqualTo("row of " + source);
+    }
+    return rowCache.endPass();
+  }
+}
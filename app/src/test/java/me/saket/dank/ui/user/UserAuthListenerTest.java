@@ -22,6 +22,7 @@ import io.reactivex.functions.Predicate;
 import me.saket.dank.ImmediateSchedulersRule;
 import me.saket.dank.analytics.CrashReporter;
 import me.saket.dank.ui.preferences.NetworkStrategy;
+import me.saket.dank.ui.submission.BookmarksRepository;
 import me.saket.dank.ui.subscriptions.SubscriptionRepository;
 import me.saket.dank.utils.Optional;
 import me.saket.dank.utils.TimeInterval;
@@ -32,6 +33,7 @@ public class UserAuthListenerTest {
   @Rule public ImmediateSchedulersRule schedulersRule = ImmediateSchedulersRule.create();
 
   @Mock SubscriptionRepository subscriptionRepository;
+  @Mock BookmarksRepository bookmarksRepository;
   @Mock UserSessionRepository userSessionRepository;
   @Mock CrashReporter crashReporter;
   @Mock Preference<Boolean> unreadMessagesPollEnabled;
@@ -44,6 +46,7 @@ public class UserAuthListenerTest {
   public void setUp() {
     userAuthListener = spy(new UserAuthListener(
         () -> subscriptionRepository,
+        () -> bookmarksRepository,
         () -> userSessionRepository,
         () -> crashReporter,
         () -> unreadMessagesPollEnabled,
@@ -69,6 +72,8 @@ public class UserAuthListenerTest {
     when(userSessionRepository.streamSessions()).thenReturn(Observable.just(Optional.empty(), user));
     when(subscriptionRepository.removeAll()).thenReturn(Completable.complete());
     when(subscriptionRepository.refreshAndSaveSubscriptions()).thenReturn(Completable.complete());
+    when(bookmarksRepository.removeAll()).thenReturn(Completable.complete());
+    when(bookmarksRepository.refreshAndSaveBookmarks()).thenReturn(Completable.complete());
 
     //noinspection ConstantConditions
     userAuthListener.startListening(null)
@@ -78,12 +83,15 @@ public class UserAuthListenerTest {
     verify(userAuthListener).handleLoggedIn(any(), any());
     verify(subscriptionRepository).removeAll();
     verify(subscriptionRepository).refreshAndSaveSubscriptions();
+    verify(bookmarksRepository).removeAll();
+    verify(bookmarksRepository).refreshAndSaveBookmarks();
   }
 
   @Test
   public void on_logout_should_remove_all_user_subscriptions() {
     when(userSessionRepository.streamSessions()).thenReturn(Observable.just(Optional.empty(), Optional.empty()));
     when(subscriptionRepository.removeAll()).thenReturn(Completable.complete());
+    when(bookmarksRepository.removeAll()).thenReturn(Completable.complete());
 
     //noinspection ConstantConditions
     userAuthListener.startListening(null)
@@ -93,6 +101,7 @@ public class UserAuthListenerTest {
 
     verify(userAuthListener).handleLoggedOut();
     verify(subscriptionRepository).removeAll();
+    verify(bookmarksRepository).removeAll();
   }
 
   @NonNull
@@ -0,0 +1,109 @@
+package me.saket.dank.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ListDiffShould {
+
+  @Test
+  public void dispatchKnownChangesWithoutComparingItems() {
+    List<Long> oldItems = Arrays.asList(1L, 2L, 3L, 4L);
+    List<Long> newItems = Arrays.asList(1L, 3L, 4L, 5L);
+    Set<Long> changedItems = Collections.singleton(3L);
+
+    ListDiff diff = ListDiff.fromKnownChanges(ids(oldItems), ids(newItems), changedItems);
+    RecordedUpdates updates = applyDiff(diff, oldItems, newItems);
+
+    assertThat(diff.strategy()).isEqualTo(ListDiff.Strategy.KNOWN_CHANGES);
+    assertThat(updates.items).isEqualTo(newItems);
+    assertThat(updates.changedPositions).containsExactly(1);
+  }
+
+  @Test
+  public void moveReorderedItemsInsteadOfReplacingAll() {
+    // A thread that received a new reply jumps to the top.
+    List<Long> oldItems = Arrays.asList(1L, 2L, 3L, 4L, 5L);
+    List<Long> newItems = Arrays.asList(4L, 1L, 2L, 3L, 5L);
+
+    ListDiff diff = ListDiff.fromKnownChanges(ids(oldItems), ids(newItems), Collections.singleton(4L));
+    RecordedUpdates updates = applyDiff(diff, oldItems, newItems);
+
+    assertThat(updates.items).isEqualTo(newItems);
+    assertThat(updates.removedCount).isEqualTo(1);
+    assertThat(updates.insertedCount).isEqualTo(1);
+  }
+
+  private static long[] ids(List<Long> items) {
+    long[] ids = new long[items.size()];
+    for (int i = 0; i < items.size(); i++) {
+      ids[i] = items.get(i);
+    }
+    return ids;
+  }
+
+  /**
+   * Applies the diff to a copy of the old list, using items from the new list.
+   */
+  private static RecordedUpdates applyDiff(ListDiff diff, List<Long> oldItems, List<Long> newItems) {
+    RecordedUpdates updates = new RecordedUpdates(oldItems);
+    diff.dispatchUpdatesTo(updates);
+
+    // Inserted rows get bound to the items at their final positions.
+    for (int i = 0; i < updates.items.size(); i++) {
+      if (updates.items.get(i) == null) {
+        updates.items.set(i, newItems.get(i));
+      }
+    }
+    return updates;
+  }
+
+  private static class RecordedUpdates implements ListUpdateCallback {
+    final List<Long> items;
+    final Set<Integer> changedPositions = new HashSet<>();
+    int insertedCount;
+    int removedCount;
+
+    RecordedUpdates(List<Long> oldItems) {
+      this.items = new ArrayList<>(oldItems);
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+      for (int i = 0; i < count; i++) {
+        items.add(position + i, null);
+      }
+      insertedCount += count;
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+      for (int i = 0; i < count; i++) {
+        items.remove(position);
+      }
+      removedCount += count;
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+      items.add(toPosition, items.remove(fromPosition));
+    }
+
+    @Override
+    public void onChanged(int position, int count, @Nullable Object payload) {
+      for (int i = 0; i < count; i++) {
+        changedPositions.add(position + i);
+      }
+    }
+  }
+}
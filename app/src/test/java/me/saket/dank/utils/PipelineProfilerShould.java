@@ -0,0 +1,70 @@
+package me.saket.dank.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import me.saket.dank.utils.PipelineProfiler.Event;
+import me.saket.dank.utils.PipelineProfiler.EventType;
+
+public class PipelineProfilerShould {
+
+  @Test
+  public void recordTheSourceThatTriggeredEachRecompute() {
+    PipelineProfiler profiler = new PipelineProfiler(16, true);
+    PublishSubject<Integer> numbers = PublishSubject.create();
+    PublishSubject<String> letters = PublishSubject.create();
+
+    profiler
+        .profile("test", trace -> Observable.combineLatest(
+            numbers.compose(trace.source("numbers")),
+            letters.compose(trace.source("letters")),
+            (number, letter) -> number + letter))
+        .test();
+
+    numbers.onNext(1);
+    letters.onNext("a");
+    numbers.onNext(2);
+
+    List<Event> events = profiler.events();
+    assertThat(events).hasSize(4);
+    assertThat(events.get(0).type()).isEqualTo(EventType.SOURCE_FIRST_EMISSION);
+    assertThat(events.get(1).type()).isEqualTo(EventType.SOURCE_FIRST_EMISSION);
+
+    assertThat(events.get(2).type()).isEqualTo(EventType.FIRST_EMISSION);
+    assertThat(events.get(2).trigger()).isEqualTo("letters");
+
+    assertThat(events.get(3).type()).isEqualTo(EventType.RECOMPUTE);
+    assertThat(events.get(3).trigger()).isEqualTo("numbers");
+    assertThat(events.get(3).emissionIndex()).isEqualTo(1);
+  }
+
+  @Test
+  public void overwriteOldestEventsWhenFull() {
+    PipelineProfiler profiler = new PipelineProfiler(3, true);
+    PublishSubject<Integer> numbers = PublishSubject.create();
+
+    profiler.profile("test", trace -> numbers.compose(trace.source("numbers"))).test();
+    for (int i = 0; i < 5; i++) {
+      numbers.onNext(i);
+    }
+
+    List<Event> events = profiler.events();
+    assertThat(events).hasSize(3);
+    assertThat(events.get(0).emissionIndex()).isEqualTo(2);
+    assertThat(events.get(2).emissionIndex()).isEqualTo(4);
+  }
+
+  @Test
+  public void recordNothingWhenDisabled() {
+    PipelineProfiler profiler = new PipelineProfiler(16, false);
+
+    profiler.profile("test", trace -> Observable.just(1).compose(trace.source("one"))).test();
+
+    assertThat(profiler.events()).isEmpty();
+  }
+}
@@ -0,0 +1,144 @@
+package me.saket.dank.utils;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.support.annotation.Nullable;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class RxDiffUtilShould {
+
+  @Test
+  public void reconcileItemsWithStableIdsWithoutDiffUtil() throws Exception {
+    List<Long> oldItems = Arrays.asList(1L, 2L, 3L, 4L, 5L);
+    List<Long> newItems = Arrays.asList(0L, 1L, 3L, 4L, 6L, 7L);
+
+    ListDiff diff = RxDiffUtil.calculate(new IdDiffer(oldItems, newItems), () -> false);
+
+    assertThat(diff.strategy()).isEqualTo(ListDiff.Strategy.ID_RECONCILIATION);
+    assertThat(applyDiff(diff, oldItems, newItems)).isEqualTo(newItems);
+  }
+
+  @Test
+  public void reconcileReorderedItemsWithoutDiffUtil() throws Exception {
+    List<Long> oldItems = Arrays.asList(1L, 2L, 3L);
+    List<Long> newItems = Arrays.asList(3L, 1L, 2L);
+
+    ListDiff diff = RxDiffUtil.calculate(new IdDiffer(oldItems, newItems), () -> false);
+
+    assertThat(diff.strategy()).isEqualTo(ListDiff.Strategy.ID_RECONCILIATION);
+    assertThat(applyDiff(diff, oldItems, newItems)).isEqualTo(newItems);
+  }
+
+  @Test
+  public void onlyMoveReorderedItemsOfLargeLists() throws Exception {
+    List<Long> oldItems = new ArrayList<>();
+    for (long i = 0; i < 2_000; i++) {
+      oldItems.add(i);
+    }
+    // A thread that received a new reply jumps to the top.
+    List<Long> newItems = new ArrayList<>(oldItems);
+    newItems.add(0, newItems.remove(1_500));
+
+    ListDiff diff = RxDiffUtil.calculate(new IdDiffer(oldItems, newItems), () -> false);
+    int[] removedAndInsertedCounts = new int[2];
+    List<Long> updatedItems = applyDiff(diff, oldItems, newItems, removedAndInsertedCounts);
+
+    assertThat(diff.strategy()).isEqualTo(ListDiff.Strategy.ID_RECONCILIATION);
+    assertThat(updatedItems).isEqualTo(newItems);
+    assertThat(removedAndInsertedCounts[0]).isEqualTo(1);
+    assertThat(removedAndInsertedCounts[1]).isEqualTo(1);
+  }
+
+  @Test
+  public void fallBackToDiffUtilWhenIdsAreNotUnique() throws Exception {
+    List<Long> oldItems = Arrays.asList(1L, 2L, 2L);
+    List<Long> newItems = Arrays.asList(2L, 1L, 2L);
+
+    ListDiff diff = RxDiffUtil.calculate(new IdDiffer(oldItems, newItems), () -> false);
+
+    assertThat(diff.strategy()).isEqualTo(ListDiff.Strategy.DIFF_UTIL);
+    assertThat(applyDiff(diff, oldItems, newItems)).isEqualTo(newItems);
+  }
+
+  @Test(expected = CancellationException.class)
+  public void abandonCancelledDiffs() throws Exception {
+    List<Long> oldItems = new ArrayList<>();
+    List<Long> newItems = new ArrayList<>();
+    for (long i = 0; i < 5_000; i++) {
+      oldItems.add(i);
+      newItems.add(i * 2);
+    }
+
+    RxDiffUtil.calculate(new IdDiffer(oldItems, newItems), () -> true);
+  }
+
+  /**
+   * Applies the diff to a copy of the old list, using items from the new list.
+   */
+  private static List<Long> applyDiff(ListDiff diff, List<Long> oldItems, List<Long> newItems) {
+    return applyDiff(diff, oldItems, newItems, new int[2]);
+  }
+
+  /**
+   * @param removedAndInsertedCounts Receives the number of removed and inserted items.
+   */
+  private static List<Long> applyDiff(ListDiff diff, List<Long> oldItems, List<Long> newItems, int[] removedAndInsertedCounts) {
+    List<Long> items = new ArrayList<>(oldItems);
+    diff.dispatchUpdatesTo(new ListUpdateCallback() {
+      @Override
+      public void onInserted(int position, int count) {
+        removedAndInsertedCounts[1] += count;
+        for (int i = 0; i < count; i++) {
+          items.add(position + i, null);
+        }
+      }
+
+      @Override
+      public void onRemoved(int position, int count) {
+        removedAndInsertedCounts[0] += count;
+        for (int i = 0; i < count; i++) {
+          items.remove(position);
+        }
+      }
+
+      @Override
+      public void onMoved(int fromPosition, int toPosition) {
+        items.add(toPosition, items.remove(fromPosition));
+      }
+
+      @Override
+      public void onChanged(int position, int count, @Nullable Object payload) {}
+    });
+
+    // Inserted rows get bound to the items at their final positions.
+    for (int i = 0; i < items.size(); i++) {
+      if (items.get(i) == null) {
+        items.set(i, newItems.get(i));
+      }
+    }
+    return items;
+  }
+
+  private static class IdDiffer extends StableIdDiffUtilsCallbacks<Long> {
+    IdDiffer(List<Long> oldItems, List<Long> newItems) {
+      super(oldItems, newItems);
+    }
+
+    @Override
+    public long getItemId(Long item) {
+      return item;
+    }
+
+    @Override
+    protected boolean areContentsTheSame(Long oldItem, Long newItem) {
+      return oldItem.equals(newItem);
+    }
+  }
+}
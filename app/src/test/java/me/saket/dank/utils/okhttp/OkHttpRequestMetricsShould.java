@@ -0,0 +1,107 @@
+package me.saket.dank.utils.okhttp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class OkHttpRequestMetricsShould {
+
+  @Test
+  public void collapseIds() {
+    assertThat(normalize("https://oauth.reddit.com/comments/8kq2mx")).isEqualTo("/comments/{id}");
+    assertThat(normalize("https://api.imgur.com/3/album/Xk3pQ")).isEqualTo("/3/album/{id}");
+    assertThat(normalize("https://imgur-apiv3.p.mashape.com/3/image/abcDEF")).isEqualTo("/3/image/{id}");
+  }
+
+  @Test
+  public void collapseFullnames() {
+    assertThat(normalize("https://oauth.reddit.com/by_id/t3_8kq2mx")).isEqualTo("/by_id/{id}");
+    assertThat(normalize("https://oauth.reddit.com/by_id/t3_abcdef")).isEqualTo("/by_id/{id}");
+  }
+
+  @Test
+  public void collapseNumericSegments() {
+    assertThat(normalize("https://api.gfycat.com/v1/gfycats/123456789")).isEqualTo("/v1/gfycats/{id}");
+    assertThat(normalize("https://example.com/page/2")).isEqualTo("/page/{id}");
+  }
+
+  @Test
+  public void collapseIdsWithoutDigitsOfKnownRoutes() {
+    assertThat(normalize("https://api.gfycat.com/v1/gfycats/CourageousGiddyAnaconda")).isEqualTo("/v1/gfycats/{id}");
+    assertThat(normalize("https://api.streamable.com/videos/moo")).isEqualTo("/videos/{id}");
+  }
+
+  @Test
+  public void collapseSlugsOfRedditPermalinks() {
+    assertThat(normalize("https://www.reddit.com/comments/8kq2mx/dark_theme_is_here/"))
+        .isEqualTo("/comments/{id}/{slug}");
+    assertThat(normalize("https://oauth.reddit.com/r/androiddev/comments/8kq2mx/dark_theme_is_here/dz4a1b2"))
+        .isEqualTo("/r/{subreddit}/comments/{id}/{slug}/{id}");
+  }
+
+  @Test
+  public void collapseMediaFileNames() {
+    assertThat(normalize("https://i.imgur.com/abcDEF.jpg")).isEqualTo("/{file}");
+    assertThat(normalize("https://i.redd.it/qwertyuiop.png")).isEqualTo("/{file}");
+    assertThat(normalize("https://thumbs.gfycat.com/CourageousGiddyAnaconda-mobile.mp4")).isEqualTo("/{file}");
+    assertThat(normalize("https://b.thumbs.redditmedia.com/thumbs/abcdefgh.jpg")).isEqualTo("/thumbs/{file}");
+  }
+
+  @Test
+  public void keepSegmentsThatAreNotIds() {
+    assertThat(normalize("https://oauth.reddit.com/api/v1/me")).isEqualTo("/api/v1/me");
+    assertThat(normalize("https://oauth.reddit.com/r/pics/hot/")).isEqualTo("/r/pics/hot");
+    assertThat(normalize("https://oauth.reddit.com/r/pics/about.json")).isEqualTo("/r/pics/about.json");
+    assertThat(normalize("https://i.redd.it/")).isEqualTo("/");
+  }
+
+  @Test
+  public void measureCallsUntilTheirBodyIsRead() throws IOException {
+    long bodyDelayMillis = 500;
+    MockWebServer server = new MockWebServer();
+    server.enqueue(new MockResponse()
+        .setBody("Slowly streamed body")
+        .throttleBody(10, bodyDelayMillis, TimeUnit.MILLISECONDS));
+
+    OkHttpRequestMetrics metrics = new OkHttpRequestMetrics();
+    OkHttpClient client = new OkHttpClient.Builder()
+        .addInterceptor(metrics.interceptor())
+        .addNetworkInterceptor(metrics.networkInterceptor())
+        .build();
+
+    try (Response response = client.newCall(new Request.Builder().url(server.url("/slow")).build()).execute()) {
+      assertThat(metrics.summary()).doesNotContain("calls");
+
+      //noinspection ConstantConditions
+      response.body().string();
+    } finally {
+      server.shutdown();
+    }
+
+    assertThat(metrics.summary()).contains("1 calls");
+    assertThat(maxMillis(metrics.summary())).isAtLeast(bodyDelayMillis);
+  }
+
+  private static String normalize(String url) {
+    //noinspection ConstantConditions
+    return OkHttpRequestMetrics.normalizePath(HttpUrl.parse(url));
+  }
+
+  private static long maxMillis(String summary) {
+    Matcher matcher = Pattern.compile("max (\\d+)ms").matcher(summary);
+    assertThat(matcher.find()).isTrue();
+    return Long.parseLong(matcher.group(1));
+  }
+}
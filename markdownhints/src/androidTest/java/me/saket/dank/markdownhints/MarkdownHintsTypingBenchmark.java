@@ -0,0 +1,125 @@
+package me.saket.dank.markdownhints;
+
+import static org.junit.Assert.assertEquals;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.vladsch.flexmark.ast.Node;
+import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
+import com.vladsch.flexmark.parser.Parser;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+/**
+ * Replays typing a sentence into the middle of 1k, 10k and 40k character drafts, parsing the
+ * entire draft on every keystroke against parsing only the edited blocks. Only measures parsing,
+ * not the hint spans. Results are logged under {@link #TAG}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MarkdownHintsTypingBenchmark {
+
+  private static final String TAG = "MarkdownTypingBenchmark";
+  private static final String SAMPLE_BLOCKS = ""
+      + "# Dank\n"
+      + "\n"
+      + "Some **bold** text and *italics* with a [link](https://example.com) and `code`.\n"
+      + "A second line of the ~~same~~ paragraph.\n"
+      + "\n"
+      + "> A quote\n"
+      + "> that goes on\n"
+      + "\n"
+      + "- First item\n"
+      + "- Second item\n"
+      + "\n"
+      + "  Continuation of the second item.\n"
+      + "\n"
+      + "1. Ordered\n"
+      + "2. List\n"
+      + "\n"
+      + "    indented code\n"
+      + "\n"
+      + "    more code\n"
+      + "\n"
+      + "***\n"
+      + "\n";
+  private static final int[] DRAFT_LENGTHS = { 1_000, 10_000, 40_000 };
+  private static final String TYPED_TEXT = "Typing a **reply** with a [link](https://reddit.com), `code` and ~~typos~~.\n\n- One\n- Two\n\n";
+  private static final int WARM_UP_ROUNDS = 3;
+
+  private final Parser flexmark = Parser.builder()
+      .extensions(Collections.singletonList(StrikethroughExtension.create()))
+      .build();
+
+  @Test
+  public void typeIntoDrafts() {
+    for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+      typeWithFullParses(draft(DRAFT_LENGTHS[0]));
+      typeWithIncrementalParses(draft(DRAFT_LENGTHS[0]));
+    }
+
+    for (int draftLength : DRAFT_LENGTHS) {
+      StringBuilder fullParseDraft = draft(draftLength);
+      StringBuilder incrementalParseDraft = draft(draftLength);
+      long fullNanos = typeWithFullParses(fullParseDraft);
+      long incrementalNanos = typeWithIncrementalParses(incrementalParseDraft);
+      assertEquals(fullParseDraft.toString(), incrementalParseDraft.toString());
+
+      Log.i(TAG, String.format(
+          "draft: %d chars, keystrokes: %d, full parse: %.3fms/keystroke, incremental parse: %.3fms/keystroke",
+          draftLength,
+          TYPED_TEXT.length(),
+          fullNanos / 1_000_000d / TYPED_TEXT.length(),
+          incrementalNanos / 1_000_000d / TYPED_TEXT.length()));
+    }
+  }
+
+  private long typeWithFullParses(StringBuilder draft) {
+    int offset = draft.length() / 2;
+    long startTime = System.nanoTime();
+    for (int i = 0; i < TYPED_TEXT.length(); i++) {
+      draft.insert(offset + i, TYPED_TEXT.charAt(i));
+      flexmark.parse(draft.toString());
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  private long typeWithIncrementalParses(StringBuilder draft) {
+    IncrementalMarkdownParser parser = new IncrementalMarkdownParser(flexmark);
+    parser.parseAll(draft);
+
+    int offset = draft.length() / 2;
+    long startTime = System.nanoTime();
+    for (int i = 0; i < TYPED_TEXT.length(); i++) {
+      parser.beforeTextChanged(draft, offset + i, 0);
+      draft.insert(offset + i, TYPED_TEXT.charAt(i));
+      parser.onTextChanged(draft, offset + i, 0, 1);
+      parser.parseChanges(draft);
+    }
+    long elapsedNanos = System.nanoTime() - startTime;
+
+    // Sanity check that the blocks didn't drift away from a full parse.
+    int fullParseBlockCount = 0;
+    for (Node node = flexmark.parse(draft.toString()).getFirstChild(); node != null; node = node.getNext()) {
+      ++fullParseBlockCount;
+    }
+    assertEquals(fullParseBlockCount, parser.blocks().size());
+    return elapsedNanos;
+  }
+
+  /**
+   * Starts the typed text at a paragraph boundary, like a new paragraph would be.
+   */
+  private static StringBuilder draft(int length) {
+    StringBuilder draft = new StringBuilder(length + SAMPLE_BLOCKS.length());
+    while (draft.length() < length) {
+      draft.append(SAMPLE_BLOCKS);
+    }
+    draft.setLength(length);
+    int paragraphStart = draft.indexOf("\n\n", length / 2) + 2;
+    return draft.delete(length / 2, paragraphStart);
+  }
+}
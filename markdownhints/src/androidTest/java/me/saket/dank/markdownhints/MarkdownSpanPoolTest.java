@@ -0,0 +1,122 @@
+package me.saket.dank.markdownhints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import android.graphics.Color;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.LeadingMarginSpan;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import me.saket.dank.markdownhints.spans.HeadingSpanWithLevel;
+import ru.noties.markwon.spans.SpannableTheme;
+
+@RunWith(AndroidJUnit4.class)
+public class MarkdownSpanPoolTest {
+
+  private static final int BORROW_COUNT = 3;
+
+  private MarkdownSpanPool spanPool;
+
+  @Before
+  public void setUp() {
+    spanPool = new MarkdownSpanPool(SpannableTheme.builderWithDefaults(InstrumentationRegistry.getTargetContext()).build());
+  }
+
+  @Test
+  public void reuseEveryRecycledForegroundColorSpan() {
+    List<ForegroundColorSpan> borrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      borrowed.add(spanPool.foregroundColor(Color.RED));
+    }
+    assertEquals(BORROW_COUNT, distinctCount(borrowed));
+
+    for (ForegroundColorSpan span : borrowed) {
+      spanPool.recycle(span);
+    }
+    List<ForegroundColorSpan> reborrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      reborrowed.add(spanPool.foregroundColor(Color.RED));
+    }
+
+    assertEquals(BORROW_COUNT, distinctCount(reborrowed));
+    assertEquals(identitySetOf(borrowed), identitySetOf(reborrowed));
+    assertEquals(BORROW_COUNT, spanPool.allocationCount());
+  }
+
+  @Test
+  public void reuseEveryRecycledHeadingSpan() {
+    List<HeadingSpanWithLevel> borrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      borrowed.add(spanPool.heading(2));
+    }
+    for (HeadingSpanWithLevel span : borrowed) {
+      spanPool.recycle(span);
+    }
+    List<HeadingSpanWithLevel> reborrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      reborrowed.add(spanPool.heading(2));
+    }
+
+    assertEquals(BORROW_COUNT, distinctCount(reborrowed));
+    assertEquals(identitySetOf(borrowed), identitySetOf(reborrowed));
+    assertEquals(BORROW_COUNT, spanPool.allocationCount());
+  }
+
+  @Test
+  public void reuseEveryRecycledLeadingMarginSpan() {
+    List<LeadingMarginSpan.Standard> borrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      borrowed.add(spanPool.leadingMargin(24));
+    }
+    for (LeadingMarginSpan.Standard span : borrowed) {
+      spanPool.recycle(span);
+    }
+    List<LeadingMarginSpan.Standard> reborrowed = new ArrayList<>();
+    for (int i = 0; i < BORROW_COUNT; i++) {
+      reborrowed.add(spanPool.leadingMargin(24));
+    }
+
+    assertEquals(BORROW_COUNT, distinctCount(reborrowed));
+    assertEquals(identitySetOf(borrowed), identitySetOf(reborrowed));
+    assertEquals(BORROW_COUNT, spanPool.allocationCount());
+  }
+
+  @Test
+  public void notReuseSpansOfOtherKeys() {
+    ForegroundColorSpan redSpan = spanPool.foregroundColor(Color.RED);
+    HeadingSpanWithLevel firstLevelHeading = spanPool.heading(1);
+    spanPool.recycle(redSpan);
+    spanPool.recycle(firstLevelHeading);
+
+    ForegroundColorSpan blueSpan = spanPool.foregroundColor(Color.BLUE);
+    HeadingSpanWithLevel secondLevelHeading = spanPool.heading(2);
+
+    assertNotSame(redSpan, blueSpan);
+    assertEquals(Color.BLUE, blueSpan.getForegroundColor());
+    assertNotSame(firstLevelHeading, secondLevelHeading);
+    assertEquals(2, secondLevelHeading.level());
+    assertEquals(4, spanPool.allocationCount());
+  }
+
+  private static int distinctCount(List<?> spans) {
+    return identitySetOf(spans).size();
+  }
+
+  private static Set<Object> identitySetOf(List<?> spans) {
+    Set<Object> identitySet = Collections.newSetFromMap(new IdentityHashMap<>());
+    identitySet.addAll(spans);
+    return identitySet;
+  }
+}
@@ -0,0 +1,127 @@
+package me.saket.dank.markdownhints;
+
+import android.text.Spannable;
+import android.text.Spanned;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the spans collected by {@link MarkdownHintsSpanWriter} by diffing them against the
+ * hint spans already present in a region of the text. Spans that are already present at the same
+ * position are left alone and their pooled duplicates are recycled, so typing inside a paragraph
+ * only touches the few spans whose positions actually changed.
+ */
+class HintSpanReconciler {
+
+  private final MarkdownSpanPool spanPool;
+  private final Map<Long, List<Object>> existingSpansByRange = new HashMap<>();
+  private int[] addedStarts = new int[16];
+  private int[] addedEnds = new int[16];
+
+  HintSpanReconciler(MarkdownSpanPool spanPool) {
+    this.spanPool = spanPool;
+  }
+
+  /**
+   * @param allocatedCount Number of spans the pool had to create for <var>writer</var>, for {@link SpanChangeCounts}.
+   */
+  SpanChangeCounts reconcile(Spannable text, int regionStart, int regionEnd, MarkdownHintsSpanWriter writer, int allocatedCount) {
+    for (Object span : text.getSpans(regionStart, regionEnd, Object.class)) {
+      int spanStart = text.getSpanStart(span);
+      int spanEnd = text.getSpanEnd(span);
+      // getSpans() also returns spans that only touch the region.
+      if (spanStart >= regionStart && spanEnd <= regionEnd && MarkdownHints.SUPPORTED_MARKDOWN_SPANS.contains(span.getClass())) {
+        long range = range(spanStart, spanEnd);
+        List<Object> spansInRange = existingSpansByRange.get(range);
+        if (spansInRange == null) {
+          spansInRange = new ArrayList<>(2);
+          existingSpansByRange.put(range, spansInRange);
+        }
+        spansInRange.add(span);
+      }
+    }
+
+    int addedCount = 0;
+    int removedCount = 0;
+    int keptCount = 0;
+
+    for (int i = 0; i < writer.spanCount(); i++) {
+      Object span = writer.span(i);
+      int start = writer.spanStart(i);
+      int end = writer.spanEnd(i);
+      Object existingSpan = removeEquivalentSpan(range(start, end), span);
+
+      if (existingSpan == null) {
+        text.setSpan(span, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+        markAdded(addedCount, start, end);
+        ++addedCount;
+
+      } else {
+        spanPool.recycle(span);
+
+        // Later spans take precedence over earlier ones that overlap them, so a span can only
+        // be kept if none of the spans pushed before it were added after it.
+        if (overlapsAddedSpans(addedCount, start, end)) {
+          text.removeSpan(existingSpan);
+          text.setSpan(existingSpan, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+          markAdded(addedCount, start, end);
+          ++addedCount;
+          ++removedCount;
+        } else {
+          ++keptCount;
+        }
+      }
+    }
+
+    // Whatever couldn't be matched is stale.
+    for (List<Object> staleSpans : existingSpansByRange.values()) {
+      for (Object staleSpan : staleSpans) {
+        text.removeSpan(staleSpan);
+        spanPool.recycle(staleSpan);
+        ++removedCount;
+      }
+    }
+    existingSpansByRange.clear();
+
+    return SpanChangeCounts.create(allocatedCount, addedCount, removedCount, keptCount);
+  }
+
+  private Object removeEquivalentSpan(long range, Object span) {
+    List<Object> spansInRange = existingSpansByRange.get(range);
+    if (spansInRange == null) {
+      return null;
+    }
+    for (int i = 0; i < spansInRange.size(); i++) {
+      if (MarkdownSpanPool.areEquivalent(spansInRange.get(i), span)) {
+        return spansInRange.remove(i);
+      }
+    }
+    return null;
+  }
+
+  private void markAdded(int index, int start, int end) {
+    if (index == addedStarts.length) {
+      addedStarts = Arrays.copyOf(addedStarts, index * 2);
+      addedEnds = Arrays.copyOf(addedEnds, index * 2);
+    }
+    addedStarts[index] = start;
+    addedEnds[index] = end;
+  }
+
+  private boolean overlapsAddedSpans(int addedCount, int start, int end) {
+    for (int i = 0; i < addedCount; i++) {
+      if (addedStarts[i] < end && addedEnds[i] > start) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long range(int start, int end) {
+    return ((long) start << 32) | (end & 0xFFFFFFFFL);
+  }
+}
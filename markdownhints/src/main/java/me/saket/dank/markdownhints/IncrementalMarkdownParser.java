@@ -0,0 +1,323 @@
+package me.saket.dank.markdownhints;
+
+import com.vladsch.flexmark.ast.IndentedCodeBlock;
+import com.vladsch.flexmark.ast.ListBlock;
+import com.vladsch.flexmark.ast.Node;
+import com.vladsch.flexmark.parser.Parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Re-parses only the blocks of a draft that were affected by an edit, instead of the whole draft.
+ * <p>
+ * Markdown blocks are separated by blank lines, so an edit can only change the blocks between
+ * the blank lines around it. That region is widened to include blocks that can continue across
+ * blank lines (lists and indented code) and blocks that already spanned the edited lines (like
+ * code fences). Edits to syntax that can affect the entire draft, like code fences or link
+ * reference definitions, cause a full parse.
+ * <p>
+ * Node offsets of {@link ParsedRegion#document()} are relative to {@link ParsedRegion#start()}.
+ * Doesn't use any Android classes, so that it can be benchmarked on the JVM.
+ */
+class IncrementalMarkdownParser {
+
+  /**
+   * Syntax whose effects don't stop at blank lines.
+   */
+  private static final String[] DRAFT_WIDE_SYNTAX = { "```", "~~~", "]:", "<!--", "-->" };
+
+  private final Parser parser;
+
+  /** Top-level blocks of the last parse, sorted by their offsets. */
+  private final List<Block> blocks = new ArrayList<>();
+  private boolean fullParseNeeded = true;
+  private boolean hasPendingEdit;
+  private int dirtyStart;
+  private int dirtyEnd;
+
+  IncrementalMarkdownParser(Parser parser) {
+    this.parser = parser;
+  }
+
+  /**
+   * Call from {@link android.text.TextWatcher#beforeTextChanged(CharSequence, int, int, int)}.
+   */
+  void beforeTextChanged(CharSequence text, int start, int count) {
+    if (!fullParseNeeded && containsDraftWideSyntax(text, start, start + count)) {
+      fullParseNeeded = true;
+    }
+  }
+
+  /**
+   * Call from {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}.
+   */
+  void onTextChanged(CharSequence text, int start, int before, int count) {
+    if (fullParseNeeded) {
+      return;
+    }
+    if (containsDraftWideSyntax(text, start, start + count)) {
+      fullParseNeeded = true;
+      return;
+    }
+
+    int delta = count - before;
+    for (Block block : blocks) {
+      if (block.start >= start + before) {
+        block.start += delta;
+        block.end += delta;
+      } else if (block.end > start) {
+        // Overlaps the edit, so it'll get parsed again anyway.
+        block.start = Math.min(block.start, start);
+        block.end = Math.max(start + count, block.end + delta);
+      }
+    }
+
+    if (!hasPendingEdit) {
+      dirtyStart = start;
+      dirtyEnd = start + count;
+      hasPendingEdit = true;
+    } else {
+      if (dirtyEnd >= start + before) {
+        dirtyEnd += delta;
+      }
+      dirtyStart = Math.min(dirtyStart, start);
+      dirtyEnd = Math.max(dirtyEnd, start + count);
+    }
+  }
+
+  /**
+   * Parses the entire text again on the next call to {@link #parseChanges(CharSequence)}.
+   */
+  void invalidate() {
+    fullParseNeeded = true;
+  }
+
+  /**
+   * Parses the region affected by edits since the last call.
+   */
+  ParsedRegion parseChanges(CharSequence text) {
+    if (fullParseNeeded || !hasPendingEdit) {
+      return parseAll(text);
+    }
+    hasPendingEdit = false;
+
+    dirtyStart = Math.min(dirtyStart, text.length());
+    dirtyEnd = Math.min(Math.max(dirtyEnd, dirtyStart), text.length());
+    int regionStart = blockStart(text, dirtyStart);
+    int regionEnd = blockEnd(text, dirtyEnd);
+
+    while (true) {
+      // Blocks that overlapped the edited lines may have spanned blank lines.
+      boolean regionGrew = false;
+      for (Block block : blocks) {
+        if (block.start < regionEnd && block.end > regionStart && (block.start < regionStart || block.end > regionEnd)) {
+          regionStart = blockStart(text, Math.min(regionStart, block.start));
+          regionEnd = blockEnd(text, Math.max(regionEnd, block.end));
+          regionGrew = true;
+        }
+      }
+      if (regionGrew) {
+        continue;
+      }
+
+      // Lists and indented code absorb the lines after them, even across blank lines.
+      Block previousBlock = lastBlockBefore(regionStart);
+      if (previousBlock != null && previousBlock.continuesAcrossBlankLines) {
+        regionStart = blockStart(text, previousBlock.start);
+        continue;
+      }
+
+      Node document = parser.parse(substring(text, regionStart, regionEnd));
+      List<Block> regionBlocks = topLevelBlocks(document, regionStart);
+
+      Block nextBlock = firstBlockAfter(regionEnd);
+      boolean absorbsNextBlock = !regionBlocks.isEmpty() && regionBlocks.get(regionBlocks.size() - 1).continuesAcrossBlankLines;
+      if (nextBlock != null && absorbsNextBlock) {
+        regionEnd = blockEnd(text, nextBlock.end);
+        continue;
+      }
+
+      replaceBlocks(regionStart, regionEnd, regionBlocks);
+      return ParsedRegion.create(regionStart, regionEnd, document);
+    }
+  }
+
+  ParsedRegion parseAll(CharSequence text) {
+    fullParseNeeded = false;
+    hasPendingEdit = false;
+
+    Node document = parser.parse(substring(text, 0, text.length()));
+    blocks.clear();
+    blocks.addAll(topLevelBlocks(document, 0));
+    return ParsedRegion.create(0, text.length(), document);
+  }
+
+  /**
+   * For tests.
+   */
+  List<Block> blocks() {
+    return Collections.unmodifiableList(blocks);
+  }
+
+  private Block lastBlockBefore(int offset) {
+    for (int i = blocks.size() - 1; i >= 0; i--) {
+      Block block = blocks.get(i);
+      if (block.end <= offset && block.start < offset) {
+        return block;
+      }
+    }
+    return null;
+  }
+
+  private Block firstBlockAfter(int offset) {
+    for (Block block : blocks) {
+      if (block.start >= offset && block.end > offset) {
+        return block;
+      }
+    }
+    return null;
+  }
+
+  private void replaceBlocks(int regionStart, int regionEnd, List<Block> regionBlocks) {
+    int insertionIndex = 0;
+    for (int i = blocks.size() - 1; i >= 0; i--) {
+      Block block = blocks.get(i);
+      if (block.start < regionEnd && block.end > regionStart || block.start >= regionStart && block.end <= regionEnd) {
+        // Also removes empty blocks inside the region.
+        blocks.remove(i);
+      }
+    }
+    while (insertionIndex < blocks.size() && blocks.get(insertionIndex).start < regionStart) {
+      ++insertionIndex;
+    }
+    blocks.addAll(insertionIndex, regionBlocks);
+  }
+
+  private static List<Block> topLevelBlocks(Node document, int offset) {
+    List<Block> blocks = new ArrayList<>();
+    for (Node node = document.getFirstChild(); node != null; node = node.getNext()) {
+      boolean continuesAcrossBlankLines = node instanceof ListBlock || node instanceof IndentedCodeBlock;
+      blocks.add(new Block(offset + node.getStartOffset(), offset + node.getEndOffset(), continuesAcrossBlankLines));
+    }
+    return blocks;
+  }
+
+  /**
+   * @return Start of the first line after the blank line that precedes <var>offset</var>.
+   */
+  static int blockStart(CharSequence text, int offset) {
+    int start = lineStart(text, offset);
+    while (start > 0) {
+      int previousLineStart = lineStart(text, start - 1);
+      if (isBlank(text, previousLineStart, start - 1)) {
+        break;
+      }
+      start = previousLineStart;
+    }
+    return start;
+  }
+
+  /**
+   * @return Start of the first blank line at or after <var>offset</var>'s line, or the end of the text.
+   */
+  static int blockEnd(CharSequence text, int offset) {
+    int lineStart = lineStart(text, offset);
+    int end = lineEnd(text, offset);
+    if (lineStart == offset && isBlank(text, lineStart, end)) {
+      return offset;
+    }
+    while (end < text.length()) {
+      int nextLineStart = end + 1;
+      int nextLineEnd = lineEnd(text, nextLineStart);
+      if (isBlank(text, nextLineStart, nextLineEnd)) {
+        return nextLineStart;
+      }
+      end = nextLineEnd;
+    }
+    return text.length();
+  }
+
+  private static int lineStart(CharSequence text, int offset) {
+    int start = Math.min(offset, text.length());
+    while (start > 0 && text.charAt(start - 1) != '\n') {
+      --start;
+    }
+    return start;
+  }
+
+  /**
+   * @return Offset of the line's '\n', or the end of the text.
+   */
+  private static int lineEnd(CharSequence text, int offset) {
+    int end = offset;
+    while (end < text.length() && text.charAt(end) != '\n') {
+      ++end;
+    }
+    return end;
+  }
+
+  private static boolean isBlank(CharSequence text, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(text.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks the entire lines around [start, end).
+   */
+  private static boolean containsDraftWideSyntax(CharSequence text, int start, int end) {
+    int linesStart = lineStart(text, start);
+    int linesEnd = lineEnd(text, Math.min(end, text.length()));
+    for (String syntax : DRAFT_WIDE_SYNTAX) {
+      if (indexOf(text, syntax, linesStart, linesEnd) != -1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int indexOf(CharSequence text, String target, int start, int end) {
+    for (int i = start; i <= end - target.length(); i++) {
+      boolean matches = true;
+      for (int j = 0; j < target.length(); j++) {
+        if (text.charAt(i + j) != target.charAt(j)) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Copies only the characters. {@link CharSequence#subSequence(int, int)} of an Editable also copies its spans.
+   */
+  private static String substring(CharSequence text, int start, int end) {
+    return new StringBuilder(end - start).append(text, start, end).toString();
+  }
+
+  static class Block {
+    int start;
+    int end;
+    final boolean continuesAcrossBlankLines;
+
+    Block(int start, int end, boolean continuesAcrossBlankLines) {
+      this.start = start;
+      this.end = end;
+      this.continuesAcrossBlankLines = continuesAcrossBlankLines;
+    }
+
+    @Override
+    public String toString() {
+      return "[" + start + ", " + end + ")" + (continuesAcrossBlankLines ? "+" : "");
+    }
+  }
+}
@@ -10,10 +10,8 @@ import android.text.style.SuperscriptSpan;
 import android.text.style.TypefaceSpan;
 import android.widget.EditText;
 
-import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
 import com.vladsch.flexmark.parser.Parser;
-import com.vladsch.flexmark.util.sequence.SubSequence;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -49,9 +47,11 @@ public class MarkdownHints extends SimpleTextWatcher {
 
   private final EditText editText;
   private final MarkdownSpanPool spanPool;
-  private final Parser parser;
+  private final IncrementalMarkdownParser parser;
   private final MarkdownNodeTreeVisitor markdownNodeTreeVisitor;
   private final MarkdownHintsSpanWriter markdownHintsSpanWriter;
+  private final HintSpanReconciler spanReconciler;
+  private SpanChangeCounts lastSpanChangeCounts;
 
   public static void enableLogging() {
     Timber.plant(new Timber.DebugTree());
@@ -61,34 +61,74 @@ public class MarkdownHints extends SimpleTextWatcher {
     this.editText = editText;
     this.spanPool = spanPool;
     this.markdownHintsSpanWriter = new MarkdownHintsSpanWriter();
+    this.spanReconciler = new HintSpanReconciler(spanPool);
     this.markdownNodeTreeVisitor = new MarkdownNodeTreeVisitor(spanPool, markdownHintOptions);
 
-    parser = Parser.builder()
+    parser = new IncrementalMarkdownParser(Parser.builder()
         .extensions(Collections.singletonList(StrikethroughExtension.create()))
-        .build();
+        .build());
+  }
+
+  /**
+   * For measuring how many spans get allocated and removed per keystroke.
+   */
+  public SpanChangeCounts lastSpanChangeCounts() {
+    return lastSpanChangeCounts;
+  }
+
+  @Override
+  public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    parser.beforeTextChanged(s, start, count);
+  }
+
+  @Override
+  public void onTextChanged(CharSequence s, int start, int before, int count) {
+    parser.onTextChanged(s, start, before, count);
   }
 
   @Override
   public void afterTextChanged(Editable editable) {
     editText.removeTextChangedListener(this);
 
-    // We'll see stale styling if previous spans aren't removed.
-    removeHintSpans(editable);
+    // Only the blocks affected by this change are parsed and highlighted again.
+    ParsedRegion region = parser.parseChanges(editable);
+
+    if (hasHintSpansCrossing(editable, region)) {
+      // Can't happen unless the spans were added by someone else. Better safe than stale.
+      region = parser.parseAll(editable);
+    }
+
+    int allocationCountBefore = spanPool.allocationCount();
+    markdownHintsSpanWriter.reset(region.start());
+    markdownNodeTreeVisitor.visit(region.document(), markdownHintsSpanWriter);
 
-    Node markdownRootNode = parser.parse(SubSequence.of(editable));
-    markdownHintsSpanWriter.setText(editable);
-    markdownNodeTreeVisitor.visit(markdownRootNode, markdownHintsSpanWriter);
+    // Only the spans that changed are touched. Removing and re-adding all of them causes
+    // the EditText to re-layout even when nothing changed.
+    lastSpanChangeCounts = spanReconciler.reconcile(
+        editable,
+        region.start(),
+        region.end(),
+        markdownHintsSpanWriter,
+        spanPool.allocationCount() - allocationCountBefore);
 
     editText.addTextChangedListener(this);
   }
 
-  private void removeHintSpans(Spannable spannable) {
-    Object[] spans = spannable.getSpans(0, spannable.length(), Object.class);
+  private static boolean hasHintSpansCrossing(Spannable spannable, ParsedRegion region) {
+    if (region.start() == 0 && region.end() == spannable.length()) {
+      return false;
+    }
+    Object[] spans = spannable.getSpans(region.start(), region.end(), Object.class);
     for (Object span : spans) {
       if (SUPPORTED_MARKDOWN_SPANS.contains(span.getClass())) {
-        spannable.removeSpan(span);
-        spanPool.recycle(span);
+        int spanStart = spannable.getSpanStart(span);
+        int spanEnd = spannable.getSpanEnd(span);
+        boolean overlaps = spanStart < region.end() && spanEnd > region.start();
+        if (overlaps && (spanStart < region.start() || spanEnd > region.end())) {
+          return true;
+        }
       }
     }
+    return false;
   }
 }
@@ -1,25 +1,56 @@
 package me.saket.dank.markdownhints;
 
-import android.text.Editable;
-import android.text.Spanned;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * TODO: Doc.
+ * Collects the spans that {@link MarkdownNodeTreeVisitor} wants on the text. They're applied
+ * by {@link HintSpanReconciler}, which only touches the spans that actually changed.
  */
 public class MarkdownHintsSpanWriter {
 
-  private Editable editable;
+  private final List<Object> spans = new ArrayList<>();
+  private int[] starts = new int[64];
+  private int[] ends = new int[64];
+  private int offset;
 
-  public void setText(Editable editable) {
-    this.editable = editable;
+  /**
+   * @param offset Added to the positions of all spans, for when only a part of the text was parsed.
+   */
+  public void reset(int offset) {
+    this.offset = offset;
+    spans.clear();
   }
 
-  /** Starts {@code span} at the current position in the builder. */
   public MarkdownHintsSpanWriter pushSpan(Object span, int start, int end) {
     if (!MarkdownHints.SUPPORTED_MARKDOWN_SPANS.contains(span.getClass())) {
       throw new IllegalArgumentException("Span not supported: " + span.getClass());
     }
-    editable.setSpan(span, start, end, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+    int index = spans.size();
+    if (index == starts.length) {
+      starts = Arrays.copyOf(starts, index * 2);
+      ends = Arrays.copyOf(ends, index * 2);
+    }
+    spans.add(span);
+    starts[index] = offset + start;
+    ends[index] = offset + end;
     return this;
   }
+
+  int spanCount() {
+    return spans.size();
+  }
+
+  Object span(int index) {
+    return spans.get(index);
+  }
+
+  int spanStart(int index) {
+    return starts[index];
+  }
+
+  int spanEnd(int index) {
+    return ends[index];
+  }
 }
@@ -32,91 +32,97 @@ public class MarkdownSpanPool {
   private final Stack<StyleSpan> boldSpans = new Stack<>();
   private final Stack<StrikethroughSpan> strikethroughSpans = new Stack<>();
   private final Stack<TypefaceSpan> monospaceTypefaceSpans = new Stack<>();
-  private final Map<Integer, ForegroundColorSpan> foregroundColorSpans = new HashMap<>();
+  private final Map<Integer, Stack<ForegroundColorSpan>> foregroundColorSpans = new HashMap<>();
   private final Stack<InlineCodeSpan> inlineCodeSpans = new Stack<>();
   private final Stack<IndentedCodeBlockSpan> indentedCodeSpans = new Stack<>();
-  private final Map<Integer, HeadingSpanWithLevel> headingSpans = new HashMap<>();
+  private final Map<Integer, Stack<HeadingSpanWithLevel>> headingSpans = new HashMap<>();
   private final Stack<SuperscriptSpan> superscriptSpans = new Stack<>();
   private final Stack<BlockQuoteSpan> quoteSpans = new Stack<>();
-  private final Map<Integer, LeadingMarginSpan.Standard> leadingMarginSpans = new HashMap<>();
-  private final Map<String, HorizontalRuleSpan> horizontalRuleSpans = new HashMap<>();
+  private final Map<Integer, Stack<LeadingMarginSpan.Standard>> leadingMarginSpans = new HashMap<>();
+  private final Map<String, Stack<HorizontalRuleSpan>> horizontalRuleSpans = new HashMap<>();
 
   private final SpannableTheme spannableTheme;
+  private int allocationCount;
 
   public MarkdownSpanPool(SpannableTheme spannableTheme) {
     this.spannableTheme = spannableTheme;
   }
 
+  /**
+   * Number of spans that had to be created because the pool didn't have any to reuse.
+   */
+  public int allocationCount() {
+    return allocationCount;
+  }
+
   public StyleSpan italics() {
-    return italicsSpans.empty() ? new StyleSpan(Typeface.ITALIC) : italicsSpans.pop();
+    return italicsSpans.empty() ? allocated(new StyleSpan(Typeface.ITALIC)) : italicsSpans.pop();
   }
 
   public StyleSpan bold() {
     return boldSpans.empty()
-        ? new StyleSpan(Typeface.BOLD)
+        ? allocated(new StyleSpan(Typeface.BOLD))
         : boldSpans.pop();
   }
 
   public ForegroundColorSpan foregroundColor(@ColorInt int color) {
-    return foregroundColorSpans.containsKey(color)
-        ? foregroundColorSpans.remove(color)
-        : new ForegroundColorSpan(color);
+    ForegroundColorSpan span = pop(foregroundColorSpans, color);
+    return span != null ? span : allocated(new ForegroundColorSpan(color));
   }
 
   public InlineCodeSpan inlineCode() {
     return inlineCodeSpans.empty()
-        ? new InlineCodeSpan(spannableTheme)
+        ? allocated(new InlineCodeSpan(spannableTheme))
         : inlineCodeSpans.pop();
   }
 
   public IndentedCodeBlockSpan indentedCodeBlock() {
     return indentedCodeSpans.empty()
-        ? new IndentedCodeBlockSpan(spannableTheme)
+        ? allocated(new IndentedCodeBlockSpan(spannableTheme))
         : indentedCodeSpans.pop();
   }
 
   public StrikethroughSpan strikethrough() {
     return strikethroughSpans.empty()
-        ? new StrikethroughSpan()
+        ? allocated(new StrikethroughSpan())
         : strikethroughSpans.pop();
   }
 
   public TypefaceSpan monospaceTypeface() {
     return monospaceTypefaceSpans.empty()
-        ? new TypefaceSpan("monospace")
+        ? allocated(new TypefaceSpan("monospace"))
         : monospaceTypefaceSpans.pop();
   }
 
   public HeadingSpanWithLevel heading(int level) {
-    return headingSpans.containsKey(level)
-        ? headingSpans.remove(level)
-        : new HeadingSpanWithLevel(spannableTheme, level);
+    HeadingSpanWithLevel span = pop(headingSpans, level);
+    return span != null ? span : allocated(new HeadingSpanWithLevel(spannableTheme, level));
   }
 
   public SuperscriptSpan superscript() {
     return superscriptSpans.empty()
-        ? new SuperscriptSpan()
+        ? allocated(new SuperscriptSpan())
         : superscriptSpans.pop();
   }
 
   public BlockQuoteSpan quote() {
     return quoteSpans.empty()
-        ? new BlockQuoteSpan(spannableTheme)
+        ? allocated(new BlockQuoteSpan(spannableTheme))
         : quoteSpans.pop();
   }
 
   public LeadingMarginSpan.Standard leadingMargin(int margin) {
-    return leadingMarginSpans.containsKey(margin) ? leadingMarginSpans.remove(margin) : new LeadingMarginSpan.Standard(margin);
+    LeadingMarginSpan.Standard span = pop(leadingMarginSpans, margin);
+    return span != null ? span : allocated(new LeadingMarginSpan.Standard(margin));
   }
 
   /**
    * @param text See {@link HorizontalRuleSpan#HorizontalRuleSpan(CharSequence, int, int, HorizontalRuleSpan.Mode)}.
    */
   public HorizontalRuleSpan horizontalRule(CharSequence text, @ColorInt int ruleColor, @Px int ruleStrokeWidth, HorizontalRuleSpan.Mode mode) {
-    String key = text + "_" + ruleColor + "_" + ruleStrokeWidth + "_" + mode;
-    return horizontalRuleSpans.containsKey(key)
-        ? horizontalRuleSpans.remove(key)
-        : new HorizontalRuleSpan(text, ruleColor, ruleStrokeWidth, mode);
+    String key = horizontalRuleKey(text, ruleColor, ruleStrokeWidth, mode);
+    HorizontalRuleSpan span = pop(horizontalRuleSpans, key);
+    return span != null ? span : allocated(new HorizontalRuleSpan(text, ruleColor, ruleStrokeWidth, mode));
   }
 
   public void recycle(Object span) {
@@ -171,8 +177,7 @@ public class MarkdownSpanPool {
   }
 
   public void recycle(ForegroundColorSpan span) {
-    int key = span.getForegroundColor();
-    foregroundColorSpans.put(key, span);
+    push(foregroundColorSpans, span.getForegroundColor(), span);
   }
 
   public void recycle(InlineCodeSpan span) {
@@ -195,7 +200,7 @@ public class MarkdownSpanPool {
   }
 
   public void recycle(HeadingSpanWithLevel span) {
-    headingSpans.put(span.level(), span);
+    push(headingSpans, span.level(), span);
   }
 
   public void recycle(SuperscriptSpan span) {
@@ -208,11 +213,71 @@ public class MarkdownSpanPool {
 
   public void recycle(LeadingMarginSpan.Standard span) {
     int key = span.getLeadingMargin(true /* irrelevant */);
-    leadingMarginSpans.put(key, span);
+    push(leadingMarginSpans, key, span);
   }
 
   public void recycle(HorizontalRuleSpan span) {
-    String key = span.getText() + "_" + span.getRuleColor() + "_" + span.getRuleStrokeWidth() + "_" + span.getMode();
-    horizontalRuleSpans.put(key, span);
+    String key = horizontalRuleKey(span.getText(), span.getRuleColor(), span.getRuleStrokeWidth(), span.getMode());
+    push(horizontalRuleSpans, key, span);
+  }
+
+  /**
+   * @return True if <var>span</var> and <var>other</var> would look the same, so that one can be used in place of the other.
+   */
+  public static boolean areEquivalent(Object span, Object other) {
+    if (span.getClass() != other.getClass()) {
+      return false;
+    }
+    if (span instanceof StyleSpan) {
+      return ((StyleSpan) span).getStyle() == ((StyleSpan) other).getStyle();
+    }
+    if (span instanceof ForegroundColorSpan) {
+      return ((ForegroundColorSpan) span).getForegroundColor() == ((ForegroundColorSpan) other).getForegroundColor();
+    }
+    if (span instanceof TypefaceSpan) {
+      return ((TypefaceSpan) span).getFamily().equals(((TypefaceSpan) other).getFamily());
+    }
+    if (span instanceof HeadingSpanWithLevel) {
+      return ((HeadingSpanWithLevel) span).level() == ((HeadingSpanWithLevel) other).level();
+    }
+    if (span instanceof LeadingMarginSpan.Standard) {
+      return ((LeadingMarginSpan.Standard) span).getLeadingMargin(true) == ((LeadingMarginSpan.Standard) other).getLeadingMargin(true);
+    }
+    if (span instanceof HorizontalRuleSpan) {
+      HorizontalRuleSpan rule = (HorizontalRuleSpan) span;
+      HorizontalRuleSpan otherRule = (HorizontalRuleSpan) other;
+      return rule.getRuleColor() == otherRule.getRuleColor()
+          && rule.getRuleStrokeWidth() == otherRule.getRuleStrokeWidth()
+          && rule.getMode() == otherRule.getMode()
+          && rule.getText().toString().equals(otherRule.getText().toString());
+    }
+    // Remaining spans don't have any state that differs between instances.
+    return true;
+  }
+
+  private <T> T allocated(T span) {
+    ++allocationCount;
+    return span;
+  }
+
+  /**
+   * Multiple spans with the same key can be in use at the same time, so each key gets its own stack.
+   */
+  private static <K, T> void push(Map<K, Stack<T>> spans, K key, T span) {
+    Stack<T> stack = spans.get(key);
+    if (stack == null) {
+      stack = new Stack<>();
+      spans.put(key, stack);
+    }
+    stack.push(span);
+  }
+
+  private static <K, T> T pop(Map<K, Stack<T>> spans, K key) {
+    Stack<T> stack = spans.get(key);
+    return stack == null || stack.empty() ? null : stack.pop();
+  }
+
+  private static String horizontalRuleKey(CharSequence text, @ColorInt int ruleColor, @Px int ruleStrokeWidth, HorizontalRuleSpan.Mode mode) {
+    return text + "_" + ruleColor + "_" + ruleStrokeWidth + "_" + mode;
   }
 }
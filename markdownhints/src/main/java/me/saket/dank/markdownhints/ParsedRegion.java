@@ -0,0 +1,24 @@
+package me.saket.dank.markdownhints;
+
+import com.google.auto.value.AutoValue;
+import com.vladsch.flexmark.ast.Node;
+
+/**
+ * Part of a draft that was parsed by {@link IncrementalMarkdownParser}.
+ */
+@AutoValue
+abstract class ParsedRegion {
+
+  abstract int start();
+
+  abstract int end();
+
+  /**
+   * Offsets of its nodes are relative to {@link #start()}.
+   */
+  abstract Node document();
+
+  static ParsedRegion create(int start, int end, Node document) {
+    return new AutoValue_ParsedRegion(start, end, document);
+  }
+}
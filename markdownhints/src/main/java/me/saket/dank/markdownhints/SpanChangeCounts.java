@@ -0,0 +1,28 @@
+package me.saket.dank.markdownhints;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * What {@link MarkdownHints} had to do with spans for a text change.
+ */
+@AutoValue
+public abstract class SpanChangeCounts {
+
+  /**
+   * Spans that had to be created because {@link MarkdownSpanPool} didn't have any to reuse.
+   */
+  public abstract int allocated();
+
+  public abstract int added();
+
+  public abstract int removed();
+
+  /**
+   * Spans that were already present at the same position and were left untouched.
+   */
+  public abstract int kept();
+
+  static SpanChangeCounts create(int allocated, int added, int removed, int kept) {
+    return new AutoValue_SpanChangeCounts(allocated, added, removed, kept);
+  }
+}
@@ -0,0 +1,152 @@
+package me.saket.dank.markdownhints;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.vladsch.flexmark.ast.Node;
+import com.vladsch.flexmark.ext.gfm.strikethrough.StrikethroughExtension;
+import com.vladsch.flexmark.parser.Parser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalMarkdownParserShould {
+
+  private static final String SAMPLE_BLOCKS = ""
+      + "# Dank\n"
+      + "\n"
+      + "Some **bold** text and *italics* with a [link](https://example.com) and `code`.\n"
+      + "A second line of the ~~same~~ paragraph.\n"
+      + "\n"
+      + "> A quote\n"
+      + "> that goes on\n"
+      + "\n"
+      + "- First item\n"
+      + "- Second item\n"
+      + "\n"
+      + "  Continuation of the second item.\n"
+      + "\n"
+      + "1. Ordered\n"
+      + "2. List\n"
+      + "\n"
+      + "    indented code\n"
+      + "\n"
+      + "    more code\n"
+      + "\n"
+      + "***\n"
+      + "\n";
+
+  private Parser flexmark;
+  private IncrementalMarkdownParser parser;
+  private StringBuilder text;
+
+  @Before
+  public void setUp() {
+    flexmark = Parser.builder()
+        .extensions(Collections.singletonList(StrikethroughExtension.create()))
+        .build();
+    parser = new IncrementalMarkdownParser(flexmark);
+    text = new StringBuilder(SAMPLE_BLOCKS).append(SAMPLE_BLOCKS);
+    parser.parseAll(text);
+  }
+
+  @Test
+  public void parseOnlyTheEditedParagraph() {
+    int offset = text.indexOf("bold");
+    ParsedRegion region = replace(offset, offset, "x");
+
+    assertEquals(text.indexOf("Some **"), region.start());
+    assertEquals(text.indexOf("> A quote") - 1, region.end());
+    assertMatchesFullParse(region);
+  }
+
+  @Test
+  public void parseAdjacentParagraphsThatGetJoined() {
+    int blankLineOffset = text.indexOf("\n\n> A quote") + 1;
+    ParsedRegion region = replace(blankLineOffset, blankLineOffset, "joined");
+
+    assertTrue(region.start() <= text.indexOf("Some **"));
+    assertTrue(region.end() >= text.indexOf("that goes on"));
+    assertMatchesFullParse(region);
+  }
+
+  @Test
+  public void parseListsTogetherWithTheirContinuations() {
+    int offset = text.indexOf("First item");
+    ParsedRegion region = replace(offset, offset, "x");
+
+    assertTrue(region.end() >= text.indexOf("Continuation of"));
+    assertMatchesFullParse(region);
+  }
+
+  @Test
+  public void parseEverythingWhenACodeFenceIsTyped() {
+    int offset = text.indexOf("Some **");
+    replace(offset, offset, "``");
+    ParsedRegion region = replace(offset, offset, "`");
+
+    assertEquals(0, region.start());
+    assertEquals(text.length(), region.end());
+  }
+
+  @Test
+  public void matchAFullParseWhileTypingAnywhere() {
+    String typed = "Hey *there*\n\n- a list\n- of things\n\n> quoted\n\n    code\n\nDone.\n";
+    int[] typingOffsets = { 0, text.indexOf("Second item"), text.indexOf("more code"), text.indexOf("***"), text.length() };
+
+    for (int typingOffset : typingOffsets) {
+      for (int i = 0; i < typed.length(); i++) {
+        assertMatchesFullParse(replace(typingOffset + i, typingOffset + i, typed.substring(i, i + 1)));
+      }
+      // Backspace everything.
+      for (int i = typed.length(); i > 0; i--) {
+        assertMatchesFullParse(replace(typingOffset + i - 1, typingOffset + i, ""));
+      }
+    }
+  }
+
+  /**
+   * Replays a change the way an EditText reports it to a TextWatcher.
+   */
+  private ParsedRegion replace(int start, int end, String replacement) {
+    parser.beforeTextChanged(text, start, end - start);
+    text.replace(start, end, replacement);
+    parser.onTextChanged(text, start, end - start, replacement.length());
+    return parser.parseChanges(text);
+  }
+
+  private void assertMatchesFullParse(ParsedRegion region) {
+    Node fullDocument = flexmark.parse(text.toString());
+
+    List<String> expectedBlocks = new ArrayList<>();
+    for (Node node = fullDocument.getFirstChild(); node != null; node = node.getNext()) {
+      expectedBlocks.add("[" + node.getStartOffset() + ", " + node.getEndOffset() + ")");
+    }
+    List<String> blocks = new ArrayList<>();
+    for (IncrementalMarkdownParser.Block block : parser.blocks()) {
+      blocks.add("[" + block.start + ", " + block.end + ")");
+    }
+    assertEquals("Blocks of:\n" + text, expectedBlocks, blocks);
+
+    List<String> expectedNodes = new ArrayList<>();
+    describeNodes(fullDocument, 0, region.start(), region.end(), expectedNodes);
+    List<String> regionNodes = new ArrayList<>();
+    describeNodes(region.document(), region.start(), region.start(), region.end(), regionNodes);
+    assertEquals("Nodes of:\n" + text, expectedNodes, regionNodes);
+  }
+
+  private static void describeNodes(Node parent, int offset, int regionStart, int regionEnd, List<String> descriptions) {
+    for (Node node = parent.getFirstChild(); node != null; node = node.getNext()) {
+      int start = offset + node.getStartOffset();
+      int end = offset + node.getEndOffset();
+      if (start >= regionStart && end <= regionEnd) {
+        descriptions.add(node.getClass().getSimpleName() + "[" + start + ", " + end + ")");
+      }
+      describeNodes(node, offset, regionStart, regionEnd, descriptions);
+    }
+  }
+}